@@ -1,14 +1,19 @@
 #include "BYTETracker.h"
+#include "lapjv.h"
 #include <fstream>
 
 BYTETracker::BYTETracker(int frame_rate, int track_buffer)
+	: sparse_assignment(false), lap_ws(new lapjv_workspace_t)
 {
+	lapjv_workspace_init(lap_ws.get());
+
 	track_thresh = 0.6;
 	high_thresh = 0.8;
 	match_thresh = 0.8;
 
 	frame_id = 0;
 	max_time_lost = int(frame_rate / 30.0 * track_buffer);
+	stamp = 0;
 	cout << "Init ByteTrack!" << endl;
 }
 
@@ -21,31 +26,24 @@ BYTETracker::~BYTETracker()
  *
  * [已修正 const 错误]
  */
-void BYTETracker::resync_kalman_filters(const vector<STrack>& klt_tracks)
+void BYTETracker::resync_kalman_filters(const vector<STrack*>& klt_tracks)
 {
     // BYTETracker::update() 会在开始时将 frame_id + 1。
     // 所以，当这个函数被调用时，this->frame_id 还是 *上一帧* 的ID。
     // 我们需要的是 *当前帧* 的ID，所以 + 1。
     int current_frame_id = this->frame_id + 1;
 
-    // [修改]
-    // 我们仍然遍历 const 引用 (const_klt_track) 以提高效率
-    for (const auto& const_klt_track : klt_tracks)
+    for (const STrack* klt_track : klt_tracks)
     {
-        // [修改]
-        // 但在内部，我们创建一个可修改的 *副本* (klt_track)
-        // 这样就可以把它传递给需要 (STrack&) 的函数
-        STrack klt_track = const_klt_track;
-
         // 在 this->tracked_stracks (当前活跃的跟踪) 中查找匹配的 track_id
         bool found_in_tracked = false;
-        for (auto& internal_track : this->tracked_stracks)
+        for (int handle : this->tracked_stracks)
         {
-            if (internal_track.track_id == klt_track.track_id)
+            STrack& internal_track = track_pool[handle];
+            if (internal_track.track_id == klt_track->track_id)
             {
                 // 找到了！
-                // [修改] 现在传递的是可修改的副本，编译通过
-                internal_track.update(klt_track, current_frame_id);
+                internal_track.update(*klt_track, current_frame_id);
                 found_in_tracked = true;
                 break; // 找到了，跳出内循环，处理下一个 klt_track
             }
@@ -56,240 +54,430 @@ void BYTETracker::resync_kalman_filters(const vector<STrack>& klt_tracks)
         }
 
         // [可选但推荐] 如果在活跃跟踪里没找到，可能它在 "丢失" 列表里
-        for (auto& internal_track : this->lost_stracks)
+        for (int handle : this->lost_stracks)
         {
-            if (internal_track.track_id == klt_track.track_id)
+            STrack& internal_track = track_pool[handle];
+            if (internal_track.track_id == klt_track->track_id)
             {
                 // 它在丢失列表里，但 KLT 找到了它！
-                // [修改] 现在传递的是可修改的副本，编译通过
-                internal_track.re_activate(klt_track, current_frame_id, false);
+                internal_track.re_activate(*klt_track, current_frame_id, false);
                 break;
             }
         }
     }
 }
 
-vector<STrack> BYTETracker::update(const vector<Object>& objects)
+void BYTETracker::write_track(StateWriter &out, const STrack &track) const
 {
+	out.put<int32_t>(track.track_id);
+	out.put<int32_t>(track.class_id);
+	out.put<int32_t>(track.state);
+	out.put<uint8_t>(track.is_activated ? 1 : 0);
+	out.put<int32_t>(track.frame_id);
+	out.put<int32_t>(track.tracklet_len);
+	out.put<int32_t>(track.start_frame);
+	out.put<float>(track.score);
+	for (int k = 0; k < 4; k++)
+	{
+		out.put<float>(track._tlwh[k]);
+	}
+	KAL_MEAN mean;
+	KAL_COVA covariance;
+	batch_kalman.store(track.kalman_row, mean, covariance);
+	for (int k = 0; k < mean.size(); k++)
+	{
+		out.put<float>(mean.data()[k]);
+	}
+	for (int k = 0; k < covariance.size(); k++)
+	{
+		out.put<float>(covariance.data()[k]);
+	}
+}
 
-	////////////////// Step 1: Get detections //////////////////
-	this->frame_id++;
-	vector<STrack> activated_stracks;
-	vector<STrack> refind_stracks;
-	vector<STrack> removed_stracks;
-	vector<STrack> lost_stracks;
-	vector<STrack> detections;
-	vector<STrack> detections_low;
-
-	vector<STrack> detections_cp;
-	vector<STrack> tracked_stracks_swap;
-	vector<STrack> resa, resb;
-	vector<STrack> output_stracks;
-
-	vector<STrack*> unconfirmed;
-	vector<STrack*> tracked_stracks;
-	vector<STrack*> strack_pool;
-	vector<STrack*> r_tracked_stracks;
-
-	if (objects.size() > 0)
+void BYTETracker::read_track(StateReader &in, int handle)
+{
+	STrack &track = track_pool[handle];
+	track.track_id = in.get<int32_t>();
+	track.class_id = in.get<int32_t>();
+	track.state = in.get<int32_t>();
+	track.is_activated = in.get<uint8_t>() != 0;
+	track.frame_id = in.get<int32_t>();
+	track.tracklet_len = in.get<int32_t>();
+	track.start_frame = in.get<int32_t>();
+	track.score = in.get<float>();
+	track._tlwh.resize(4);
+	for (int k = 0; k < 4; k++)
 	{
-		for (int i = 0; i < objects.size(); i++)
+		track._tlwh[k] = in.get<float>();
+	}
+	KAL_MEAN mean;
+	KAL_COVA covariance;
+	for (int k = 0; k < mean.size(); k++)
+	{
+		mean.data()[k] = in.get<float>();
+	}
+	for (int k = 0; k < covariance.size(); k++)
+	{
+		covariance.data()[k] = in.get<float>();
+	}
+	batch_kalman.load(handle, mean, covariance);
+	track.kalman = &batch_kalman;
+	track.kalman_row = handle;
+	// tlwh / tlbr follow from the Kalman mean (or _tlwh for a new track)
+	track.tlwh.resize(4);
+	track.tlbr.resize(4);
+	track.static_tlwh();
+	track.static_tlbr();
+}
+
+void BYTETracker::get_track_states(vector<float> &out) const
+{
+	out.clear();
+	for (int l = 0; l < 2; l++)
+	{
+		const vector<int> &list = l == 0 ? tracked_stracks : lost_stracks;
+		for (int handle : list)
 		{
-			vector<float> tlbr_;
-			tlbr_.resize(4);
-			tlbr_[0] = objects[i].rect.x;
-			tlbr_[1] = objects[i].rect.y;
-			tlbr_[2] = objects[i].rect.x + objects[i].rect.width;
-			tlbr_[3] = objects[i].rect.y + objects[i].rect.height;
-
-			float score = objects[i].prob;
-
-			STrack strack(STrack::tlbr_to_tlwh(tlbr_), score);
-            strack.class_id = objects[i].label;
-			if (score >= track_thresh)
-			{
-				detections.push_back(strack);
-			}
-			else
+			const STrack &track = track_pool[handle];
+			if (track.kalman_row < 0)
+				continue;
+			out.push_back((float)track.track_id);
+			for (int k = 0; k < 8; k++)
 			{
-				detections_low.push_back(strack);
+				out.push_back(batch_kalman.mean(track.kalman_row, k));
 			}
-			
 		}
 	}
+}
 
-	// Add newly detected tracklets to tracked_stracks
-	for (int i = 0; i < this->tracked_stracks.size(); i++)
+void BYTETracker::save_state(StateWriter &out) const
+{
+	out.put<int32_t>(frame_id);
+	out.put<int32_t>(max_time_lost);
+	out.put<uint8_t>(sparse_assignment ? 1 : 0);
+	out.put<int32_t>((int32_t)tracked_stracks.size());
+	for (int handle : tracked_stracks)
 	{
-		if (!this->tracked_stracks[i].is_activated)
-			unconfirmed.push_back(&this->tracked_stracks[i]);
-		else
-			tracked_stracks.push_back(&this->tracked_stracks[i]);
+		write_track(out, track_pool[handle]);
 	}
+	out.put<int32_t>((int32_t)lost_stracks.size());
+	for (int handle : lost_stracks)
+	{
+		write_track(out, track_pool[handle]);
+	}
+	out.putVector(removed_ids);
+}
 
-	////////////////// Step 2: First association, with IoU //////////////////
-	strack_pool = joint_stracks(tracked_stracks, this->lost_stracks);
-	STrack::multi_predict(strack_pool, this->kalman_filter);
+void BYTETracker::clear_state()
+{
+	track_pool.reset();
+	tracked_stracks.clear();
+	lost_stracks.clear();
+	removed_ids.clear();
+	frame_id = 0;
+}
+
+bool BYTETracker::load_state(StateReader &in)
+{
+	clear_state();
+	frame_id = in.get<int32_t>();
+	max_time_lost = in.get<int32_t>();
+	sparse_assignment = in.get<uint8_t>() != 0;
+	int max_id = 0;
+	for (int l = 0; l < 2; l++)
+	{
+		vector<int> &list = l == 0 ? tracked_stracks : lost_stracks;
+		int count = in.get<int32_t>();
+		for (int i = 0; i < count && in.ok(); i++)
+		{
+			int handle = track_pool.acquire();
+			read_track(in, handle);
+			list.push_back(handle);
+			max_id = std::max(max_id, track_pool[handle].track_id);
+		}
+	}
+	in.getVector(removed_ids);
+
+	if (!in.ok())
+	{
+		clear_state();
+		return false;
+	}
+	// New tracks must not reuse the ids of restored (or removed) ones
+	STrack::advance_ids(std::max(max_id, (int)removed_ids.size() - 1));
+	return true;
+}
 
-	vector<vector<float> > dists;
-	int dist_size = 0, dist_size_size = 0;
-	dists = iou_distance(strack_pool, detections, dist_size, dist_size_size);
+void BYTETracker::apply_camera_motion(const cv::Matx23f &motion)
+{
+	// State is [cx, cy, a, h, vx, vy, va, vh]: see BatchKalmanFilter::apply_similarity
+	// for what happens to the covariance
+	kalman_rows.clear();
+	kalman_rows.insert(kalman_rows.end(), tracked_stracks.begin(), tracked_stracks.end());
+	kalman_rows.insert(kalman_rows.end(), lost_stracks.begin(), lost_stracks.end());
+	batch_kalman.apply_similarity(kalman_rows, motion.val);
+	for (int handle : kalman_rows)
+	{
+		STrack &track = track_pool[handle];
+		track.static_tlwh();
+		track.static_tlbr();
+	}
+}
 
-	vector<vector<int> > matches;
-	vector<int> u_track, u_detection;
-	linear_assignment(dists, dist_size, dist_size_size, match_thresh, matches, u_track, u_detection);
+const vector<STrack*> &BYTETracker::update(const vector<Object>& objects)
+{
 
-	for (int i = 0; i < matches.size(); i++)
+	////////////////// Step 1: Get detections //////////////////
+	this->frame_id++;
+	activated_stracks.clear();
+	refind_stracks.clear();
+	frame_removed.clear();
+	frame_lost.clear();
+	detections.clear();
+	detections_low.clear();
+	detections_cp.clear();
+	tracked_swap.clear();
+	resa.clear();
+	resb.clear();
+	output_stracks.clear();
+
+	unconfirmed.clear();
+	tracked_only.clear();
+	strack_pool.clear();
+	r_tracked_stracks.clear();
+
+	// Detections only live for this frame
+	det_pool.reset();
+	tlbr_tmp.resize(4);
+	for (int i = 0; i < objects.size(); i++)
 	{
-		STrack *track = strack_pool[matches[i][0]];
-		STrack *det = &detections[matches[i][1]];
-		if (track->state == TrackState::Tracked)
+		tlbr_tmp[0] = objects[i].rect.x;
+		tlbr_tmp[1] = objects[i].rect.y;
+		tlbr_tmp[2] = objects[i].rect.x + objects[i].rect.width;
+		tlbr_tmp[3] = objects[i].rect.y + objects[i].rect.height;
+		// tlbr -> tlwh, same arithmetic as STrack::tlbr_to_tlwh
+		tlbr_tmp[2] -= tlbr_tmp[0];
+		tlbr_tmp[3] -= tlbr_tmp[1];
+
+		float score = objects[i].prob;
+
+		int det = det_pool.acquire();
+		det_pool[det].reset(tlbr_tmp, score);
+		det_pool[det].class_id = objects[i].label;
+		if (score >= track_thresh)
 		{
-			track->update(*det, this->frame_id);
-			activated_stracks.push_back(*track);
+			detections.push_back(det);
 		}
 		else
 		{
-			track->re_activate(*det, this->frame_id, false);
-			refind_stracks.push_back(*track);
+			detections_low.push_back(det);
 		}
 	}
 
+	// Add newly detected tracklets to tracked_stracks
+	for (int i = 0; i < this->tracked_stracks.size(); i++)
+	{
+		int handle = this->tracked_stracks[i];
+		if (!track_pool[handle].is_activated)
+			unconfirmed.push_back(handle);
+		else
+			tracked_only.push_back(handle);
+	}
+
+	////////////////// Step 2: First association, with IoU //////////////////
+	joint_stracks(tracked_only, this->lost_stracks, strack_pool);
+	predict_list.clear();
+	for (int i = 0; i < strack_pool.size(); i++)
+	{
+		predict_list.push_back(&track_pool[strack_pool[i]]);
+	}
+	STrack::multi_predict(predict_list, strack_pool, this->batch_kalman);
+
+	iou_distance(track_pool, strack_pool, det_pool, detections, dists);
+
+	matches.clear();
+	u_track.clear();
+	u_detection.clear();
+	linear_assignment(dists, strack_pool.size(), detections.size(), match_thresh, matches, u_track, u_detection);
+
+	apply_matches(strack_pool, detections, true);
+
 	////////////////// Step 3: Second association, using low score dets //////////////////
 	for (int i = 0; i < u_detection.size(); i++)
 	{
 		detections_cp.push_back(detections[u_detection[i]]);
 	}
-	detections.clear();
-	detections.assign(detections_low.begin(), detections_low.end());
-	
+
 	for (int i = 0; i < u_track.size(); i++)
 	{
-		if (strack_pool[u_track[i]]->state == TrackState::Tracked)
+		int handle = strack_pool[u_track[i]];
+		if (track_pool[handle].state == TrackState::Tracked)
 		{
-			r_tracked_stracks.push_back(strack_pool[u_track[i]]);
+			r_tracked_stracks.push_back(handle);
 		}
 	}
 
-	dists.clear();
-	dists = iou_distance(r_tracked_stracks, detections, dist_size, dist_size_size);
+	iou_distance(track_pool, r_tracked_stracks, det_pool, detections_low, dists);
 
 	matches.clear();
 	u_track.clear();
 	u_detection.clear();
-	linear_assignment(dists, dist_size, dist_size_size, 0.5, matches, u_track, u_detection);
+	linear_assignment(dists, r_tracked_stracks.size(), detections_low.size(), 0.5, matches, u_track, u_detection);
 
-	for (int i = 0; i < matches.size(); i++)
-	{
-		STrack *track = r_tracked_stracks[matches[i][0]];
-		STrack *det = &detections[matches[i][1]];
-		if (track->state == TrackState::Tracked)
-		{
-			track->update(*det, this->frame_id);
-			activated_stracks.push_back(*track);
-		}
-		else
-		{
-			track->re_activate(*det, this->frame_id, false);
-			refind_stracks.push_back(*track);
-		}
-	}
+	apply_matches(r_tracked_stracks, detections_low, true);
 
 	for (int i = 0; i < u_track.size(); i++)
 	{
-		STrack *track = r_tracked_stracks[u_track[i]];
+		int handle = r_tracked_stracks[u_track[i]];
+		STrack *track = &track_pool[handle];
 		if (track->state != TrackState::Lost)
 		{
 			track->mark_lost();
-			lost_stracks.push_back(*track);
+			frame_lost.push_back(handle);
 		}
 	}
 
 	// Deal with unconfirmed tracks, usually tracks with only one beginning frame
-	detections.clear();
-	detections.assign(detections_cp.begin(), detections_cp.end());
-
-	dists.clear();
-	dists = iou_distance(unconfirmed, detections, dist_size, dist_size_size);
+	iou_distance(track_pool, unconfirmed, det_pool, detections_cp, dists);
 
 	matches.clear();
-	vector<int> u_unconfirmed;
+	u_unconfirmed.clear();
 	u_detection.clear();
-	linear_assignment(dists, dist_size, dist_size_size, 0.7, matches, u_unconfirmed, u_detection);
+	linear_assignment(dists, unconfirmed.size(), detections_cp.size(), 0.7, matches, u_unconfirmed, u_detection);
 
-	for (int i = 0; i < matches.size(); i++)
-	{
-		unconfirmed[matches[i][0]]->update(detections[matches[i][1]], this->frame_id);
-		activated_stracks.push_back(*unconfirmed[matches[i][0]]);
-	}
+	apply_matches(unconfirmed, detections_cp, false);
 
 	for (int i = 0; i < u_unconfirmed.size(); i++)
 	{
-		STrack *track = unconfirmed[u_unconfirmed[i]];
-		track->mark_removed();
-		removed_stracks.push_back(*track);
+		int handle = unconfirmed[u_unconfirmed[i]];
+		track_pool[handle].mark_removed();
+		frame_removed.push_back(handle);
 	}
 
 	////////////////// Step 4: Init new stracks //////////////////
 	for (int i = 0; i < u_detection.size(); i++)
 	{
-		STrack *track = &detections[u_detection[i]];
-		if (track->score < this->high_thresh)
+		const STrack &det = det_pool[detections_cp[u_detection[i]]];
+		if (det.score < this->high_thresh)
 			continue;
-		track->activate(this->kalman_filter, this->frame_id);
-		activated_stracks.push_back(*track);
+		int handle = track_pool.acquire(det);
+		track_pool[handle].activate(this->batch_kalman, handle, this->frame_id);
+		activated_stracks.push_back(handle);
 	}
 
 	////////////////// Step 5: Update state //////////////////
 	for (int i = 0; i < this->lost_stracks.size(); i++)
 	{
-		if (this->frame_id - this->lost_stracks[i].end_frame() > this->max_time_lost)
+		STrack &track = track_pool[this->lost_stracks[i]];
+		if (this->frame_id - track.end_frame() > this->max_time_lost)
 		{
-			this->lost_stracks[i].mark_removed();
-			removed_stracks.push_back(this->lost_stracks[i]);
+			track.mark_removed();
+			frame_removed.push_back(this->lost_stracks[i]);
 		}
 	}
-	
+
 	for (int i = 0; i < this->tracked_stracks.size(); i++)
 	{
-		if (this->tracked_stracks[i].state == TrackState::Tracked)
+		if (track_pool[this->tracked_stracks[i]].state == TrackState::Tracked)
 		{
-			tracked_stracks_swap.push_back(this->tracked_stracks[i]);
+			tracked_swap.push_back(this->tracked_stracks[i]);
 		}
 	}
-	this->tracked_stracks.clear();
-	this->tracked_stracks.assign(tracked_stracks_swap.begin(), tracked_stracks_swap.end());
 
-	this->tracked_stracks = joint_stracks(this->tracked_stracks, activated_stracks);
-	this->tracked_stracks = joint_stracks(this->tracked_stracks, refind_stracks);
+	joint_stracks(tracked_swap, activated_stracks, joint_tmp);
+	joint_stracks(joint_tmp, refind_stracks, this->tracked_stracks);
 
-	//std::cout << activated_stracks.size() << std::endl;
+	sub_stracks(this->lost_stracks, this->tracked_stracks);
+	for (int i = 0; i < frame_lost.size(); i++)
+	{
+		this->lost_stracks.push_back(frame_lost[i]);
+	}
 
-	this->lost_stracks = sub_stracks(this->lost_stracks, this->tracked_stracks);
-	for (int i = 0; i < lost_stracks.size(); i++)
+	// Drop lost tracks removed in earlier frames. This frame's removals are recorded
+	// afterwards, so a track that just timed out stays in lost_stracks for one more frame.
+	begin_id_set();
+	int kept = 0;
+	for (int i = 0; i < this->lost_stracks.size(); i++)
 	{
-		this->lost_stracks.push_back(lost_stracks[i]);
+		int handle = this->lost_stracks[i];
+		int tid = track_pool[handle].track_id;
+		bool removed = tid < removed_ids.size() && removed_ids[tid];
+		if (!removed && !has_id(tid))
+		{
+			mark_id(tid);
+			this->lost_stracks[kept++] = handle;
+		}
 	}
+	this->lost_stracks.resize(kept);
+	sort_by_track_id(this->lost_stracks);
 
-	this->lost_stracks = sub_stracks(this->lost_stracks, this->removed_stracks);
-	for (int i = 0; i < removed_stracks.size(); i++)
+	for (int i = 0; i < frame_removed.size(); i++)
 	{
-		this->removed_stracks.push_back(removed_stracks[i]);
+		int tid = track_pool[frame_removed[i]].track_id;
+		if (tid >= removed_ids.size())
+			removed_ids.resize(tid + 1, 0);
+		removed_ids[tid] = 1;
 	}
-	
+
 	remove_duplicate_stracks(resa, resb, this->tracked_stracks, this->lost_stracks);
 
-	this->tracked_stracks.clear();
-	this->tracked_stracks.assign(resa.begin(), resa.end());
-	this->lost_stracks.clear();
-	this->lost_stracks.assign(resb.begin(), resb.end());
-	
+	this->tracked_stracks.swap(resa);
+	this->lost_stracks.swap(resb);
+
+	// Slots not referenced by tracked/lost any more go back to the pool
+	keep_slots.assign(track_pool.capacity(), 0);
+	for (int i = 0; i < this->tracked_stracks.size(); i++)
+		keep_slots[this->tracked_stracks[i]] = 1;
+	for (int i = 0; i < this->lost_stracks.size(); i++)
+		keep_slots[this->lost_stracks[i]] = 1;
+	track_pool.release_unmarked(keep_slots);
+
 	for (int i = 0; i < this->tracked_stracks.size(); i++)
 	{
-		if (this->tracked_stracks[i].is_activated)
+		STrack *track = &track_pool[this->tracked_stracks[i]];
+		if (track->is_activated)
 		{
-			output_stracks.push_back(this->tracked_stracks[i]);
+			output_stracks.push_back(track);
 		}
 	}
 	return output_stracks;
 }
+
+void BYTETracker::apply_matches(const vector<int> &track_list, const vector<int> &det_list, bool allow_refind)
+{
+	kalman_tracks.clear();
+	kalman_rows.clear();
+	kalman_dets.clear();
+	for (int i = 0; i < matches.size(); i++)
+	{
+		int handle = track_list[matches[i].first];
+		kalman_tracks.push_back(&track_pool[handle]);
+		kalman_rows.push_back(handle);
+		kalman_dets.push_back(&det_pool[det_list[matches[i].second]]);
+	}
+	STrack::multi_update(kalman_tracks, kalman_rows, kalman_dets, this->batch_kalman);
+
+	for (int i = 0; i < matches.size(); i++)
+	{
+		int handle = track_list[matches[i].first];
+		STrack *track = kalman_tracks[i];
+		if (!allow_refind || track->state == TrackState::Tracked)
+		{
+			track->mark_updated(*kalman_dets[i], this->frame_id);
+			activated_stracks.push_back(handle);
+		}
+		else
+		{
+			track->mark_reactivated(*kalman_dets[i], this->frame_id, false);
+			refind_stracks.push_back(handle);
+		}
+	}
+}
+
+BYTETracker::PoolStats BYTETracker::pool_stats() const
+{
+	PoolStats stats;
+	stats.tracks = track_pool.stats();
+	stats.detections = det_pool.stats();
+	return stats;
+}
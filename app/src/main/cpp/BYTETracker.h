@@ -1,6 +1,9 @@
 #pragma once
 
 #include "STrack.h"
+#include "STrackPool.h"
+#include "TrackerState.h"
+#include <memory>
 
 struct Object
 {
@@ -9,33 +12,106 @@ struct Object
     float prob;
 };
 
+struct lapjv_workspace_t;
+struct LapjvWorkspaceDeleter
+{
+	void operator()(lapjv_workspace_t *ws) const;
+};
+
+// Dense row-major cost matrix; the buffer is reused between frames
+struct CostMatrix
+{
+	int rows = 0;
+	int cols = 0;
+	vector<float> data;
+
+	void resize(int r, int c) { rows = r; cols = c; data.resize((size_t)r * c); }
+	bool empty() const { return rows == 0 || cols == 0; }
+	float *operator[](int i) { return data.data() + (size_t)i * cols; }
+	const float *operator[](int i) const { return data.data() + (size_t)i * cols; }
+};
+
 class BYTETracker
 {
 public:
+	// Allocation counters of the track store and the per-frame detection arena
+	struct PoolStats
+	{
+		STrackPool::Stats tracks;
+		STrackPool::Stats detections;
+	};
+
 	BYTETracker(int frame_rate = 30, int track_buffer = 30);
 	~BYTETracker();
 
-	vector<STrack> update(const vector<Object>& objects);
+	// The returned tracks point into the tracker's pool and stay valid until the next update()
+	const vector<STrack*> &update(const vector<Object>& objects);
 	Scalar get_color(int idx);
 
-    void resync_kalman_filters(const vector<STrack>& klt_tracks);
+    void resync_kalman_filters(const vector<STrack*>& klt_tracks);
+
+	// Move every tracked and lost track's Kalman state by a camera motion
+	// (x' = M * [x, y, 1], similarity transform in pixels) before the next update()
+	void apply_camera_motion(const cv::Matx23f &motion);
+
+	// Sparse mode: rows/cols with no pair below the match threshold (IoU == 0 or
+	// cost >= thresh) are reported unmatched up front and left out of the LAP solve.
+	void set_sparse_assignment(bool enabled) { sparse_assignment = enabled; }
+	bool is_sparse_assignment() const { return sparse_assignment; }
+
+	// Run the batched Kalman steps through the scalar KalmanFilter instead (reference path)
+	void set_reference_kalman(bool enabled) { batch_kalman.set_reference_mode(enabled); }
+
+	// iou_distance + linear_assignment on two box sets; returns the number of matches.
+	// Used by the assignment benchmark.
+	int match_boxes(vector<STrack> &tracks, vector<STrack> &detections, float thresh);
+
+	PoolStats pool_stats() const;
+
+	// Kalman mean of every tracked and lost track, 9 floats each:
+	// [track_id, cx, cy, a, h, vx, vy, va, vh], pixels, velocities per update()
+	void get_track_states(vector<float> &out) const;
+
+	// Checkpoint of the tracked and lost tracks (Kalman state included), the removed
+	// ids and the frame counter. load_state replaces the current state; false if the
+	// blob is malformed, in which case the tracker is left empty.
+	void save_state(StateWriter &out) const;
+	bool load_state(StateReader &in);
+	// Drop every track and start again from frame 0 (ids keep counting up)
+	void clear_state();
 
 private:
-	vector<STrack*> joint_stracks(vector<STrack*> &tlista, vector<STrack> &tlistb);
-	vector<STrack> joint_stracks(vector<STrack> &tlista, vector<STrack> &tlistb);
+	// bench/tracker_bench.cpp times iou_distance and lapjv on their own
+	friend struct BYTETrackerBench;
+
+	// Track lists hold handles into track_pool, detection lists handles into det_pool
+	void joint_stracks(const vector<int> &tlista, const vector<int> &tlistb, vector<int> &res);
+	void sub_stracks(vector<int> &tlista, const vector<int> &tlistb);
+	void sort_by_track_id(vector<int> &tlist);
+	void remove_duplicate_stracks(vector<int> &resa, vector<int> &resb, const vector<int> &stracksa, const vector<int> &stracksb);
 
-	vector<STrack> sub_stracks(vector<STrack> &tlista, vector<STrack> &tlistb);
-	void remove_duplicate_stracks(vector<STrack> &resa, vector<STrack> &resb, vector<STrack> &stracksa, vector<STrack> &stracksb);
+	void linear_assignment(CostMatrix &cost_matrix, int cost_matrix_size, int cost_matrix_size_size, float thresh,
+		vector<pair<int, int> > &matches, vector<int> &unmatched_a, vector<int> &unmatched_b);
+	void iou_distance(const vector<STrack*> &atracks, const vector<STrack*> &btracks, CostMatrix &cost_matrix);
+	void iou_distance(STrackPool &apool, const vector<int> &atracks, STrackPool &bpool, const vector<int> &btracks,
+		CostMatrix &cost_matrix);
 
-	void linear_assignment(vector<vector<float> > &cost_matrix, int cost_matrix_size, int cost_matrix_size_size, float thresh,
-		vector<vector<int> > &matches, vector<int> &unmatched_a, vector<int> &unmatched_b);
-	vector<vector<float> > iou_distance(vector<STrack*> &atracks, vector<STrack> &btracks, int &dist_size, int &dist_size_size);
-	vector<vector<float> > iou_distance(vector<STrack> &atracks, vector<STrack> &btracks);
-	vector<vector<float> > ious(vector<vector<float> > &atlbrs, vector<vector<float> > &btlbrs);
+	// Kalman-update every matched (track, detection) pair in one batch, then update or
+	// re-activate each track depending on its state before the match
+	void apply_matches(const vector<int> &track_list, const vector<int> &det_list, bool allow_refind);
 
-	double lapjv(const vector<vector<float> > &cost, vector<int> &rowsol, vector<int> &colsol, 
+	double lapjv(const CostMatrix &cost, vector<int> &rowsol, vector<int> &colsol,
 		bool extend_cost = false, float cost_limit = LONG_MAX, bool return_cost = true);
 
+	void write_track(StateWriter &out, const STrack &track) const;
+	// Into track_pool[handle], with its Kalman state in batch_kalman row handle
+	void read_track(StateReader &in, int handle);
+
+	// Track-id sets backed by a stamp array indexed by track_id (no per-frame allocation)
+	void begin_id_set();
+	void mark_id(int id);
+	bool has_id(int id) const;
+
 private:
 
 	float track_thresh;
@@ -44,8 +120,42 @@ private:
 	int frame_id;
 	int max_time_lost;
 
-	vector<STrack> tracked_stracks;
-	vector<STrack> lost_stracks;
-	vector<STrack> removed_stracks;
-	byte_kalman::KalmanFilter kalman_filter;
+	STrackPool track_pool;
+	STrackPool det_pool;
+
+	vector<int> tracked_stracks;
+	vector<int> lost_stracks;
+	// ids of removed tracks; only ids are ever looked up, so no track copies are kept
+	vector<char> removed_ids;
+	// Kalman state of every track_pool slot, row = handle
+	byte_kalman::BatchKalmanFilter batch_kalman;
+
+	// Per-frame scratch, cleared every update (capacity is kept)
+	vector<int> activated_stracks, refind_stracks, frame_lost, frame_removed;
+	vector<int> detections, detections_low, detections_cp;
+	vector<int> unconfirmed, tracked_only, strack_pool, r_tracked_stracks;
+	vector<int> tracked_swap, joint_tmp, resa, resb;
+	vector<int> u_track, u_detection, u_unconfirmed;
+	vector<pair<int, int> > matches;
+	vector<char> dup_a, dup_b, keep_slots;
+	vector<STrack*> predict_list, box_a, box_b;
+	vector<STrack*> output_stracks;
+	vector<STrack*> kalman_tracks;
+	vector<int> kalman_rows;
+	vector<const STrack*> kalman_dets;
+	vector<float> tlbr_tmp;
+	CostMatrix dists;
+	vector<int> id_stamp;
+	int stamp;
+
+	// LAP solver state reused across frames (sized to the high-water mark)
+	bool sparse_assignment;
+	std::unique_ptr<lapjv_workspace_t, LapjvWorkspaceDeleter> lap_ws;
+	vector<double> lap_cost;
+	vector<double*> lap_rows;
+	vector<int> lap_x, lap_y;
+	vector<int> lap_rowsol, lap_colsol;
+	vector<int> gate_rows, gate_cols;
+	vector<char> gate_col_hit;
+	CostMatrix gate_cost;
 };
@@ -0,0 +1,297 @@
+#include "BatchKalmanFilter.h"
+#include <cmath>
+#include <cstring>
+
+namespace byte_kalman
+{
+	BatchKalmanFilter::BatchKalmanFilter()
+	{
+		this->std_weight_position = 1. / 20;
+		this->std_weight_velocity = 1. / 160;
+		reference = false;
+		capacity = 0;
+	}
+
+	void BatchKalmanFilter::reserve(int n)
+	{
+		if (n <= capacity)
+		{
+			return;
+		}
+		// Arrays are laid out back to back, so growing moves every one of them
+		int grown = std::max(n, capacity * 2);
+		std::vector<float> moved((size_t)grown * NUM_ARRAYS, 0.f);
+		for (int k = 0; k < NUM_ARRAYS && capacity > 0; k++)
+		{
+			std::memcpy(moved.data() + (size_t)k * grown, array(k), sizeof(float) * capacity);
+		}
+		data.swap(moved);
+		capacity = grown;
+	}
+
+	void BatchKalmanFilter::initiate(int row, const DETECTBOX &measurement)
+	{
+		KAL_DATA mc = scalar.initiate(measurement);
+		load(row, mc.first, mc.second);
+	}
+
+	void BatchKalmanFilter::load(int row, const KAL_MEAN &mean, const KAL_COVA &covariance)
+	{
+		reserve(row + 1);
+		for (int k = 0; k < 8; k++)
+		{
+			array(MEAN + k)[row] = mean(k);
+		}
+		for (int d = 0; d < 4; d++)
+		{
+			array(P_PP + d)[row] = covariance(d, d);
+			array(P_PV + d)[row] = covariance(d, d + 4);
+			array(P_VP + d)[row] = covariance(d + 4, d);
+			array(P_VV + d)[row] = covariance(d + 4, d + 4);
+		}
+	}
+
+	void BatchKalmanFilter::store(int row, KAL_MEAN &mean, KAL_COVA &covariance) const
+	{
+		for (int k = 0; k < 8; k++)
+		{
+			mean(k) = array(MEAN + k)[row];
+		}
+		covariance.setZero();
+		for (int d = 0; d < 4; d++)
+		{
+			covariance(d, d) = array(P_PP + d)[row];
+			covariance(d, d + 4) = array(P_PV + d)[row];
+			covariance(d + 4, d) = array(P_VP + d)[row];
+			covariance(d + 4, d + 4) = array(P_VV + d)[row];
+		}
+	}
+
+	void BatchKalmanFilter::set_measurement(int row, const DETECTBOX &measurement)
+	{
+		for (int d = 0; d < 4; d++)
+		{
+			array(MEAS + d)[row] = measurement(d);
+		}
+	}
+
+	void BatchKalmanFilter::predict(const std::vector<int> &batch)
+	{
+		if (reference)
+		{
+			predict_reference(batch);
+			return;
+		}
+
+		// Process noise is scaled by the height before the motion step (dt = 1);
+		// h itself is advanced in the last pass (d = 3)
+		const int n = batch.size();
+		const float *h = array(MEAN + 3);
+		for (int d = 0; d < 4; d++)
+		{
+			float *m = array(MEAN + d);
+			float *v = array(MEAN + 4 + d);
+			float *pp = array(P_PP + d);
+			float *pv = array(P_PV + d);
+			float *vp = array(P_VP + d);
+			float *vv = array(P_VV + d);
+			for (int b = 0; b < n; b++)
+			{
+				int i = batch[b];
+				float std_pos = d == 2 ? 1e-2f : std_weight_position * h[i];
+				float std_vel = d == 2 ? 1e-5f : std_weight_velocity * h[i];
+
+				// F * P * F^T, evaluated as (F * P) * F^T like the Eigen product
+				float fp_pp = pp[i] + vp[i];
+				float fp_pv = pv[i] + vv[i];
+				float fp_vp = vp[i];
+				float fp_vv = vv[i];
+
+				m[i] = m[i] + v[i];
+				pp[i] = (fp_pp + fp_pv) + std_pos * std_pos;
+				pv[i] = fp_pv;
+				vp[i] = fp_vp + fp_vv;
+				vv[i] = fp_vv + std_vel * std_vel;
+			}
+		}
+	}
+
+	void BatchKalmanFilter::update(const std::vector<int> &batch)
+	{
+		if (reference)
+		{
+			update_reference(batch);
+			return;
+		}
+
+		// Measurement noise uses the predicted height, so h is written last
+		const int n = batch.size();
+		const float *h = array(MEAN + 3);
+		for (int d = 0; d < 4; d++)
+		{
+			float *m = array(MEAN + d);
+			float *v = array(MEAN + 4 + d);
+			float *pp = array(P_PP + d);
+			float *pv = array(P_PV + d);
+			float *vp = array(P_VP + d);
+			float *vv = array(P_VV + d);
+			const float *z = array(MEAS + d);
+			for (int b = 0; b < n; b++)
+			{
+				int i = batch[b];
+				float std_pos = d == 2 ? 1e-1f : std_weight_position * h[i];
+				float s = pp[i] + std_pos * std_pos;
+
+				// Cholesky solve of the (diagonal) projected covariance
+				float inv_l = 1.f / std::sqrt(s);
+				float k_p = pp[i] * inv_l * inv_l;
+				float k_v = vp[i] * inv_l * inv_l;
+
+				float innovation = z[i] - m[i];
+				float ks_p = k_p * s;
+				float ks_v = k_v * s;
+
+				m[i] = m[i] + innovation * k_p;
+				v[i] = v[i] + innovation * k_v;
+				float new_pp = pp[i] - ks_p * k_p;
+				float new_pv = pv[i] - ks_p * k_v;
+				float new_vp = vp[i] - ks_v * k_p;
+				float new_vv = vv[i] - ks_v * k_v;
+				pp[i] = new_pp;
+				pv[i] = new_pv;
+				vp[i] = new_vp;
+				vv[i] = new_vv;
+			}
+		}
+	}
+
+	void BatchKalmanFilter::update_one(int row, const DETECTBOX &measurement)
+	{
+		KAL_MEAN mean;
+		KAL_COVA covariance;
+		store(row, mean, covariance);
+		KAL_DATA mc = scalar.update(mean, covariance, measurement);
+		load(row, mc.first, mc.second);
+	}
+
+	void BatchKalmanFilter::apply_similarity(const std::vector<int> &batch, const float *motion)
+	{
+		const float a = motion[0], b = motion[1], tx = motion[2];
+		const float c = motion[3], d = motion[4], ty = motion[5];
+		const float scale = std::sqrt(std::abs(a * d - b * c));
+		const float scale2 = scale * scale;
+		float *x = array(MEAN + 0);
+		float *y = array(MEAN + 1);
+		float *h = array(MEAN + 3);
+		float *vx = array(MEAN + 4);
+		float *vy = array(MEAN + 5);
+		float *vh = array(MEAN + 7);
+		for (int i : batch)
+		{
+			float px = x[i], py = y[i];
+			x[i] = a * px + b * py + tx;
+			y[i] = c * px + d * py + ty;
+			float qx = vx[i], qy = vy[i];
+			vx[i] = a * qx + b * qy;
+			vy[i] = c * qx + d * qy;
+			h[i] *= scale;
+			vh[i] *= scale;
+		}
+		// The aspect ratio block (d = 2) does not change
+		for (int k : {0, 1, 3})
+		{
+			float *blocks[4] = {array(P_PP + k), array(P_PV + k), array(P_VP + k), array(P_VV + k)};
+			for (float *p : blocks)
+			{
+				for (int i : batch)
+				{
+					p[i] *= scale2;
+				}
+			}
+		}
+	}
+
+	void BatchKalmanFilter::gating_distance(const std::vector<int> &batch, const std::vector<DETECTBOX> &measurements,
+		float *out)
+	{
+		int n = batch.size();
+		int n_meas = measurements.size();
+		if (n_meas == 0)
+		{
+			return;
+		}
+		if (reference)
+		{
+			gating_distance_reference(batch, measurements, out);
+			return;
+		}
+		const float *h = array(MEAN + 3);
+		for (int b = 0; b < n; b++)
+		{
+			float *row = out + (size_t)b * n_meas;
+			for (int j = 0; j < n_meas; j++)
+			{
+				row[j] = 0;
+			}
+		}
+		for (int d = 0; d < 4; d++)
+		{
+			const float *m = array(MEAN + d);
+			const float *pp = array(P_PP + d);
+			for (int b = 0; b < n; b++)
+			{
+				int i = batch[b];
+				float std_pos = d == 2 ? 1e-1f : std_weight_position * h[i];
+				float inv_s = 1.f / (pp[i] + std_pos * std_pos);
+				float *row = out + (size_t)b * n_meas;
+				for (int j = 0; j < n_meas; j++)
+				{
+					float diff = measurements[j](d) - m[i];
+					row[j] += diff * diff * inv_s;
+				}
+			}
+		}
+	}
+
+	void BatchKalmanFilter::predict_reference(const std::vector<int> &batch)
+	{
+		KAL_MEAN mean;
+		KAL_COVA covariance;
+		for (int i : batch)
+		{
+			store(i, mean, covariance);
+			scalar.predict(mean, covariance);
+			load(i, mean, covariance);
+		}
+	}
+
+	void BatchKalmanFilter::gating_distance_reference(const std::vector<int> &batch,
+		const std::vector<DETECTBOX> &measurements, float *out)
+	{
+		KAL_MEAN mean;
+		KAL_COVA covariance;
+		size_t n_meas = measurements.size();
+		for (size_t b = 0; b < batch.size(); b++)
+		{
+			store(batch[b], mean, covariance);
+			Eigen::Matrix<float, 1, -1> d = scalar.gating_distance(mean, covariance, measurements);
+			for (size_t j = 0; j < n_meas; j++)
+			{
+				out[b * n_meas + j] = d(j);
+			}
+		}
+	}
+
+	void BatchKalmanFilter::update_reference(const std::vector<int> &batch)
+	{
+		DETECTBOX measurement;
+		for (int i : batch)
+		{
+			for (int d = 0; d < 4; d++)
+			{
+				measurement(d) = array(MEAS + d)[i];
+			}
+			update_one(i, measurement);
+		}
+	}
+}
@@ -0,0 +1,96 @@
+#pragma once
+
+#include "kalmanFilter.h"
+
+namespace byte_kalman
+{
+	/**
+	 * Kalman state of a whole track set, stored as structure-of-arrays.
+	 *
+	 * The filter owns the state: every track has a row (BYTETracker uses its pool
+	 * handle), and mean and covariance live only here between frames. predict() and
+	 * update() step a list of rows in place; tracks read their box back with mean().
+	 *
+	 * With the constant-velocity model and H = [I 0], the 8x8 covariance of a track
+	 * never couples different box coordinates: it is four independent 2x2 blocks
+	 * (position/velocity of x, y, a, h). Each block is kept as four arrays (pp, pv,
+	 * vp, vv) and every step is a straight loop over tracks, with no 8x8 products.
+	 *
+	 * The arithmetic follows the order of the Eigen expressions in KalmanFilter, so
+	 * the batch and reference paths agree to the last bit on targets without FMA
+	 * contraction. set_reference_mode(true) runs the same rows through the scalar
+	 * KalmanFilter one track at a time, for equivalence checks.
+	 */
+	class BatchKalmanFilter
+	{
+	public:
+		BatchKalmanFilter();
+
+		// Rows with storage; load() and initiate() grow it, keeping existing rows
+		int rows() const { return capacity; }
+		void reserve(int n);
+
+		// Start row from a measurement (xyah), as KalmanFilter::initiate
+		void initiate(int row, const DETECTBOX &measurement);
+		// Copy a full 8x8 state in and out (checkpoints, reference path). Only the
+		// per-coordinate 2x2 blocks are kept; store() writes zeros elsewhere.
+		void load(int row, const KAL_MEAN &mean, const KAL_COVA &covariance);
+		void store(int row, KAL_MEAN &mean, KAL_COVA &covariance) const;
+
+		float mean(int row, int k) const { return array(MEAN + k)[row]; }
+		void set_mean(int row, int k, float value) { array(MEAN + k)[row] = value; }
+
+		// Measurement (xyah) of row used by the next update()
+		void set_measurement(int row, const DETECTBOX &measurement);
+
+		void predict(const std::vector<int> &batch);
+		void update(const std::vector<int> &batch);
+		// Kalman correction of one row with a measurement (xyah), through the scalar filter
+		void update_one(int row, const DETECTBOX &measurement);
+
+		// Move rows into another camera frame: motion is a 2x3 similarity (row-major,
+		// x' = m0 x + m1 y + m2), from global motion compensation. The mean of x, y and
+		// their velocities goes through it and h scales with it. P keeps only the
+		// per-coordinate blocks, so they are scaled by s^2 (h, x, y) and the rotation
+		// is not propagated into P: x and y get the same noise in every step, so their
+		// blocks are equal and rotating them changes nothing.
+		void apply_similarity(const std::vector<int> &batch, const float *motion);
+
+		// Squared Mahalanobis distance of every row in batch to every measurement
+		// (xyah), written row-major as batch.size() x measurements.size(). The projected
+		// covariance is diagonal, so it is a sum of four scaled squares per pair.
+		void gating_distance(const std::vector<int> &batch, const std::vector<DETECTBOX> &measurements,
+			float *out);
+
+		void set_reference_mode(bool enabled) { reference = enabled; }
+		bool is_reference_mode() const { return reference; }
+
+	private:
+		enum
+		{
+			MEAN = 0,   // 8 arrays: x, y, a, h, vx, vy, va, vh
+			P_PP = 8,   // 4 arrays per block entry, one per coordinate
+			P_PV = 12,
+			P_VP = 16,
+			P_VV = 20,
+			MEAS = 24,  // 4 arrays
+			NUM_ARRAYS = 28
+		};
+
+		float *array(int k) { return data.data() + (size_t)k * capacity; }
+		const float *array(int k) const { return data.data() + (size_t)k * capacity; }
+
+		void predict_reference(const std::vector<int> &batch);
+		void update_reference(const std::vector<int> &batch);
+		void gating_distance_reference(const std::vector<int> &batch, const std::vector<DETECTBOX> &measurements,
+			float *out);
+
+		KalmanFilter scalar;
+		float std_weight_position;
+		float std_weight_velocity;
+		bool reference;
+
+		int capacity;
+		std::vector<float> data;
+	};
+}
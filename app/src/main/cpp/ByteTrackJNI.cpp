@@ -69,12 +69,12 @@ std::vector<Object> javaToCppObjects(JNIEnv *env, jfloatArray javaDetections, in
 }
 
 /**
- * 辅助函数：将 C++ 的 std::vector<STrack> (跟踪结果) 转换为 Java 的 float[]
+ * 辅助函数：将 C++ 的 std::vector<STrack*> (跟踪结果) 转换为 Java 的 float[]
  * * C++ STrack 包含: track.tlbr, track.score, track.track_id
  * * C++ STrack (你提供的版本) *不包含* class_id
  * * Java 格式 (7 个字段): [cx_norm, cy_norm, w_norm, h_norm, classId, conf, track_id]
  */
-jfloatArray cppToJavaTracks(JNIEnv *env, const std::vector<STrack>& cppTracks, int img_w, int img_h) {
+jfloatArray cppToJavaTracks(JNIEnv *env, const std::vector<STrack*>& cppTracks, int img_w, int img_h) {
     if (cppTracks.empty()) {
         return env->NewFloatArray(0); // 返回一个空数组
     }
@@ -87,7 +87,7 @@ jfloatArray cppToJavaTracks(JNIEnv *env, const std::vector<STrack>& cppTracks, i
     jfloat* trackData = new jfloat[numFloats];
 
     for (int i = 0; i < numTracks; ++i) {
-        const auto& track = cppTracks[i];
+        const auto& track = *cppTracks[i];
 
         // STrack::tlbr 是一个 vector<float> {x1, y1, x2, y2}
         // (基于 STrack.cpp 中 static_tlbr() 的实现)
@@ -194,9 +194,9 @@ Java_edu_cmu_cs_face_MainActivity_nativeUpdate(
 
     // === 关键修复 2: ===
     // 调用 C++ 库的 update(const vector<Object>& objects)
-    std::vector<STrack> cppTracks = tracker->update(cppDetections);
+    const std::vector<STrack*>& cppTracks = tracker->update(cppDetections);
 
-    // 3. 将 C++ 的跟踪结果 (std::vector<STrack>) 转换回 Java 的 (float[])
+    // 3. 将 C++ 的跟踪结果 (std::vector<STrack*>) 转换回 Java 的 (float[])
     //    (cppToJavaTracks 内部已修复了 class_id 的问题)
     return cppToJavaTracks(env, cppTracks, img_w, img_h);
 }
@@ -0,0 +1,142 @@
+#include "DetectionDecoder.h"
+#include <algorithm>
+#include <cstring>
+
+size_t DetectionDecoder::outputBytes(const Params& p) {
+    size_t elements = (size_t)p.num_details * p.num_predictions;
+    return p.output_type == FLOAT32 ? elements * 4 : elements;
+}
+
+DetectionDecoder::Stats DetectionDecoder::decode(const uint8_t* output, const Params& p,
+                                                 int img_w, int img_h, std::vector<Object>& objects) {
+    objects.clear();
+    left_.clear();
+    top_.clear();
+    right_.clear();
+    bottom_.clear();
+    conf_.clear();
+    class_id_.clear();
+
+    const int np = p.num_predictions;
+    const bool is_float = p.output_type == FLOAT32;
+    const bool is_uint8 = p.output_type == UINT8;
+    auto value = [&](int index) -> float {
+        if (is_float) {
+            float v;
+            memcpy(&v, output + (size_t)index * 4, sizeof(float));
+            return v;
+        }
+        int raw = is_uint8 ? (int)output[index] : (int)(int8_t)output[index];
+        return (float)(raw - p.output_zero_point) * p.output_scale;
+    };
+
+    // Value (j, i) is at j * num_predictions + i; class scores start at row 4
+    for (int i = 0; i < np; i++) {
+        float max_score = -1.0f;
+        int class_id = -1;
+        for (int j = 4; j < p.num_details; j++) {
+            float score = value(j * np + i);
+            if (score > max_score) {
+                max_score = score;
+                class_id = j - 4;
+            }
+        }
+        if (max_score >= p.conf_threshold) {
+            float cx = value(i);
+            float cy = value(np + i);
+            float pixel_w = value(2 * np + i) * p.model_w;
+            float pixel_h = value(3 * np + i) * p.model_h;
+            float left = (cx * p.model_w) - (pixel_w / 2.0f);
+            float top = (cy * p.model_h) - (pixel_h / 2.0f);
+            left_.push_back(left);
+            top_.push_back(top);
+            right_.push_back(left + pixel_w);
+            bottom_.push_back(top + pixel_h);
+            conf_.push_back(max_score);
+            class_id_.push_back(class_id);
+        }
+    }
+
+    Stats stats;
+    stats.candidates = (int)conf_.size();
+    int kept = nonMaxSuppression(p.nms_threshold);
+
+    // Letterbox -> frame pixels, clipped to the frame; tiny boxes dropped
+    const float pad_x = (float)p.pad_x;
+    const float pad_y = (float)p.pad_y;
+    const float frame_w = (float)img_w;
+    const float frame_h = (float)img_h;
+    for (int k = 0; k < kept; k++) {
+        int index = order_[k];
+        float left_orig = (left_[index] - pad_x) / p.scale;
+        float top_orig = (top_[index] - pad_y) / p.scale;
+        float width_orig = (right_[index] - left_[index]) / p.scale;
+        float height_orig = (bottom_[index] - top_[index]) / p.scale;
+
+        float left_clipped = std::max(0.0f, std::min(left_orig, frame_w));
+        float top_clipped = std::max(0.0f, std::min(top_orig, frame_h));
+        float right_clipped = std::max(0.0f, std::min(left_orig + width_orig, frame_w));
+        float bottom_clipped = std::max(0.0f, std::min(top_orig + height_orig, frame_h));
+        float final_w = right_clipped - left_clipped;
+        float final_h = bottom_clipped - top_clipped;
+
+        if (final_w > 1 && final_h > 1) {
+            Object obj;
+            obj.rect.x = left_clipped;
+            obj.rect.y = top_clipped;
+            obj.rect.width = final_w;
+            obj.rect.height = final_h;
+            obj.prob = conf_[index];
+            obj.label = class_id_[index];
+            objects.push_back(obj);
+        }
+    }
+    stats.detections = (int)objects.size();
+    return stats;
+}
+
+/**
+ * Greedy NMS in descending confidence, ties in candidate order (as the Java side).
+ * Leaves the kept candidate indices in order_[0..kept).
+ */
+int DetectionDecoder::nonMaxSuppression(float nms_threshold) {
+    const int n = (int)conf_.size();
+    order_.resize(n);
+    suppressed_.assign(n, 0);
+    for (int i = 0; i < n; i++) {
+        order_[i] = i;
+    }
+    std::stable_sort(order_.begin(), order_.end(), [this](int a, int b) {
+        return conf_[a] > conf_[b];
+    });
+
+    int kept = 0;
+    for (int i = 0; i < n; i++) {
+        int current = order_[i];
+        if (suppressed_[current]) {
+            continue;
+        }
+        order_[kept++] = current;
+
+        float cur_w = right_[current] - left_[current];
+        float cur_h = bottom_[current] - top_[current];
+        for (int j = i + 1; j < n; j++) {
+            int other = order_[j];
+            if (suppressed_[other]) {
+                continue;
+            }
+            float inter_area = std::max(0.0f, std::min(right_[current], right_[other]) -
+                    std::max(left_[current], left_[other])) *
+                    std::max(0.0f, std::min(bottom_[current], bottom_[other]) -
+                            std::max(top_[current], top_[other]));
+            float union_area = cur_w * cur_h +
+                    (right_[other] - left_[other]) * (bottom_[other] - top_[other]) - inter_area;
+            float iou = (union_area > 0.0f) ? (inter_area / union_area) : 0.0f;
+
+            if (iou > nms_threshold) {
+                suppressed_[other] = 1;
+            }
+        }
+    }
+    return kept;
+}
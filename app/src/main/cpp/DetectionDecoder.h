@@ -0,0 +1,63 @@
+#ifndef DETECTION_DECODER_H
+#define DETECTION_DECODER_H
+
+#include <cstdint>
+#include <vector>
+#include "BYTETracker.h"
+
+/**
+ * YOLO output decoding in native code: dequantize, confidence threshold, NMS and
+ * letterbox -> frame mapping, producing ByteTrack Objects directly.
+ *
+ * Mirrors YoloDetector/DetectionCandidates on the Java side step for step (same
+ * threshold test, same stable NMS order, same clipping), so both paths keep the
+ * same detections. Scratch arrays are kept between calls; not thread-safe.
+ */
+class DetectionDecoder {
+public:
+    // Output tensor element type, as ModelRunner.TensorType ordinals
+    enum OutputType { FLOAT32 = 0, UINT8 = 1, INT8 = 2 };
+
+    struct Params {
+        int num_details;        // Output is [1, num_details, num_predictions]
+        int num_predictions;
+        int output_type;        // OutputType
+        float output_scale;     // Quantization, unused for FLOAT32
+        int output_zero_point;
+        int model_w;
+        int model_h;
+        float scale;            // Letterbox of this frame: model = frame * scale + pad
+        int pad_x;
+        int pad_y;
+        float conf_threshold;
+        float nms_threshold;
+    };
+
+    struct Stats {
+        int candidates;         // Above the confidence threshold
+        int detections;         // Kept by NMS and clipping
+    };
+
+    /** Bytes the output tensor must have for these params. */
+    static size_t outputBytes(const Params& p);
+
+    /**
+     * Decode one inference into frame-pixel Objects (cleared first).
+     * `output` is the raw tensor in native byte order, at least outputBytes(p) long.
+     */
+    Stats decode(const uint8_t* output, const Params& p, int img_w, int img_h, std::vector<Object>& objects);
+
+private:
+    std::vector<float> left_;
+    std::vector<float> top_;
+    std::vector<float> right_;
+    std::vector<float> bottom_;
+    std::vector<float> conf_;
+    std::vector<int> class_id_;
+    std::vector<int> order_;
+    std::vector<uint8_t> suppressed_;
+
+    int nonMaxSuppression(float nms_threshold);
+};
+
+#endif // DETECTION_DECODER_H
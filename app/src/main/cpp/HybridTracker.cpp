@@ -1,5 +1,6 @@
 #include "HybridTracker.h"
 #include <android/log.h>
+#include <algorithm>
 
 using namespace cv;
 using namespace std;
@@ -7,12 +8,32 @@ using namespace std;
 #define LOG_TAG "HybridTracker"
 #define LOGD(...) __android_log_print(ANDROID_LOG_DEBUG, LOG_TAG, __VA_ARGS__)
 #define LOGI(...) __android_log_print(ANDROID_LOG_INFO, LOG_TAG, __VA_ARGS__)
+#define LOGW(...) __android_log_print(ANDROID_LOG_WARN, LOG_TAG, __VA_ARGS__)
+
+static const int MAX_TRACKS = 100;
+static const uint32_t STATE_MAGIC = 0x4B525448; // "HTRK"
+static const int32_t STATE_VERSION = 1;
 
 HybridTracker::HybridTracker(int frame_rate, int track_buffer, int keyframe_interval, int frame_width, int frame_height)
         : byteTracker(frame_rate, track_buffer),
           lightweight_tracker(frame_width, frame_height, 0.5f),
           frame_count(0),
-          keyframe_interval(keyframe_interval) {
+          keyframe_interval(keyframe_interval),
+          last_keyframe(0),
+          keyframe_step(keyframe_interval),
+          frame_period_ns(1000000000LL / (frame_rate > 0 ? frame_rate : 30)),
+          last_timestamp_ns(-1),
+          camera_motion(Matx23f::eye()),
+          tlwh_tmp(4),
+          klt_track_ids(MAX_TRACKS),
+          klt_class_ids(MAX_TRACKS),
+          klt_scores(MAX_TRACKS),
+          klt_bboxes(MAX_TRACKS) {
+    klt_tracks.reserve(MAX_TRACKS);
+    init_track_ids.reserve(MAX_TRACKS);
+    init_class_ids.reserve(MAX_TRACKS);
+    init_scores.reserve(MAX_TRACKS);
+    init_bboxes.reserve(MAX_TRACKS);
     LOGI("HybridTracker initialized: frame_rate=%d, track_buffer=%d, keyframe_interval=%d",
          frame_rate, track_buffer, keyframe_interval);
 }
@@ -26,23 +47,31 @@ bool HybridTracker::isKeyframe() const {
     if (frame_count == 0) {
         return true;
     }
-    // Every keyframe_interval frames is a keyframe
-    return (frame_count % keyframe_interval) == 0;
+    // Every keyframe_interval frames is a keyframe (frames dropped in between count too)
+    return frame_count - last_keyframe >= keyframe_interval;
 }
 
-vector<STrack> HybridTracker::updateWithDetections(const Mat& frame,
-                                                   const vector<Object>& objects,
-                                                   int frame_width,
-                                                   int frame_height) {
-    frame_count++;
-
-    const int MAX_TRACKS = 100;
+int HybridTracker::setFrameTimestamp(int64_t timestamp_ns) {
+    int dropped = 0;
+    if (last_timestamp_ns >= 0 && timestamp_ns > last_timestamp_ns) {
+        // Whole frame periods elapsed, rounded so that capture jitter does not count as a drop
+        int64_t elapsed = (timestamp_ns - last_timestamp_ns + frame_period_ns / 2) / frame_period_ns;
+        dropped = (int)std::max<int64_t>(0, elapsed - 1);
+        frame_count += dropped;
+    }
+    last_timestamp_ns = timestamp_ns;
+    return dropped;
+}
 
-    // [修改] 使用 std::vector 替代 C 风格数组，更安全
-    vector<int> klt_track_ids(MAX_TRACKS);
-    vector<int> klt_class_ids(MAX_TRACKS);
-    vector<float> klt_scores(MAX_TRACKS);
-    vector<Rect2f> klt_bboxes(MAX_TRACKS);
+const vector<STrack*>& HybridTracker::updateWithDetections(const Mat& frame,
+                                                           const vector<Object>& objects,
+                                                           int frame_width,
+                                                           int frame_height) {
+    if (frame_count > 0) {
+        keyframe_step = std::max(1, frame_count - last_keyframe);
+    }
+    last_keyframe = frame_count;
+    frame_count++;
 
     int klt_count = lightweight_tracker.updateTrackers(
             frame,
@@ -53,105 +82,131 @@ vector<STrack> HybridTracker::updateWithDetections(const Mat& frame,
             MAX_TRACKS
     );
 
-    vector<STrack> klt_tracks = convertMOSSEResultsToSTracks(
+    const vector<STrack*>& klt_results = convertMOSSEResultsToSTracks(
             klt_track_ids.data(), klt_class_ids.data(), klt_scores.data(),
             klt_bboxes.data(), klt_count,
             frame_width, frame_height
     );
 
-    if (!klt_tracks.empty()) {
-        // LOGD("Keyframe %d: Resyncing %zu ByteTrack KFs with KLT results", frame_count, klt_tracks.size());
-        byteTracker.resync_kalman_filters(klt_tracks);
+    if (lightweight_tracker.isGlobalMotion()) {
+        // Kalman states are still where the last keyframe left them; bring them into
+        // this frame's coordinates before the KLT resync and the association
+        accumulateCameraMotion();
+        byteTracker.apply_camera_motion(camera_motion);
+        camera_motion = Matx23f::eye();
+    }
+
+    if (!klt_results.empty()) {
+        // LOGD("Keyframe %d: Resyncing %zu ByteTrack KFs with KLT results", frame_count, klt_results.size());
+        byteTracker.resync_kalman_filters(klt_results);
     }
 
     // LOGD("Keyframe %d: Running ByteTrack with %zu detections", frame_count, objects.size());
-    vector<STrack> byte_tracks = byteTracker.update(objects);
+    const vector<STrack*>& byte_tracks = byteTracker.update(objects);
     last_byte_tracks = byte_tracks;
 
     // LOGD("ByteTrack returned %zu tracks", byte_tracks.size());
 
     if (!byte_tracks.empty() && !frame.empty()) {
-        vector<int> track_ids;
-        vector<int> class_ids;
-        vector<float> scores;
-        vector<Rect2f> bboxes;
+        init_track_ids.clear();
+        init_class_ids.clear();
+        init_scores.clear();
+        init_bboxes.clear();
 
-        for (const auto& track : byte_tracks) {
-            track_ids.push_back(track.track_id);
-            class_ids.push_back(track.class_id);
-            scores.push_back(track.score);
+        for (const STrack* track : byte_tracks) {
+            init_track_ids.push_back(track->track_id);
+            init_class_ids.push_back(track->class_id);
+            init_scores.push_back(track->score);
 
-            float x1 = track.tlbr[0];
-            float y1 = track.tlbr[1];
-            float x2 = track.tlbr[2];
-            float y2 = track.tlbr[3];
+            float x1 = track->tlbr[0];
+            float y1 = track->tlbr[1];
+            float x2 = track->tlbr[2];
+            float y2 = track->tlbr[3];
 
             float width = x2 - x1;
             float height = y2 - y1;
 
-            bboxes.emplace_back(x1, y1, width, height);
+            init_bboxes.emplace_back(x1, y1, width, height);
         }
 
         lightweight_tracker.initializeTrackers(
                 frame,
-                track_ids.data(),
-                class_ids.data(),
-                scores.data(),
-                bboxes.data(),
-                track_ids.size()
+                init_track_ids.data(),
+                init_class_ids.data(),
+                init_scores.data(),
+                init_bboxes.data(),
+                init_track_ids.size()
         );
     }
 
     return byte_tracks;
 }
 
-vector<STrack> HybridTracker::updateWithoutDetections(const Mat& frame,
-                                                      int frame_width,
-                                                      int frame_height) {
+const vector<STrack*>& HybridTracker::updateWithoutDetections(const Mat& frame,
+                                                              int frame_width,
+                                                              int frame_height) {
     frame_count++;
 
     // LOGD("Intermediate frame %d: Running MOSSE tracking", frame_count);
 
     if (frame.empty()) {
         // LOGD("Empty frame, returning empty tracks");
-        return vector<STrack>();
+        klt_pool.reset();
+        klt_tracks.clear();
+        return klt_tracks;
     }
 
     // Update MOSSE trackers
-    const int MAX_TRACKS = 100;
-
-    vector<int> track_ids(MAX_TRACKS);
-    vector<int> class_ids(MAX_TRACKS);
-    vector<float> scores(MAX_TRACKS);
-    vector<Rect2f> bboxes(MAX_TRACKS);
-
     int count = lightweight_tracker.updateTrackers(
             frame,
-            track_ids.data(),
-            class_ids.data(),
-            scores.data(),
-            bboxes.data(),
+            klt_track_ids.data(),
+            klt_class_ids.data(),
+            klt_scores.data(),
+            klt_bboxes.data(),
             MAX_TRACKS
     );
 
     // LOGD("MOSSE tracking returned %d tracks", count);
 
+    if (lightweight_tracker.isGlobalMotion()) {
+        accumulateCameraMotion();
+    }
+
     // Convert MOSSE results back to STrack format
     return convertMOSSEResultsToSTracks(
-            track_ids.data(), class_ids.data(), scores.data(),
-            bboxes.data(), count,
+            klt_track_ids.data(), klt_class_ids.data(), klt_scores.data(),
+            klt_bboxes.data(), count,
             frame_width, frame_height
     );
 }
 
-vector<STrack> HybridTracker::convertMOSSEResultsToSTracks(const int* track_ids,
-                                                           const int* class_ids,
-                                                           const float* scores,
-                                                           const Rect2f* bboxes,
-                                                           int count,
-                                                           int frame_width,
-                                                           int frame_height) {
-    vector<STrack> tracks;
+void HybridTracker::accumulateCameraMotion() {
+    Matx23f frame_motion;
+    if (!lightweight_tracker.getFrameMotion(frame_motion)) {
+        // Not estimated for this frame; assume the camera held still
+        return;
+    }
+    // camera_motion = frame_motion * camera_motion (as 3x3 affine matrices)
+    Matx23f composed;
+    for (int r = 0; r < 2; r++) {
+        for (int c = 0; c < 3; c++) {
+            composed(r, c) = frame_motion(r, 0) * camera_motion(0, c) + frame_motion(r, 1) * camera_motion(1, c);
+        }
+        composed(r, 2) += frame_motion(r, 2);
+    }
+    camera_motion = composed;
+}
+
+const vector<STrack*>& HybridTracker::convertMOSSEResultsToSTracks(const int* track_ids,
+                                                                   const int* class_ids,
+                                                                   const float* scores,
+                                                                   const Rect2f* bboxes,
+                                                                   int count,
+                                                                   int frame_width,
+                                                                   int frame_height) {
+    // Last frame's KLT tracks are no longer referenced; recycle every slot
+    klt_pool.reset();
+    klt_tracks.clear();
 
     for (int i = 0; i < count; i++) {
         // Convert pixel bbox to normalized tlwh
@@ -160,29 +215,116 @@ vector<STrack> HybridTracker::convertMOSSEResultsToSTracks(const int* track_ids,
         float w = bboxes[i].width;
         float h = bboxes[i].height;
 
-        vector<float> tlwh = {x, y, w, h};
+        tlwh_tmp[0] = x;
+        tlwh_tmp[1] = y;
+        tlwh_tmp[2] = w;
+        tlwh_tmp[3] = h;
 
-        // Create STrack
-        STrack track(tlwh, scores[i]);
+        // Reuse a pooled STrack instead of constructing one
+        STrack& track = klt_pool[klt_pool.acquire()];
+        track.reset(tlwh_tmp, scores[i]);
         track.track_id = track_ids[i];
         track.class_id = class_ids[i];
         track.is_activated = true;
 
-        track.tlbr.clear();
-        track.tlbr.push_back(x);
-        track.tlbr.push_back(y);
-        track.tlbr.push_back(x + w);
-        track.tlbr.push_back(y + h);
+        track.tlbr[0] = x;
+        track.tlbr[1] = y;
+        track.tlbr[2] = x + w;
+        track.tlbr[3] = y + h;
 
-        tracks.push_back(track);
+        klt_tracks.push_back(&track);
     }
 
-    return tracks;
+    return klt_tracks;
+}
+
+void HybridTracker::getTrackStates(vector<float>& out, int frame_width, int frame_height) const {
+    byteTracker.get_track_states(out);
+    float w_scale = 1.0f / frame_width;
+    float h_scale = 1.0f / frame_height;
+    float steps_per_second = 1e9f / ((float)keyframe_step * (float)frame_period_ns);
+    // [id, cx, cy, a, h, vx, vy, va, vh] pixels per step -> [id, cx, cy, w, h, vx, vy, vw, vh]
+    for (size_t i = 0; i + 9 <= out.size(); i += 9) {
+        float* m = &out[i];
+        float a = m[3];
+        float h = m[4];
+        float va = m[7];
+        float vh = m[8];
+        m[1] *= w_scale;
+        m[2] *= h_scale;
+        m[3] = a * h * w_scale;
+        m[4] = h * h_scale;
+        m[5] *= w_scale * steps_per_second;
+        m[6] *= h_scale * steps_per_second;
+        m[7] = (va * h + a * vh) * w_scale * steps_per_second;
+        m[8] = vh * h_scale * steps_per_second;
+    }
+}
+
+std::vector<uint8_t> HybridTracker::saveState() const {
+    StateWriter out;
+    out.put<uint32_t>(STATE_MAGIC);
+    out.put<int32_t>(STATE_VERSION);
+    out.put<int32_t>(frame_count);
+    out.put<int32_t>(keyframe_interval);
+    out.put<int32_t>(last_keyframe);
+    out.put<int64_t>(frame_period_ns);
+    out.put<int64_t>(last_timestamp_ns);
+    for (int i = 0; i < 6; i++) {
+        out.put<float>(camera_motion.val[i]);
+    }
+    // Ids handed out so far, so a resumed run numbers new tracks as the original would have
+    out.put<int32_t>(STrack::last_id());
+    byteTracker.save_state(out);
+    lightweight_tracker.saveState(out);
+    return out.bytes();
+}
+
+bool HybridTracker::loadState(const uint8_t* data, size_t size) {
+    StateReader in(data, size);
+    if (in.get<uint32_t>() != STATE_MAGIC || in.get<int32_t>() != STATE_VERSION) {
+        LOGW("Not a tracker checkpoint (or from another version)");
+        byteTracker.clear_state();
+        reset();
+        return false;
+    }
+    int interval = keyframe_interval;
+    int64_t period = frame_period_ns;
+    reset();
+    frame_count = in.get<int32_t>();
+    keyframe_interval = in.get<int32_t>();
+    last_keyframe = in.get<int32_t>();
+    frame_period_ns = in.get<int64_t>();
+    last_timestamp_ns = in.get<int64_t>();
+    for (int i = 0; i < 6; i++) {
+        camera_motion.val[i] = in.get<float>();
+    }
+    int last_id = in.get<int32_t>();
+    bool ok = in.ok() && keyframe_interval > 0 && frame_period_ns > 0
+              && byteTracker.load_state(in) && lightweight_tracker.loadState(in) && in.ok();
+    if (!ok) {
+        LOGW("Tracker checkpoint is malformed; starting from a reset tracker");
+        byteTracker.clear_state();
+        keyframe_interval = interval;
+        frame_period_ns = period;
+        reset();
+        return false;
+    }
+    STrack::advance_ids(last_id);
+    keyframe_step = keyframe_interval;
+    klt_pool.reset();
+    klt_tracks.clear();
+    LOGI("HybridTracker restored at frame %d", frame_count);
+    return true;
 }
 
 void HybridTracker::reset() {
     frame_count = 0;
+    last_keyframe = 0;
+    keyframe_step = keyframe_interval;
+    last_timestamp_ns = -1;
+    camera_motion = Matx23f::eye();
     last_byte_tracks.clear();
     lightweight_tracker.clearTrackers();
     LOGI("HybridTracker reset");
-}
\ No newline at end of file
+}
@@ -5,6 +5,8 @@
 #include "LightweightTracker.h"
 #include <opencv2/opencv.hpp>
 #include <vector>
+#include <cstdint>
+#include <atomic>
 
 /**
  * HybridTracker combines ByteTrack (heavy but accurate) with MOSSE (lightweight).
@@ -37,12 +39,12 @@ public:
      * @param objects YOLO detections
      * @param frame_width Original frame width
      * @param frame_height Original frame height
-     * @return Tracked objects with track IDs
+     * @return Tracked objects with track IDs (owned by the tracker, valid until the next update)
      */
-    vector<STrack> updateWithDetections(const Mat& frame,
-                                        const vector<Object>& objects,
-                                        int frame_width,
-                                        int frame_height);
+    const vector<STrack*>& updateWithDetections(const Mat& frame,
+                                                const vector<Object>& objects,
+                                                int frame_width,
+                                                int frame_height);
 
     /**
      * Process a frame without YOLO (lightweight tracking only).
@@ -51,11 +53,11 @@ public:
      * @param frame The current frame
      * @param frame_width Original frame width
      * @param frame_height Original frame height
-     * @return Tracked objects (from MOSSE updates)
+     * @return Tracked objects (from MOSSE updates, valid until the next update)
      */
-    vector<STrack> updateWithoutDetections(const Mat& frame,
-                                           int frame_width,
-                                           int frame_height);
+    const vector<STrack*>& updateWithoutDetections(const Mat& frame,
+                                                   int frame_width,
+                                                   int frame_height);
 
     /**
      * Determine if current frame should be a keyframe.
@@ -63,6 +65,27 @@ public:
      */
     [[nodiscard]] bool isKeyframe() const;
 
+    /**
+     * Capture timestamp of the next frame (live camera input). Camera frames dropped
+     * since the previous timestamp advance the frame count, so keyframes stay every
+     * keyframe_interval camera frames however many frames the caller skips.
+     * Call before isKeyframe() for that frame.
+     *
+     * @param timestamp_ns capture time in nanoseconds (any monotonic clock)
+     * @return number of camera frames dropped before this one
+     */
+    int setFrameTimestamp(int64_t timestamp_ns);
+
+    /**
+     * A frame the caller found unchanged (frame gating) and does not track: it counts
+     * towards the keyframe interval like a dropped camera frame, and tracks, KLT points
+     * and the KLT reference frame stay as they are. A keyframe skipped this way stays
+     * due, so the next frame that is processed is the keyframe.
+     */
+    void skipFrame() {
+        frame_count++;
+    }
+
     /**
      * Reset the tracker state.
      */
@@ -82,26 +105,134 @@ public:
         }
     }
 
+    /**
+     * Enable/disable the gated (sparse) LAP assignment in ByteTrack.
+     */
+    void setSparseAssignment(bool enabled) {
+        byteTracker.set_sparse_assignment(enabled);
+    }
+
+    /**
+     * Run ByteTrack's batched Kalman steps through the scalar KalmanFilter instead
+     * (reference path, for equivalence checks).
+     */
+    void setReferenceKalman(bool enabled) {
+        byteTracker.set_reference_kalman(enabled);
+    }
+
+    /**
+     * Enable/disable the shared-pyramid KLT path (one pyramid and one LK call per frame).
+     */
+    void setSharedPyramid(bool enabled) {
+        lightweight_tracker.setSharedPyramid(enabled);
+    }
+
+    /**
+     * Enable/disable global camera-motion estimation. The KLT stage then estimates one
+     * frame-to-frame transform from background points, and the motion accumulated
+     * since the last keyframe is applied to ByteTrack's Kalman states (tracked and
+     * lost) before the keyframe's association.
+     */
+    void setGlobalMotion(bool enabled) {
+        lightweight_tracker.setGlobalMotion(enabled);
+        camera_motion = Matx23f::eye();
+    }
+
+    /**
+     * Allocation counters of the ByteTrack pools and the per-frame KLT track arena.
+     */
+    void getPoolStats(BYTETracker::PoolStats& byte_stats, STrackPool::Stats& klt_stats) const {
+        byte_stats = byteTracker.pool_stats();
+        klt_stats = klt_pool.stats();
+    }
+
+    /**
+     * ByteTrack's Kalman state of its tracked and lost tracks, 9 floats each:
+     * [track_id, cx, cy, w, h, vx, vy, vw, vh], normalized to the frame. The filter
+     * steps once per keyframe, so velocities are per step and converted to per
+     * second with the frames between the last two keyframes.
+     */
+    void getTrackStates(vector<float>& out, int frame_width, int frame_height) const;
+
+    /**
+     * Serialize the full tracker state: frame counters, ByteTrack's tracked and lost
+     * tracks with their Kalman state, removed ids, the id counter, and the KLT objects,
+     * points and previous frame. Restoring it into a tracker built with the same
+     * settings continues exactly where this one left off.
+     */
+    std::vector<uint8_t> saveState() const;
+
+    /**
+     * Replace this tracker's state with a saveState() blob.
+     * @return false (and a reset tracker) if the blob is malformed, from another
+     *         version, or from a tracker with a different frame size
+     */
+    bool loadState(const uint8_t* data, size_t size);
+
+    /**
+     * Claim the tracker for one update; false if another thread is inside one.
+     * A tracker shares no mutable state with other trackers, so different trackers
+     * may be updated concurrently, but each one by one thread at a time.
+     */
+    bool tryEnter() {
+        return !in_use.exchange(true, std::memory_order_acquire);
+    }
+
+    void leave() {
+        in_use.store(false, std::memory_order_release);
+    }
+
 private:
     BYTETracker byteTracker;
     LightweightTracker lightweight_tracker;
 
     int frame_count;
     int keyframe_interval;
+    // Frame count at the last keyframe; the next one is due keyframe_interval frames later
+    int last_keyframe;
+    // Frames between the last two keyframes (one Kalman step); keyframe_interval until
+    // the second keyframe after a reset or a loadState
+    int keyframe_step;
+    int64_t frame_period_ns;
+    int64_t last_timestamp_ns;
+    std::atomic<bool> in_use{false};
+
+    // Camera motion since the last keyframe (pixels), composed frame by frame
+    Matx23f camera_motion;
 
     // Store last ByteTrack results for reference
-    vector<STrack> last_byte_tracks;
+    vector<STrack*> last_byte_tracks;
+
+    // KLT results live in an arena that is reset every frame
+    STrackPool klt_pool;
+    vector<STrack*> klt_tracks;
+    vector<float> tlwh_tmp;
+
+    // Per-frame buffers, allocated once
+    vector<int> klt_track_ids;
+    vector<int> klt_class_ids;
+    vector<float> klt_scores;
+    vector<Rect2f> klt_bboxes;
+    vector<int> init_track_ids;
+    vector<int> init_class_ids;
+    vector<float> init_scores;
+    vector<Rect2f> init_bboxes;
 
     /**
-     * Convert MOSSE tracking results back to STrack format.
+     * Compose the KLT stage's motion estimate for the frame just tracked into camera_motion.
      */
-    vector<STrack> convertMOSSEResultsToSTracks(const int* track_ids,
-                                                const int* class_ids,
-                                                const float* scores,
-                                                const Rect2f* bboxes,
-                                                int count,
-                                                int frame_width,
-                                                int frame_height);
+    void accumulateCameraMotion();
+
+    /**
+     * Convert MOSSE tracking results back to STrack format (into klt_pool / klt_tracks).
+     */
+    const vector<STrack*>& convertMOSSEResultsToSTracks(const int* track_ids,
+                                                        const int* class_ids,
+                                                        const float* scores,
+                                                        const Rect2f* bboxes,
+                                                        int count,
+                                                        int frame_width,
+                                                        int frame_height);
 };
 
 #endif // HYBRID_TRACKER_H
\ No newline at end of file
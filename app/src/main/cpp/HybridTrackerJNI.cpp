@@ -1,6 +1,9 @@
 #include <jni.h>
 #include <vector>
 #include <string>
+#include <chrono>
+#include <cmath>
+#include <random>
 #include <android/log.h>
 
 #define LOG_TAG "HybridTrackerJNI"
@@ -8,6 +11,7 @@
 #define LOGE(...) __android_log_print(ANDROID_LOG_ERROR, LOG_TAG, __VA_ARGS__)
 
 #include "HybridTracker.h"
+#include "DetectionDecoder.h"
 
 /**
  * Convert Java float[] detections to C++ vector<Object>
@@ -57,10 +61,10 @@ std::vector<Object> javaToCppObjects(JNIEnv *env, jfloatArray javaDetections, in
 }
 
 /**
- * Convert C++ vector<STrack> to Java float[]
+ * Convert C++ vector<STrack*> to Java float[]
  * Java format: [cx_norm, cy_norm, w_norm, h_norm, classId, conf, track_id] per track
  */
-jfloatArray cppToJavaTracks(JNIEnv *env, const std::vector<STrack>& cppTracks, int img_w, int img_h) {
+jfloatArray cppToJavaTracks(JNIEnv *env, const std::vector<STrack*>& cppTracks, int img_w, int img_h) {
     if (cppTracks.empty()) {
         return env->NewFloatArray(0);
     }
@@ -72,7 +76,7 @@ jfloatArray cppToJavaTracks(JNIEnv *env, const std::vector<STrack>& cppTracks, i
     jfloat* trackData = new jfloat[numFloats];
 
     for (int i = 0; i < numTracks; ++i) {
-        const auto& track = cppTracks[i];
+        const auto& track = *cppTracks[i];
         const auto& tlbr = track.tlbr;
 
         float x1 = tlbr[0];
@@ -128,6 +132,106 @@ cv::Mat javaByteArrayToMat(JNIEnv *env, jbyteArray javaImageData, int width, int
     return mat;
 }
 
+/**
+ * Wrap a direct ByteBuffer (grayscale) as an OpenCV Mat without copying.
+ * The tracker only reads the frame during the update call, so the buffer just has
+ * to stay valid until it returns. Empty Mat if the buffer is not direct or too small.
+ */
+cv::Mat directBufferToMat(JNIEnv *env, jobject javaBuffer, int width, int height) {
+    void* data = env->GetDirectBufferAddress(javaBuffer);
+    jlong capacity = env->GetDirectBufferCapacity(javaBuffer);
+    if (data == nullptr || capacity < (jlong)width * height) {
+        LOGE("Gray frame buffer is not direct or smaller than %dx%d", width, height);
+        return cv::Mat();
+    }
+    return cv::Mat(height, width, CV_8UC1, data);
+}
+
+// Layout of the decodeParams float[] (YoloDetector.nativeDecodeParams())
+enum DecodeParam {
+    DP_NUM_DETAILS, DP_NUM_PREDICTIONS, DP_OUTPUT_TYPE, DP_OUTPUT_SCALE, DP_OUTPUT_ZERO_POINT,
+    DP_MODEL_W, DP_MODEL_H, DP_SCALE, DP_PAD_X, DP_PAD_Y, DP_CONF_THRESHOLD, DP_NMS_THRESHOLD,
+    DP_COUNT
+};
+
+/**
+ * Decode a raw YOLO output tensor (direct ByteBuffer) into frame-pixel Objects,
+ * without building a Java detection array. One decoder per calling thread keeps the
+ * scratch arrays between keyframes. Writes [decode_nanos, candidates, detections]
+ * to javaStats if given. False if the buffer or params are unusable.
+ */
+bool decodeModelOutput(JNIEnv *env, jobject javaOutput, jfloatArray javaParams, jlongArray javaStats,
+                       int img_w, int img_h, std::vector<Object>& objects) {
+    auto start = std::chrono::steady_clock::now();
+    objects.clear();
+
+    if (env->GetArrayLength(javaParams) < DP_COUNT) {
+        LOGE("Decode params too short: %d < %d", (int)env->GetArrayLength(javaParams), (int)DP_COUNT);
+        return false;
+    }
+    jfloat raw[DP_COUNT];
+    env->GetFloatArrayRegion(javaParams, 0, DP_COUNT, raw);
+    DetectionDecoder::Params params;
+    params.num_details = (int)raw[DP_NUM_DETAILS];
+    params.num_predictions = (int)raw[DP_NUM_PREDICTIONS];
+    params.output_type = (int)raw[DP_OUTPUT_TYPE];
+    params.output_scale = raw[DP_OUTPUT_SCALE];
+    params.output_zero_point = (int)raw[DP_OUTPUT_ZERO_POINT];
+    params.model_w = (int)raw[DP_MODEL_W];
+    params.model_h = (int)raw[DP_MODEL_H];
+    params.scale = raw[DP_SCALE];
+    params.pad_x = (int)raw[DP_PAD_X];
+    params.pad_y = (int)raw[DP_PAD_Y];
+    params.conf_threshold = raw[DP_CONF_THRESHOLD];
+    params.nms_threshold = raw[DP_NMS_THRESHOLD];
+    if (params.num_details < 5 || params.scale <= 0.0f) {
+        LOGE("Unusable decode params: numDetails=%d, scale=%f", params.num_details, params.scale);
+        return false;
+    }
+
+    void* data = env->GetDirectBufferAddress(javaOutput);
+    jlong capacity = env->GetDirectBufferCapacity(javaOutput);
+    if (data == nullptr || capacity < (jlong)DetectionDecoder::outputBytes(params)) {
+        LOGE("Model output buffer is not direct or smaller than %d x %d", params.num_details, params.num_predictions);
+        return false;
+    }
+
+    static thread_local DetectionDecoder decoder;
+    DetectionDecoder::Stats stats = decoder.decode(static_cast<const uint8_t*>(data), params, img_w, img_h, objects);
+
+    if (javaStats != nullptr && env->GetArrayLength(javaStats) >= 3) {
+        jlong out[3];
+        out[0] = std::chrono::duration_cast<std::chrono::nanoseconds>(
+                std::chrono::steady_clock::now() - start).count();
+        out[1] = stats.candidates;
+        out[2] = stats.detections;
+        env->SetLongArrayRegion(javaStats, 0, 3, out);
+    }
+    return true;
+}
+
+/**
+ * Holds a tracker for the length of one update call. Separate handles share no
+ * state and run concurrently from any threads; a second thread entering the same
+ * handle meanwhile is refused (logged, empty result) instead of corrupting it.
+ */
+struct TrackerCall {
+    HybridTracker* tracker;
+    bool entered;
+
+    explicit TrackerCall(HybridTracker* t) : tracker(t), entered(t->tryEnter()) {
+        if (!entered) {
+            LOGE("Tracker %p is already being updated on another thread", (void*)t);
+        }
+    }
+
+    ~TrackerCall() {
+        if (entered) {
+            tracker->leave();
+        }
+    }
+};
+
 extern "C" {
 
 /**
@@ -182,6 +286,49 @@ Java_edu_cmu_cs_face_MainActivity_nativeIsKeyframe(
     return tracker->isKeyframe() ? JNI_TRUE : JNI_FALSE;
 }
 
+/**
+ * Capture timestamp of the next frame (live input); call before nativeIsKeyframe.
+ * Returns the number of camera frames dropped since the previous timestamp.
+ * Java: native int nativeSetFrameTimestamp(long trackerPtr, long timestampNanos)
+ */
+JNIEXPORT jint JNICALL
+Java_edu_cmu_cs_face_MainActivity_nativeSetFrameTimestamp(
+        JNIEnv *env,
+        jobject thiz,
+        jlong tracker_ptr,
+        jlong timestamp_nanos) {
+
+    HybridTracker* tracker = reinterpret_cast<HybridTracker*>(tracker_ptr);
+    if (tracker == nullptr) {
+        LOGE("Tracker pointer is null in nativeSetFrameTimestamp!");
+        return 0;
+    }
+    return tracker->setFrameTimestamp(timestamp_nanos);
+}
+
+/**
+ * Count a frame that is not tracked (unchanged since the last tracked one) towards
+ * the keyframe interval; the tracks stay as they are.
+ * Java: native void nativeSkipFrame(long trackerPtr)
+ */
+JNIEXPORT void JNICALL
+Java_edu_cmu_cs_face_MainActivity_nativeSkipFrame(
+        JNIEnv *env,
+        jobject thiz,
+        jlong tracker_ptr) {
+
+    HybridTracker* tracker = reinterpret_cast<HybridTracker*>(tracker_ptr);
+    if (tracker == nullptr) {
+        LOGE("Tracker pointer is null in nativeSkipFrame!");
+        return;
+    }
+    TrackerCall call(tracker);
+    if (!call.entered) {
+        return;
+    }
+    tracker->skipFrame();
+}
+
 /**
  * Update tracker with YOLO detections (keyframe)
  * Java: native float[] nativeUpdateWithDetections(long trackerPtr, float[] detections, 
@@ -202,6 +349,10 @@ Java_edu_cmu_cs_face_MainActivity_nativeUpdateWithDetections(
         LOGE("Tracker pointer is null!");
         return env->NewFloatArray(0);
     }
+    TrackerCall call(tracker);
+    if (!call.entered) {
+        return env->NewFloatArray(0);
+    }
 
     // Convert Java detections to C++ Objects
     std::vector<Object> cppDetections = javaToCppObjects(env, java_detections, img_w, img_h);
@@ -210,7 +361,7 @@ Java_edu_cmu_cs_face_MainActivity_nativeUpdateWithDetections(
     cv::Mat frame = javaByteArrayToMat(env, java_image_data, img_w, img_h, true);
 
     // Update hybrid tracker with detections
-    std::vector<STrack> cppTracks = tracker->updateWithDetections(frame, cppDetections, img_w, img_h);
+    const std::vector<STrack*>& cppTracks = tracker->updateWithDetections(frame, cppDetections, img_w, img_h);
 
     // Convert back to Java format
     return cppToJavaTracks(env, cppTracks, img_w, img_h);
@@ -234,17 +385,201 @@ Java_edu_cmu_cs_face_MainActivity_nativeUpdateWithoutDetections(
         LOGE("Tracker pointer is null!");
         return env->NewFloatArray(0);
     }
+    TrackerCall call(tracker);
+    if (!call.entered) {
+        return env->NewFloatArray(0);
+    }
 
     // Convert Java image data to OpenCV Mat
     cv::Mat frame = javaByteArrayToMat(env, java_image_data, img_w, img_h, true);
 
     // Update hybrid tracker without detections (MOSSE tracking only)
-    std::vector<STrack> cppTracks = tracker->updateWithoutDetections(frame, img_w, img_h);
+    const std::vector<STrack*>& cppTracks = tracker->updateWithoutDetections(frame, img_w, img_h);
 
     // Convert back to Java format
     return cppToJavaTracks(env, cppTracks, img_w, img_h);
 }
 
+/**
+ * nativeUpdateWithoutDetections for a gray frame decoded below the frame size
+ * (e.g. inSampleSize on non-keyframes). KLT resamples to its own size either way;
+ * track boxes stay in w x h frame coordinates.
+ * Java: native float[] nativeUpdateWithoutDetectionsScaled(long trackerPtr, byte[] imageData,
+ *                                                           int imageW, int imageH, int w, int h)
+ */
+JNIEXPORT jfloatArray JNICALL
+Java_edu_cmu_cs_face_MainActivity_nativeUpdateWithoutDetectionsScaled(
+        JNIEnv *env,
+        jobject thiz,
+        jlong tracker_ptr,
+        jbyteArray java_image_data,
+        jint image_w,
+        jint image_h,
+        jint img_w,
+        jint img_h) {
+
+    HybridTracker* tracker = reinterpret_cast<HybridTracker*>(tracker_ptr);
+    if (tracker == nullptr) {
+        LOGE("Tracker pointer is null!");
+        return env->NewFloatArray(0);
+    }
+    TrackerCall call(tracker);
+    if (!call.entered) {
+        return env->NewFloatArray(0);
+    }
+
+    cv::Mat frame = javaByteArrayToMat(env, java_image_data, image_w, image_h, true);
+    const std::vector<STrack*>& cppTracks = tracker->updateWithoutDetections(frame, img_w, img_h);
+    return cppToJavaTracks(env, cppTracks, img_w, img_h);
+}
+
+/**
+ * nativeUpdateWithDetections with the gray frame in a direct ByteBuffer (read in place)
+ * Java: native float[] nativeUpdateWithDetectionsBuffer(long trackerPtr, float[] detections,
+ *                                                         ByteBuffer imageData, int w, int h)
+ */
+JNIEXPORT jfloatArray JNICALL
+Java_edu_cmu_cs_face_MainActivity_nativeUpdateWithDetectionsBuffer(
+        JNIEnv *env,
+        jobject thiz,
+        jlong tracker_ptr,
+        jfloatArray java_detections,
+        jobject java_image_buffer,
+        jint img_w,
+        jint img_h) {
+
+    HybridTracker* tracker = reinterpret_cast<HybridTracker*>(tracker_ptr);
+    if (tracker == nullptr) {
+        LOGE("Tracker pointer is null!");
+        return env->NewFloatArray(0);
+    }
+    TrackerCall call(tracker);
+    if (!call.entered) {
+        return env->NewFloatArray(0);
+    }
+
+    cv::Mat frame = directBufferToMat(env, java_image_buffer, img_w, img_h);
+    if (frame.empty()) {
+        return env->NewFloatArray(0);
+    }
+
+    std::vector<Object> cppDetections = javaToCppObjects(env, java_detections, img_w, img_h);
+    const std::vector<STrack*>& cppTracks = tracker->updateWithDetections(frame, cppDetections, img_w, img_h);
+    return cppToJavaTracks(env, cppTracks, img_w, img_h);
+}
+
+/**
+ * nativeUpdateWithoutDetections with the gray frame in a direct ByteBuffer (read in place)
+ * Java: native float[] nativeUpdateWithoutDetectionsBuffer(long trackerPtr, ByteBuffer imageData, int w, int h)
+ */
+JNIEXPORT jfloatArray JNICALL
+Java_edu_cmu_cs_face_MainActivity_nativeUpdateWithoutDetectionsBuffer(
+        JNIEnv *env,
+        jobject thiz,
+        jlong tracker_ptr,
+        jobject java_image_buffer,
+        jint img_w,
+        jint img_h) {
+
+    HybridTracker* tracker = reinterpret_cast<HybridTracker*>(tracker_ptr);
+    if (tracker == nullptr) {
+        LOGE("Tracker pointer is null!");
+        return env->NewFloatArray(0);
+    }
+    TrackerCall call(tracker);
+    if (!call.entered) {
+        return env->NewFloatArray(0);
+    }
+
+    cv::Mat frame = directBufferToMat(env, java_image_buffer, img_w, img_h);
+    if (frame.empty()) {
+        return env->NewFloatArray(0);
+    }
+
+    const std::vector<STrack*>& cppTracks = tracker->updateWithoutDetections(frame, img_w, img_h);
+    return cppToJavaTracks(env, cppTracks, img_w, img_h);
+}
+
+/**
+ * Fused keyframe update: decode the raw model output in native code (dequantize,
+ * threshold, NMS, letterbox -> frame) and feed the detections straight to the
+ * tracker. No detection array crosses JNI.
+ * Java: native float[] nativeUpdateWithModelOutput(long trackerPtr, ByteBuffer output, float[] decodeParams,
+ *                                                   byte[] imageData, int w, int h, long[] decodeStats)
+ */
+JNIEXPORT jfloatArray JNICALL
+Java_edu_cmu_cs_face_MainActivity_nativeUpdateWithModelOutput(
+        JNIEnv *env,
+        jobject thiz,
+        jlong tracker_ptr,
+        jobject java_output,
+        jfloatArray java_params,
+        jbyteArray java_image_data,
+        jint img_w,
+        jint img_h,
+        jlongArray java_stats) {
+
+    HybridTracker* tracker = reinterpret_cast<HybridTracker*>(tracker_ptr);
+    if (tracker == nullptr) {
+        LOGE("Tracker pointer is null!");
+        return env->NewFloatArray(0);
+    }
+    TrackerCall call(tracker);
+    if (!call.entered) {
+        return env->NewFloatArray(0);
+    }
+
+    std::vector<Object> cppDetections;
+    if (!decodeModelOutput(env, java_output, java_params, java_stats, img_w, img_h, cppDetections)) {
+        return env->NewFloatArray(0);
+    }
+
+    cv::Mat frame = javaByteArrayToMat(env, java_image_data, img_w, img_h, true);
+    const std::vector<STrack*>& cppTracks = tracker->updateWithDetections(frame, cppDetections, img_w, img_h);
+    return cppToJavaTracks(env, cppTracks, img_w, img_h);
+}
+
+/**
+ * nativeUpdateWithModelOutput with the gray frame in a direct ByteBuffer (read in place)
+ * Java: native float[] nativeUpdateWithModelOutputBuffer(long trackerPtr, ByteBuffer output, float[] decodeParams,
+ *                                                         ByteBuffer imageData, int w, int h, long[] decodeStats)
+ */
+JNIEXPORT jfloatArray JNICALL
+Java_edu_cmu_cs_face_MainActivity_nativeUpdateWithModelOutputBuffer(
+        JNIEnv *env,
+        jobject thiz,
+        jlong tracker_ptr,
+        jobject java_output,
+        jfloatArray java_params,
+        jobject java_image_buffer,
+        jint img_w,
+        jint img_h,
+        jlongArray java_stats) {
+
+    HybridTracker* tracker = reinterpret_cast<HybridTracker*>(tracker_ptr);
+    if (tracker == nullptr) {
+        LOGE("Tracker pointer is null!");
+        return env->NewFloatArray(0);
+    }
+    TrackerCall call(tracker);
+    if (!call.entered) {
+        return env->NewFloatArray(0);
+    }
+
+    cv::Mat frame = directBufferToMat(env, java_image_buffer, img_w, img_h);
+    if (frame.empty()) {
+        return env->NewFloatArray(0);
+    }
+
+    std::vector<Object> cppDetections;
+    if (!decodeModelOutput(env, java_output, java_params, java_stats, img_w, img_h, cppDetections)) {
+        return env->NewFloatArray(0);
+    }
+
+    const std::vector<STrack*>& cppTracks = tracker->updateWithDetections(frame, cppDetections, img_w, img_h);
+    return cppToJavaTracks(env, cppTracks, img_w, img_h);
+}
+
 /**
  * Reset the hybrid tracker
  * Java: native void nativeResetHybridTracker(long trackerPtr)
@@ -265,4 +600,343 @@ Java_edu_cmu_cs_face_MainActivity_nativeResetHybridTracker(
     // LOGD("HybridTracker reset");
 }
 
+/**
+ * Toggle the gated (sparse) LAP assignment
+ * Java: native void nativeSetSparseAssignment(long trackerPtr, boolean enabled)
+ */
+JNIEXPORT void JNICALL
+Java_edu_cmu_cs_face_MainActivity_nativeSetSparseAssignment(
+        JNIEnv *env,
+        jobject thiz,
+        jlong tracker_ptr,
+        jboolean enabled) {
+
+    HybridTracker* tracker = reinterpret_cast<HybridTracker*>(tracker_ptr);
+    if (tracker == nullptr) {
+        LOGE("Tracker pointer is null!");
+        return;
+    }
+
+    tracker->setSparseAssignment(enabled == JNI_TRUE);
+}
+
+/**
+ * Toggle the scalar reference path of the batched Kalman filter
+ * Java: native void nativeSetReferenceKalman(long trackerPtr, boolean enabled)
+ */
+JNIEXPORT void JNICALL
+Java_edu_cmu_cs_face_MainActivity_nativeSetReferenceKalman(
+        JNIEnv *env,
+        jobject thiz,
+        jlong tracker_ptr,
+        jboolean enabled) {
+
+    HybridTracker* tracker = reinterpret_cast<HybridTracker*>(tracker_ptr);
+    if (tracker == nullptr) {
+        LOGE("Tracker pointer is null!");
+        return;
+    }
+
+    tracker->setReferenceKalman(enabled == JNI_TRUE);
+}
+
+/**
+ * Toggle global camera-motion estimation
+ * Java: native void nativeSetGlobalMotion(long trackerPtr, boolean enabled)
+ */
+JNIEXPORT void JNICALL
+Java_edu_cmu_cs_face_MainActivity_nativeSetGlobalMotion(
+        JNIEnv *env,
+        jobject thiz,
+        jlong tracker_ptr,
+        jboolean enabled) {
+
+    HybridTracker* tracker = reinterpret_cast<HybridTracker*>(tracker_ptr);
+    if (tracker == nullptr) {
+        LOGE("Tracker pointer is null!");
+        return;
+    }
+
+    tracker->setGlobalMotion(enabled == JNI_TRUE);
+}
+
+/**
+ * STrack pool allocation counters
+ * Java: native long[] nativeGetTrackerStats(long trackerPtr)
+ * Returns [frame_count,
+ *          tracks_acquired, tracks_reused, tracks_live, tracks_capacity,
+ *          dets_acquired, dets_reused, dets_capacity,
+ *          klt_acquired, klt_reused, klt_capacity]
+ * A steady scene should show the *_capacity values stop growing.
+ */
+JNIEXPORT jlongArray JNICALL
+Java_edu_cmu_cs_face_MainActivity_nativeGetTrackerStats(
+        JNIEnv *env,
+        jobject thiz,
+        jlong tracker_ptr) {
+
+    HybridTracker* tracker = reinterpret_cast<HybridTracker*>(tracker_ptr);
+    if (tracker == nullptr) {
+        LOGE("Tracker pointer is null!");
+        return env->NewLongArray(0);
+    }
+
+    BYTETracker::PoolStats byte_stats;
+    STrackPool::Stats klt_stats;
+    tracker->getPoolStats(byte_stats, klt_stats);
+
+    jlong result[11] = {
+            tracker->getFrameCount(),
+            byte_stats.tracks.acquired, byte_stats.tracks.reused,
+            byte_stats.tracks.live, byte_stats.tracks.capacity,
+            byte_stats.detections.acquired, byte_stats.detections.reused,
+            byte_stats.detections.capacity,
+            klt_stats.acquired, klt_stats.reused, klt_stats.capacity
+    };
+    jlongArray out = env->NewLongArray(11);
+    env->SetLongArrayRegion(out, 0, 11, result);
+    return out;
+}
+
+/**
+ * Kalman state of ByteTrack's tracked and lost tracks (HybridTracker::getTrackStates)
+ * Java: native float[] nativeGetTrackStates(long trackerPtr, int w, int h)
+ * Returns [trackId, cx, cy, w, h, vx, vy, vw, vh] per track, normalized, velocities
+ * per second; empty if the tracker is busy on another thread
+ */
+JNIEXPORT jfloatArray JNICALL
+Java_edu_cmu_cs_face_MainActivity_nativeGetTrackStates(
+        JNIEnv *env,
+        jobject thiz,
+        jlong tracker_ptr,
+        jint img_w,
+        jint img_h) {
+
+    HybridTracker* tracker = reinterpret_cast<HybridTracker*>(tracker_ptr);
+    if (tracker == nullptr) {
+        LOGE("Tracker pointer is null!");
+        return env->NewFloatArray(0);
+    }
+    TrackerCall call(tracker);
+    if (!call.entered) {
+        return env->NewFloatArray(0);
+    }
+
+    std::vector<float> states;
+    tracker->getTrackStates(states, img_w, img_h);
+    jfloatArray out = env->NewFloatArray((jsize)states.size());
+    if (out != nullptr) {
+        env->SetFloatArrayRegion(out, 0, (jsize)states.size(), states.data());
+    }
+    return out;
+}
+
+/**
+ * Snapshot of the full tracker state (HybridTracker::saveState) for a checkpoint
+ * Java: native byte[] nativeSaveTrackerState(long trackerPtr)
+ * Returns null if the tracker is busy on another thread
+ */
+JNIEXPORT jbyteArray JNICALL
+Java_edu_cmu_cs_face_MainActivity_nativeSaveTrackerState(
+        JNIEnv *env,
+        jobject thiz,
+        jlong tracker_ptr) {
+
+    HybridTracker* tracker = reinterpret_cast<HybridTracker*>(tracker_ptr);
+    if (tracker == nullptr) {
+        LOGE("Tracker pointer is null!");
+        return nullptr;
+    }
+    TrackerCall call(tracker);
+    if (!call.entered) {
+        return nullptr;
+    }
+
+    std::vector<uint8_t> state = tracker->saveState();
+    jbyteArray out = env->NewByteArray((jsize)state.size());
+    if (out != nullptr) {
+        env->SetByteArrayRegion(out, 0, (jsize)state.size(), reinterpret_cast<const jbyte*>(state.data()));
+    }
+    return out;
+}
+
+/**
+ * Restore a nativeSaveTrackerState snapshot into a tracker created with the same settings
+ * Java: native boolean nativeLoadTrackerState(long trackerPtr, byte[] state)
+ * Returns false (tracker reset) if the snapshot does not fit
+ */
+JNIEXPORT jboolean JNICALL
+Java_edu_cmu_cs_face_MainActivity_nativeLoadTrackerState(
+        JNIEnv *env,
+        jobject thiz,
+        jlong tracker_ptr,
+        jbyteArray state) {
+
+    HybridTracker* tracker = reinterpret_cast<HybridTracker*>(tracker_ptr);
+    if (tracker == nullptr || state == nullptr) {
+        LOGE("Tracker pointer or state is null!");
+        return JNI_FALSE;
+    }
+    TrackerCall call(tracker);
+    if (!call.entered) {
+        return JNI_FALSE;
+    }
+
+    jsize size = env->GetArrayLength(state);
+    jbyte* data = env->GetByteArrayElements(state, nullptr);
+    if (data == nullptr) {
+        return JNI_FALSE;
+    }
+    bool ok = tracker->loadState(reinterpret_cast<const uint8_t*>(data), (size_t)size);
+    env->ReleaseByteArrayElements(state, data, JNI_ABORT);
+    return ok ? JNI_TRUE : JNI_FALSE;
+}
+
+/**
+ * Benchmark iou_distance + LAPJV assignment on synthetic boxes (1280x720 scene).
+ * Detections are jittered copies of the tracks plus random extras, so the cost
+ * matrix looks like a crowded frame.
+ * Java: native float[] nativeBenchmarkAssignment(int numTracks, int numDetections,
+ *                                                int iterations, boolean sparse)
+ * Returns [mean_us, min_us, max_us, matches]
+ */
+JNIEXPORT jfloatArray JNICALL
+Java_edu_cmu_cs_face_MainActivity_nativeBenchmarkAssignment(
+        JNIEnv *env,
+        jobject thiz,
+        jint num_tracks,
+        jint num_detections,
+        jint iterations,
+        jboolean sparse) {
+
+    std::mt19937 rng(12345);
+    std::uniform_real_distribution<float> ux(0.f, 1180.f), uy(0.f, 500.f);
+    std::uniform_real_distribution<float> uw(30.f, 100.f), uh(60.f, 220.f);
+    std::uniform_real_distribution<float> jitter(-6.f, 6.f);
+
+    std::vector<STrack> tracks;
+    for (int i = 0; i < num_tracks; i++) {
+        std::vector<float> tlwh = {ux(rng), uy(rng), uw(rng), uh(rng)};
+        tracks.emplace_back(tlwh, 0.9f);
+    }
+    std::vector<STrack> detections;
+    for (int i = 0; i < num_detections; i++) {
+        std::vector<float> tlwh;
+        if (i < num_tracks) {
+            const auto& t = tracks[i]._tlwh;
+            tlwh = {t[0] + jitter(rng), t[1] + jitter(rng), t[2] + jitter(rng), t[3] + jitter(rng)};
+        } else {
+            tlwh = {ux(rng), uy(rng), uw(rng), uh(rng)};
+        }
+        detections.emplace_back(tlwh, 0.9f);
+    }
+
+    BYTETracker byte_tracker;
+    byte_tracker.set_sparse_assignment(sparse == JNI_TRUE);
+
+    int matches = 0;
+    double total_us = 0.0, min_us = 1e30, max_us = 0.0;
+    int runs = iterations > 0 ? iterations : 1;
+    for (int it = 0; it < runs; it++) {
+        auto start = std::chrono::steady_clock::now();
+        matches = byte_tracker.match_boxes(tracks, detections, 0.8f);
+        auto end = std::chrono::steady_clock::now();
+        double us = std::chrono::duration<double, std::micro>(end - start).count();
+        total_us += us;
+        min_us = std::min(min_us, us);
+        max_us = std::max(max_us, us);
+    }
+
+    jfloat result[4] = {(float)(total_us / runs), (float)min_us, (float)max_us, (float)matches};
+    jfloatArray out = env->NewFloatArray(4);
+    env->SetFloatArrayRegion(out, 0, 4, result);
+    LOGD("Assignment benchmark %dx%d (%s): mean=%.1fus min=%.1fus max=%.1fus matches=%d",
+         (int)num_tracks, (int)num_detections, sparse ? "sparse" : "dense",
+         result[0], result[1], result[2], matches);
+    return out;
+}
+
+/**
+ * Benchmark the batched Kalman filter against the scalar reference path on the same
+ * synthetic track set (predict, gating distance of every track to every measurement,
+ * update per iteration), and report how far they drift.
+ * Java: native float[] nativeBenchmarkKalman(int numTracks, int iterations)
+ * Returns [batch_mean_us, reference_mean_us, max_abs_diff]; gating distances count
+ * relative to max(1, distance), as they reach the thousands for far pairs
+ */
+JNIEXPORT jfloatArray JNICALL
+Java_edu_cmu_cs_face_MainActivity_nativeBenchmarkKalman(
+        JNIEnv *env,
+        jobject thiz,
+        jint num_tracks,
+        jint iterations) {
+
+    std::mt19937 rng(12345);
+    std::uniform_real_distribution<float> ux(0.f, 1280.f), uy(0.f, 720.f);
+    std::uniform_real_distribution<float> ua(0.3f, 0.6f), uh(60.f, 220.f);
+    std::uniform_real_distribution<float> jitter(-3.f, 3.f);
+
+    int n = num_tracks > 0 ? num_tracks : 1;
+    int runs = iterations > 0 ? iterations : 1;
+
+    byte_kalman::KalmanFilter kf;
+    byte_kalman::BatchKalmanFilter batch, reference;
+    reference.set_reference_mode(true);
+    std::vector<DETECTBOX> boxes(n);
+    std::vector<int> rows(n);
+    std::vector<float> gating_batch((size_t)n * n), gating_reference((size_t)n * n);
+    float max_diff = 0.f;
+    for (int i = 0; i < n; i++) {
+        boxes[i] << ux(rng), uy(rng), ua(rng), uh(rng);
+        KAL_DATA mc = kf.initiate(boxes[i]);
+        batch.load(i, mc.first, mc.second);
+        reference.load(i, mc.first, mc.second);
+        rows[i] = i;
+    }
+
+    double batch_us = 0.0, reference_us = 0.0;
+    for (int it = 0; it < runs; it++) {
+        for (int i = 0; i < n; i++) {
+            boxes[i](0) += jitter(rng);
+            boxes[i](1) += jitter(rng);
+            batch.set_measurement(i, boxes[i]);
+            reference.set_measurement(i, boxes[i]);
+        }
+
+        auto start = std::chrono::steady_clock::now();
+        batch.predict(rows);
+        batch.gating_distance(rows, boxes, gating_batch.data());
+        batch.update(rows);
+        auto mid = std::chrono::steady_clock::now();
+        reference.predict(rows);
+        reference.gating_distance(rows, boxes, gating_reference.data());
+        reference.update(rows);
+        auto end = std::chrono::steady_clock::now();
+
+        for (size_t k = 0; k < gating_batch.size(); k++) {
+            float d = gating_reference[k];
+            max_diff = std::max(max_diff, std::fabs(gating_batch[k] - d) / std::max(1.f, std::fabs(d)));
+        }
+
+        batch_us += std::chrono::duration<double, std::micro>(mid - start).count();
+        reference_us += std::chrono::duration<double, std::micro>(end - mid).count();
+    }
+
+    KAL_MEAN mean_a, mean_b;
+    KAL_COVA cov_a, cov_b;
+    for (int i = 0; i < n; i++) {
+        batch.store(i, mean_a, cov_a);
+        reference.store(i, mean_b, cov_b);
+        max_diff = std::max(max_diff, (mean_a - mean_b).cwiseAbs().maxCoeff());
+        max_diff = std::max(max_diff, (cov_a - cov_b).cwiseAbs().maxCoeff());
+    }
+
+    jfloat result[3] = {(float)(batch_us / runs), (float)(reference_us / runs), max_diff};
+    jfloatArray out = env->NewFloatArray(3);
+    env->SetFloatArrayRegion(out, 0, 3, result);
+    LOGD("Kalman benchmark %d tracks: batch=%.1fus reference=%.1fus max_diff=%g",
+         n, result[0], result[1], result[2]);
+    return out;
+}
+
 } // extern "C"
\ No newline at end of file
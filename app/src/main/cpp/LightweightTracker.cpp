@@ -11,8 +11,21 @@ using namespace std;
 const float MAX_SCALE_CHANGE_DOWN = 0.97f;
 const float MAX_SCALE_CHANGE_UP   = 1.03f;
 
+// Global motion: background points kept per frame, refreshed below GLOBAL_REFRESH_POINTS
+const int GLOBAL_MAX_POINTS = 150;
+const int GLOBAL_REFRESH_POINTS = 60;
+const int GLOBAL_MIN_INLIERS = 12;
+const double GLOBAL_RANSAC_THRESHOLD = 1.0; // pixels at KLT size
+
+static inline Point2f warpPoint(const Matx23f& m, const Point2f& p) {
+    return Point2f(m(0, 0) * p.x + m(0, 1) * p.y + m(0, 2),
+                   m(1, 0) * p.x + m(1, 1) * p.y + m(1, 2));
+}
+
 LightweightTracker::LightweightTracker(int original_width, int original_height, float scale)
-        : original_size(original_width, original_height), klt_scale(scale) {
+        : shared_pyramid(true), prev_pyramid_valid(false),
+          global_motion(false), motion_valid(false), klt_motion(Matx23f::eye()),
+          original_size(original_width, original_height), klt_scale(scale) {
     klt_size = cv::Size(original_width * klt_scale, original_height * klt_scale);
     // LOGD("LightweightTracker created (KLT)");
     // LOGD("Original size: %dx%d, KLT size: %dx%d (Scale: %.2f)",
@@ -51,6 +64,79 @@ vector<Point2f> LightweightTracker::extractFeaturePoints(const Mat& frame, const
     return points;
 }
 
+void LightweightTracker::setGlobalMotion(bool enabled) {
+    global_motion = enabled;
+    if (!enabled) {
+        bg_points.clear();
+        motion_valid = false;
+    }
+}
+
+bool LightweightTracker::getFrameMotion(Matx23f& motion) const {
+    if (!motion_valid) {
+        return false;
+    }
+    // Same rotation/scale at both sizes; only the translation scales
+    motion = klt_motion;
+    motion(0, 2) /= klt_scale;
+    motion(1, 2) /= klt_scale;
+    return true;
+}
+
+void LightweightTracker::selectBackgroundPoints(const Mat& gray) {
+    // Object points move on their own, so leave the boxes out
+    bg_mask.create(gray.size(), CV_8UC1);
+    bg_mask.setTo(Scalar(255));
+    Rect frame_rect(0, 0, gray.cols, gray.rows);
+    for (const TrackedObject& obj : tracked_objects) {
+        if (!obj.valid) {
+            continue;
+        }
+        Rect box(cvRound(obj.bbox.x * klt_scale), cvRound(obj.bbox.y * klt_scale),
+                 cvRound(obj.bbox.width * klt_scale), cvRound(obj.bbox.height * klt_scale));
+        bg_mask(box & frame_rect).setTo(Scalar(0));
+    }
+    goodFeaturesToTrack(gray, bg_points, GLOBAL_MAX_POINTS, 0.01, 15, bg_mask);
+}
+
+void LightweightTracker::estimateGlobalMotion(InputArray prev, InputArray curr) {
+    motion_valid = false;
+    if ((int)bg_points.size() < GLOBAL_MIN_INLIERS) {
+        return;
+    }
+
+    calcOpticalFlowPyrLK(prev, curr, bg_points, bg_new_points, bg_status, bg_err, Size(21, 21), 3);
+    bg_good_old.clear();
+    bg_good_new.clear();
+    for (size_t i = 0; i < bg_points.size(); i++) {
+        if (bg_status[i]) {
+            bg_good_old.push_back(bg_points[i]);
+            bg_good_new.push_back(bg_new_points[i]);
+        }
+    }
+    if ((int)bg_good_new.size() < GLOBAL_MIN_INLIERS) {
+        bg_points = bg_good_new;
+        return;
+    }
+
+    // Rotation, uniform scale and translation; moving people in the background are outliers
+    Mat m = estimateAffinePartial2D(bg_good_old, bg_good_new, bg_inliers, RANSAC, GLOBAL_RANSAC_THRESHOLD);
+
+    // Inliers carry on as the next frame's background points
+    bg_points.clear();
+    for (size_t i = 0; i < bg_good_new.size(); i++) {
+        if (i < bg_inliers.size() && bg_inliers[i]) {
+            bg_points.push_back(bg_good_new[i]);
+        }
+    }
+    if (m.empty() || (int)bg_points.size() < GLOBAL_MIN_INLIERS) {
+        return;
+    }
+    klt_motion = Matx23f(m.at<double>(0, 0), m.at<double>(0, 1), m.at<double>(0, 2),
+                         m.at<double>(1, 0), m.at<double>(1, 1), m.at<double>(1, 2));
+    motion_valid = true;
+}
+
 float LightweightTracker::calculateMedianScale(const vector<Point2f>& old_points,
                                                const vector<Point2f>& new_points) {
     if (old_points.empty() || old_points.size() != new_points.size()) {
@@ -104,6 +190,7 @@ void LightweightTracker::initializeTrackers(const Mat& frame,
 
     // Convert to grayscale
     prev_gray = small_gray;
+    prev_pyramid_valid = false;
     
     // Initialize trackers for each detection
     for (int i = 0; i < count; i++) {
@@ -139,7 +226,8 @@ void LightweightTracker::initializeTrackers(const Mat& frame,
         // Extract feature points for optical flow
         obj.points = extractFeaturePoints(prev_gray, klt_bbox);
 
-        if (obj.points.size() >= 4) {
+        // With global motion a featureless object can still follow the camera
+        if (obj.points.size() >= 4 || global_motion) {
             tracked_objects.push_back(obj);
             // LOGD("Initialized optical flow tracker for track_id=%d, class=%d, points=%zu",
                 //  track_ids[i], class_ids[i], obj.points.size());
@@ -147,6 +235,10 @@ void LightweightTracker::initializeTrackers(const Mat& frame,
             LOGW("Not enough feature points for track_id=%d", track_ids[i]);
         }
     }
+
+    if (global_motion) {
+        selectBackgroundPoints(prev_gray);
+    }
     
     // LOGD("Initialized %zu optical flow trackers from %d detections", 
         //  tracked_objects.size(), count);
@@ -169,133 +261,363 @@ int LightweightTracker::updateTrackers(const Mat& frame,
     if (prev_gray.empty()) {
         LOGW("No previous frame for optical flow");
         prev_gray = curr_gray.clone();
+        prev_pyramid_valid = false;
         return 0;
     }
-    
+
+    object_ok.assign(tracked_objects.size(), 0);
+    motion_valid = false;
+    if (!shared_pyramid || !trackSharedPyramid(curr_gray)) {
+        trackPerObject(curr_gray);
+    }
+
     int output_count = 0;
-    
+    for (size_t i = 0; i < tracked_objects.size(); i++) {
+        if (!object_ok[i]) {
+            continue;
+        }
+        const TrackedObject& obj = tracked_objects[i];
+        if (output_count < max_output_size) {
+            out_track_ids[output_count] = obj.track_id;
+            out_class_ids[output_count] = obj.class_id;
+            out_scores[output_count] = obj.score;
+            out_bboxes[output_count] = obj.bbox;
+            output_count++;
+        }
+    }
+
+    if (global_motion && (int)bg_points.size() < GLOBAL_REFRESH_POINTS) {
+        selectBackgroundPoints(curr_gray);
+    }
+
+    // curr_gray is a fresh buffer every frame, so it can be kept without a copy
+    prev_gray = curr_gray;
+
+    // LOGD("Updated %d/%zu optical flow trackers successfully",
+        //  output_count, tracked_objects.size());
+    return output_count;
+}
+
+void LightweightTracker::trackPerObject(const Mat& curr_gray) {
+    if (global_motion) {
+        try {
+            estimateGlobalMotion(prev_gray, curr_gray);
+        } catch (const cv::Exception& e) {
+            LOGW("Global motion exception: %s", e.what());
+            motion_valid = false;
+        }
+    }
+
     // Update each tracker using optical flow
     for (size_t i = 0; i < tracked_objects.size(); i++) {
         TrackedObject& obj = tracked_objects[i];
-        
-        if (!obj.valid || obj.points.empty()) {
+
+        if (!obj.valid || (obj.points.empty() && !motion_valid)) {
             continue;
         }
-        
+        if (obj.points.empty()) {
+            object_ok[i] = applyFlow(obj, nullptr, nullptr, curr_gray);
+            continue;
+        }
+
         // Track points using Lucas-Kanade optical flow
         vector<Point2f> new_points;
         vector<uchar> status;
         vector<float> err;
 
+        // Start from where the camera motion puts the points
+        int flags = 0;
+        if (motion_valid) {
+            new_points.resize(obj.points.size());
+            for (size_t j = 0; j < obj.points.size(); j++) {
+                new_points[j] = warpPoint(klt_motion, obj.points[j]);
+            }
+            flags = OPTFLOW_USE_INITIAL_FLOW;
+        }
+
         try {
             calcOpticalFlowPyrLK(prev_gray, curr_gray, obj.points, new_points,
-                                 status, err, Size(21, 21), 3);
+                                 status, err, Size(21, 21), 3,
+                                 TermCriteria(TermCriteria::COUNT + TermCriteria::EPS, 30, 0.01), flags);
         } catch (const cv::Exception& e) {
             LOGW("Optical flow exception for track_id=%d: %s", obj.track_id, e.what());
             obj.valid = false;
             continue;
         }
 
-        vector<Point2f> good_old_points, good_new_points;
-        for (size_t j = 0; j < status.size(); j++) {
-            if (status[j]) {
-                good_old_points.push_back(obj.points[j]);
-                good_new_points.push_back(new_points[j]);
-            }
+        object_ok[i] = applyFlow(obj, new_points.data(), status.data(), curr_gray);
+    }
+
+    // Pyramids were built inside each LK call; nothing cached for the next frame
+    prev_pyramid_valid = false;
+}
+
+bool LightweightTracker::trackSharedPyramid(const Mat& curr_gray) {
+    const Size win_size(21, 21);
+    const int max_level = 3;
+
+    // Gather all objects' points into one list; object i owns [offsets[i], offsets[i + 1])
+    all_points.clear();
+    point_offsets.clear();
+    for (size_t i = 0; i < tracked_objects.size(); i++) {
+        const TrackedObject& obj = tracked_objects[i];
+        point_offsets.push_back(all_points.size());
+        if (obj.valid && !obj.points.empty()) {
+            all_points.insert(all_points.end(), obj.points.begin(), obj.points.end());
         }
-        
-        // Update bounding box if we have enough good points
-        if (good_new_points.size() >= 4) {
-            // 1. 计算稳健的 "平均" 平移 (dx, dy)
-            float dx = 0, dy = 0;
-            for (size_t j = 0; j < good_new_points.size(); j++) {
-                dx += (good_new_points[j].x - good_old_points[j].x);
-                dy += (good_new_points[j].y - good_old_points[j].y);
-            }
-            dx /= good_new_points.size();
-            dy /= good_new_points.size();
-
-            // 2. 计算稳健的 "中位数" 缩放
-            float scale_change = calculateMedianScale(good_old_points, good_new_points);
-
-            // 3. [防抖] 约束缩放，防止微小抖动
-            scale_change = std::max(MAX_SCALE_CHANGE_DOWN, std::min(MAX_SCALE_CHANGE_UP, scale_change));
-
-            // 4. 获取当前的 klt_bbox
-            Rect2f klt_bbox(obj.bbox.x * klt_scale,
-                            obj.bbox.y * klt_scale,
-                            obj.bbox.width * klt_scale,
-                            obj.bbox.height * klt_scale);
-
-            // 5. 应用平移和缩放
-            // (我们从框的中心开始缩放，以保持稳定)
-            float old_w = klt_bbox.width;
-            float old_h = klt_bbox.height;
-            float new_w = old_w * scale_change;
-            float new_h = old_h * scale_change;
-
-            klt_bbox.x += dx - (new_w - old_w) / 2.0f; // 应用平移，并根据缩放调整x
-            klt_bbox.y += dy - (new_h - old_h) / 2.0f; // 应用平移，并根据缩放调整y
-            klt_bbox.width = new_w;
-            klt_bbox.height = new_h;
-            // ----------------------------------------------------
-
-            bool success = true; // 我们的逻辑总是成功的
-
-            if (success && isValidBoundingBox(klt_bbox, klt_size)) {
-                obj.bbox.x = klt_bbox.x / klt_scale;
-                obj.bbox.y = klt_bbox.y / klt_scale;
-                obj.bbox.width = klt_bbox.width / klt_scale;
-                obj.bbox.height = klt_bbox.height / klt_scale;
-                // === ADD THIS: Clamp to original frame size ===
-                obj.bbox.x = std::max(0.0f, obj.bbox.x);
-                obj.bbox.y = std::max(0.0f, obj.bbox.y);
-
-                if (obj.bbox.x + obj.bbox.width > original_size.width) {
-                    obj.bbox.width = original_size.width - obj.bbox.x;
-                }
-                if (obj.bbox.y + obj.bbox.height > original_size.height) {
-                    obj.bbox.height = original_size.height - obj.bbox.y;
-                }
-                obj.points = good_new_points;
-                obj.frames_tracked++;
-
-                if (obj.points.size() < 10) {
-                    // LOGD("Refreshing feature points for track_id=%d (only %zu remaining)",
-                        //  obj.track_id, obj.points.size());
-                    vector<Point2f> new_features = extractFeaturePoints(curr_gray, klt_bbox);
-                    obj.points.insert(obj.points.end(), new_features.begin(), new_features.end());
-                }
+    }
+    point_offsets.push_back(all_points.size());
+
+    // With global motion the pyramids are needed even when no object is tracked
+    bool track_objects = !all_points.empty();
+    if (!track_objects && !global_motion) {
+        prev_pyramid_valid = false;
+        return true;
+    }
 
-                if (output_count < max_output_size) {
-                    out_track_ids[output_count] = obj.track_id;
-                    out_class_ids[output_count] = obj.class_id;
-                    out_scores[output_count] = obj.score;
-                    out_bboxes[output_count] = obj.bbox;
-                    output_count++;
+    try {
+        if (!prev_pyramid_valid) {
+            buildOpticalFlowPyramid(prev_gray, prev_pyramid, win_size, max_level);
+        }
+        buildOpticalFlowPyramid(curr_gray, curr_pyramid, win_size, max_level);
+        if (global_motion) {
+            estimateGlobalMotion(prev_pyramid, curr_pyramid);
+        }
+        if (track_objects) {
+            // Start from where the camera motion puts the points
+            int flags = 0;
+            if (motion_valid) {
+                all_new_points.resize(all_points.size());
+                for (size_t j = 0; j < all_points.size(); j++) {
+                    all_new_points[j] = warpPoint(klt_motion, all_points[j]);
                 }
-            } else {
-                obj.valid = false;
-                LOGW("Optical flow tracker failed for track_id=%d after %d frames",
-                     obj.track_id, obj.frames_tracked);
+                flags = OPTFLOW_USE_INITIAL_FLOW;
             }
-        } else {
-            obj.valid = false;
-            LOGW("Not enough good points (%zu) for track_id=%d",
-                 good_new_points.size(), obj.track_id);
+            // LK already spreads the points over worker threads
+            calcOpticalFlowPyrLK(prev_pyramid, curr_pyramid, all_points, all_new_points,
+                                 all_status, all_err, win_size, max_level,
+                                 TermCriteria(TermCriteria::COUNT + TermCriteria::EPS, 30, 0.01), flags);
         }
+    } catch (const cv::Exception& e) {
+        LOGW("Shared-pyramid optical flow exception, falling back to per-object: %s", e.what());
+        prev_pyramid_valid = false;
+        return false;
     }
 
-    prev_gray = curr_gray.clone();
+    // Box updates only touch their own object, so they run in parallel as well
+    cv::parallel_for_(Range(0, (int)tracked_objects.size()), [&](const Range& range) {
+        for (int i = range.start; i < range.end; i++) {
+            TrackedObject& obj = tracked_objects[i];
+            if (!obj.valid || (obj.points.empty() && !motion_valid)) {
+                continue;
+            }
+            int offset = point_offsets[i];
+            object_ok[i] = applyFlow(obj, all_new_points.data() + offset, all_status.data() + offset, curr_gray);
+        }
+    });
 
-    // LOGD("Updated %d/%zu optical flow trackers successfully",
-        //  output_count, tracked_objects.size());
-    return output_count;
+    // This frame's pyramid is the next frame's previous one
+    std::swap(prev_pyramid, curr_pyramid);
+    prev_pyramid_valid = true;
+    return true;
+}
+
+bool LightweightTracker::applyFlow(TrackedObject& obj,
+                                   const Point2f* new_points,
+                                   const uchar* status,
+                                   const Mat& curr_gray) {
+    vector<Point2f> good_old_points, good_new_points;
+    for (size_t j = 0; j < obj.points.size(); j++) {
+        if (status[j]) {
+            good_old_points.push_back(obj.points[j]);
+            good_new_points.push_back(new_points[j]);
+        }
+    }
+
+    // 4. 获取当前的 klt_bbox
+    Rect2f klt_bbox(obj.bbox.x * klt_scale,
+                    obj.bbox.y * klt_scale,
+                    obj.bbox.width * klt_scale,
+                    obj.bbox.height * klt_scale);
+
+    float dx = 0, dy = 0;
+    float scale_change = 1.0f;
+    if (good_new_points.size() >= 4) {
+        // 1. 计算稳健的 "平均" 平移 (dx, dy)
+        for (size_t j = 0; j < good_new_points.size(); j++) {
+            dx += (good_new_points[j].x - good_old_points[j].x);
+            dy += (good_new_points[j].y - good_old_points[j].y);
+        }
+        dx /= good_new_points.size();
+        dy /= good_new_points.size();
+
+        // 2. 计算稳健的 "中位数" 缩放
+        scale_change = calculateMedianScale(good_old_points, good_new_points);
+    } else if (motion_valid) {
+        // Too few points of its own (occluded, blurred): the box moves with the camera
+        Point2f center(klt_bbox.x + klt_bbox.width / 2.0f, klt_bbox.y + klt_bbox.height / 2.0f);
+        Point2f moved = warpPoint(klt_motion, center);
+        dx = moved.x - center.x;
+        dy = moved.y - center.y;
+        scale_change = std::sqrt(std::abs(klt_motion(0, 0) * klt_motion(1, 1) - klt_motion(0, 1) * klt_motion(1, 0)));
+    } else {
+        // Update bounding box only if we have enough good points
+        obj.valid = false;
+        LOGW("Not enough good points (%zu) for track_id=%d",
+             good_new_points.size(), obj.track_id);
+        return false;
+    }
+
+    // 3. [防抖] 约束缩放，防止微小抖动
+    scale_change = std::max(MAX_SCALE_CHANGE_DOWN, std::min(MAX_SCALE_CHANGE_UP, scale_change));
+
+    // 5. 应用平移和缩放
+    // (我们从框的中心开始缩放，以保持稳定)
+    float old_w = klt_bbox.width;
+    float old_h = klt_bbox.height;
+    float new_w = old_w * scale_change;
+    float new_h = old_h * scale_change;
+
+    klt_bbox.x += dx - (new_w - old_w) / 2.0f; // 应用平移，并根据缩放调整x
+    klt_bbox.y += dy - (new_h - old_h) / 2.0f; // 应用平移，并根据缩放调整y
+    klt_bbox.width = new_w;
+    klt_bbox.height = new_h;
+    // ----------------------------------------------------
+
+    if (!isValidBoundingBox(klt_bbox, klt_size)) {
+        obj.valid = false;
+        LOGW("Optical flow tracker failed for track_id=%d after %d frames",
+             obj.track_id, obj.frames_tracked);
+        return false;
+    }
+
+    obj.bbox.x = klt_bbox.x / klt_scale;
+    obj.bbox.y = klt_bbox.y / klt_scale;
+    obj.bbox.width = klt_bbox.width / klt_scale;
+    obj.bbox.height = klt_bbox.height / klt_scale;
+    // === ADD THIS: Clamp to original frame size ===
+    obj.bbox.x = std::max(0.0f, obj.bbox.x);
+    obj.bbox.y = std::max(0.0f, obj.bbox.y);
+
+    if (obj.bbox.x + obj.bbox.width > original_size.width) {
+        obj.bbox.width = original_size.width - obj.bbox.x;
+    }
+    if (obj.bbox.y + obj.bbox.height > original_size.height) {
+        obj.bbox.height = original_size.height - obj.bbox.y;
+    }
+    obj.points = good_new_points;
+    obj.frames_tracked++;
+
+    if (obj.points.size() < 10) {
+        // LOGD("Refreshing feature points for track_id=%d (only %zu remaining)",
+            //  obj.track_id, obj.points.size());
+        vector<Point2f> new_features = extractFeaturePoints(curr_gray, klt_bbox);
+        obj.points.insert(obj.points.end(), new_features.begin(), new_features.end());
+    }
+    return true;
+}
+
+void LightweightTracker::writePoints(StateWriter& out, const vector<Point2f>& points) {
+    out.put<int32_t>((int32_t)points.size());
+    for (const Point2f& p : points) {
+        out.put<float>(p.x);
+        out.put<float>(p.y);
+    }
+}
+
+void LightweightTracker::readPoints(StateReader& in, vector<Point2f>& points) {
+    points.clear();
+    int32_t n = in.get<int32_t>();
+    for (int32_t i = 0; i < n && in.ok(); i++) {
+        float x = in.get<float>();
+        float y = in.get<float>();
+        points.emplace_back(x, y);
+    }
+}
+
+void LightweightTracker::saveState(StateWriter& out) const {
+    out.put<int32_t>(original_size.width);
+    out.put<int32_t>(original_size.height);
+    out.put<float>(klt_scale);
+    out.put<uint8_t>(shared_pyramid ? 1 : 0);
+    out.put<uint8_t>(global_motion ? 1 : 0);
+
+    out.put<int32_t>((int32_t)tracked_objects.size());
+    for (const TrackedObject& obj : tracked_objects) {
+        out.put<int32_t>(obj.track_id);
+        out.put<int32_t>(obj.class_id);
+        out.put<float>(obj.score);
+        out.put<float>(obj.bbox.x);
+        out.put<float>(obj.bbox.y);
+        out.put<float>(obj.bbox.width);
+        out.put<float>(obj.bbox.height);
+        out.put<uint8_t>(obj.valid ? 1 : 0);
+        out.put<int32_t>(obj.frames_tracked);
+        writePoints(out, obj.points);
+    }
+    writePoints(out, bg_points);
+
+    // Points are tracked from this frame into the next one
+    Mat gray = prev_gray.isContinuous() ? prev_gray : prev_gray.clone();
+    out.put<int32_t>(gray.cols);
+    out.put<int32_t>(gray.rows);
+    out.putBytes(gray.data, gray.total() * gray.elemSize());
+}
+
+bool LightweightTracker::loadState(StateReader& in) {
+    clearTrackers();
+    int width = in.get<int32_t>();
+    int height = in.get<int32_t>();
+    float scale = in.get<float>();
+    if (width != original_size.width || height != original_size.height || scale != klt_scale) {
+        LOGW("Checkpoint is for a %dx%d tracker at scale %.2f, not %dx%d at %.2f",
+             width, height, scale, original_size.width, original_size.height, klt_scale);
+        return false;
+    }
+    shared_pyramid = in.get<uint8_t>() != 0;
+    global_motion = in.get<uint8_t>() != 0;
+
+    int count = in.get<int32_t>();
+    for (int i = 0; i < count && in.ok(); i++) {
+        int track_id = in.get<int32_t>();
+        int class_id = in.get<int32_t>();
+        float score = in.get<float>();
+        Rect2f bbox;
+        bbox.x = in.get<float>();
+        bbox.y = in.get<float>();
+        bbox.width = in.get<float>();
+        bbox.height = in.get<float>();
+        TrackedObject obj(track_id, class_id, score, bbox);
+        obj.valid = in.get<uint8_t>() != 0;
+        obj.frames_tracked = in.get<int32_t>();
+        readPoints(in, obj.points);
+        tracked_objects.push_back(obj);
+    }
+    readPoints(in, bg_points);
+
+    int cols = in.get<int32_t>();
+    int rows = in.get<int32_t>();
+    if (cols < 0 || rows < 0) {
+        clearTrackers();
+        return false;
+    }
+    const uint8_t* pixels = in.getBytes((size_t)cols * rows);
+    if (!in.ok()) {
+        clearTrackers();
+        return false;
+    }
+    if (cols > 0 && rows > 0) {
+        prev_gray = Mat(rows, cols, CV_8UC1, const_cast<uint8_t*>(pixels)).clone();
+    }
+    return true;
 }
 
 void LightweightTracker::clearTrackers() {
     tracked_objects.clear();
     prev_gray.release();
+    prev_pyramid_valid = false;
+    bg_points.clear();
+    motion_valid = false;
     // LOGD("Cleared all optical flow trackers");
 }
 
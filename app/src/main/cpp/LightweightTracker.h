@@ -5,6 +5,7 @@
 #include <opencv2/video/tracking.hpp>
 #include <vector>
 #include <memory>
+#include "TrackerState.h"
 
 /**
  * Lightweight tracker for intermediate frames between YOLO detections.
@@ -77,15 +78,77 @@ public:
      * Get number of active trackers.
      */
     int getTrackerCount() const { return tracked_objects.size(); }
+
+    /**
+     * Shared-pyramid mode (default): build the image pyramid once per frame, keep the
+     * previous frame's pyramid, and track every object's points in one LK call.
+     * When disabled, each object runs its own calcOpticalFlowPyrLK (the old path).
+     */
+    void setSharedPyramid(bool enabled) { shared_pyramid = enabled; }
+    bool isSharedPyramid() const { return shared_pyramid; }
+
+    /**
+     * Global (camera) motion stage: track a sparse set of background points once per
+     * frame and fit one similarity transform to them (RANSAC). Object points start LK
+     * from where that transform puts them, and an object with too few good points of
+     * its own is carried by the camera motion instead of being dropped.
+     */
+    void setGlobalMotion(bool enabled);
+    bool isGlobalMotion() const { return global_motion; }
+
+    /**
+     * Camera motion from the previous frame to the last updated one, in original
+     * pixel coordinates (x' = M * [x, y, 1]).
+     * @return false if it could not be estimated (disabled, too few background points)
+     */
+    bool getFrameMotion(cv::Matx23f& motion) const;
+
+    /**
+     * Checkpoint of the tracked objects, their points, the previous (KLT-size) frame
+     * and the background points. loadState fails on a blob from a tracker with a
+     * different frame or KLT size and then leaves no objects.
+     */
+    void saveState(StateWriter& out) const;
+    bool loadState(StateReader& in);
     
 private:
     std::vector<TrackedObject> tracked_objects;
     cv::Mat prev_gray;
 
+    // Shared-pyramid state. prev_pyramid belongs to prev_gray and is rebuilt lazily
+    // after a keyframe replaces prev_gray.
+    bool shared_pyramid;
+    bool prev_pyramid_valid;
+    std::vector<cv::Mat> prev_pyramid;
+    std::vector<cv::Mat> curr_pyramid;
+    std::vector<cv::Point2f> all_points;
+    std::vector<cv::Point2f> all_new_points;
+    std::vector<uchar> all_status;
+    std::vector<float> all_err;
+    std::vector<int> point_offsets;
+    std::vector<char> object_ok;
+
+    // Global motion state. bg_points lie in prev_gray (KLT coordinates), outside the
+    // object boxes; klt_motion maps prev_gray to the current frame.
+    bool global_motion;
+    bool motion_valid;
+    cv::Matx23f klt_motion;
+    std::vector<cv::Point2f> bg_points;
+    std::vector<cv::Point2f> bg_new_points;
+    std::vector<cv::Point2f> bg_good_old;
+    std::vector<cv::Point2f> bg_good_new;
+    std::vector<uchar> bg_status;
+    std::vector<float> bg_err;
+    std::vector<uchar> bg_inliers;
+    cv::Mat bg_mask;
+
     cv::Size original_size;
     cv::Size klt_size;
     float klt_scale;
     
+    static void writePoints(StateWriter& out, const std::vector<cv::Point2f>& points);
+    static void readPoints(StateReader& in, std::vector<cv::Point2f>& points);
+
     /**
      * Extract feature points from a bounding box region.
      */
@@ -97,6 +160,37 @@ private:
     float calculateMedianScale(const std::vector<cv::Point2f>& old_points,
                                const std::vector<cv::Point2f>& new_points);
 
+    /**
+     * Track points with one LK call per object (original path).
+     */
+    void trackPerObject(const cv::Mat& curr_gray);
+
+    /**
+     * Track every object's points in a single LK call on cached pyramids.
+     * @return false if optical flow failed and the caller should fall back to trackPerObject
+     */
+    bool trackSharedPyramid(const cv::Mat& curr_gray);
+
+    /**
+     * Pick background points in gray (KLT size), away from every object box.
+     */
+    void selectBackgroundPoints(const cv::Mat& gray);
+
+    /**
+     * Track the background points from prev to curr (images or pyramids) and fit
+     * klt_motion; sets motion_valid.
+     */
+    void estimateGlobalMotion(cv::InputArray prev, cv::InputArray curr);
+
+    /**
+     * Move one object's box from its tracked points (mean shift + median scale).
+     * @return true if the object is still tracked
+     */
+    bool applyFlow(TrackedObject& obj,
+                   const cv::Point2f* new_points,
+                   const uchar* status,
+                   const cv::Mat& curr_gray);
+
     /**
      * Validate bounding box to ensure it's within frame bounds and reasonable size.
      */
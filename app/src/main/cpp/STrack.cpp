@@ -1,4 +1,5 @@
 #include "STrack.h"
+#include <atomic>
 
 STrack::STrack(vector<float> tlwh_, float score)
 {
@@ -19,31 +20,44 @@ STrack::STrack(vector<float> tlwh_, float score)
 	tracklet_len = 0;
 	this->score = score;
 	start_frame = 0;
+	kalman = 0;
+	kalman_row = -1;
 }
 
 STrack::~STrack()
 {
 }
 
-void STrack::activate(byte_kalman::KalmanFilter &kalman_filter, int frame_id)
+void STrack::reset(const vector<float> &tlwh_, float score)
 {
-	this->kalman_filter = kalman_filter;
+	_tlwh.assign(tlwh_.begin(), tlwh_.end());
+
+	is_activated = false;
+	track_id = 0;
+	class_id = -1;
+	state = TrackState::New;
+
+	tlwh.resize(4);
+	tlbr.resize(4);
+
+	static_tlwh();
+	static_tlbr();
+	frame_id = 0;
+	tracklet_len = 0;
+	this->score = score;
+	start_frame = 0;
+	kalman = 0;
+	kalman_row = -1;
+}
+
+void STrack::activate(byte_kalman::BatchKalmanFilter &kalman_filter, int row, int frame_id)
+{
+	this->kalman = &kalman_filter;
+	this->kalman_row = row;
 	this->track_id = this->next_id();
 
-	vector<float> _tlwh_tmp(4);
-	_tlwh_tmp[0] = this->_tlwh[0];
-	_tlwh_tmp[1] = this->_tlwh[1];
-	_tlwh_tmp[2] = this->_tlwh[2];
-	_tlwh_tmp[3] = this->_tlwh[3];
-	vector<float> xyah = tlwh_to_xyah(_tlwh_tmp);
-	DETECTBOX xyah_box;
-	xyah_box[0] = xyah[0];
-	xyah_box[1] = xyah[1];
-	xyah_box[2] = xyah[2];
-	xyah_box[3] = xyah[3];
-	auto mc = this->kalman_filter.initiate(xyah_box);
-	this->mean = mc.first;
-	this->covariance = mc.second;
+	DETECTBOX xyah_box = tlwh_to_xyah_box(this->_tlwh);
+	kalman->initiate(row, xyah_box);
 
 	static_tlwh();
 	static_tlbr();
@@ -59,21 +73,19 @@ void STrack::activate(byte_kalman::KalmanFilter &kalman_filter, int frame_id)
 	this->start_frame = frame_id;
 }
 
-void STrack::re_activate(STrack &new_track, int frame_id, bool new_id)
+void STrack::re_activate(const STrack &new_track, int frame_id, bool new_id)
 {
-	vector<float> xyah = tlwh_to_xyah(new_track.tlwh);
-	DETECTBOX xyah_box;
-	xyah_box[0] = xyah[0];
-	xyah_box[1] = xyah[1];
-	xyah_box[2] = xyah[2];
-	xyah_box[3] = xyah[3];
-	auto mc = this->kalman_filter.update(this->mean, this->covariance, xyah_box);
-	this->mean = mc.first;
-	this->covariance = mc.second;
+	DETECTBOX xyah_box = tlwh_to_xyah_box(new_track.tlwh);
+	kalman->update_one(kalman_row, xyah_box);
 
 	static_tlwh();
 	static_tlbr();
 
+	mark_reactivated(new_track, frame_id, new_id);
+}
+
+void STrack::mark_reactivated(const STrack &new_track, int frame_id, bool new_id)
+{
 	this->tracklet_len = 0;
 	this->state = TrackState::Tracked;
 	this->is_activated = true;
@@ -84,25 +96,21 @@ void STrack::re_activate(STrack &new_track, int frame_id, bool new_id)
 		this->track_id = next_id();
 }
 
-void STrack::update(STrack &new_track, int frame_id)
+void STrack::update(const STrack &new_track, int frame_id)
 {
-	this->frame_id = frame_id;
-	this->tracklet_len++;
-
-	vector<float> xyah = tlwh_to_xyah(new_track.tlwh);
-	DETECTBOX xyah_box;
-	xyah_box[0] = xyah[0];
-	xyah_box[1] = xyah[1];
-	xyah_box[2] = xyah[2];
-	xyah_box[3] = xyah[3];
-
-	auto mc = this->kalman_filter.update(this->mean, this->covariance, xyah_box);
-	this->mean = mc.first;
-	this->covariance = mc.second;
+	DETECTBOX xyah_box = tlwh_to_xyah_box(new_track.tlwh);
+	kalman->update_one(kalman_row, xyah_box);
 
 	static_tlwh();
 	static_tlbr();
 
+	mark_updated(new_track, frame_id);
+}
+
+void STrack::mark_updated(const STrack &new_track, int frame_id)
+{
+	this->frame_id = frame_id;
+	this->tracklet_len++;
 	this->state = TrackState::Tracked;
 	this->is_activated = true;
 
@@ -121,10 +129,10 @@ void STrack::static_tlwh()
 		return;
 	}
 
-	tlwh[0] = mean[0];
-	tlwh[1] = mean[1];
-	tlwh[2] = mean[2];
-	tlwh[3] = mean[3];
+	tlwh[0] = kalman->mean(kalman_row, 0);
+	tlwh[1] = kalman->mean(kalman_row, 1);
+	tlwh[2] = kalman->mean(kalman_row, 2);
+	tlwh[3] = kalman->mean(kalman_row, 3);
 
 	tlwh[2] *= tlwh[3];
 	tlwh[0] -= tlwh[2] / 2;
@@ -148,6 +156,19 @@ vector<float> STrack::tlwh_to_xyah(vector<float> tlwh_tmp)
 	return tlwh_output;
 }
 
+// Same arithmetic as tlwh_to_xyah, without the temporary vectors
+DETECTBOX STrack::tlwh_to_xyah_box(const vector<float> &tlwh_tmp)
+{
+	DETECTBOX xyah_box;
+	float w = tlwh_tmp[2];
+	float h = tlwh_tmp[3];
+	xyah_box[0] = tlwh_tmp[0] + w / 2;
+	xyah_box[1] = tlwh_tmp[1] + h / 2;
+	xyah_box[2] = w / h;
+	xyah_box[3] = h;
+	return xyah_box;
+}
+
 vector<float> STrack::to_xyah()
 {
 	return tlwh_to_xyah(tlwh);
@@ -170,11 +191,26 @@ void STrack::mark_removed()
 	state = TrackState::Removed;
 }
 
+// Shared by every tracker in the process; atomic so sequences can run on
+// parallel threads without handing out the same id twice
+static std::atomic<int> id_count(0);
+
 int STrack::next_id()
 {
-	static int _count = 0;
-	_count++;
-	return _count;
+	return ++id_count;
+}
+
+int STrack::last_id()
+{
+	return id_count.load();
+}
+
+void STrack::advance_ids(int id)
+{
+	int current = id_count.load();
+	while (current < id && !id_count.compare_exchange_weak(current, id))
+	{
+	}
 }
 
 int STrack::end_frame()
@@ -182,15 +218,38 @@ int STrack::end_frame()
 	return this->frame_id;
 }
 
-void STrack::multi_predict(vector<STrack*> &stracks, byte_kalman::KalmanFilter &kalman_filter)
+void STrack::multi_predict(const vector<STrack*> &stracks, const vector<int> &rows,
+	byte_kalman::BatchKalmanFilter &kalman_filter)
 {
 	for (int i = 0; i < stracks.size(); i++)
 	{
 		if (stracks[i]->state != TrackState::Tracked)
 		{
-			stracks[i]->mean[7] = 0;
+			kalman_filter.set_mean(rows[i], 7, 0);
 		}
-		kalman_filter.predict(stracks[i]->mean, stracks[i]->covariance);
+	}
+
+	kalman_filter.predict(rows);
+
+	for (int i = 0; i < stracks.size(); i++)
+	{
+		stracks[i]->static_tlwh();
+		stracks[i]->static_tlbr();
+	}
+}
+
+void STrack::multi_update(const vector<STrack*> &stracks, const vector<int> &rows,
+	const vector<const STrack*> &detections, byte_kalman::BatchKalmanFilter &kalman_filter)
+{
+	for (int i = 0; i < stracks.size(); i++)
+	{
+		kalman_filter.set_measurement(rows[i], tlwh_to_xyah_box(detections[i]->tlwh));
+	}
+
+	kalman_filter.update(rows);
+
+	for (int i = 0; i < stracks.size(); i++)
+	{
 		stracks[i]->static_tlwh();
 		stracks[i]->static_tlbr();
 	}
@@ -2,6 +2,7 @@
 
 #include <opencv2/opencv.hpp>
 #include "kalmanFilter.h"
+#include "BatchKalmanFilter.h"
 
 using namespace cv;
 using namespace std;
@@ -14,8 +15,18 @@ public:
 	STrack(vector<float> tlwh_, float score);
 	~STrack();
 
+	// Re-initialise in place as a fresh detection (same state as the constructor),
+	// reusing this track's buffers. Used by STrackPool slots.
+	void reset(const vector<float> &tlwh_, float score);
+
 	vector<float> static tlbr_to_tlwh(vector<float> &tlbr);
-	void static multi_predict(vector<STrack*> &stracks, byte_kalman::KalmanFilter &kalman_filter);
+	// Kalman predict of stracks in one batch; rows[i] is stracks[i]'s kalman_row
+	void static multi_predict(const vector<STrack*> &stracks, const vector<int> &rows,
+		byte_kalman::BatchKalmanFilter &kalman_filter);
+	// Kalman correction of stracks[i] with detections[i] for all pairs at once; the
+	// bookkeeping is left to mark_updated / mark_reactivated
+	void static multi_update(const vector<STrack*> &stracks, const vector<int> &rows,
+		const vector<const STrack*> &detections, byte_kalman::BatchKalmanFilter &kalman_filter);
 	void static_tlwh();
 	void static_tlbr();
 	vector<float> tlwh_to_xyah(vector<float> tlwh_tmp);
@@ -23,11 +34,19 @@ public:
 	void mark_lost();
 	void mark_removed();
 	int next_id();
+	// Highest id handed out so far; advance_ids makes later ids start above id
+	// (resuming a checkpoint whose tracks carry ids from an earlier process)
+	static int last_id();
+	static void advance_ids(int id);
 	int end_frame();
 	
-	void activate(byte_kalman::KalmanFilter &kalman_filter, int frame_id);
-	void re_activate(STrack &new_track, int frame_id, bool new_id = false);
-	void update(STrack &new_track, int frame_id);
+	// Start the Kalman state in row of kalman_filter, which holds it from now on
+	void activate(byte_kalman::BatchKalmanFilter &kalman_filter, int row, int frame_id);
+	void re_activate(const STrack &new_track, int frame_id, bool new_id = false);
+	void update(const STrack &new_track, int frame_id);
+	// update / re_activate without the Kalman step (already done by multi_update)
+	void mark_updated(const STrack &new_track, int frame_id);
+	void mark_reactivated(const STrack &new_track, int frame_id, bool new_id = false);
 
 public:
 	bool is_activated;
@@ -42,10 +61,11 @@ public:
 	int tracklet_len;
 	int start_frame;
 
-	KAL_MEAN mean;
-	KAL_COVA covariance;
+	// Row of the filter holding this track's Kalman state; none (null, -1) until activate
+	byte_kalman::BatchKalmanFilter *kalman;
+	int kalman_row;
 	float score;
 
 private:
-	byte_kalman::KalmanFilter kalman_filter;
+	static DETECTBOX tlwh_to_xyah_box(const vector<float> &tlwh_tmp);
 };
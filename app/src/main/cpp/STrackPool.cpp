@@ -0,0 +1,73 @@
+#include "STrackPool.h"
+
+STrackPool::STrackPool()
+{
+	live = 0;
+	acquired = 0;
+	reused = 0;
+}
+
+int STrackPool::acquire()
+{
+	acquired++;
+	live++;
+	if (!free_list.empty())
+	{
+		int handle = free_list.back();
+		free_list.pop_back();
+		used[handle] = 1;
+		reused++;
+		return handle;
+	}
+
+	slots.emplace_back(vector<float>(4, 0.f), 0.f);
+	used.push_back(1);
+	return (int)slots.size() - 1;
+}
+
+int STrackPool::acquire(const STrack &src)
+{
+	int handle = acquire();
+	slots[handle] = src;
+	return handle;
+}
+
+void STrackPool::release(int handle)
+{
+	if (!used[handle])
+		return;
+	used[handle] = 0;
+	free_list.push_back(handle);
+	live--;
+}
+
+void STrackPool::reset()
+{
+	// Lowest handles are handed out first again
+	free_list.clear();
+	for (int i = (int)slots.size() - 1; i >= 0; i--)
+	{
+		used[i] = 0;
+		free_list.push_back(i);
+	}
+	live = 0;
+}
+
+void STrackPool::release_unmarked(const vector<char> &keep)
+{
+	for (int i = 0; i < (int)slots.size(); i++)
+	{
+		if (used[i] && (i >= (int)keep.size() || !keep[i]))
+			release(i);
+	}
+}
+
+STrackPool::Stats STrackPool::stats() const
+{
+	Stats s;
+	s.acquired = acquired;
+	s.reused = reused;
+	s.live = live;
+	s.capacity = (int)slots.size();
+	return s;
+}
@@ -0,0 +1,49 @@
+#pragma once
+
+#include <deque>
+#include "STrack.h"
+
+/**
+ * Pool of STrack slots addressed by int handles.
+ *
+ * Slots live in a deque, so handles and STrack references stay valid while the pool
+ * grows. Released slots go on a free list and are overwritten in place by the next
+ * acquire, which reuses the slot's tlwh/tlbr buffers. Once a scene has reached its
+ * high-water mark, no more STracks are allocated.
+ */
+class STrackPool
+{
+public:
+	struct Stats
+	{
+		long long acquired; // total acquire() calls
+		long long reused;   // acquires served from the free list
+		int live;           // slots currently in use
+		int capacity;       // slots ever created (high-water mark)
+	};
+
+	STrackPool();
+
+	// Take a free slot. Its contents are stale; the caller overwrites them.
+	int acquire();
+	// Take a free slot and copy src into it
+	int acquire(const STrack &src);
+	void release(int handle);
+	// Release every slot (per-frame arena use)
+	void reset();
+	// Release every in-use slot whose keep[handle] is 0
+	void release_unmarked(const vector<char> &keep);
+
+	STrack &operator[](int handle) { return slots[handle]; }
+	const STrack &operator[](int handle) const { return slots[handle]; }
+	int capacity() const { return (int)slots.size(); }
+	Stats stats() const;
+
+private:
+	std::deque<STrack> slots;
+	vector<char> used;
+	vector<int> free_list;
+	int live;
+	long long acquired;
+	long long reused;
+};
@@ -0,0 +1,107 @@
+#ifndef TRACKER_STATE_H
+#define TRACKER_STATE_H
+
+#include <cstdint>
+#include <cstring>
+#include <vector>
+#include <type_traits>
+
+/**
+ * Flat binary tracker checkpoint (HybridTracker::saveState / loadState).
+ *
+ * Values are written in host byte order; a checkpoint is resumed by the same build
+ * on the same device, not exchanged between machines. Layout is versioned by the
+ * header HybridTracker writes.
+ */
+class StateWriter {
+public:
+    template <typename T>
+    void put(const T& value) {
+        static_assert(std::is_trivially_copyable<T>::value, "put() takes plain values");
+        append(&value, sizeof(T));
+    }
+
+    template <typename T>
+    void putVector(const std::vector<T>& values) {
+        static_assert(std::is_trivially_copyable<T>::value, "putVector() takes plain values");
+        put<int32_t>((int32_t)values.size());
+        append(values.data(), values.size() * sizeof(T));
+    }
+
+    void putBytes(const void* data, size_t size) {
+        put<int32_t>((int32_t)size);
+        append(data, size);
+    }
+
+    const std::vector<uint8_t>& bytes() const { return buffer; }
+
+private:
+    std::vector<uint8_t> buffer;
+
+    void append(const void* data, size_t size) {
+        const uint8_t* p = static_cast<const uint8_t*>(data);
+        buffer.insert(buffer.end(), p, p + size);
+    }
+};
+
+/**
+ * Reads what StateWriter wrote. Reads past the end (a truncated or foreign blob)
+ * leave values zeroed and make ok() false instead of reading out of bounds.
+ */
+class StateReader {
+public:
+    StateReader(const uint8_t* data, size_t size) : data(data), size(size), pos(0), failed(false) {
+    }
+
+    template <typename T>
+    T get() {
+        static_assert(std::is_trivially_copyable<T>::value, "get() returns plain values");
+        T value{};
+        take(&value, sizeof(T));
+        return value;
+    }
+
+    template <typename T>
+    bool getVector(std::vector<T>& values) {
+        int32_t n = get<int32_t>();
+        if (n < 0 || (size_t)n > (size - pos) / sizeof(T)) {
+            failed = true;
+            values.clear();
+            return false;
+        }
+        values.resize(n);
+        return take(values.data(), n * sizeof(T));
+    }
+
+    // Length-prefixed bytes; returns a pointer into the blob (nullptr on failure)
+    const uint8_t* getBytes(size_t expected) {
+        int32_t n = get<int32_t>();
+        if (n < 0 || (size_t)n != expected || expected > size - pos) {
+            failed = true;
+            return nullptr;
+        }
+        const uint8_t* p = data + pos;
+        pos += expected;
+        return p;
+    }
+
+    bool ok() const { return !failed; }
+
+private:
+    const uint8_t* data;
+    size_t size;
+    size_t pos;
+    bool failed;
+
+    bool take(void* out, size_t n) {
+        if (failed || n > size - pos) {
+            failed = true;
+            return false;
+        }
+        std::memcpy(out, data + pos, n);
+        pos += n;
+        return true;
+    }
+};
+
+#endif // TRACKER_STATE_H
@@ -0,0 +1,358 @@
+#include "benchmark.h"
+
+#include <algorithm>
+#include <cmath>
+#include <cstdio>
+#include <cstring>
+#include <fstream>
+#include <regex>
+#include <sstream>
+#include <thread>
+#include <unistd.h>
+
+namespace bench {
+
+namespace {
+
+std::vector<Benchmark>& registry() {
+    static std::vector<Benchmark> benchmarks;
+    return benchmarks;
+}
+
+struct Run {
+    std::string name;
+    std::string run_name;
+    std::string run_type;        // "iteration" or "aggregate"
+    std::string aggregate_name;
+    int repetition_index = 0;
+    int64_t iterations = 0;
+    double real_ns = 0;          // per iteration
+    double cpu_ns = 0;
+    std::string label;
+    std::string error;
+    std::map<std::string, double> counters;
+};
+
+std::string json_escape(const std::string& s) {
+    std::string out;
+    for (char c : s) {
+        if (c == '"' || c == '\\') {
+            out += '\\';
+        }
+        out += c;
+    }
+    return out;
+}
+
+Run run_once(const Benchmark& b, double min_time_s) {
+    // Grow the iteration count like google/benchmark: repeat until a run is long enough,
+    // predicting the next count from the last run (x1.4 margin, at most x10 per step)
+    int64_t iterations = 1;
+    while (true) {
+        State state(iterations, b.args);
+        b.fn(state);
+        double seconds = state.real_ns() / 1e9;
+        bool done = !state.error().empty() || seconds >= min_time_s || iterations >= 1000000000;
+        if (done) {
+            Run r;
+            r.name = b.name;
+            r.run_name = b.name;
+            r.run_type = "iteration";
+            r.iterations = state.iterations();
+            r.real_ns = r.iterations > 0 ? state.real_ns() / r.iterations : 0;
+            r.cpu_ns = r.iterations > 0 ? state.cpu_ns() / r.iterations : 0;
+            r.label = state.label();
+            r.error = state.error();
+            r.counters = state.counters;
+            return r;
+        }
+        double multiplier = seconds > 0 ? min_time_s * 1.4 / seconds : 10.0;
+        multiplier = std::min(10.0, std::max(multiplier, 1.0 + 1e-9));
+        int64_t next = (int64_t)std::ceil(iterations * multiplier);
+        iterations = std::max(next, iterations + 1);
+    }
+}
+
+std::vector<Run> aggregates(const std::vector<Run>& reps) {
+    std::vector<Run> out;
+    if (reps.size() < 2) {
+        return out;
+    }
+    auto stat = [&](const char* name, const std::function<double(std::vector<double>)>& f) {
+        Run a = reps[0];
+        a.name = reps[0].run_name + "_" + name;
+        a.run_type = "aggregate";
+        a.aggregate_name = name;
+        std::vector<double> real, cpu;
+        for (const Run& r : reps) {
+            real.push_back(r.real_ns);
+            cpu.push_back(r.cpu_ns);
+        }
+        a.real_ns = f(real);
+        a.cpu_ns = f(cpu);
+        for (auto& kv : a.counters) {
+            std::vector<double> values;
+            for (const Run& r : reps) {
+                auto it = r.counters.find(kv.first);
+                values.push_back(it != r.counters.end() ? it->second : 0);
+            }
+            kv.second = f(values);
+        }
+        out.push_back(a);
+    };
+    auto mean = [](std::vector<double> v) {
+        double s = 0;
+        for (double x : v) s += x;
+        return s / v.size();
+    };
+    stat("mean", mean);
+    stat("median", [](std::vector<double> v) {
+        std::sort(v.begin(), v.end());
+        size_t n = v.size();
+        return n % 2 ? v[n / 2] : (v[n / 2 - 1] + v[n / 2]) / 2;
+    });
+    stat("stddev", [&](std::vector<double> v) {
+        double m = mean(v), s = 0;
+        for (double x : v) s += (x - m) * (x - m);
+        return std::sqrt(s / (v.size() - 1));
+    });
+    return out;
+}
+
+// Pick the unit google/benchmark would use for the console
+void console_time(double ns, char* buf, size_t n) {
+    if (ns >= 1e6) {
+        snprintf(buf, n, "%.3f ms", ns / 1e6);
+    } else if (ns >= 1e3) {
+        snprintf(buf, n, "%.3f us", ns / 1e3);
+    } else {
+        snprintf(buf, n, "%.1f ns", ns);
+    }
+}
+
+void print_console(const Run& r, size_t name_width) {
+    if (!r.error.empty()) {
+        printf("%-*s ERROR: %s\n", (int)name_width, r.name.c_str(), r.error.c_str());
+        return;
+    }
+    char real[32], cpu[32];
+    console_time(r.real_ns, real, sizeof(real));
+    console_time(r.cpu_ns, cpu, sizeof(cpu));
+    printf("%-*s %14s %14s %10lld", (int)name_width, r.name.c_str(), real, cpu, (long long)r.iterations);
+    for (const auto& kv : r.counters) {
+        printf(" %s=%.4g", kv.first.c_str(), kv.second);
+    }
+    if (!r.label.empty()) {
+        printf(" %s", r.label.c_str());
+    }
+    printf("\n");
+    fflush(stdout);
+}
+
+void write_json(std::ostream& os, const std::vector<Run>& runs, const char* executable) {
+    char host[256] = {0};
+    gethostname(host, sizeof(host) - 1);
+    char date[64];
+    time_t now = time(nullptr);
+    strftime(date, sizeof(date), "%Y-%m-%dT%H:%M:%S%z", localtime(&now));
+
+    os << "{\n  \"context\": {\n";
+    os << "    \"date\": \"" << date << "\",\n";
+    os << "    \"host_name\": \"" << json_escape(host) << "\",\n";
+    os << "    \"executable\": \"" << json_escape(executable) << "\",\n";
+    os << "    \"num_cpus\": " << std::thread::hardware_concurrency() << ",\n";
+#ifdef NDEBUG
+    os << "    \"library_build_type\": \"release\"\n";
+#else
+    os << "    \"library_build_type\": \"debug\"\n";
+#endif
+    os << "  },\n  \"benchmarks\": [\n";
+    for (size_t i = 0; i < runs.size(); i++) {
+        const Run& r = runs[i];
+        os << "    {\n";
+        os << "      \"name\": \"" << json_escape(r.name) << "\",\n";
+        os << "      \"run_name\": \"" << json_escape(r.run_name) << "\",\n";
+        os << "      \"run_type\": \"" << r.run_type << "\",\n";
+        if (r.run_type == "aggregate") {
+            os << "      \"aggregate_name\": \"" << r.aggregate_name << "\",\n";
+        } else {
+            os << "      \"repetition_index\": " << r.repetition_index << ",\n";
+        }
+        if (!r.error.empty()) {
+            os << "      \"error_occurred\": true,\n";
+            os << "      \"error_message\": \"" << json_escape(r.error) << "\",\n";
+        }
+        os << "      \"iterations\": " << r.iterations << ",\n";
+        char buf[64];
+        snprintf(buf, sizeof(buf), "%.6g", r.real_ns);
+        os << "      \"real_time\": " << buf << ",\n";
+        snprintf(buf, sizeof(buf), "%.6g", r.cpu_ns);
+        os << "      \"cpu_time\": " << buf << ",\n";
+        for (const auto& kv : r.counters) {
+            snprintf(buf, sizeof(buf), "%.6g", kv.second);
+            os << "      \"" << json_escape(kv.first) << "\": " << buf << ",\n";
+        }
+        if (!r.label.empty()) {
+            os << "      \"label\": \"" << json_escape(r.label) << "\",\n";
+        }
+        os << "      \"time_unit\": \"ns\"\n";
+        os << "    }" << (i + 1 < runs.size() ? "," : "") << "\n";
+    }
+    os << "  ]\n}\n";
+}
+
+void write_csv(std::ostream& os, const std::vector<Run>& runs) {
+    // Fixed google/benchmark columns, then one column per counter name seen
+    std::vector<std::string> counter_names;
+    for (const Run& r : runs) {
+        for (const auto& kv : r.counters) {
+            if (std::find(counter_names.begin(), counter_names.end(), kv.first) == counter_names.end()) {
+                counter_names.push_back(kv.first);
+            }
+        }
+    }
+    os << "name,iterations,real_time,cpu_time,time_unit,label,error_occurred,error_message";
+    for (const auto& c : counter_names) {
+        os << "," << c;
+    }
+    os << "\n";
+    for (const Run& r : runs) {
+        os << "\"" << r.name << "\"," << r.iterations << "," << r.real_ns << "," << r.cpu_ns << ",ns,"
+           << "\"" << r.label << "\"," << (r.error.empty() ? "" : "true") << ",\"" << r.error << "\"";
+        for (const auto& c : counter_names) {
+            auto it = r.counters.find(c);
+            os << ",";
+            if (it != r.counters.end()) {
+                os << it->second;
+            }
+        }
+        os << "\n";
+    }
+}
+
+bool take_flag(const char* arg, const char* name, std::string& value) {
+    size_t n = strlen(name);
+    if (strncmp(arg, name, n) == 0 && arg[n] == '=') {
+        value = arg + n + 1;
+        return true;
+    }
+    return false;
+}
+
+}  // namespace
+
+void Register(const std::string& base, Function fn, const std::vector<std::vector<int64_t> >& arg_sets) {
+    for (const auto& args : arg_sets) {
+        std::string name = base;
+        for (int64_t a : args) {
+            name += "/" + std::to_string(a);
+        }
+        registry().push_back({name, fn, args});
+    }
+}
+
+void Register(const std::string& name, Function fn) {
+    registry().push_back({name, fn, {}});
+}
+
+int RunSpecifiedBenchmarks(int argc, char** argv) {
+    std::string filter = ".", format = "console", out, out_format = "json";
+    double min_time = 0.5;
+    int repetitions = 1;
+    bool list_only = false;
+    for (int i = 1; i < argc; i++) {
+        std::string v;
+        if (take_flag(argv[i], "--benchmark_filter", v)) {
+            filter = v;
+        } else if (take_flag(argv[i], "--benchmark_min_time", v)) {
+            min_time = atof(v.c_str());  // seconds; a trailing "s" is accepted
+        } else if (take_flag(argv[i], "--benchmark_repetitions", v)) {
+            repetitions = std::max(1, atoi(v.c_str()));
+        } else if (take_flag(argv[i], "--benchmark_format", v)) {
+            format = v;
+        } else if (take_flag(argv[i], "--benchmark_out", v)) {
+            out = v;
+        } else if (take_flag(argv[i], "--benchmark_out_format", v)) {
+            out_format = v;
+        } else if (strcmp(argv[i], "--benchmark_list_tests") == 0 ||
+                   strcmp(argv[i], "--benchmark_list_tests=true") == 0) {
+            list_only = true;
+        }
+    }
+
+    std::regex re(filter);
+    std::vector<const Benchmark*> selected;
+    size_t name_width = 10;
+    for (const Benchmark& b : registry()) {
+        if (std::regex_search(b.name, re)) {
+            selected.push_back(&b);
+            name_width = std::max(name_width, b.name.size() + (repetitions > 1 ? 7 : 0));
+        }
+    }
+    if (list_only) {
+        for (const Benchmark* b : selected) {
+            printf("%s\n", b->name.c_str());
+        }
+        return 0;
+    }
+    if (selected.empty()) {
+        fprintf(stderr, "No benchmark matches '%s'\n", filter.c_str());
+        return 1;
+    }
+
+    bool console = format == "console";
+    if (console) {
+        printf("%-*s %14s %14s %10s\n", (int)name_width, "Benchmark", "Time", "CPU", "Iterations");
+        printf("%s\n", std::string(name_width + 41, '-').c_str());
+    }
+
+    std::vector<Run> runs;
+    for (const Benchmark* b : selected) {
+        std::vector<Run> reps;
+        for (int rep = 0; rep < repetitions; rep++) {
+            Run r = run_once(*b, min_time);
+            r.repetition_index = rep;
+            if (console) {
+                print_console(r, name_width);
+            }
+            reps.push_back(r);
+            if (!r.error.empty()) {
+                break;
+            }
+        }
+        std::vector<Run> agg = aggregates(reps);
+        if (console) {
+            for (const Run& a : agg) {
+                print_console(a, name_width);
+            }
+        }
+        runs.insert(runs.end(), reps.begin(), reps.end());
+        runs.insert(runs.end(), agg.begin(), agg.end());
+    }
+
+    // Through stdio rather than std::cout, which the tracker code also writes to
+    if (format == "json" || format == "csv") {
+        std::ostringstream os;
+        if (format == "json") {
+            write_json(os, runs, argv[0]);
+        } else {
+            write_csv(os, runs);
+        }
+        fputs(os.str().c_str(), stdout);
+    }
+    if (!out.empty()) {
+        std::ofstream file(out);
+        if (!file) {
+            fprintf(stderr, "Cannot write %s\n", out.c_str());
+            return 1;
+        }
+        if (out_format == "csv") {
+            write_csv(file, runs);
+        } else {
+            write_json(file, runs, argv[0]);
+        }
+    }
+    return 0;
+}
+
+}  // namespace bench
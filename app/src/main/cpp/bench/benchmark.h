@@ -0,0 +1,117 @@
+#pragma once
+
+// Minimal Google Benchmark-style harness for the tracker sources.
+//
+// Same model as google/benchmark: a benchmark body loops `while (state.KeepRunning())`,
+// the harness grows the iteration count until a run takes --benchmark_min_time, and the
+// results are printed as a console table or written as JSON/CSV with the same field
+// names (name, run_type, iterations, real_time, cpu_time, time_unit, plus user
+// counters), so tools/compare.py from google/benchmark can diff two result files.
+// Kept dependency-free so it builds wherever the tracker builds.
+
+#include <chrono>
+#include <cstdint>
+#include <ctime>
+#include <functional>
+#include <map>
+#include <string>
+#include <vector>
+
+namespace bench {
+
+class State {
+public:
+    State(int64_t max_iterations, const std::vector<int64_t>& args)
+        : args_(args), max_iterations_(max_iterations) {}
+
+    bool KeepRunning() {
+        if (iterations_ == 0 && !started_) {
+            started_ = true;
+            ResumeTiming();
+        }
+        if (iterations_ < max_iterations_) {
+            iterations_++;
+            return true;
+        }
+        PauseTiming();
+        return false;
+    }
+
+    // Exclude per-iteration setup (re-initialising a tracker etc.) from the timing
+    void PauseTiming() {
+        if (!running_) {
+            return;
+        }
+        real_ns_ += std::chrono::duration<double, std::nano>(
+                std::chrono::steady_clock::now() - real_start_).count();
+        cpu_ns_ += process_cpu_ns() - cpu_start_;
+        running_ = false;
+    }
+
+    void ResumeTiming() {
+        if (running_) {
+            return;
+        }
+        real_start_ = std::chrono::steady_clock::now();
+        cpu_start_ = process_cpu_ns();
+        running_ = true;
+    }
+
+    int64_t range(size_t i) const { return i < args_.size() ? args_[i] : 0; }
+    int64_t iterations() const { return iterations_; }
+    void SetLabel(const std::string& label) { label_ = label; }
+    void SkipWithError(const std::string& msg) { error_ = msg; max_iterations_ = 0; }
+
+    // User counters, reported per run (averaged over iterations by the body if needed)
+    std::map<std::string, double> counters;
+
+    double real_ns() const { return real_ns_; }
+    double cpu_ns() const { return cpu_ns_; }
+    const std::string& label() const { return label_; }
+    const std::string& error() const { return error_; }
+
+private:
+    // Process CPU time, so work spread over OpenCV's thread pool is counted
+    static double process_cpu_ns() {
+        timespec ts;
+        clock_gettime(CLOCK_PROCESS_CPUTIME_ID, &ts);
+        return ts.tv_sec * 1e9 + ts.tv_nsec;
+    }
+
+    std::vector<int64_t> args_;
+    int64_t max_iterations_;
+    int64_t iterations_ = 0;
+    bool started_ = false;
+    bool running_ = false;
+    std::chrono::steady_clock::time_point real_start_;
+    double cpu_start_ = 0;
+    double real_ns_ = 0;
+    double cpu_ns_ = 0;
+    std::string label_;
+    std::string error_;
+};
+
+using Function = std::function<void(State&)>;
+
+struct Benchmark {
+    std::string name;          // full name including the argument suffix
+    Function fn;
+    std::vector<int64_t> args;
+};
+
+// Register `fn` once per argument tuple, named base/arg0/arg1/... like google/benchmark
+void Register(const std::string& base, Function fn, const std::vector<std::vector<int64_t> >& arg_sets);
+void Register(const std::string& name, Function fn);
+
+// Parses --benchmark_filter, --benchmark_min_time, --benchmark_repetitions,
+// --benchmark_format, --benchmark_out, --benchmark_out_format, --benchmark_list_tests
+// out of argv (other flags are left in place), runs and reports. Returns the exit code.
+int RunSpecifiedBenchmarks(int argc, char** argv);
+
+// Prevent the compiler from dropping a result that is otherwise unused
+template <class T>
+inline void DoNotOptimize(T const& value) {
+    asm volatile("" : : "r,m"(value) : "memory");
+}
+
+}  // namespace bench
@@ -0,0 +1,728 @@
+/**
+ * Microbenchmarks for the native tracker, built from the same sources as bytetrack_jni
+ * (host builds only, target tracker_bench).
+ *
+ * Synthetic benchmarks are parameterized by track count, detection count and frame size:
+ *   BM_iou_distance/<tracks>/<dets>, BM_lapjv/<tracks>/<dets>,
+ *   BM_match_boxes_{dense,sparse}/<tracks>/<dets>,
+ *   BM_KalmanFilter_{predict,update,gating_distance}/<tracks>,
+ *   BM_BatchKalman_{predict,update,gating_distance}/<tracks>,
+ *   BM_STrack_{multi_predict,activate,update}/<tracks>,
+ *   BM_updateTrackers_{shared,per_object}/<tracks>/<width>/<height>
+ *
+ * Fixture benchmarks replay the MOT17 result files in waste_data/ so the scene density
+ * (boxes per frame, overlap, motion between frames) is that of real sequences:
+ *   BM_fixture_{iou_distance,lapjv,match_boxes_sparse,BYTETracker_update,
+ *               updateTrackers,HybridTracker}/<sequence>
+ *
+ * Usage:
+ *   tracker_bench [--tracks=10,50,100,200] [--dets=10,50,100,200]
+ *                 [--frames=640x360,1280x720,1920x1080] [--mot_dir=waste_data]
+ *                 [--fixture_frame=1280x720] [--keyframe_interval=3]
+ *                 [--benchmark_filter=regex] [--benchmark_min_time=0.5]
+ *                 [--benchmark_repetitions=N] [--benchmark_format=console|json|csv]
+ *                 [--benchmark_out=results.json] [--benchmark_out_format=json|csv]
+ *
+ * The JSON follows google/benchmark's schema; compare two runs with its
+ * tools/compare.py benchmarks before.json after.json.
+ */
+
+#include "benchmark.h"
+
+#include "BYTETracker.h"
+#include "HybridTracker.h"
+#include "LightweightTracker.h"
+
+#include <dirent.h>
+#include <algorithm>
+#include <cstdlib>
+#include <cstring>
+#include <fstream>
+#include <iostream>
+#include <map>
+#include <memory>
+#include <random>
+#include <sstream>
+
+// Friend of BYTETracker: exposes the private association steps to the benchmarks
+struct BYTETrackerBench {
+    static void iou_distance(BYTETracker& t, const vector<STrack*>& a, const vector<STrack*>& b, CostMatrix& cost) {
+        t.iou_distance(a, b, cost);
+    }
+
+    static double lapjv(BYTETracker& t, const CostMatrix& cost, vector<int>& rowsol, vector<int>& colsol, float thresh) {
+        return t.lapjv(cost, rowsol, colsol, true, thresh);
+    }
+};
+
+namespace {
+
+const float MATCH_THRESH = 0.8f;
+
+struct Options {
+    std::vector<int64_t> tracks = {10, 50, 100, 200};
+    std::vector<int64_t> dets = {10, 50, 100, 200};
+    std::vector<std::pair<int64_t, int64_t> > frames = {{640, 360}, {1280, 720}, {1920, 1080}};
+    std::string mot_dir = "waste_data";
+    std::pair<int, int> fixture_frame = {1280, 720};
+    int keyframe_interval = 3;
+} options;
+
+// ---------------------------------------------------------------------------------
+// Synthetic inputs
+// ---------------------------------------------------------------------------------
+
+// Random boxes in a width x height frame, pedestrian-like aspect
+std::vector<std::vector<float> > random_boxes(int n, int width, int height, std::mt19937& rng) {
+    std::uniform_real_distribution<float> uw(0.025f * width, 0.08f * width), uh(0.08f * height, 0.3f * height);
+    std::vector<std::vector<float> > boxes;
+    for (int i = 0; i < n; i++) {
+        float w = uw(rng), h = uh(rng);
+        std::uniform_real_distribution<float> ux(0.f, width - w), uy(0.f, height - h);
+        boxes.push_back({ux(rng), uy(rng), w, h});
+    }
+    return boxes;
+}
+
+// Tracks and detections as in nativeBenchmarkAssignment: the first min(t, d) detections
+// are jittered copies of tracks, the rest are unrelated
+void track_det_sets(int num_tracks, int num_dets, std::vector<STrack>& tracks, std::vector<STrack>& dets) {
+    std::mt19937 rng(12345);
+    std::uniform_real_distribution<float> jitter(-6.f, 6.f);
+    auto track_boxes = random_boxes(num_tracks, 1280, 720, rng);
+    auto extra_boxes = random_boxes(num_dets, 1280, 720, rng);
+    tracks.clear();
+    dets.clear();
+    for (auto& b : track_boxes) {
+        tracks.emplace_back(b, 0.9f);
+    }
+    for (int i = 0; i < num_dets; i++) {
+        std::vector<float> tlwh = extra_boxes[i];
+        if (i < num_tracks) {
+            const auto& t = track_boxes[i];
+            tlwh = {t[0] + jitter(rng), t[1] + jitter(rng), t[2] + jitter(rng), t[3] + jitter(rng)};
+        }
+        dets.emplace_back(tlwh, 0.9f);
+    }
+}
+
+std::vector<STrack*> pointers(std::vector<STrack>& v) {
+    std::vector<STrack*> out;
+    for (auto& s : v) {
+        out.push_back(&s);
+    }
+    return out;
+}
+
+// Smoothed noise, so goodFeaturesToTrack finds corners everywhere; `next` is the same
+// texture moved by (dx, dy)
+void textured_frames(int width, int height, float dx, float dy, cv::Mat& frame, cv::Mat& next) {
+    frame.create(height, width, CV_8UC1);
+    cv::RNG rng(15821);
+    rng.fill(frame, cv::RNG::UNIFORM, 0, 256);
+    cv::GaussianBlur(frame, frame, cv::Size(5, 5), 1.5);
+    cv::Mat shift = (cv::Mat_<double>(2, 3) << 1, 0, dx, 0, 1, dy);
+    cv::warpAffine(frame, next, shift, frame.size(), cv::INTER_LINEAR, cv::BORDER_REFLECT);
+}
+
+// ---------------------------------------------------------------------------------
+// MOT17 fixtures
+// ---------------------------------------------------------------------------------
+
+struct FixtureBox {
+    float x, y, w, h, score;
+    int id;
+};
+
+struct MotFixture {
+    std::string name;
+    std::vector<std::vector<FixtureBox> > frames;   // index = frame number - 1
+    // Consecutive frame pairs as (tracks = frame k, detections = frame k + 1)
+    std::vector<std::vector<STrack> > strack_frames;
+    std::vector<std::vector<STrack*> > strack_ptrs;
+    double mean_boxes = 0;
+    int peak_boxes = 0;
+};
+
+std::vector<std::unique_ptr<MotFixture> > fixtures;
+
+bool load_fixture(const std::string& path, const std::string& name) {
+    std::ifstream in(path);
+    if (!in) {
+        return false;
+    }
+    auto fx = std::make_unique<MotFixture>();
+    fx->name = name;
+    std::string line;
+    while (std::getline(in, line)) {
+        std::vector<float> v;
+        std::stringstream ss(line);
+        std::string field;
+        while (std::getline(ss, field, ',') && v.size() < 7) {
+            v.push_back(strtof(field.c_str(), nullptr));
+        }
+        if (v.size() < 7 || v[0] < 1) {
+            continue;
+        }
+        size_t frame = (size_t)v[0];
+        if (fx->frames.size() < frame) {
+            fx->frames.resize(frame);
+        }
+        fx->frames[frame - 1].push_back({v[2], v[3], v[4], v[5], v[6], (int)v[1]});
+    }
+    if (fx->frames.size() < 2) {
+        return false;
+    }
+
+    size_t total = 0;
+    fx->strack_frames.resize(fx->frames.size());
+    for (size_t f = 0; f < fx->frames.size(); f++) {
+        for (const auto& b : fx->frames[f]) {
+            fx->strack_frames[f].emplace_back(std::vector<float>{b.x, b.y, b.w, b.h}, b.score);
+        }
+        total += fx->frames[f].size();
+        fx->peak_boxes = std::max(fx->peak_boxes, (int)fx->frames[f].size());
+    }
+    for (auto& frame : fx->strack_frames) {
+        fx->strack_ptrs.push_back(pointers(frame));
+    }
+    fx->mean_boxes = (double)total / fx->frames.size();
+    fixtures.push_back(std::move(fx));
+    return true;
+}
+
+void load_fixtures(const std::string& dir) {
+    DIR* d = opendir(dir.c_str());
+    if (d == nullptr) {
+        fprintf(stderr, "No fixture directory %s; fixture benchmarks skipped (--mot_dir)\n", dir.c_str());
+        return;
+    }
+    std::vector<std::string> files;
+    const std::string suffix = "-results.txt";
+    while (dirent* e = readdir(d)) {
+        std::string f = e->d_name;
+        if (f.size() > suffix.size() && f.compare(f.size() - suffix.size(), suffix.size(), suffix) == 0) {
+            files.push_back(f);
+        }
+    }
+    closedir(d);
+    std::sort(files.begin(), files.end());
+    for (const auto& f : files) {
+        load_fixture(dir + "/" + f, f.substr(0, f.size() - suffix.size()));
+    }
+}
+
+void density_counters(bench::State& state, const MotFixture& fx) {
+    state.counters["boxes_mean"] = fx.mean_boxes;
+    state.counters["boxes_peak"] = fx.peak_boxes;
+}
+
+// ---------------------------------------------------------------------------------
+// Association
+// ---------------------------------------------------------------------------------
+
+void BM_iou_distance(bench::State& state) {
+    std::vector<STrack> tracks, dets;
+    track_det_sets(state.range(0), state.range(1), tracks, dets);
+    auto a = pointers(tracks), b = pointers(dets);
+    BYTETracker tracker;
+    CostMatrix cost;
+    while (state.KeepRunning()) {
+        BYTETrackerBench::iou_distance(tracker, a, b, cost);
+        bench::DoNotOptimize(cost.data.data());
+    }
+}
+
+void BM_lapjv(bench::State& state) {
+    std::vector<STrack> tracks, dets;
+    track_det_sets(state.range(0), state.range(1), tracks, dets);
+    auto a = pointers(tracks), b = pointers(dets);
+    BYTETracker tracker;
+    CostMatrix cost;
+    BYTETrackerBench::iou_distance(tracker, a, b, cost);
+    vector<int> rowsol, colsol;
+    while (state.KeepRunning()) {
+        BYTETrackerBench::lapjv(tracker, cost, rowsol, colsol, MATCH_THRESH);
+        bench::DoNotOptimize(rowsol.data());
+    }
+    state.counters["matches"] = std::count_if(rowsol.begin(), rowsol.end(), [](int c) { return c >= 0; });
+}
+
+void match_boxes(bench::State& state, bool sparse) {
+    std::vector<STrack> tracks, dets;
+    track_det_sets(state.range(0), state.range(1), tracks, dets);
+    BYTETracker tracker;
+    tracker.set_sparse_assignment(sparse);
+    int matches = 0;
+    while (state.KeepRunning()) {
+        matches = tracker.match_boxes(tracks, dets, MATCH_THRESH);
+    }
+    state.counters["matches"] = matches;
+}
+
+void BM_match_boxes_dense(bench::State& state) {
+    match_boxes(state, false);
+}
+
+void BM_match_boxes_sparse(bench::State& state) {
+    match_boxes(state, true);
+}
+
+// ---------------------------------------------------------------------------------
+// Kalman filter and STrack
+// ---------------------------------------------------------------------------------
+
+struct KalmanSet {
+    std::vector<KAL_MEAN> means;
+    std::vector<KAL_COVA> covs;
+    std::vector<DETECTBOX> measurements;
+
+    explicit KalmanSet(int n) {
+        std::mt19937 rng(7);
+        byte_kalman::KalmanFilter kf;
+        auto boxes = random_boxes(n, 1280, 720, rng);
+        std::uniform_real_distribution<float> jitter(-3.f, 3.f);
+        for (auto& b : boxes) {
+            DETECTBOX xyah;
+            xyah << b[0] + b[2] / 2, b[1] + b[3] / 2, b[2] / b[3], b[3];
+            auto mc = kf.initiate(xyah);
+            means.push_back(mc.first);
+            covs.push_back(mc.second);
+            DETECTBOX z = xyah;
+            z(0) += jitter(rng);
+            z(1) += jitter(rng);
+            measurements.push_back(z);
+        }
+    }
+};
+
+void BM_KalmanFilter_predict(bench::State& state) {
+    KalmanSet set(state.range(0));
+    byte_kalman::KalmanFilter kf;
+    while (state.KeepRunning()) {
+        for (size_t i = 0; i < set.means.size(); i++) {
+            kf.predict(set.means[i], set.covs[i]);
+        }
+        bench::DoNotOptimize(set.means.data());
+    }
+}
+
+void BM_KalmanFilter_update(bench::State& state) {
+    KalmanSet set(state.range(0));
+    byte_kalman::KalmanFilter kf;
+    while (state.KeepRunning()) {
+        for (size_t i = 0; i < set.means.size(); i++) {
+            auto mc = kf.update(set.means[i], set.covs[i], set.measurements[i]);
+            set.means[i] = mc.first;
+            set.covs[i] = mc.second;
+        }
+        bench::DoNotOptimize(set.means.data());
+    }
+}
+
+// Every track against every measurement
+void BM_KalmanFilter_gating_distance(bench::State& state) {
+    KalmanSet set(state.range(0));
+    byte_kalman::KalmanFilter kf;
+    while (state.KeepRunning()) {
+        for (size_t i = 0; i < set.means.size(); i++) {
+            auto d = kf.gating_distance(set.means[i], set.covs[i], set.measurements);
+            bench::DoNotOptimize(d.data());
+        }
+    }
+}
+
+// Rows 0..n-1 of batch, one per track of set
+std::vector<int> load_batch(byte_kalman::BatchKalmanFilter& batch, const KalmanSet& set) {
+    std::vector<int> rows;
+    for (size_t i = 0; i < set.means.size(); i++) {
+        batch.load(i, set.means[i], set.covs[i]);
+        batch.set_measurement(i, set.measurements[i]);
+        rows.push_back(i);
+    }
+    return rows;
+}
+
+void BM_BatchKalman_predict(bench::State& state) {
+    KalmanSet set(state.range(0));
+    byte_kalman::BatchKalmanFilter batch;
+    auto rows = load_batch(batch, set);
+    while (state.KeepRunning()) {
+        batch.predict(rows);
+    }
+}
+
+void BM_BatchKalman_update(bench::State& state) {
+    KalmanSet set(state.range(0));
+    byte_kalman::BatchKalmanFilter batch;
+    auto rows = load_batch(batch, set);
+    while (state.KeepRunning()) {
+        batch.update(rows);
+    }
+}
+
+void BM_BatchKalman_gating_distance(bench::State& state) {
+    KalmanSet set(state.range(0));
+    byte_kalman::BatchKalmanFilter batch;
+    auto rows = load_batch(batch, set);
+    std::vector<float> distances(rows.size() * set.measurements.size());
+    while (state.KeepRunning()) {
+        batch.gating_distance(rows, set.measurements, distances.data());
+        bench::DoNotOptimize(distances.data());
+    }
+}
+
+void BM_STrack_multi_predict(bench::State& state) {
+    std::vector<STrack> tracks, dets;
+    track_det_sets(state.range(0), 0, tracks, dets);
+    byte_kalman::BatchKalmanFilter batch;
+    std::vector<int> rows;
+    for (size_t i = 0; i < tracks.size(); i++) {
+        tracks[i].activate(batch, i, 1);
+        rows.push_back(i);
+    }
+    auto ptrs = pointers(tracks);
+    while (state.KeepRunning()) {
+        STrack::multi_predict(ptrs, rows, batch);
+    }
+}
+
+void BM_STrack_activate(bench::State& state) {
+    std::vector<STrack> tracks, dets;
+    track_det_sets(state.range(0), 0, tracks, dets);
+    std::vector<std::vector<float> > boxes;
+    for (auto& t : tracks) {
+        boxes.push_back(t._tlwh);
+    }
+    byte_kalman::BatchKalmanFilter batch;
+    while (state.KeepRunning()) {
+        for (size_t i = 0; i < tracks.size(); i++) {
+            tracks[i].reset(boxes[i], 0.9f);
+            tracks[i].activate(batch, i, 2);
+        }
+    }
+}
+
+void BM_STrack_update(bench::State& state) {
+    int n = state.range(0);
+    std::vector<STrack> tracks, dets;
+    track_det_sets(n, n, tracks, dets);
+    byte_kalman::BatchKalmanFilter batch;
+    for (int i = 0; i < n; i++) {
+        tracks[i].activate(batch, i, 1);
+    }
+    int frame = 2;
+    while (state.KeepRunning()) {
+        for (int i = 0; i < n; i++) {
+            tracks[i].update(dets[i], frame);
+        }
+        frame++;
+    }
+}
+
+// ---------------------------------------------------------------------------------
+// KLT (LightweightTracker::updateTrackers)
+// ---------------------------------------------------------------------------------
+
+struct KltInput {
+    std::vector<int> ids, classes;
+    std::vector<float> scores;
+    std::vector<cv::Rect2f> boxes;
+
+    void add(int id, float score, const cv::Rect2f& box) {
+        ids.push_back(id);
+        classes.push_back(0);
+        scores.push_back(score);
+        boxes.push_back(box);
+    }
+};
+
+// One iteration = initializeTrackers on `frame` (untimed) + updateTrackers on `next`
+int run_update_trackers(bench::State& state, LightweightTracker& lt, const cv::Mat& frame, const cv::Mat& next,
+                        const KltInput& in, KltInput& out) {
+    int n = (int)in.boxes.size();
+    out.ids.resize(std::max(n, 1));
+    out.classes.resize(std::max(n, 1));
+    out.scores.resize(std::max(n, 1));
+    out.boxes.resize(std::max(n, 1));
+    state.PauseTiming();
+    lt.initializeTrackers(frame, in.ids.data(), in.classes.data(), in.scores.data(), in.boxes.data(), n);
+    state.ResumeTiming();
+    return lt.updateTrackers(next, out.ids.data(), out.classes.data(), out.scores.data(), out.boxes.data(), n);
+}
+
+void update_trackers(bench::State& state, bool shared) {
+    int n = state.range(0), width = state.range(1), height = state.range(2);
+    cv::Mat frame, next;
+    textured_frames(width, height, 2.f, 1.f, frame, next);
+    std::mt19937 rng(99);
+    KltInput in, out;
+    int id = 1;
+    for (auto& b : random_boxes(n, width, height, rng)) {
+        in.add(id++, 0.9f, cv::Rect2f(b[0], b[1], b[2], b[3]));
+    }
+    LightweightTracker lt(width, height);
+    lt.setSharedPyramid(shared);
+    double tracked = 0;
+    while (state.KeepRunning()) {
+        tracked += run_update_trackers(state, lt, frame, next, in, out);
+    }
+    state.counters["tracked"] = state.iterations() > 0 ? tracked / state.iterations() : 0;
+}
+
+void BM_updateTrackers_shared(bench::State& state) {
+    update_trackers(state, true);
+}
+
+void BM_updateTrackers_per_object(bench::State& state) {
+    update_trackers(state, false);
+}
+
+// ---------------------------------------------------------------------------------
+// MOT17 fixtures: one iteration = one frame (or frame pair) of the sequence, cycling
+// ---------------------------------------------------------------------------------
+
+void BM_fixture_iou_distance(bench::State& state, const MotFixture& fx) {
+    BYTETracker tracker;
+    CostMatrix cost;
+    size_t k = 0, pairs = fx.frames.size() - 1;
+    while (state.KeepRunning()) {
+        BYTETrackerBench::iou_distance(tracker, fx.strack_ptrs[k], fx.strack_ptrs[k + 1], cost);
+        bench::DoNotOptimize(cost.data.data());
+        k = (k + 1) % pairs;
+    }
+    density_counters(state, fx);
+}
+
+void BM_fixture_lapjv(bench::State& state, const MotFixture& fx) {
+    BYTETracker tracker;
+    size_t pairs = fx.frames.size() - 1;
+    std::vector<CostMatrix> costs(pairs);
+    for (size_t k = 0; k < pairs; k++) {
+        BYTETrackerBench::iou_distance(tracker, fx.strack_ptrs[k], fx.strack_ptrs[k + 1], costs[k]);
+    }
+    vector<int> rowsol, colsol;
+    size_t k = 0;
+    while (state.KeepRunning()) {
+        if (!costs[k].empty()) {
+            BYTETrackerBench::lapjv(tracker, costs[k], rowsol, colsol, MATCH_THRESH);
+            bench::DoNotOptimize(rowsol.data());
+        }
+        k = (k + 1) % pairs;
+    }
+    density_counters(state, fx);
+}
+
+void BM_fixture_match_boxes_sparse(bench::State& state, const MotFixture& fx) {
+    BYTETracker tracker;
+    tracker.set_sparse_assignment(true);
+    auto frames = fx.strack_frames;  // match_boxes takes non-const vectors
+    size_t k = 0, pairs = frames.size() - 1;
+    while (state.KeepRunning()) {
+        bench::DoNotOptimize(tracker.match_boxes(frames[k], frames[k + 1], MATCH_THRESH));
+        k = (k + 1) % pairs;
+    }
+    density_counters(state, fx);
+}
+
+std::vector<std::vector<Object> > fixture_objects(const MotFixture& fx) {
+    std::vector<std::vector<Object> > objects(fx.frames.size());
+    for (size_t f = 0; f < fx.frames.size(); f++) {
+        for (const auto& b : fx.frames[f]) {
+            Object o;
+            o.rect = cv::Rect_<float>(b.x, b.y, b.w, b.h);
+            o.label = 0;
+            o.prob = b.score;
+            objects[f].push_back(o);
+        }
+    }
+    return objects;
+}
+
+void BM_fixture_BYTETracker_update(bench::State& state, const MotFixture& fx) {
+    auto objects = fixture_objects(fx);
+    auto tracker = std::make_unique<BYTETracker>(30, 30);
+    size_t f = 0;
+    double outputs = 0;
+    while (state.KeepRunning()) {
+        outputs += tracker->update(objects[f]).size();
+        if (++f == objects.size()) {
+            state.PauseTiming();
+            tracker = std::make_unique<BYTETracker>(30, 30);
+            f = 0;
+            state.ResumeTiming();
+        }
+    }
+    density_counters(state, fx);
+    state.counters["tracks_out"] = state.iterations() > 0 ? outputs / state.iterations() : 0;
+}
+
+void BM_fixture_updateTrackers(bench::State& state, const MotFixture& fx) {
+    int width = options.fixture_frame.first, height = options.fixture_frame.second;
+    cv::Mat frame, next;
+    textured_frames(width, height, 2.f, 1.f, frame, next);
+    std::vector<KltInput> inputs(fx.frames.size());
+    for (size_t f = 0; f < fx.frames.size(); f++) {
+        for (const auto& b : fx.frames[f]) {
+            inputs[f].add(b.id, b.score, cv::Rect2f(b.x, b.y, b.w, b.h));
+        }
+    }
+    LightweightTracker lt(width, height);
+    KltInput out;
+    size_t f = 0;
+    double tracked = 0;
+    while (state.KeepRunning()) {
+        tracked += run_update_trackers(state, lt, frame, next, inputs[f], out);
+        f = (f + 1) % inputs.size();
+    }
+    density_counters(state, fx);
+    state.counters["tracked"] = state.iterations() > 0 ? tracked / state.iterations() : 0;
+}
+
+// Full keyframe/intermediate cycle; iteration = one frame
+void BM_fixture_HybridTracker(bench::State& state, const MotFixture& fx) {
+    int width = options.fixture_frame.first, height = options.fixture_frame.second;
+    auto objects = fixture_objects(fx);
+    cv::Mat frames[2];
+    textured_frames(width, height, 2.f, 1.f, frames[0], frames[1]);
+    auto make = [&] {
+        return std::make_unique<HybridTracker>(30, 30, options.keyframe_interval, width, height);
+    };
+    auto tracker = make();
+    size_t f = 0;
+    while (state.KeepRunning()) {
+        const cv::Mat& frame = frames[f & 1];
+        if (tracker->isKeyframe()) {
+            bench::DoNotOptimize(tracker->updateWithDetections(frame, objects[f], width, height).size());
+        } else {
+            bench::DoNotOptimize(tracker->updateWithoutDetections(frame, width, height).size());
+        }
+        if (++f == objects.size()) {
+            state.PauseTiming();
+            tracker = make();
+            f = 0;
+            state.ResumeTiming();
+        }
+    }
+    density_counters(state, fx);
+}
+
+// ---------------------------------------------------------------------------------
+// Flags and registration
+// ---------------------------------------------------------------------------------
+
+std::vector<int64_t> parse_list(const std::string& s) {
+    std::vector<int64_t> out;
+    std::stringstream ss(s);
+    std::string item;
+    while (std::getline(ss, item, ',')) {
+        if (!item.empty()) {
+            out.push_back(atoll(item.c_str()));
+        }
+    }
+    return out;
+}
+
+std::pair<int64_t, int64_t> parse_size(const std::string& s) {
+    size_t x = s.find('x');
+    if (x == std::string::npos) {
+        return {0, 0};
+    }
+    return {atoll(s.substr(0, x).c_str()), atoll(s.substr(x + 1).c_str())};
+}
+
+void parse_options(int argc, char** argv) {
+    for (int i = 1; i < argc; i++) {
+        std::string arg = argv[i];
+        size_t eq = arg.find('=');
+        if (eq == std::string::npos) {
+            continue;
+        }
+        std::string key = arg.substr(0, eq), value = arg.substr(eq + 1);
+        if (key == "--tracks") {
+            options.tracks = parse_list(value);
+        } else if (key == "--dets") {
+            options.dets = parse_list(value);
+        } else if (key == "--frames") {
+            options.frames.clear();
+            std::stringstream ss(value);
+            std::string item;
+            while (std::getline(ss, item, ',')) {
+                auto size = parse_size(item);
+                if (size.first > 0 && size.second > 0) {
+                    options.frames.push_back(size);
+                }
+            }
+        } else if (key == "--mot_dir") {
+            options.mot_dir = value;
+        } else if (key == "--fixture_frame") {
+            auto size = parse_size(value);
+            if (size.first > 0 && size.second > 0) {
+                options.fixture_frame = {(int)size.first, (int)size.second};
+            }
+        } else if (key == "--keyframe_interval") {
+            options.keyframe_interval = std::max(1, atoi(value.c_str()));
+        }
+    }
+}
+
+void register_benchmarks() {
+    std::vector<std::vector<int64_t> > track_det, track_only, track_frame;
+    for (int64_t t : options.tracks) {
+        track_only.push_back({t});
+        for (int64_t d : options.dets) {
+            track_det.push_back({t, d});
+        }
+        for (const auto& fr : options.frames) {
+            track_frame.push_back({t, fr.first, fr.second});
+        }
+    }
+
+    bench::Register("BM_iou_distance", BM_iou_distance, track_det);
+    bench::Register("BM_lapjv", BM_lapjv, track_det);
+    bench::Register("BM_match_boxes_dense", BM_match_boxes_dense, track_det);
+    bench::Register("BM_match_boxes_sparse", BM_match_boxes_sparse, track_det);
+    bench::Register("BM_KalmanFilter_predict", BM_KalmanFilter_predict, track_only);
+    bench::Register("BM_KalmanFilter_update", BM_KalmanFilter_update, track_only);
+    bench::Register("BM_BatchKalman_predict", BM_BatchKalman_predict, track_only);
+    bench::Register("BM_BatchKalman_update", BM_BatchKalman_update, track_only);
+    bench::Register("BM_KalmanFilter_gating_distance", BM_KalmanFilter_gating_distance, track_only);
+    bench::Register("BM_BatchKalman_gating_distance", BM_BatchKalman_gating_distance, track_only);
+    bench::Register("BM_STrack_multi_predict", BM_STrack_multi_predict, track_only);
+    bench::Register("BM_STrack_activate", BM_STrack_activate, track_only);
+    bench::Register("BM_STrack_update", BM_STrack_update, track_only);
+    bench::Register("BM_updateTrackers_shared", BM_updateTrackers_shared, track_frame);
+    bench::Register("BM_updateTrackers_per_object", BM_updateTrackers_per_object, track_frame);
+
+    typedef void (*FixtureFn)(bench::State&, const MotFixture&);
+    const std::pair<const char*, FixtureFn> fixture_benchmarks[] = {
+            {"BM_fixture_iou_distance", BM_fixture_iou_distance},
+            {"BM_fixture_lapjv", BM_fixture_lapjv},
+            {"BM_fixture_match_boxes_sparse", BM_fixture_match_boxes_sparse},
+            {"BM_fixture_BYTETracker_update", BM_fixture_BYTETracker_update},
+            {"BM_fixture_updateTrackers", BM_fixture_updateTrackers},
+            {"BM_fixture_HybridTracker", BM_fixture_HybridTracker},
+    };
+    for (const auto& fb : fixture_benchmarks) {
+        for (const auto& fx : fixtures) {
+            const MotFixture* fixture = fx.get();
+            FixtureFn fn = fb.second;
+            bench::Register(std::string(fb.first) + "/" + fx->name,
+                            [fn, fixture](bench::State& state) { fn(state, *fixture); });
+        }
+    }
+}
+
+}  // namespace
+
+int main(int argc, char** argv) {
+    // KLT warns about boxes with too few corners; keep the tables readable
+    setenv("TRACKER_LOG_LEVEL", "6", 0);
+    // BYTETracker announces itself on std::cout; results go to stdout through stdio
+    std::cout.setstate(std::ios::badbit);
+
+    parse_options(argc, argv);
+    load_fixtures(options.mot_dir);
+    register_benchmarks();
+    return bench::RunSpecifiedBenchmarks(argc, argv);
+}
@@ -0,0 +1,41 @@
+#pragma once
+
+// Host-build stand-in for the NDK's <android/log.h>. Only on the include path when
+// the library is built outside the NDK (see CMakeLists.txt); messages go to stderr.
+// Set TRACKER_LOG_LEVEL to an android_LogPriority value to change the threshold
+// (default: ANDROID_LOG_INFO, so LOGD is dropped).
+
+#include <cstdarg>
+#include <cstdio>
+#include <cstdlib>
+
+typedef enum android_LogPriority {
+    ANDROID_LOG_UNKNOWN = 0,
+    ANDROID_LOG_DEFAULT,
+    ANDROID_LOG_VERBOSE,
+    ANDROID_LOG_DEBUG,
+    ANDROID_LOG_INFO,
+    ANDROID_LOG_WARN,
+    ANDROID_LOG_ERROR,
+    ANDROID_LOG_FATAL,
+    ANDROID_LOG_SILENT
+} android_LogPriority;
+
+static inline int __android_log_print(int prio, const char* tag, const char* fmt, ...) {
+    static const int min_prio = [] {
+        const char* env = std::getenv("TRACKER_LOG_LEVEL");
+        return env != nullptr ? std::atoi(env) : (int)ANDROID_LOG_INFO;
+    }();
+    if (prio < min_prio) {
+        return 0;
+    }
+
+    static const char levels[] = "??VDIWEFS";
+    std::fprintf(stderr, "%c/%s: ", levels[prio >= 0 && prio <= ANDROID_LOG_SILENT ? prio : 0], tag);
+    va_list args;
+    va_start(args, fmt);
+    int n = std::vfprintf(stderr, fmt, args);
+    va_end(args);
+    std::fputc('\n', stderr);
+    return n;
+}
@@ -56,8 +56,33 @@ typedef double cost_t;
 typedef char boolean;
 typedef enum fp_t { FP_1 = 1, FP_2 = 2, FP_DYNAMIC = 3 } fp_t;
 
+/** Scratch buffers for the solver phases, kept across calls.
+ * Grown to the largest n seen so far (high-water mark) and never shrunk.
+ */
+typedef struct lapjv_workspace_t {
+	uint_t capacity;
+	int_t *free_rows;
+	cost_t *v;
+	boolean *unique;
+	int_t *cols;
+	cost_t *d;
+	int_t *pred;
+} lapjv_workspace_t;
+
+extern void lapjv_workspace_init(lapjv_workspace_t *ws);
+extern int_t lapjv_workspace_reserve(lapjv_workspace_t *ws, const uint_t n);
+extern void lapjv_workspace_free(lapjv_workspace_t *ws);
+
 extern int_t lapjv_internal(
 	const uint_t n, cost_t *cost[],
 	int_t *x, int_t *y);
 
+/** Same as lapjv_internal but uses (and grows) a caller-owned workspace,
+ * so repeated solves do not allocate.
+ */
+extern int_t lapjv_internal_ws(
+	const uint_t n, cost_t *cost[],
+	int_t *x, int_t *y,
+	lapjv_workspace_t *ws);
+
 #endif // LAPJV_H
@@ -1,104 +1,115 @@
 #include "BYTETracker.h"
 #include "lapjv.h"
 
-vector<STrack*> BYTETracker::joint_stracks(vector<STrack*> &tlista, vector<STrack> &tlistb)
+void LapjvWorkspaceDeleter::operator()(lapjv_workspace_t *ws) const
 {
-    map<int, int> exists;
-    vector<STrack*> res;
-    for (int i = 0; i < tlista.size(); i++)
+    if (ws != 0)
     {
-        exists.insert(pair<int, int>(tlista[i]->track_id, 1));
-        res.push_back(tlista[i]);
+        lapjv_workspace_free(ws);
+        delete ws;
     }
-    for (int i = 0; i < tlistb.size(); i++)
+}
+
+void BYTETracker::begin_id_set()
+{
+    stamp++;
+}
+
+void BYTETracker::mark_id(int id)
+{
+    if (id >= id_stamp.size())
     {
-        int tid = tlistb[i].track_id;
-        if (!exists[tid] || exists.count(tid) == 0)
-        {
-            exists[tid] = 1;
-            res.push_back(&tlistb[i]);
-        }
+        id_stamp.resize(max(id + 1, (int)id_stamp.size() * 2), 0);
     }
-    return res;
+    id_stamp[id] = stamp;
+}
+
+bool BYTETracker::has_id(int id) const
+{
+    return id < id_stamp.size() && id_stamp[id] == stamp;
 }
 
-vector<STrack> BYTETracker::joint_stracks(vector<STrack> &tlista, vector<STrack> &tlistb)
+void BYTETracker::joint_stracks(const vector<int> &tlista, const vector<int> &tlistb, vector<int> &res)
 {
-    map<int, int> exists;
-    vector<STrack> res;
+    res.clear();
+    begin_id_set();
     for (int i = 0; i < tlista.size(); i++)
     {
-        exists.insert(pair<int, int>(tlista[i].track_id, 1));
+        mark_id(track_pool[tlista[i]].track_id);
         res.push_back(tlista[i]);
     }
     for (int i = 0; i < tlistb.size(); i++)
     {
-        int tid = tlistb[i].track_id;
-        if (!exists[tid] || exists.count(tid) == 0)
+        int tid = track_pool[tlistb[i]].track_id;
+        if (!has_id(tid))
         {
-            exists[tid] = 1;
+            mark_id(tid);
             res.push_back(tlistb[i]);
         }
     }
-    return res;
 }
 
-vector<STrack> BYTETracker::sub_stracks(vector<STrack> &tlista, vector<STrack> &tlistb)
+void BYTETracker::sort_by_track_id(vector<int> &tlist)
 {
-    map<int, STrack> stracks;
-    for (int i = 0; i < tlista.size(); i++)
-    {
-        stracks.insert(pair<int, STrack>(tlista[i].track_id, tlista[i]));
-    }
+    STrackPool &pool = track_pool;
+    sort(tlist.begin(), tlist.end(), [&pool](int a, int b) {
+        return pool[a].track_id < pool[b].track_id;
+    });
+}
+
+void BYTETracker::sub_stracks(vector<int> &tlista, const vector<int> &tlistb)
+{
+    // Same result as the former map-based version: first entry per id, minus the ids
+    // in tlistb, ordered by track_id
+    begin_id_set();
     for (int i = 0; i < tlistb.size(); i++)
     {
-        int tid = tlistb[i].track_id;
-        if (stracks.count(tid) != 0)
-        {
-            stracks.erase(tid);
-        }
+        mark_id(track_pool[tlistb[i]].track_id);
     }
 
-    vector<STrack> res;
-    std::map<int, STrack>::iterator  it;
-    for (it = stracks.begin(); it != stracks.end(); ++it)
+    int kept = 0;
+    for (int i = 0; i < tlista.size(); i++)
     {
-        res.push_back(it->second);
+        int tid = track_pool[tlista[i]].track_id;
+        if (!has_id(tid))
+        {
+            mark_id(tid);
+            tlista[kept++] = tlista[i];
+        }
     }
-
-    return res;
+    tlista.resize(kept);
+    sort_by_track_id(tlista);
 }
 
-void BYTETracker::remove_duplicate_stracks(vector<STrack> &resa, vector<STrack> &resb, vector<STrack> &stracksa, vector<STrack> &stracksb)
+void BYTETracker::remove_duplicate_stracks(vector<int> &resa, vector<int> &resb, const vector<int> &stracksa, const vector<int> &stracksb)
 {
-    vector<vector<float> > pdist = iou_distance(stracksa, stracksb);
-    vector<pair<int, int> > pairs;
-    for (int i = 0; i < pdist.size(); i++)
+    iou_distance(track_pool, stracksa, track_pool, stracksb, dists);
+
+    dup_a.assign(stracksa.size(), 0);
+    dup_b.assign(stracksb.size(), 0);
+    for (int i = 0; i < dists.rows; i++)
     {
-        for (int j = 0; j < pdist[i].size(); j++)
+        for (int j = 0; j < dists.cols; j++)
         {
-            if (pdist[i][j] < 0.15)
+            if (dists[i][j] < 0.15)
             {
-                pairs.push_back(pair<int, int>(i, j));
+                const STrack &p = track_pool[stracksa[i]];
+                const STrack &q = track_pool[stracksb[j]];
+                int timep = p.frame_id - p.start_frame;
+                int timeq = q.frame_id - q.start_frame;
+                if (timep > timeq)
+                    dup_b[j] = 1;
+                else
+                    dup_a[i] = 1;
             }
         }
     }
 
-    vector<int> dupa, dupb;
-    for (int i = 0; i < pairs.size(); i++)
-    {
-        int timep = stracksa[pairs[i].first].frame_id - stracksa[pairs[i].first].start_frame;
-        int timeq = stracksb[pairs[i].second].frame_id - stracksb[pairs[i].second].start_frame;
-        if (timep > timeq)
-            dupb.push_back(pairs[i].second);
-        else
-            dupa.push_back(pairs[i].first);
-    }
-
+    resa.clear();
+    resb.clear();
     for (int i = 0; i < stracksa.size(); i++)
     {
-        vector<int>::iterator iter = find(dupa.begin(), dupa.end(), i);
-        if (iter == dupa.end())
+        if (!dup_a[i])
         {
             resa.push_back(stracksa[i]);
         }
@@ -106,18 +117,17 @@ void BYTETracker::remove_duplicate_stracks(vector<STrack> &resa, vector<STrack>
 
     for (int i = 0; i < stracksb.size(); i++)
     {
-        vector<int>::iterator iter = find(dupb.begin(), dupb.end(), i);
-        if (iter == dupb.end())
+        if (!dup_b[i])
         {
             resb.push_back(stracksb[i]);
         }
     }
 }
 
-void BYTETracker::linear_assignment(vector<vector<float> > &cost_matrix, int cost_matrix_size, int cost_matrix_size_size, float thresh,
-                                    vector<vector<int> > &matches, vector<int> &unmatched_a, vector<int> &unmatched_b)
+void BYTETracker::linear_assignment(CostMatrix &cost_matrix, int cost_matrix_size, int cost_matrix_size_size, float thresh,
+                                    vector<pair<int, int> > &matches, vector<int> &unmatched_a, vector<int> &unmatched_b)
 {
-    if (cost_matrix.size() == 0)
+    if (cost_matrix.empty())
     {
         for (int i = 0; i < cost_matrix_size; i++)
         {
@@ -130,149 +140,173 @@ void BYTETracker::linear_assignment(vector<vector<float> > &cost_matrix, int cos
         return;
     }
 
-    vector<int> rowsol; vector<int> colsol;
-    float c = lapjv(cost_matrix, rowsol, colsol, true, thresh);
-    for (int i = 0; i < rowsol.size(); i++)
+    if (sparse_assignment)
     {
-        if (rowsol[i] >= 0)
+        // Gate: a row/col whose every pair is at or above thresh (IoU == 0 gives cost 1)
+        // can never beat the unmatched cost of the extended matrix, so drop it up front
+        int n_rows = cost_matrix.rows;
+        int n_cols = cost_matrix.cols;
+        gate_rows.clear();
+        gate_cols.clear();
+        gate_col_hit.assign(n_cols, 0);
+        for (int i = 0; i < n_rows; i++)
         {
-            vector<int> match;
-            match.push_back(i);
-            match.push_back(rowsol[i]);
-            matches.push_back(match);
+            const float *row = cost_matrix[i];
+            bool admissible = false;
+            for (int j = 0; j < n_cols; j++)
+            {
+                if (row[j] < thresh)
+                {
+                    admissible = true;
+                    gate_col_hit[j] = 1;
+                }
+            }
+            if (admissible)
+                gate_rows.push_back(i);
+            else
+                unmatched_a.push_back(i);
         }
-        else
+        for (int j = 0; j < n_cols; j++)
         {
-            unmatched_a.push_back(i);
+            if (gate_col_hit[j])
+                gate_cols.push_back(j);
+            else
+                unmatched_b.push_back(j);
         }
-    }
+        if (gate_rows.empty())
+            return;
 
-    for (int i = 0; i < colsol.size(); i++)
-    {
-        if (colsol[i] < 0)
+        gate_cost.resize(gate_rows.size(), gate_cols.size());
+        for (int i = 0; i < gate_rows.size(); i++)
         {
-            unmatched_b.push_back(i);
+            const float *src = cost_matrix[gate_rows[i]];
+            float *dst = gate_cost[i];
+            for (int j = 0; j < gate_cols.size(); j++)
+            {
+                dst[j] = src[gate_cols[j]];
+            }
         }
-    }
-}
-
-vector<vector<float> > BYTETracker::ious(vector<vector<float> > &atlbrs, vector<vector<float> > &btlbrs)
-{
-    vector<vector<float> > ious;
-    if (atlbrs.size()*btlbrs.size() == 0)
-        return ious;
-
-    ious.resize(atlbrs.size());
-    for (int i = 0; i < ious.size(); i++)
-    {
-        ious[i].resize(btlbrs.size());
-    }
 
-    //bbox_ious
-    for (int k = 0; k < btlbrs.size(); k++)
-    {
-        vector<float> ious_tmp;
-        float box_area = (btlbrs[k][2] - btlbrs[k][0] + 1)*(btlbrs[k][3] - btlbrs[k][1] + 1);
-        for (int n = 0; n < atlbrs.size(); n++)
+        lapjv(gate_cost, lap_rowsol, lap_colsol, true, thresh);
+        for (int i = 0; i < lap_rowsol.size(); i++)
         {
-            float iw = min(atlbrs[n][2], btlbrs[k][2]) - max(atlbrs[n][0], btlbrs[k][0]) + 1;
-            if (iw > 0)
+            if (lap_rowsol[i] >= 0)
             {
-                float ih = min(atlbrs[n][3], btlbrs[k][3]) - max(atlbrs[n][1], btlbrs[k][1]) + 1;
-                if(ih > 0)
-                {
-                    float ua = (atlbrs[n][2] - atlbrs[n][0] + 1)*(atlbrs[n][3] - atlbrs[n][1] + 1) + box_area - iw * ih;
-                    ious[n][k] = iw * ih / ua;
-                }
-                else
-                {
-                    ious[n][k] = 0.0;
-                }
+                matches.push_back(pair<int, int>(gate_rows[i], gate_cols[lap_rowsol[i]]));
             }
             else
             {
-                ious[n][k] = 0.0;
+                unmatched_a.push_back(gate_rows[i]);
             }
         }
+        for (int i = 0; i < lap_colsol.size(); i++)
+        {
+            if (lap_colsol[i] < 0)
+            {
+                unmatched_b.push_back(gate_cols[i]);
+            }
+        }
+        // Keep the same (ascending) order as the dense path; later steps depend on it
+        sort(unmatched_a.begin(), unmatched_a.end());
+        sort(unmatched_b.begin(), unmatched_b.end());
+        return;
     }
 
-    return ious;
-}
+    lapjv(cost_matrix, lap_rowsol, lap_colsol, true, thresh);
+    for (int i = 0; i < lap_rowsol.size(); i++)
+    {
+        if (lap_rowsol[i] >= 0)
+        {
+            matches.push_back(pair<int, int>(i, lap_rowsol[i]));
+        }
+        else
+        {
+            unmatched_a.push_back(i);
+        }
+    }
 
-vector<vector<float> > BYTETracker::iou_distance(vector<STrack*> &atracks, vector<STrack> &btracks, int &dist_size, int &dist_size_size)
-{
-    vector<vector<float> > cost_matrix;
-    if (atracks.size() * btracks.size() == 0)
+    for (int i = 0; i < lap_colsol.size(); i++)
     {
-        dist_size = atracks.size();
-        dist_size_size = btracks.size();
-        return cost_matrix;
+        if (lap_colsol[i] < 0)
+        {
+            unmatched_b.push_back(i);
+        }
     }
-    vector<vector<float> > atlbrs, btlbrs;
-    for (int i = 0; i < atracks.size(); i++)
+}
+
+int BYTETracker::match_boxes(vector<STrack> &tracks, vector<STrack> &detections, float thresh)
+{
+    box_a.clear();
+    box_b.clear();
+    for (int i = 0; i < tracks.size(); i++)
     {
-        atlbrs.push_back(atracks[i]->tlbr);
+        box_a.push_back(&tracks[i]);
     }
-    for (int i = 0; i < btracks.size(); i++)
+    for (int i = 0; i < detections.size(); i++)
     {
-        btlbrs.push_back(btracks[i].tlbr);
+        box_b.push_back(&detections[i]);
     }
 
-    dist_size = atracks.size();
-    dist_size_size = btracks.size();
+    iou_distance(box_a, box_b, dists);
+
+    matches.clear();
+    u_track.clear();
+    u_detection.clear();
+    linear_assignment(dists, tracks.size(), detections.size(), thresh, matches, u_track, u_detection);
+    return matches.size();
+}
 
-    vector<vector<float> > _ious = ious(atlbrs, btlbrs);
+void BYTETracker::iou_distance(const vector<STrack*> &atracks, const vector<STrack*> &btracks, CostMatrix &cost_matrix)
+{
+    cost_matrix.resize(atracks.size(), btracks.size());
+    if (cost_matrix.empty())
+        return;
 
-    for (int i = 0; i < _ious.size();i++)
+    // cost = 1 - bbox_iou, written straight into the reused matrix
+    for (int k = 0; k < btracks.size(); k++)
     {
-        vector<float> _iou;
-        for (int j = 0; j < _ious[i].size(); j++)
+        const float *bt = btracks[k]->tlbr.data();
+        float box_area = (bt[2] - bt[0] + 1)*(bt[3] - bt[1] + 1);
+        for (int n = 0; n < atracks.size(); n++)
         {
-            _iou.push_back(1 - _ious[i][j]);
+            const float *at = atracks[n]->tlbr.data();
+            float iou = 0.0;
+            float iw = min(at[2], bt[2]) - max(at[0], bt[0]) + 1;
+            if (iw > 0)
+            {
+                float ih = min(at[3], bt[3]) - max(at[1], bt[1]) + 1;
+                if (ih > 0)
+                {
+                    float ua = (at[2] - at[0] + 1)*(at[3] - at[1] + 1) + box_area - iw * ih;
+                    iou = iw * ih / ua;
+                }
+            }
+            cost_matrix[n][k] = 1 - iou;
         }
-        cost_matrix.push_back(_iou);
     }
-
-    return cost_matrix;
 }
 
-vector<vector<float> > BYTETracker::iou_distance(vector<STrack> &atracks, vector<STrack> &btracks)
+void BYTETracker::iou_distance(STrackPool &apool, const vector<int> &atracks, STrackPool &bpool, const vector<int> &btracks,
+                               CostMatrix &cost_matrix)
 {
-    vector<vector<float> > atlbrs, btlbrs;
+    box_a.clear();
+    box_b.clear();
     for (int i = 0; i < atracks.size(); i++)
     {
-        atlbrs.push_back(atracks[i].tlbr);
+        box_a.push_back(&apool[atracks[i]]);
     }
     for (int i = 0; i < btracks.size(); i++)
     {
-        btlbrs.push_back(btracks[i].tlbr);
+        box_b.push_back(&bpool[btracks[i]]);
     }
-
-    vector<vector<float> > _ious = ious(atlbrs, btlbrs);
-    vector<vector<float> > cost_matrix;
-    for (int i = 0; i < _ious.size(); i++)
-    {
-        vector<float> _iou;
-        for (int j = 0; j < _ious[i].size(); j++)
-        {
-            _iou.push_back(1 - _ious[i][j]);
-        }
-        cost_matrix.push_back(_iou);
-    }
-
-    return cost_matrix;
+    iou_distance(box_a, box_b, cost_matrix);
 }
 
-double BYTETracker::lapjv(const vector<vector<float> > &cost, vector<int> &rowsol, vector<int> &colsol,
+double BYTETracker::lapjv(const CostMatrix &cost, vector<int> &rowsol, vector<int> &colsol,
                           bool extend_cost, float cost_limit, bool return_cost)
 {
-    vector<vector<float> > cost_c;
-    cost_c.assign(cost.begin(), cost.end());
-
-    vector<vector<float> > cost_c_extended;
-
-    int n_rows = cost.size();
-    int n_cols = cost[0].size();
+    int n_rows = cost.rows;
+    int n_cols = cost.cols;
     rowsol.resize(n_rows);
     colsol.resize(n_cols);
 
@@ -291,79 +325,73 @@ double BYTETracker::lapjv(const vector<vector<float> > &cost, vector<int> &rowso
         }
     }
 
-    if (extend_cost || cost_limit < LONG_MAX)
+    bool extended = extend_cost || cost_limit < LONG_MAX;
+    if (extended)
     {
         n = n_rows + n_cols;
-        cost_c_extended.resize(n);
-        for (int i = 0; i < cost_c_extended.size(); i++)
-            cost_c_extended[i].resize(n);
+    }
 
+    // The cost matrix and solver buffers are members, grown to the largest n seen
+    // and reused, so a steady frame stream does not allocate here
+    lap_cost.resize((size_t)n * n);
+    lap_rows.resize(n);
+    lap_x.resize(n);
+    lap_y.resize(n);
+    for (int i = 0; i < n; i++)
+    {
+        lap_rows[i] = lap_cost.data() + (size_t)i * n;
+    }
+    double **cost_ptr = lap_rows.data();
+
+    if (extended)
+    {
+        float fill;
         if (cost_limit < LONG_MAX)
         {
-            for (int i = 0; i < cost_c_extended.size(); i++)
-            {
-                for (int j = 0; j < cost_c_extended[i].size(); j++)
-                {
-                    cost_c_extended[i][j] = cost_limit / 2.0;
-                }
-            }
+            fill = cost_limit / 2.0;
         }
         else
         {
             float cost_max = -1;
-            for (int i = 0; i < cost_c.size(); i++)
+            for (int i = 0; i < n_rows; i++)
             {
-                for (int j = 0; j < cost_c[i].size(); j++)
+                for (int j = 0; j < n_cols; j++)
                 {
-                    if (cost_c[i][j] > cost_max)
-                        cost_max = cost_c[i][j];
-                }
-            }
-            for (int i = 0; i < cost_c_extended.size(); i++)
-            {
-                for (int j = 0; j < cost_c_extended[i].size(); j++)
-                {
-                    cost_c_extended[i][j] = cost_max + 1;
+                    if (cost[i][j] > cost_max)
+                        cost_max = cost[i][j];
                 }
             }
+            fill = cost_max + 1;
         }
 
-        for (int i = n_rows; i < cost_c_extended.size(); i++)
-        {
-            for (int j = n_cols; j < cost_c_extended[i].size(); j++)
-            {
-                cost_c_extended[i][j] = 0;
-            }
-        }
-        for (int i = 0; i < n_rows; i++)
+        for (int i = 0; i < n; i++)
         {
-            for (int j = 0; j < n_cols; j++)
+            for (int j = 0; j < n; j++)
             {
-                cost_c_extended[i][j] = cost_c[i][j];
+                if (i < n_rows && j < n_cols)
+                    cost_ptr[i][j] = cost[i][j];
+                else if (i >= n_rows && j >= n_cols)
+                    cost_ptr[i][j] = 0;
+                else
+                    cost_ptr[i][j] = fill;
             }
         }
-
-        cost_c.clear();
-        cost_c.assign(cost_c_extended.begin(), cost_c_extended.end());
     }
-
-    double **cost_ptr;
-    cost_ptr = new double *[sizeof(double *) * n];
-    for (int i = 0; i < n; i++)
-        cost_ptr[i] = new double[sizeof(double) * n];
-
-    for (int i = 0; i < n; i++)
+    else
     {
-        for (int j = 0; j < n; j++)
+        for (int i = 0; i < n; i++)
         {
-            cost_ptr[i][j] = cost_c[i][j];
+            for (int j = 0; j < n; j++)
+            {
+                cost_ptr[i][j] = cost[i][j];
+            }
         }
     }
 
-    int* x_c = new int[sizeof(int) * n];
-    int *y_c = new int[sizeof(int) * n];
+    int *x_c = lap_x.data();
+    int *y_c = lap_y.data();
 
-    int ret = lapjv_internal(n, cost_ptr, x_c, y_c);
+    int ret = lapjv_internal_ws(n, cost_ptr, x_c, y_c, lap_ws.get());
     if (ret != 0)
     {
         cout << "Calculate Wrong!" << endl;
@@ -411,14 +439,6 @@ double BYTETracker::lapjv(const vector<vector<float> > &cost, vector<int> &rowso
         }
     }
 
-    for (int i = 0; i < n; i++)
-    {
-        delete[]cost_ptr[i];
-    }
-    delete[]cost_ptr;
-    delete[]x_c;
-    delete[]y_c;
-
     return opt;
 }
 
@@ -0,0 +1,70 @@
+package edu.cmu.cs.face;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.File;
+
+import edu.cmu.cs.face.mot.ImageDecoder;
+import edu.cmu.cs.face.mot.RgbFrame;
+
+/**
+ * BitmapFactory decode into the pipeline's ARGB frame.
+ *
+ * Decodes into pooled bitmaps (inBitmap) rather than allocating one per frame, and
+ * honours a sample size through inSampleSize, which the JPEG decoder applies while
+ * decoding (scaled IDCT) instead of shrinking a full-size bitmap afterwards.
+ */
+public class BitmapImageDecoder implements ImageDecoder {
+    private final BitmapPool pool;
+
+    public BitmapImageDecoder() {
+        this(new BitmapPool(2));
+    }
+
+    public BitmapImageDecoder(BitmapPool pool) {
+        this.pool = pool;
+    }
+
+    public BitmapPool pool() {
+        return pool;
+    }
+
+    @Override
+    public boolean decode(File file, RgbFrame frame) {
+        return decode(file, frame, 1);
+    }
+
+    @Override
+    public boolean decode(File file, RgbFrame frame, int sampleSize) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inMutable = true;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inSampleSize = Math.max(1, sampleSize);
+        options.inBitmap = pool.acquire();
+
+        Bitmap bitmap;
+        boolean reused = options.inBitmap != null;
+        try {
+            bitmap = BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap is too small for this image; decode into a new one
+            options.inBitmap.recycle();
+            options.inBitmap = null;
+            reused = false;
+            bitmap = BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+        }
+        if (bitmap == null) {
+            pool.release(options.inBitmap);
+            return false;
+        }
+        pool.record(reused);
+
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        frame.setSize(width, height);
+        bitmap.getPixels(frame.pixels, 0, width, 0, 0, width, height);
+        pool.release(bitmap);
+        return true;
+    }
+}
@@ -0,0 +1,77 @@
+package edu.cmu.cs.face;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayDeque;
+
+/**
+ * Mutable ARGB_8888 Bitmaps kept for BitmapFactory.Options.inBitmap, so decoding a
+ * sequence reuses a few allocations instead of creating (and recycling) one per frame.
+ *
+ * Since API 19 a bitmap can be reused for any decode that fits its allocation, so
+ * the pool just hands out the largest free one; the decoder falls back to a fresh
+ * bitmap if that is too small. Thread-safe.
+ */
+public class BitmapPool {
+    private final int capacity;
+    private final ArrayDeque<Bitmap> free = new ArrayDeque<>();
+    private int reused;
+    private int created;
+
+    public BitmapPool(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /** The largest free bitmap, or null if the pool is empty. */
+    public synchronized Bitmap acquire() {
+        Bitmap best = null;
+        for (Bitmap b : free) {
+            if (best == null || b.getAllocationByteCount() > best.getAllocationByteCount()) {
+                best = b;
+            }
+        }
+        if (best != null) {
+            free.remove(best);
+        }
+        return best;
+    }
+
+    /** Return a bitmap for reuse; past capacity the smallest one is recycled. */
+    public synchronized void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+        free.add(bitmap);
+        if (free.size() > capacity) {
+            Bitmap smallest = null;
+            for (Bitmap b : free) {
+                if (smallest == null || b.getAllocationByteCount() < smallest.getAllocationByteCount()) {
+                    smallest = b;
+                }
+            }
+            free.remove(smallest);
+            smallest.recycle();
+        }
+    }
+
+    /** Count one decode, reusing a pooled bitmap or not. */
+    synchronized void record(boolean wasReused) {
+        if (wasReused) {
+            reused++;
+        } else {
+            created++;
+        }
+    }
+
+    /** [reused, created] decodes so far. */
+    public synchronized int[] stats() {
+        return new int[]{reused, created};
+    }
+
+    public synchronized void clear() {
+        for (Bitmap b : free) {
+            b.recycle();
+        }
+        free.clear();
+    }
+}
@@ -9,6 +9,7 @@ import androidx.camera.core.CameraSelector;
 import androidx.camera.view.PreviewView;
 
 import java.lang.ref.WeakReference;
+import java.util.function.Consumer;
 
 
 public class CameraManager {
@@ -18,6 +19,9 @@ public class CameraManager {
         void onStarted(CameraSelector selector);
         void onStopped();
         void onError(Exception e);
+
+        /** First frame after an analyzer or camera switch (latency from the request). */
+        default void onSwitched(String what, long latencyNanos) {}
     }
 
     private final WeakReference<AppCompatActivity> activityRef;
@@ -33,9 +37,10 @@ public class CameraManager {
     private CameraSelector currentSelector = CameraSelector.DEFAULT_BACK_CAMERA;
 
     private edu.cmu.cs.mycamera.MyCameraCapture cameraCapture;
-    private androidx.camera.core.ImageAnalysis.Analyzer analyzer;
+    // Bound to the camera once; analyzers and cameras are switched behind it
+    private final SwappableAnalyzer analysis;
 
-    private CameraStateListener listener;
+    private volatile CameraStateListener listener;
 
     public CameraManager(AppCompatActivity activity,
                          PreviewView previewView,
@@ -45,7 +50,11 @@ public class CameraManager {
         this.previewView = previewView;
         this.width = width;
         this.height = height;
-        this.analyzer = analyzer;
+        this.analysis = new SwappableAnalyzer(analyzer);
+        this.analysis.setSwitchListener((what, latencyNanos) -> {
+            CameraStateListener l = listener;
+            if (l != null) l.onSwitched(what, latencyNanos);
+        });
     }
 
     public void setCameraStateListener(CameraStateListener listener) {
@@ -74,54 +83,17 @@ public class CameraManager {
     }
 
     public void setAnalyzer(androidx.camera.core.ImageAnalysis.Analyzer newAnalyzer) {
-        synchronized (lock) {
-            this.analyzer = newAnalyzer;
-            if (started) {
-                mainHandler.post(() -> {
-                    synchronized (lock) {
-                        try {
-                            recreateCameraCapture();
-                        } catch (Exception e) {
-                            Log.w(TAG, "Failed to recreate camera with new analyzer", e);
-                            if (listener != null) listener.onError(e);
-                        }
-                    }
-                });
-            }
-        }
+        setAnalyzer(newAnalyzer, null);
     }
 
-    private void recreateCameraCapture() {
-        synchronized (lock) {
-            // shutdown old instance
-            if (cameraCapture != null) {
-                try {
-                    cameraCapture.shutdown();
-                } catch (Exception e) {
-                    Log.w(TAG, "Error shutting down existing CameraCapture", e);
-                }
-                cameraCapture = null;
-            }
-
-            AppCompatActivity activity = activityRef.get();
-            if (activity == null) {
-                started = false;
-                if (listener != null) listener.onError(new IllegalStateException("Activity was GC'd"));
-                return;
-            }
-
-            try {
-                // Construct new CameraCapture.
-                cameraCapture = new edu.cmu.cs.mycamera.MyCameraCapture(
-                        activity, analyzer, width, height, previewView, currentSelector, false);
-                started = true;
-                if (listener != null) listener.onStarted(currentSelector);
-            } catch (Exception e) {
-                started = false;
-                Log.e(TAG, "Failed to recreate CameraCapture", e);
-                if (listener != null) listener.onError(e);
-            }
-        }
+    /**
+     * Switch the analyzer without touching the camera session: frames go to
+     * {@code newAnalyzer} from the next one on, and {@code onRetired} gets the old
+     * analyzer once its frame in flight is done (it may be null).
+     */
+    public void setAnalyzer(androidx.camera.core.ImageAnalysis.Analyzer newAnalyzer,
+                            Consumer<androidx.camera.core.ImageAnalysis.Analyzer> onRetired) {
+        analysis.swap(newAnalyzer, onRetired);
     }
 
     private void startCamera(final CameraSelector selector, final boolean backCamera) {
@@ -134,22 +106,26 @@ public class CameraManager {
                 if (listener != null) listener.onError(new IllegalStateException("Activity is null"));
                 return;
             }
+            final long requestNanos = System.nanoTime();
             mainHandler.post(() -> {
                 synchronized (lock) {
                     try {
                         if (cameraCapture != null) {
-                            try {
-                                cameraCapture.shutdown();
-                            } catch (Exception e) {
-                                Log.w(TAG, "Error shutting down previous CameraCapture", e);
-                            }
-                            cameraCapture = null;
+                            // Keep the session's use cases and move them to the other camera
+                            cameraCapture.switchCamera(selector, () -> {
+                                Log.i(TAG, String.format(java.util.Locale.US, "Camera rebound in %.1f ms",
+                                        (System.nanoTime() - requestNanos) / 1_000_000.0));
+                                analysis.expectFrame("camera", requestNanos);
+                                if (listener != null) listener.onStarted(selector);
+                            });
+                        } else {
+                            cameraCapture = new edu.cmu.cs.mycamera.MyCameraCapture(
+                                    activity, analysis, width, height, previewView, selector, false);
+                            if (listener != null) listener.onStarted(selector);
                         }
-                        cameraCapture = new edu.cmu.cs.mycamera.MyCameraCapture(
-                                activity, analyzer, width, height, previewView, selector, false);
-
                         started = true;
-                        if (listener != null) listener.onStarted(selector);
+                        cameraCapture.prewarm(backCamera
+                                ? CameraSelector.DEFAULT_FRONT_CAMERA : CameraSelector.DEFAULT_BACK_CAMERA);
                     } catch (Exception e) {
                         started = false;
                         Log.e(TAG, "Failed to start CameraCapture", e);
@@ -173,6 +149,8 @@ public class CameraManager {
                             }
                             cameraCapture = null;
                         }
+                        // Retire an analyzer swapped in after the last frame
+                        analysis.flush();
                         started = false;
                         if (listener != null) listener.onStopped();
                     } catch (Exception e) {
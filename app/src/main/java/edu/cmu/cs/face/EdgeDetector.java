@@ -0,0 +1,180 @@
+package edu.cmu.cs.face;
+
+import android.app.Application;
+import android.graphics.Bitmap;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
+
+import edu.cmu.cs.face.mot.PipelineLog;
+import edu.cmu.cs.face.mot.RegionUpload;
+import edu.cmu.cs.face.mot.RegionUploadPlanner;
+import edu.cmu.cs.gabriel.protocol.Protos.ResultWrapper;
+
+/**
+ * Keyframe detection on a Gabriel server for live mode: the analyzer uploads a
+ * frame when a keyframe is due, and the detections come back asynchronously on
+ * Gabriel's thread while local KLT keeps tracking. {@link #poll()} hands the newest
+ * answer to the analyzer, which feeds it to the tracker as keyframe input. Every
+ * upload carries its frame ID and capture time, and so does its {@link Answer}.
+ *
+ * One upload is in flight at a time, so the server sees at most one frame per
+ * round trip; an upload that gets no answer within {@link #RESULT_TIMEOUT_NANOS}
+ * (dropped by the server, or the connection went away) lets the next one go. Only
+ * the answer to the upload in flight (same frame ID) ends it: a late answer to one
+ * that timed out is still applied, but the newer upload stays in flight.
+ * With a {@link RegionUploadPlanner} only the regions around the tracks and a
+ * periodic thumbnail are uploaded, else the full frame. Server track IDs are not
+ * used; the local tracker assigns its own.
+ */
+public class EdgeDetector implements AutoCloseable {
+    static final long RESULT_TIMEOUT_NANOS = 1_000_000_000L;
+    private static final int FIELDS_PER_DETECTION = 6;
+
+    private final ServerClientWrapper client;
+    private final ResultParser parser = new ResultParser();
+    private final RegionUploadPlanner planner;
+    private final String source;
+    private final int jpegQuality;
+
+    // Newest answer not yet polled
+    private final AtomicReference<Answer> arrived = new AtomicReference<>();
+    // The upload in flight, null when none is
+    private final AtomicReference<InFlight> inFlight = new AtomicReference<>();
+
+    // Counters; written under this lock on both threads
+    private long uploads;
+    private long answers;
+    private long failed;
+    private long timedOut;
+    private long late;
+    private long roundTripNanos;
+
+    /** Server detections of one uploaded frame. */
+    public static final class Answer {
+        /** [cx, cy, w, h, classId, conf] per row, normalized to the frame. */
+        public final float[] detections;
+        /** ID and capture time the frame was uploaded with. */
+        public final long frameId;
+        public final long captureNanos;
+
+        Answer(float[] detections, long frameId, long captureNanos) {
+            this.detections = detections;
+            this.frameId = frameId;
+            this.captureNanos = captureNanos;
+        }
+    }
+
+    private static final class InFlight {
+        final long frameId;
+        final long sentNanos;
+
+        InFlight(long frameId, long sentNanos) {
+            this.frameId = frameId;
+            this.sentNanos = sentNanos;
+        }
+    }
+
+    /**
+     * @param planner region uploads, or null to upload full frames
+     */
+    public EdgeDetector(Application app, String host, int port, String source,
+                        RegionUploadPlanner planner, int jpegQuality) {
+        this.planner = planner;
+        this.source = source;
+        this.jpegQuality = jpegQuality;
+        this.client = new ServerClientWrapper(app, host, port, this::onResult, err -> inFlight.set(null));
+    }
+
+    public void start() {
+        client.start();
+    }
+
+    /** Whether an upload may go out now: none is in flight, or it timed out. */
+    public boolean ready() {
+        InFlight current = inFlight.get();
+        if (current == null) {
+            return true;
+        }
+        if (System.nanoTime() - current.sentNanos < RESULT_TIMEOUT_NANOS) {
+            return false;
+        }
+        if (inFlight.compareAndSet(current, null)) {
+            synchronized (this) {
+                timedOut++;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Upload {@code frame} for detection. The frame is copied (cropped or encoded
+     * from a copy) before returning, so the caller can reuse it.
+     *
+     * @param tracks  tracker output of the previous frame, where the regions go
+     * @param frameId the caller's frame ID, returned with the {@link Answer}
+     */
+    public void upload(Bitmap frame, float[] tracks, long frameId, long captureNanos) {
+        inFlight.set(new InFlight(frameId, System.nanoTime()));
+        synchronized (this) {
+            uploads++;
+        }
+        client.sendRegionsAsync(source, frame, tracks, planner, jpegQuality, frameId, captureNanos);
+    }
+
+    /** The newest answer since the last call, or null if none arrived. */
+    public Answer poll() {
+        return arrived.getAndSet(null);
+    }
+
+    private void onResult(ResultWrapper wrapper, RegionUpload layout) {
+        // Only the answer to the upload in flight frees the slot
+        InFlight current = inFlight.get();
+        boolean answersCurrent = current != null && layout.isTagged() && layout.frameId == current.frameId
+                && inFlight.compareAndSet(current, null);
+        if (wrapper.getStatus() != ResultWrapper.Status.SUCCESS) {
+            synchronized (this) {
+                failed++;
+            }
+            return;
+        }
+        List<Detection> detections = parser.parse(wrapper, layout);
+        float[] rows = new float[detections.size() * FIELDS_PER_DETECTION];
+        for (int i = 0; i < detections.size(); i++) {
+            Detection d = detections.get(i);
+            int o = i * FIELDS_PER_DETECTION;
+            rows[o] = d.cx;
+            rows[o + 1] = d.cy;
+            rows[o + 2] = d.w;
+            rows[o + 3] = d.h;
+            rows[o + 4] = d.classId;
+            rows[o + 5] = d.conf;
+        }
+        arrived.set(new Answer(rows, layout.frameId, layout.captureNanos));
+        synchronized (this) {
+            answers++;
+            if (answersCurrent) {
+                roundTripNanos += System.nanoTime() - current.sentNanos;
+            } else {
+                late++;
+            }
+        }
+    }
+
+    public synchronized void report(PipelineLog log) {
+        log.i("--- Edge Keyframes ---");
+        long onTime = answers - late;
+        log.i(String.format(Locale.US, "Uploads: %d, answers: %d (%.2f ms round trip avg), failed: %d, timed out: %d, late answers: %d",
+                uploads, answers, onTime > 0 ? roundTripNanos / 1e6 / onTime : 0, failed, timedOut, late));
+        String uploadStats = client.uploadStats();
+        if (uploadStats != null) {
+            log.i(uploadStats);
+        }
+    }
+
+    @Override
+    public void close() {
+        client.shutdown();
+    }
+}
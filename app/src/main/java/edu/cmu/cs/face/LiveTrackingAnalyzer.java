@@ -0,0 +1,352 @@
+package edu.cmu.cs.face;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.cmu.cs.face.mot.FrameGate;
+import edu.cmu.cs.face.mot.LatencyCompensator;
+import edu.cmu.cs.face.mot.LiveStats;
+import edu.cmu.cs.face.mot.ModelRunner;
+import edu.cmu.cs.face.mot.PipelineConfig;
+import edu.cmu.cs.face.mot.PipelineLog;
+import edu.cmu.cs.face.mot.PipelineTimings;
+import edu.cmu.cs.face.mot.ResolutionController;
+import edu.cmu.cs.face.mot.RgbFrame;
+import edu.cmu.cs.face.mot.SequenceRunner;
+import edu.cmu.cs.face.mot.TrackerNatives;
+import edu.cmu.cs.face.mot.YoloDetector;
+
+/**
+ * Live mode: CameraX analysis frames straight into the HybridTracker pipeline.
+ *
+ * The analysis use case runs with STRATEGY_KEEP_ONLY_LATEST, so when a frame takes
+ * longer than the camera period the frames in between are dropped and the next
+ * call gets the newest one. Each frame's capture timestamp goes to the tracker
+ * first (nativeSetFrameTimestamp), which counts the dropped frames towards the
+ * keyframe interval. Non-keyframes only need the Y plane for KLT; the RGB
+ * conversion runs on keyframes only. Tracks go to the {@link OverlayView} through
+ * its snapshot buffer, and {@link LiveStats} keeps capture->overlay latency and
+ * drop counts. With smaller input sizes set ({@link #setResolutionLevels}), a
+ * {@link ResolutionController} picks each keyframe's input size to stay within
+ * the keyframe latency target as the device heats up or the scene changes. With
+ * frame gating on, a frame whose Y plane shows no change ({@link FrameGate}) keeps
+ * the last tracks and skips the tracker and detector.
+ *
+ * With an {@link EdgeDetector} set, keyframes are detected on the server instead
+ * of the local model: a due keyframe uploads the frame (one upload in flight), KLT
+ * tracks every frame meanwhile, and the server's detections become the tracker's
+ * keyframe input on the first frame after they arrive. Every frame carries its ID
+ * (frameIndex) and capture time from the upload to the answer; with
+ * {@link PipelineConfig#latencyCompensation} a {@link LatencyCompensator} moves the
+ * detections from their capture frame to the frame they are applied to.
+ *
+ * Called on the camera's single analysis thread. {@link #close()} waits for the
+ * frame in flight and releases the tracker.
+ */
+public class LiveTrackingAnalyzer implements ImageAnalysis.Analyzer, AutoCloseable {
+    private static final long SUMMARY_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final TrackerNatives natives;
+    private final YoloDetector detector;
+    private final PipelineConfig config;
+    private final OverlayView overlay;
+    private final PipelineLog log;
+    private final YuvToRgbConverter converter;
+    private final LiveStats stats = new LiveStats();
+    private final PipelineTimings timings = new PipelineTimings();
+
+    private final RgbFrame frame = new RgbFrame();
+    private Bitmap rgbBitmap;
+    private byte[] luma = new byte[0];
+    private final long[] decodeStats = new long[3];
+    private ResolutionController resolution;
+    private float[] lastTracks;
+    private final FrameGate gate;
+    private long gatedFrames;
+    private EdgeDetector edge;
+    private final LatencyCompensator compensator;
+
+    private long handle;
+    private long frameIndex;
+    private long lastFrameNanos;
+    private long lastSummaryNanos;
+
+    public LiveTrackingAnalyzer(Context context, TrackerNatives natives, ModelRunner model,
+                                PipelineConfig config, OverlayView overlay, PipelineLog log) {
+        this.natives = natives;
+        this.detector = new YoloDetector(model, config, log);
+        this.config = config;
+        this.overlay = overlay;
+        this.log = log;
+        this.converter = new YuvToRgbConverter(context);
+        this.handle = SequenceRunner.initTracker(natives, config);
+        this.gate = config.frameGateThreshold > 0 ? new FrameGate(config) : null;
+        this.compensator = config.latencyCompensation ? new LatencyCompensator() : null;
+        overlay.setOnSnapshotDrawnListener(
+                (snapshot, drawNanos) -> stats.onDrawn(snapshot.captureNanos, drawNanos));
+    }
+
+    /**
+     * Let keyframes run on the model at the input sizes of {@code smaller} too (see
+     * {@link SequenceRunner#setResolutionLevels}). Null or empty turns it off.
+     */
+    public synchronized void setResolutionLevels(List<? extends ModelRunner> smaller) {
+        resolution = null;
+        if (smaller == null || smaller.isEmpty()) {
+            return;
+        }
+        List<YoloDetector> levels = new ArrayList<>();
+        levels.add(detector);
+        for (ModelRunner model : smaller) {
+            YoloDetector d = new YoloDetector(model, config, log);
+            d.warmUp();
+            levels.add(d);
+        }
+        resolution = new ResolutionController(levels, config);
+    }
+
+    /** Detect keyframes on the server through {@code edge} instead of locally; null turns it off. */
+    public synchronized void setEdgeDetector(EdgeDetector edge) {
+        this.edge = edge;
+    }
+
+    public LiveStats stats() {
+        return stats;
+    }
+
+    public PipelineTimings timings() {
+        return timings;
+    }
+
+    @Override
+    public void analyze(@NonNull ImageProxy image) {
+        try {
+            synchronized (this) {
+                if (handle != 0) {
+                    process(image);
+                }
+            }
+        } catch (RuntimeException e) {
+            log.e("Live frame failed", e);
+        } finally {
+            image.close();
+        }
+    }
+
+    private void process(ImageProxy image) {
+        long startNanos = System.nanoTime();
+        long timestamp = image.getImageInfo().getTimestamp();
+        long captureNanos = toNanoTime(timestamp);
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        int dropped = natives.nativeSetFrameTimestamp(handle, timestamp);
+        boolean isKeyframe = natives.nativeIsKeyframe(handle);
+
+        // --- Grayscale: the Y plane is the luma KLT wants, copied without row padding ---
+        long startGray = System.nanoTime();
+        copyLuma(image.getPlanes()[0], width, height);
+        timings.totalGrayscaleNanos += System.nanoTime() - startGray;
+
+        // --- Frame gate: an unchanged frame keeps the last tracks, nothing else runs ---
+        boolean gated = false;
+        if (gate != null) {
+            long startGate = System.nanoTime();
+            gated = gate.skip(luma, width, height);
+            if (gated) {
+                natives.nativeSkipFrame(handle);
+                gatedFrames++;
+            }
+            timings.totalGateNanos += System.nanoTime() - startGate;
+        }
+        float[] tracks;
+        if (gated) {
+            tracks = lastTracks;
+            isKeyframe = false;
+        } else if (edge != null) {
+            EdgeDetector.Answer answer = edge.poll();
+            tracks = trackEdge(image, answer, isKeyframe, captureNanos, width, height);
+            isKeyframe = answer != null;
+        } else {
+            tracks = track(image, isKeyframe, width, height);
+        }
+        if (compensator != null && edge != null) {
+            compensator.record(frameIndex, captureNanos, tracks);
+        }
+
+        // --- Publish to the overlay ---
+        TrackSnapshotBuffer.Snapshot snap = overlay.getSnapshotBuffer().writeTracks(tracks);
+        snap.frameIndex = frameIndex++;
+        snap.keyframe = isKeyframe;
+        snap.captureNanos = captureNanos;
+        long publishNanos = System.nanoTime();
+        snap.frameMs = (publishNanos - startNanos) / 1_000_000f;
+        snap.fps = lastFrameNanos > 0 ? 1e9f / (startNanos - lastFrameNanos) : 0f;
+        lastFrameNanos = startNanos;
+        overlay.publishSnapshot();
+
+        timings.totalProcessingNanos += publishNanos - startNanos;
+        stats.onFrame(dropped, isKeyframe, captureNanos, startNanos, publishNanos);
+
+        if (publishNanos - lastSummaryNanos >= SUMMARY_INTERVAL_NANOS) {
+            lastSummaryNanos = publishNanos;
+            overlay.setPerfText(stats.summary());
+        }
+    }
+
+    /** Detection (on keyframes) and the tracker update of a frame whose luma is copied. */
+    private float[] track(ImageProxy image, boolean isKeyframe, int width, int height) {
+        float[] detections = null;
+        boolean fused = false;
+        YoloDetector full = detector;
+        long detectNanos = -1;
+        if (isKeyframe) {
+            long startConvert = System.nanoTime();
+            toRgb(image, width, height);
+            frame.setSize(width, height);
+            rgbBitmap.getPixels(frame.pixels, 0, width, 0, 0, width, height);
+            timings.totalPreprocessingNanos += System.nanoTime() - startConvert;
+
+            long startDetect = System.nanoTime();
+            if (resolution != null) {
+                full = resolution.select(lastTracks, width, height);
+            }
+            if (config.nativePostprocessing) {
+                full.infer(frame, timings);
+                fused = true;
+            } else {
+                detections = full.detect(frame, timings);
+            }
+            detectNanos = System.nanoTime() - startDetect;
+        }
+
+        long startJNI = System.nanoTime();
+        float[] tracks;
+        if (fused) {
+            tracks = natives.nativeUpdateWithModelOutput(handle, full.outputBuffer(),
+                    full.nativeDecodeParams(), luma, width, height, decodeStats);
+        } else if (isKeyframe) {
+            tracks = natives.nativeUpdateWithDetections(handle, detections, luma, width, height);
+        } else {
+            tracks = natives.nativeUpdateWithoutDetections(handle, luma, width, height);
+        }
+        long endJNI = System.nanoTime();
+        if (fused) {
+            long decodeNanos = Math.min(decodeStats[0], endJNI - startJNI);
+            timings.totalPostprocessingNanos += decodeNanos;
+            timings.totalJniTrackingNanos += (endJNI - startJNI) - decodeNanos;
+            detectNanos += decodeNanos;
+        } else {
+            timings.totalJniTrackingNanos += endJNI - startJNI;
+        }
+        if (resolution != null && detectNanos >= 0) {
+            resolution.record(detectNanos);
+        }
+        lastTracks = tracks;
+        return tracks;
+    }
+
+    /**
+     * Edge keyframes: upload the frame when a keyframe is due and nothing is in
+     * flight, and update the tracker with the detections of {@code answer} (arrived
+     * since the last frame, moved to this frame) or with KLT alone.
+     */
+    private float[] trackEdge(ImageProxy image, EdgeDetector.Answer answer, boolean keyframeDue,
+                              long captureNanos, int width, int height) {
+        if (keyframeDue && edge.ready()) {
+            long startConvert = System.nanoTime();
+            toRgb(image, width, height);
+            edge.upload(rgbBitmap, lastTracks, frameIndex, captureNanos);
+            timings.totalPreprocessingNanos += System.nanoTime() - startConvert;
+        }
+
+        float[] detections = null;
+        if (answer != null) {
+            detections = compensator != null && answer.frameId >= 0
+                    ? compensator.project(answer.detections, answer.frameId, captureNanos,
+                            natives.nativeGetTrackStates(handle, width, height), width, height)
+                    : answer.detections;
+        }
+        long startJNI = System.nanoTime();
+        float[] tracks = detections != null
+                ? natives.nativeUpdateWithDetections(handle, detections, luma, width, height)
+                : natives.nativeUpdateWithoutDetections(handle, luma, width, height);
+        timings.totalJniTrackingNanos += System.nanoTime() - startJNI;
+        lastTracks = tracks;
+        return tracks;
+    }
+
+    /** Convert the camera frame into {@link #rgbBitmap}. */
+    private void toRgb(ImageProxy image, int width, int height) {
+        if (rgbBitmap == null || rgbBitmap.getWidth() != width || rgbBitmap.getHeight() != height) {
+            rgbBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+        converter.yuvToRgb(image, rgbBitmap);
+    }
+
+    private void copyLuma(ImageProxy.PlaneProxy plane, int width, int height) {
+        if (luma.length != width * height) {
+            luma = new byte[width * height];
+        }
+        ByteBuffer y = plane.getBuffer();
+        int rowStride = plane.getRowStride();
+        y.rewind();
+        if (rowStride == width) {
+            y.get(luma, 0, width * height);
+        } else {
+            for (int row = 0; row < height; row++) {
+                y.position(row * rowStride);
+                y.get(luma, row * width, width);
+            }
+        }
+        // The RGB conversion reads the plane again from the start
+        y.rewind();
+    }
+
+    /**
+     * Image timestamps are on the sensor clock, which is either CLOCK_MONOTONIC
+     * (System.nanoTime) or CLOCK_BOOTTIME (elapsedRealtimeNanos) depending on the
+     * device; map to System.nanoTime so latencies can be measured against it.
+     */
+    private static long toNanoTime(long sensorTimestamp) {
+        long mono = System.nanoTime();
+        long boot = SystemClock.elapsedRealtimeNanos();
+        if (Math.abs(sensorTimestamp - mono) <= Math.abs(sensorTimestamp - boot)) {
+            return sensorTimestamp;
+        }
+        return sensorTimestamp - (boot - mono);
+    }
+
+    /** Stop processing (waits for the frame in flight), log the stats and release the tracker. */
+    @Override
+    public synchronized void close() {
+        if (handle == 0) {
+            return;
+        }
+        stats.report(log);
+        timings.report(log, (int) frameIndex);
+        if (resolution != null) {
+            resolution.stats().report(log);
+        }
+        if (gate != null) {
+            log.i("Gated (unchanged) frames: " + gatedFrames + " of " + frameIndex);
+        }
+        if (edge != null) {
+            edge.report(log);
+            if (compensator != null) {
+                compensator.stats().report(log);
+            }
+        }
+        natives.nativeReleaseHybridTracker(handle);
+        handle = 0;
+    }
+}
@@ -3,69 +3,52 @@ package edu.cmu.cs.face;
 import android.Manifest;
 import android.content.pm.PackageManager;
 import android.content.res.AssetFileDescriptor;
+import android.os.Build;
 import android.os.Bundle;
 import android.util.Log;
+import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.camera.view.PreviewView;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Color;
-import android.graphics.RectF;
-import android.os.Build;
-import android.os.Bundle;
-import android.util.Log;
-import android.widget.Toast;
-
-import org.tensorflow.lite.DataType;
 import org.tensorflow.lite.Interpreter;
-import org.tensorflow.lite.Tensor;
 import org.tensorflow.lite.nnapi.NnApiDelegate;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
-import java.util.Map;
+import java.util.concurrent.Future;
+
+import edu.cmu.cs.face.mot.PipelineConfig;
+import edu.cmu.cs.face.mot.PipelineLog;
+import edu.cmu.cs.face.mot.RegionUploadPlanner;
+import edu.cmu.cs.face.mot.SequenceRunner;
+import edu.cmu.cs.face.mot.StartupOrchestrator;
+import edu.cmu.cs.face.mot.TraceRecorder;
+import edu.cmu.cs.face.mot.TrackerNatives;
+import edu.cmu.cs.face.mot.tflite.TfliteModelRunner;
 
 /**
  * Minimal MOT Measurement App - No UI, Just Measurement
  *
  * Configure the path and FPS below, then run.
  * App will process the sequence and exit automatically.
+ *
+ * The pipeline is the Android-free SequenceRunner in mot-core; the same code runs
+ * on Linux servers through the tracker-host CLI (edu.cmu.cs.face.host.MotCli).
  */
-public class MainActivity extends AppCompatActivity {
+public class MainActivity extends AppCompatActivity implements TrackerNatives {
     private static final String TAG = "MainActivity";
 
-    // ============================================================================
-    // ⭐️ START: NEW GLOBAL TIMERS
-    // ============================================================================
-    private long totalProcessingNanos = 0;
-    private long totalPreprocessingNanos = 0;
-    private long totalFormatConversionNanos = 0;
-    private long totalInferenceNanos = 0;
-    private long totalPostprocessingNanos = 0;
-    private long totalGrayscaleNanos = 0;
-    private long totalJniTrackingNanos = 0;
-    // ============================================================================
-    // ⭐️ END: NEW GLOBAL TIMERS
-    // ============================================================================
-
-
     static {
         System.loadLibrary("bytetrack_jni");
     }
@@ -88,6 +71,45 @@ public class MainActivity extends AppCompatActivity {
      */
     private static final String SEQUENCE_PATH = "/sdcard/Pictures/MOT17_resized_1280x720/train/MOT17-09-DPM";
 
+    /**
+     * Live mode: track the back camera in real time (CameraX analysis -> HybridTracker
+     * -> overlay) instead of the file benchmark. Frames that arrive while one is being
+     * processed are dropped (keep-only-latest); capture->overlay latency and drop
+     * counts are shown on screen and logged on exit.
+     */
+    private static final boolean LIVE_MODE = false;
+    private static final int LIVE_WIDTH = 1280;
+    private static final int LIVE_HEIGHT = 720;
+
+    /**
+     * Edge keyframes (live mode): keyframes are detected by the Gabriel server at
+     * BuildConfig.GABRIEL_HOST instead of the local model. A due keyframe uploads the
+     * frame, local KLT keeps tracking every frame at camera rate, and the server's
+     * detections become the tracker's keyframe input when they arrive, so the server
+     * only needs to answer every KEYFRAME_INTERVAL frames plus a round trip.
+     * With EDGE_REGION_UPLOADS only crops around the tracks (sized for the server's
+     * EDGE_SERVER_INPUT_SIZE model, at most EDGE_MAX_REGIONS) go up, plus every
+     * EDGE_THUMBNAIL_INTERVAL-th upload an EDGE_THUMBNAIL_WIDTH wide thumbnail of the
+     * whole frame to find new objects.
+     */
+    private static final boolean EDGE_KEYFRAMES = false;
+    private static final int GABRIEL_PORT = 9099;
+    private static final String GABRIEL_SOURCE = "mot";
+    private static final int EDGE_JPEG_QUALITY = 80;
+    private static final boolean EDGE_REGION_UPLOADS = true;
+    private static final int EDGE_SERVER_INPUT_SIZE = 640;
+    private static final int EDGE_MAX_REGIONS = 2;
+    private static final int EDGE_THUMBNAIL_INTERVAL = 4;
+    private static final int EDGE_THUMBNAIL_WIDTH = 640;
+
+    /**
+     * Edge answers describe a frame that is a round trip old. Move their detections
+     * to the frame they are applied to along the motion their tracks made since (the
+     * KLT boxes recorded per frame, then their velocity), matched by IoU at the
+     * capture frame. The applied compensation is logged on exit.
+     */
+    private static final boolean LATENCY_COMPENSATION = true;
+
     /**
      * FPS for Kalman filter
      * TODO: Set this to your video's actual frame rate!
@@ -121,6 +143,103 @@ public class MainActivity extends AppCompatActivity {
      */
     private static final float NMS_THRESHOLD = 0.4f;
 
+    /**
+     * Gated (sparse) LAP assignment in ByteTrack: skip track/detection rows and
+     * columns that have no pair under the match threshold. Same matches, less work
+     * in crowded scenes.
+     */
+    private static final boolean USE_SPARSE_ASSIGNMENT = true;
+
+    /**
+     * Global camera-motion compensation: KLT fits one frame-to-frame transform to
+     * background points, starts object points from it and carries boxes that lost
+     * their own points; on keyframes ByteTrack's Kalman states are moved by the
+     * motion since the previous keyframe. Helps a hand-held or panning camera.
+     */
+    private static final boolean USE_GLOBAL_MOTION = false;
+
+    /**
+     * Track-guided ROI inference: keyframes run the detector on up to ROI_MAX_CROPS
+     * crops around the current tracks (padded, at up to 2x magnification) instead of
+     * the letterboxed full frame; every ROI_FULL_FRAME_INTERVAL-th keyframe still
+     * covers the whole frame to find new people. Better small-object recall at the
+     * same input size, or the same recall from a smaller model input.
+     */
+    private static final boolean USE_ROI_INFERENCE = false;
+    private static final int ROI_MAX_CROPS = 1;
+    private static final int ROI_FULL_FRAME_INTERVAL = 4;
+
+    /**
+     * Tiled inference for the 1280x720 sequences: TILE_COLS x TILE_ROWS overlapping
+     * tiles (plus the full frame) instead of squeezing the frame into one model input,
+     * run concurrently on TILE_INTERPRETERS interpreters (the extra ones on CPU) and
+     * merged with a cross-tile NMS. Per-tile timings are logged at the end.
+     */
+    private static final boolean USE_TILED_INFERENCE = false;
+    private static final int TILE_COLS = 2;
+    private static final int TILE_ROWS = 2;
+    private static final float TILE_OVERLAP = 0.2f;
+    private static final int TILE_INTERPRETERS = 2;
+
+    /**
+     * Keep the model ready at these smaller square input sizes too (resizeInput, one
+     * interpreter each) and let full-frame keyframes move between them and the
+     * model's own size to stay within KEYFRAME_LATENCY_TARGET_MS, e.g. when the
+     * device throttles. Larger sizes come back when they fit again, sooner while
+     * tracked people are small. Empty keeps every keyframe at the model's size.
+     */
+    private static final int[] SCALED_INPUT_SIZES = {};
+    private static final float KEYFRAME_LATENCY_TARGET_MS = 50f;
+
+    /**
+     * Fused keyframe post-processing: the raw output tensor goes straight to the
+     * tracker, which dequantizes, thresholds, runs NMS and un-letterboxes in native
+     * code before the ByteTrack update, all in one JNI call. Applies to full-frame
+     * keyframes; ROI and tiled keyframes merge their candidates in Java.
+     */
+    private static final boolean USE_NATIVE_POSTPROCESSING = true;
+
+    /**
+     * Decode non-keyframes at 1/N size with inSampleSize. They only produce the
+     * grayscale image for KLT, which LightweightTracker shrinks to half size anyway,
+     * so 2 costs no tracking resolution. 1 decodes every frame at full size.
+     */
+    private static final int NON_KEYFRAME_SAMPLE_SIZE = 2;
+
+    /**
+     * Keep decoded frames of the sequence in a memory-mapped file (app files dir,
+     * frame_cache/), so later runs skip JPEG decoding. Needs about 4 bytes per pixel
+     * per frame of storage (~3.7 MB per 1280x720 frame); rebuilt when the images change.
+     */
+    private static final boolean USE_FRAME_CACHE = false;
+
+    /**
+     * Frame gating for static cameras: a frame whose luma (sampled on a coarse grid)
+     * differs from the last processed frame by less than FRAME_GATE_THRESHOLD gray
+     * levels in every block reuses that frame's tracks and skips grayscale, KLT and
+     * detection; a keyframe due on such a frame waits for the next change. At most
+     * FRAME_GATE_MAX_SKIPS frames in a row are skipped. 0 disables it.
+     */
+    private static final float FRAME_GATE_THRESHOLD = 0f;
+    private static final int FRAME_GATE_MAX_SKIPS = 30;
+
+    /**
+     * Save the tracker state every CHECKPOINT_INTERVAL frames next to the results
+     * (<results>.ckpt). If the app is killed or crashes mid-sequence, the next
+     * measurement of that sequence resumes from the last checkpoint instead of frame 1.
+     * 0 disables it.
+     */
+    private static final int CHECKPOINT_INTERVAL = 300;
+
+    /**
+     * Record every stage of every frame (decode, preprocessing, conversion, inference,
+     * post-processing, grayscale, JNI) as a span and write a Chrome trace JSON to the
+     * app files dir, traces/, at the end; open it in ui.perfetto.dev. TRACE_SPANS is
+     * the ring size (about 8 spans per keyframe), the oldest spans are overwritten.
+     */
+    private static final boolean RECORD_TRACE = false;
+    private static final int TRACE_SPANS = 1 << 16;
+
     // ============================================================================
     // END CONFIGURATION
     // ============================================================================
@@ -128,42 +247,64 @@ public class MainActivity extends AppCompatActivity {
     // Model file name
     private static final String MODEL_FILE = "yolo11s_finetune_full_integer_quant.tflite";
 
-    // TFLite interpreter
-    private Interpreter tflite = null;
+    // TFLite interpreter (behind the mot-core ModelRunner interface)
+    private TfliteModelRunner modelRunner = null;
+    // Extra interpreters for tiled inference
+    private final List<TfliteModelRunner> tileRunners = new ArrayList<>();
+    // The model at SCALED_INPUT_SIZES
+    private final List<TfliteModelRunner> scaledRunners = new ArrayList<>();
     private NnApiDelegate nnApiDelegate = null;
-    private int[] inputShape = null;
-    private DataType inputDataType = null;
-    private int outputCount = 0;
-    private int[][] outputShapes = null;
-    private DataType[] outputDataTypes = null;
-
-    // Tracker
-    private long hybridTrackerHandle = 0;
+    // Live mode only
+    private CameraManager cameraManager;
+    private LiveTrackingAnalyzer liveAnalyzer;
+    private EdgeDetector edgeDetector;
 
     // Native methods
     public native long nativeInitHybridTracker(int frameRate, int trackBuffer, int keyframeInterval);
     public native void nativeReleaseHybridTracker(long trackerPtr);
     public native boolean nativeIsKeyframe(long trackerPtr);
+    public native int nativeSetFrameTimestamp(long trackerPtr, long timestampNanos);
+    public native void nativeSkipFrame(long trackerPtr);
     public native float[] nativeUpdateWithDetections(long trackerPtr, float[] detections, byte[] imageData, int w, int h);
     public native float[] nativeUpdateWithoutDetections(long trackerPtr, byte[] imageData, int w, int h);
+    public native float[] nativeUpdateWithDetectionsBuffer(long trackerPtr, float[] detections, ByteBuffer imageData, int w, int h);
+    public native float[] nativeUpdateWithoutDetectionsBuffer(long trackerPtr, ByteBuffer imageData, int w, int h);
+    public native float[] nativeUpdateWithModelOutput(long trackerPtr, ByteBuffer output, float[] decodeParams,
+                                                      byte[] imageData, int w, int h, long[] decodeStats);
+    public native float[] nativeUpdateWithModelOutputBuffer(long trackerPtr, ByteBuffer output, float[] decodeParams,
+                                                            ByteBuffer imageData, int w, int h, long[] decodeStats);
+    public native float[] nativeUpdateWithoutDetectionsScaled(long trackerPtr, byte[] imageData, int imageW, int imageH, int w, int h);
+    public native void nativeSetSparseAssignment(long trackerPtr, boolean enabled);
+    public native void nativeSetReferenceKalman(long trackerPtr, boolean enabled);
+    public native void nativeSetGlobalMotion(long trackerPtr, boolean enabled);
+    public native byte[] nativeSaveTrackerState(long trackerPtr);
+    public native boolean nativeLoadTrackerState(long trackerPtr, byte[] state);
+    // Returns [mean_us, min_us, max_us, matches]
+    public native float[] nativeBenchmarkAssignment(int numTracks, int numDetections, int iterations, boolean sparse);
+    // Returns [frames, tracks_acquired, tracks_reused, tracks_live, tracks_capacity,
+    //          dets_acquired, dets_reused, dets_capacity, klt_acquired, klt_reused, klt_capacity]
+    public native long[] nativeGetTrackerStats(long trackerPtr);
+    // Returns [trackId, cx, cy, w, h, vx, vy, vw, vh] per Kalman track, normalized, velocities per second
+    public native float[] nativeGetTrackStates(long trackerPtr, int w, int h);
+    // Returns [batch_mean_us, reference_mean_us, max_abs_diff] over predict, gating distance and update
+    public native float[] nativeBenchmarkKalman(int numTracks, int iterations);
+
+    private static final PipelineLog LOG = new PipelineLog() {
+        @Override
+        public void i(String msg) {
+            Log.i(TAG, msg);
+        }
 
-    // Detection class
-    private static class Detection {
-        float cx, cy, w, h;
-        int classId;
-        float confidence;
-        int trackId;
-
-        Detection(float cx, float cy, float w, float h, int classId, float confidence, int trackId) {
-            this.cx = cx;
-            this.cy = cy;
-            this.w = w;
-            this.h = h;
-            this.classId = classId;
-            this.confidence = confidence;
-            this.trackId = trackId;
+        @Override
+        public void w(String msg) {
+            Log.w(TAG, msg);
         }
-    }
+
+        @Override
+        public void e(String msg, Throwable tr) {
+            Log.e(TAG, msg, tr);
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -177,626 +318,180 @@ public class MainActivity extends AppCompatActivity {
         Log.i(TAG, "Track buffer: " + TRACK_BUFFER);
         Log.i(TAG, "Keyframe interval: " + KEYFRAME_INTERVAL);
         Log.i(TAG, "Model: " + MODEL_FILE);
-        requestStoragePermission();
+        if (LIVE_MODE) {
+            startLiveMode();
+        } else {
+            requestStoragePermission();
+        }
 
     }
 
+    /**
+     * The measurement itself lives in mot-core (SequenceRunner), shared with the host
+     * CLI; this only supplies the Android pieces: asset model, Bitmap decode, Log.
+     *
+     * Cold start runs concurrently: model load (then a warm-up inference, which is
+     * where the delegate compiles), tracker init and image indexing. The startup
+     * breakdown and time-to-first-frame are logged with the results.
+     */
     private void runMeasurement() {
-        // Load model
-        Log.i(TAG, "");
-        Log.i(TAG, "Loading TFLite model...");
-        if (!loadTFLiteModel(MODEL_FILE)) {
-            Log.e(TAG, "ERROR: Failed to load model");
-            return;
-        }
-        Log.i(TAG, "✓ Model loaded");
-
-        // Initialize tracker
-        Log.i(TAG, "Initializing tracker...");
-        hybridTrackerHandle = nativeInitHybridTracker(VIDEO_FPS, TRACK_BUFFER, KEYFRAME_INTERVAL);
-        if (hybridTrackerHandle == 0) {
-            Log.e(TAG, "ERROR: Failed to initialize tracker");
-            return;
-        }
-        Log.i(TAG, "✓ Tracker initialized (FPS=" + VIDEO_FPS + ")");
+        PipelineConfig config = buildConfig();
 
-        // Get sequence info
         File seqDir = new File(SEQUENCE_PATH);
-        String sequenceName = seqDir.getName();
-        File imgDir = new File(seqDir, "img1");
-
-        Log.i(TAG, "");
-        Log.i(TAG, "Checking sequence directory...");
-        Log.i(TAG, "Path: " + imgDir.getAbsolutePath());
-
-        if (!imgDir.exists()) {
-            Log.e(TAG, "ERROR: Directory not found: " + imgDir.getAbsolutePath());
-            return;
-        }
-
-        File[] allFiles = imgDir.listFiles();
-
-        // 2. Check for null (This is the most common permissions error)
-        if (allFiles == null) {
-            Log.e(TAG, "FATAL ERROR: allFiles array is NULL. Directory is inaccessible.");
-            Log.e(TAG, ">>> LIKELY FIX: Grant READ_EXTERNAL_STORAGE permission in App Settings.");
-            return;
-        }
-
-        // 4. Now, filter the list in Java
-        List<File> imageFileList = new ArrayList<>();
-        for (File f : allFiles) {
-            String name = f.getName().toLowerCase();
-            if (name.endsWith(".jpg") || name.endsWith(".png")) {
-                imageFileList.add(f);
-            }
-        }
-        File[] imageFiles = imageFileList.toArray(new File[0]); // Convert List to Array
-
-        // ====================================================================
-        // END DEBUGGING BLOCK
-        // ====================================================================
-
-
-        // 5. Your original check, now much more informative
-        if (imageFiles.length == 0) {
-            Log.e(TAG, "ERROR: No images found *after filtering*.");
-            Log.e(TAG, "Found " + allFiles.length + " total items, but 0 matched the .jpg/.png filter.");
-            return;
-        }
-
-        Arrays.sort(imageFiles, Comparator.comparing(File::getName));
-        Log.i(TAG, "✓ Found " + imageFiles.length + " images");
-
-        // Output file
-        File appSpecificDir = getExternalFilesDir("results");
-        File outputFile = new File(appSpecificDir, sequenceName + "-results.txt");
         // This will save the file to a path like:
-        // /sdcard/Android/data/edu.cmu.cs.face/files/MOT17-02-DPM_results.txt
-
-        Log.i(TAG, "Output: " + outputFile.getAbsolutePath());
+        // /sdcard/Android/data/edu.cmu.cs.face/files/results/MOT17-02-DPM-results.txt
+        File outputFile = new File(getExternalFilesDir("results"), seqDir.getName() + "-results.txt");
+        BitmapImageDecoder decoder = new BitmapImageDecoder();
 
         Log.i(TAG, "");
-        Log.i(TAG, "=".repeat(60));
-        Log.i(TAG, "Starting processing...");
-        Log.i(TAG, "=".repeat(60));
-
-        // Process sequence
-        try (FileWriter writer = new FileWriter(outputFile)) {
-            long startTime = System.currentTimeMillis();
-            int processedFrames = 0;
-            int totalDetections = 0;
-
-            for (int frameIdx = 0; frameIdx < imageFiles.length; frameIdx++) {
-                File imageFile = imageFiles[frameIdx];
-                int frameNumber = frameIdx + 1;
-
-//                // Log progress every 100 frames
-//                if (frameIdx % 100 == 0 && frameIdx > 0) {
-//                    long elapsed = System.currentTimeMillis() - startTime;
-//                    float fps = (frameIdx * 1000.0f / elapsed);
-//                    int progress = (frameIdx * 100) / imageFiles.length;
-//
-//                    Log.i(TAG, String.format("Progress: %d%% (%d/%d) - %.1f FPS",
-//                            progress, frameNumber, imageFiles.length, fps));
-//                }
-
-                // Load frame
-
-                Bitmap frame = BitmapFactory.decodeFile(imageFile.getAbsolutePath());
-                long frameStartTime = System.nanoTime();
-                if (frame == null) {
-                    Log.w(TAG, "WARNING: Failed to load " + imageFile.getName());
-                    continue;
+        Log.i(TAG, "Loading TFLite model, tracker and image list...");
+        try (StartupOrchestrator startup = new StartupOrchestrator()) {
+            Future<Boolean> model = startup.submit("Model load", () -> loadTFLiteModel(MODEL_FILE));
+            Future<Long> tracker = startup.submit("Tracker init", () -> SequenceRunner.initTracker(this, config));
+            Future<List<File>> images = startup.submit("Image index", () -> SequenceRunner.listImages(seqDir, LOG));
+            Future<SequenceRunner> warmedUp = startup.submitAfter("Warm-up", model, () -> {
+                if (!startup.await(model)) {
+                    return null;
                 }
-
-                // Process frame
-                List<Detection> trackedObjects = processFrame(frame, frameIdx);
-
-                // Write detections
-                for (Detection det : trackedObjects) {
-                    // Filter for person (classId == 0) HERE, after tracking
-                    if (det.trackId > 0 && det.classId == 0) {
-                        int imgW = frame.getWidth();
-                        int imgH = frame.getHeight();
-
-                        float centerX = det.cx * imgW;
-                        float centerY = det.cy * imgH;
-                        float width = det.w * imgW;
-                        float height = det.h * imgH;
-
-                        float left = centerX - width / 2f;
-                        float top = centerY - height / 2f;
-
-                        String line = String.format(Locale.US, "%d,%d,%.2f,%.2f,%.2f,%.2f,%.2f,-1,-1,-1\n",
-                                frameNumber,
-                                det.trackId,
-                                left,
-                                top,
-                                width,
-                                height,
-                                det.confidence);
-                        writer.write(line);
-                        totalDetections++;
-                    }
-                }
-
-                frame.recycle();
-                processedFrames++;
-                long frameTime = System.nanoTime() - frameStartTime;
-                totalProcessingNanos += frameTime;
+                List<TfliteModelRunner> models = new ArrayList<>();
+                models.add(modelRunner);
+                models.addAll(tileRunners);
+                SequenceRunner r = new SequenceRunner(this, models, decoder, config, LOG);
+                r.setResolutionLevels(scaledRunners);
+                r.warmUp();
+                return r;
+            });
+
+            long handle = startup.await(tracker);
+            SequenceRunner runner;
+            List<File> imageList;
+            try {
+                runner = startup.await(warmedUp);
+                imageList = startup.await(images);
+            } catch (RuntimeException e) {
+                nativeReleaseHybridTracker(handle);
+                throw e;
             }
-
-//            long endTime = System.currentTimeMillis();
-            float totalSeconds = totalProcessingNanos / 1000000000f;
-            float fps = processedFrames / totalSeconds;
+            if (runner == null || imageList == null) {
+                nativeReleaseHybridTracker(handle);
+                Log.e(TAG, runner == null ? "ERROR: Failed to load model" : "ERROR: No images to process");
+                return;
+            }
+            Log.i(TAG, "✓ Model loaded");
 
             Log.i(TAG, "");
+            Log.i(TAG, "Sequence: " + new File(seqDir, SequenceRunner.IMAGE_DIR).getAbsolutePath());
+            Log.i(TAG, "Output: " + outputFile.getAbsolutePath());
             Log.i(TAG, "=".repeat(60));
-            Log.i(TAG, "MEASUREMENT COMPLETE");
+            Log.i(TAG, "Starting processing...");
             Log.i(TAG, "=".repeat(60));
-            Log.i(TAG, "Sequence: " + sequenceName);
-            Log.i(TAG, "Frames: " + processedFrames);
-            Log.i(TAG, "Detections: " + totalDetections);
-            Log.i(TAG, "Time: " + String.format("%.1f", totalSeconds) + "s");
-            Log.i(TAG, "FPS (Total): " + String.format("%.2f", fps));
-            Log.i(TAG, "Output: " + outputFile.getAbsolutePath());
-
 
-            // ============================================================================
-            // ⭐️ START: NEW TIMING REPORT BLOCK
-            // ============================================================================
-            Log.i(TAG, "--- Average Amortized Timings (ms) ---");
-            if (processedFrames > 0) {
-                double N = (double) processedFrames;
-                double NANO_TO_MS = 1_000_000.0;
-
-                // These timings are amortized over ALL frames (N),
-                // as requested.
-                Log.i(TAG, String.format(Locale.US, "1. Preprocessing:   %.3f ms", (totalPreprocessingNanos / N / NANO_TO_MS)));
-                Log.i(TAG, String.format(Locale.US, "2. Format Convert:  %.3f ms", (totalFormatConversionNanos / N / NANO_TO_MS)));
-                Log.i(TAG, String.format(Locale.US, "3. Inference:       %.3f ms", (totalInferenceNanos / N / NANO_TO_MS)));
-                Log.i(TAG, String.format(Locale.US, "4. Postprocessing:  %.3f ms", (totalPostprocessingNanos / N / NANO_TO_MS)));
-                Log.i(TAG, String.format(Locale.US, "5. Grayscale (OF):  %.3f ms", (totalGrayscaleNanos / N / NANO_TO_MS)));
-                Log.i(TAG, String.format(Locale.US, "6. JNI (Track/OF):  %.3f ms", (totalJniTrackingNanos / N / NANO_TO_MS)));
-
-                double sumOfPartsMs = (totalPreprocessingNanos + totalFormatConversionNanos + totalInferenceNanos +
-                        totalPostprocessingNanos + totalGrayscaleNanos + totalJniTrackingNanos) / N / NANO_TO_MS;
-                double totalMs = (totalProcessingNanos / N / NANO_TO_MS);
-
-                Log.i(TAG, "-------------------------------------");
-                Log.i(TAG, String.format(Locale.US, "Sum of Parts:     %.3f ms", sumOfPartsMs));
-                Log.i(TAG, String.format(Locale.US, "Total Per-Frame:  %.3f ms (1000/%.2f)", totalMs, fps));
-                Log.i(TAG, String.format(Locale.US, "Other (Load/etc): %.3f ms", (totalMs - sumOfPartsMs)));
+            TraceRecorder trace = RECORD_TRACE ? new TraceRecorder(TRACE_SPANS) : null;
+            runner.setTrace(trace);
+            SequenceRunner.Result result = runner.run(seqDir, outputFile, imageList, handle);
+            result.report(LOG);
+            startup.report(LOG, result.firstFrameNanos);
+            if (trace != null) {
+                File traceFile = new File(getExternalFilesDir("traces"), seqDir.getName() + ".trace.json");
+                trace.writeChromeJson(traceFile);
+                trace.report(LOG, traceFile);
             }
-            // ============================================================================
-            // ⭐️ END: NEW TIMING REPORT BLOCK
-            // ============================================================================
-
-
-            Log.i(TAG, "=".repeat(60));
-
+            int[] poolStats = decoder.pool().stats();
+            Log.i(TAG, "Bitmap pool: " + poolStats[0] + " decodes reused a bitmap, "
+                    + poolStats[1] + " allocated");
         } catch (IOException e) {
             Log.e(TAG, "ERROR: Failed to write results", e);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "ERROR: Measurement failed", e);
+        } finally {
+            decoder.pool().clear();
         }
     }
 
-    /**
-     * ⭐️ MODIFIED: This function now times Grayscale and JNI calls.
-     */
-    private List<Detection> processFrame(Bitmap frame, int frameIdx) {
-        int originalW = frame.getWidth();
-        int originalH = frame.getHeight();
-
-        boolean isKeyframe = nativeIsKeyframe(hybridTrackerHandle);
-        float[] trackerOutput;
-        float[] detectArray = null; // Declare outside
-
-        if (isKeyframe) {
-            // Detection (which includes Pre, Convert, Infer, Post) + tracking
-            // Timers for these are inside runYOLODetection()
-            List<Detection> detections = runYOLODetection(frame);
-
-            detectArray = new float[detections.size() * 6];
-            for (int i = 0; i < detections.size(); i++) {
-                Detection d = detections.get(i);
-                detectArray[i * 6] = d.cx;
-                detectArray[i * 6 + 1] = d.cy;
-                detectArray[i * 6 + 2] = d.w;
-                detectArray[i * 6 + 3] = d.h;
-                detectArray[i * 6 + 4] = (float)d.classId; // SWAPPED
-                detectArray[i * 6 + 5] = d.confidence;   // SWAPPED
-            }
+    /** Pipeline settings from the configuration constants above. */
+    private PipelineConfig buildConfig() {
+        PipelineConfig config = new PipelineConfig();
+        config.videoFps = VIDEO_FPS;
+        config.trackBuffer = TRACK_BUFFER;
+        config.keyframeInterval = KEYFRAME_INTERVAL;
+        config.confidenceThreshold = CONFIDENCE_THRESHOLD;
+        config.nmsThreshold = NMS_THRESHOLD;
+        config.sparseAssignment = USE_SPARSE_ASSIGNMENT;
+        config.globalMotion = USE_GLOBAL_MOTION;
+        config.nonKeyframeSampleSize = NON_KEYFRAME_SAMPLE_SIZE;
+        config.checkpointInterval = CHECKPOINT_INTERVAL;
+        config.nativePostprocessing = USE_NATIVE_POSTPROCESSING;
+        config.roiInference = USE_ROI_INFERENCE;
+        config.roiMaxCrops = ROI_MAX_CROPS;
+        config.roiFullFrameInterval = ROI_FULL_FRAME_INTERVAL;
+        config.tiledInference = USE_TILED_INFERENCE;
+        config.tileCols = TILE_COLS;
+        config.tileRows = TILE_ROWS;
+        config.tileOverlap = TILE_OVERLAP;
+        config.keyframeLatencyTargetMs = KEYFRAME_LATENCY_TARGET_MS;
+        config.frameGateThreshold = FRAME_GATE_THRESHOLD;
+        config.frameGateMaxSkips = FRAME_GATE_MAX_SKIPS;
+        config.latencyCompensation = LATENCY_COMPENSATION;
+        if (USE_FRAME_CACHE) {
+            config.frameCacheDir = getExternalFilesDir("frame_cache");
         }
-
-        // --- [5. Grayscale (Optical Flow Prep)] ---
-        long startGray = System.nanoTime();
-        byte[] imageData = bitmapToGrayscale(frame);
-        long endGray = System.nanoTime();
-        totalGrayscaleNanos += (endGray - startGray);
-        // --- [END Grayscale] ---
-
-
-        // --- [6. JNI (Tracking / Optical Flow)] ---
-        long startJNI = System.nanoTime();
-        if (isKeyframe) {
-            trackerOutput = nativeUpdateWithDetections(
-                    hybridTrackerHandle, detectArray, imageData, originalW, originalH);
-        } else {
-            // Tracking only
-            trackerOutput = nativeUpdateWithoutDetections(
-                    hybridTrackerHandle, imageData, originalW, originalH);
-        }
-        long endJNI = System.nanoTime();
-        totalJniTrackingNanos += (endJNI - startJNI);
-        // --- [END JNI] ---
-
-        return parseTrackerOutput(trackerOutput);
+        return config;
     }
 
-
     /**
-     * ⭐️ MODIFIED: This function now times Preprocessing, Conversion, Inference, and Postprocessing.
+     * Live camera tracking: load the model off the main thread, then bind the camera
+     * with a {@link LiveTrackingAnalyzer} feeding the local overlay.
      */
-    private List<Detection> runYOLODetection(Bitmap originalBitmap) {
-        if (tflite == null || inputShape == null) {
-            return Collections.emptyList();
-        }
-
-        int originalW = originalBitmap.getWidth();
-        int originalH = originalBitmap.getHeight();
-        int modelW = inputShape[2]; // Assumes [1, H, W, C]
-        int modelH = inputShape[1];
-
-
-        // --- [1. Preprocessing] ---
-        long startPre = System.nanoTime();
-        // Letterbox resize
-        float scale = Math.min((float) modelW / originalW, (float) modelH / originalH);
-        int newW = Math.round(originalW * scale);
-        int newH = Math.round(originalH * scale);
-        int padX = (modelW - newW) / 2;
-        int padY = (modelH - newH) / 2;
-
-        Bitmap resized = Bitmap.createScaledBitmap(originalBitmap, newW, newH, true);
-        Bitmap letterbox = Bitmap.createBitmap(modelW, modelH, Bitmap.Config.ARGB_8888);
-        android.graphics.Canvas canvas = new android.graphics.Canvas(letterbox);
-        canvas.drawColor(Color.rgb(114, 114, 114)); // Same padding color as your code
-        canvas.drawBitmap(resized, padX, padY, null);
-        resized.recycle();
-        long endPre = System.nanoTime();
-        totalPreprocessingNanos += (endPre - startPre);
-        // --- [END Preprocessing] ---
-
-
-        // --- [2. Format Conversion] ---
-        long startConvert = System.nanoTime();
-        // --- [START] FIXED CONVERSION BLOCK ---
-
-        // Get the input tensor details (loaded in loadTFLiteModel)
-        Tensor inputTensor = tflite.getInputTensor(0);
-        DataType modelInputType = inputTensor.dataType(); // Get the *actual* model type
-
-        // Get model quantization parameters (if they exist)
-        Tensor.QuantizationParams qp = inputTensor.quantizationParams();
-        final int zeroPoint = qp.getZeroPoint();
-
-        // Allocate the input buffer with the exact size the model expects
-        ByteBuffer inputBuffer = ByteBuffer.allocateDirect(inputTensor.numBytes());
-        inputBuffer.order(ByteOrder.nativeOrder());
-
-        int[] pixels = new int[modelW * modelH];
-        letterbox.getPixels(pixels, 0, modelW, 0, 0, modelW, modelH);
-        letterbox.recycle(); // Recycle the letterbox bitmap
-
-        inputBuffer.rewind(); // Ensure buffer is at position 0
-
-        // --- This is the core logic ---
-        if (modelInputType == DataType.FLOAT32) {
-            // Model is FLOAT32: Convert 0-255 int to 0.0f-1.0f float
-            // Log.d(TAG, "Converting to FLOAT32"); // Removed for performance
-            for (int pixel : pixels) {
-                float r = ((pixel >> 16) & 0xFF) / 255.0f;
-                float g = ((pixel >> 8) & 0xFF) / 255.0f;
-                float b = (pixel & 0xFF) / 255.0f;
-                inputBuffer.putFloat(r);
-                inputBuffer.putFloat(g);
-                inputBuffer.putFloat(b);
-            }
-        } else if (modelInputType == DataType.UINT8) {
-            // Model is UINT8: Use raw 0-255 byte values, subtract zeroPoint (usually 0)
-            // Log.d(TAG, "Converting to UINT8 (zeroPoint=" + zeroPoint + ")"); // Removed for performance
-            for (int pixel : pixels) {
-                byte r = (byte) (((pixel >> 16) & 0xFF) - zeroPoint);
-                byte g = (byte) (((pixel >> 8) & 0xFF) - zeroPoint);
-                byte b = (byte) ((pixel & 0xFF) - zeroPoint);
-                inputBuffer.put(r);
-                inputBuffer.put(g);
-                inputBuffer.put(b);
+    private void startLiveMode() {
+        setContentView(R.layout.activity_main);
+        PreviewView previewView = findViewById(R.id.viewFinder);
+        OverlayView overlay = findViewById(R.id.localOverlay);
+
+        new Thread(() -> {
+            if (!loadTFLiteModel(MODEL_FILE)) {
+                Log.e(TAG, "ERROR: Failed to load model");
+                return;
             }
-        } else if (modelInputType == DataType.INT8) {
-            // Model is INT8: Subtract the zero-point (often 128)
-            // Log.d(TAG, "Converting to INT8 (zeroPoint=" + zeroPoint + ")"); // Removed for performance
-            for (int pixel : pixels) {
-                // This converts the 0-255 pixel value to the model's required -128 to 127 range
-                byte r = (byte) (((pixel >> 16) & 0xFF) - zeroPoint);
-                byte g = (byte) (((pixel >> 8) & 0xFF) - zeroPoint);
-                byte b = (byte) ((pixel & 0xFF) - zeroPoint);
-                inputBuffer.put(r);
-                inputBuffer.put(g);
-                inputBuffer.put(b);
+            PipelineConfig config = buildConfig();
+            // Live frames are converted from YUV, not cached or decoded subsampled
+            config.frameCacheDir = null;
+            config.roiInference = false;
+            config.tiledInference = false;
+            LiveTrackingAnalyzer analyzer = new LiveTrackingAnalyzer(this, this, modelRunner, config, overlay, LOG);
+            analyzer.setResolutionLevels(scaledRunners);
+            EdgeDetector edge = null;
+            if (EDGE_KEYFRAMES) {
+                RegionUploadPlanner planner = EDGE_REGION_UPLOADS
+                        ? new RegionUploadPlanner(EDGE_SERVER_INPUT_SIZE, EDGE_MAX_REGIONS,
+                                EDGE_THUMBNAIL_INTERVAL, EDGE_THUMBNAIL_WIDTH)
+                        : null;
+                edge = new EdgeDetector(getApplication(), BuildConfig.GABRIEL_HOST, GABRIEL_PORT,
+                        GABRIEL_SOURCE, planner, EDGE_JPEG_QUALITY);
+                edge.start();
+                analyzer.setEdgeDetector(edge);
+                Log.i(TAG, "✓ Edge keyframes from " + BuildConfig.GABRIEL_HOST + ":" + GABRIEL_PORT);
             }
-        } else {
-            Log.e(TAG, "Unsupported input data type: " + modelInputType);
-            return Collections.emptyList();
-        }
-
-        inputBuffer.rewind(); // Rewind again before passing to TFLite
-        long endConvert = System.nanoTime();
-        totalFormatConversionNanos += (endConvert - startConvert);
-        // --- [END] FIXED CONVERSION BLOCK ---
-        // --- [END Format Conversion] ---
-
-
-        // Run inference
-        Object[] inputs = {inputBuffer}; // Pass the correctly formatted buffer
-        Map<Integer, Object> outputsMap = new HashMap<>();
-
-        // This part remains the same
-        if (outputDataTypes[0] == DataType.FLOAT32) {
-            outputsMap.put(0, new float[outputShapes[0][0]][outputShapes[0][1]][outputShapes[0][2]]);
-        } else {
-            outputsMap.put(0, new byte[outputShapes[0][0]][outputShapes[0][1]][outputShapes[0][2]]);
-        }
-
-        // --- [3. Inference] ---
-        long startInfer = System.nanoTime();
-        tflite.runForMultipleInputsOutputs(inputs, outputsMap);
-        long endInfer = System.nanoTime();
-        totalInferenceNanos += (endInfer - startInfer);
-        // --- [END Inference] ---
-
-
-        // --- [4. Postprocessing] ---
-        long startPost = System.nanoTime();
-        List<Detection> results = decodeOutput(outputsMap, originalW, originalH, modelW, modelH, padX, padY, scale);
-        long endPost = System.nanoTime();
-        totalPostprocessingNanos += (endPost - startPost);
-        // --- [END Postprocessing] ---
-
-        return results;
-    }
-
-    private List<Detection> decodeOutput(Map<Integer, Object> outputsMap, int originalW, int originalH,
-                                         int modelW, int modelH, int padX, int padY, float scale) {
-        Tensor outputTensor = tflite.getOutputTensor(0);
-        int[] outShape = outputTensor.shape();
-        DataType outType = outputTensor.dataType();
-
-        int numDetails = outShape[1];
-        int numPredictions = outShape[2];
-
-        if (numDetails < 5) {
-            Log.e(TAG, "Model output is too small. Expected numDetails >= 5, but got " + numDetails);
-            return Collections.emptyList();
-        }
-
-        // Dequantize output
-        float[][] dequantized = new float[numPredictions][numDetails];
-        if (outType == DataType.FLOAT32) {
-            float[][][] rawFloat = (float[][][]) outputsMap.get(0);
-            for (int i = 0; i < numPredictions; i++) {
-                for (int j = 0; j < numDetails; j++) {
-                    dequantized[i][j] = rawFloat[0][j][i];
-                }
-            }
-        } else {
-            // Quantized model (INT8/UINT8)
-            byte[][][] rawByte = (byte[][][]) outputsMap.get(0);
-            Tensor.QuantizationParams qp = outputTensor.quantizationParams();
-            float scale_q = qp.getScale();
-            int zp = qp.getZeroPoint();
-            boolean isUint8 = (outType == DataType.UINT8);
-
-            for (int i = 0; i < numPredictions; i++) {
-                for (int j = 0; j < numDetails; j++) {
-                    int val = isUint8 ? (rawByte[0][j][i] & 0xFF) : rawByte[0][j][i];
-                    dequantized[i][j] = (val - zp) * scale_q;
-                }
-            }
-        }
-
-        // --- MODIFIED BLOCK START ---
-        // Based on user feedback to fix classId mismatch and filter for people
-        //
-        // This logic assumes a multi-class YOLO output format like:
-        // [cx, cy, w, h, class0_score, class1_score, ..., classN_score]
-        //
-        // Fix 1: Find max score and correct classId (j - 4)
-        // Fix 2: Filter for 'person' (classId == 0) and confidence
-
-        ArrayList<RectF> boxes = new ArrayList<>();
-        ArrayList<Float> confidences = new ArrayList<>();
-        ArrayList<Integer> classIds = new ArrayList<>(); // ADDED: We need to pass the classId to the tracker
-
-        for (int i = 0; i < numPredictions; i++) {
-            float[] row = dequantized[i];
-
-            // Find the max class score and its ID
-            // (Assumes class scores start at index 4)
-            float maxScore = -1.0f;
-            int classId = -1;
-
-            // Loop starts at 4, as 0-3 are box coords
-            for (int j = 4; j < numDetails; j++) {
-                float score = row[j];
-                if (score > maxScore) {
-                    maxScore = score;
-                    classId = j - 4; // User's specified fix for classId mismatch
-                }
-            }
-
-            // Apply confidence threshold. We pass ALL classes to the native tracker.
-            if (maxScore >= CONFIDENCE_THRESHOLD) { // REMOVED classId == 0 filter
-                // Bounding box coordinates are at indices 0-3
-                float cx = row[0];
-                float cy = row[1];
-                float w_norm = row[2];
-                float h_norm = row[3];
-
-                // Convert from normalized [0,1] to pixel coordinates [0, modelW]
-                float pixel_w = w_norm * modelW;
-                float pixel_h = h_norm * modelH;
-                float left = (cx * modelW) - (pixel_w / 2f);
-                float top = (cy * modelH) - (pixel_h / 2f);
-
-                boxes.add(new RectF(left, top, left + pixel_w, top + pixel_h));
-                confidences.add(maxScore);
-                classIds.add(classId); // ADDED: Store the classId
-            }
-        }
-        // --- MODIFIED BLOCK END ---
-
-
-        // NMS
-        List<Integer> indices = nonMaxSuppression(boxes, confidences);
-
-        // Map to original coordinates
-        List<Detection> finalDetections = new ArrayList<>();
-        float padXf = (float) padX;
-        float padYf = (float) padY;
-
-        for (int index : indices) {
-            RectF box = boxes.get(index);
-
-            float left_unpadded = box.left - padXf;
-            float top_unpadded = box.top - padYf;
-            float width_unpadded = box.width();
-            float height_unpadded = box.height();
-
-            float left_orig = left_unpadded / scale;
-            float top_orig = top_unpadded / scale;
-            float width_orig = width_unpadded / scale;
-            float height_orig = height_unpadded / scale;
-
-            float left_clipped = Math.max(0f, Math.min(left_orig, originalW));
-            float top_clipped = Math.max(0f, Math.min(top_orig, originalH));
-            float right_clipped = Math.max(0f, Math.min(left_orig + width_orig, originalW));
-            float bottom_clipped = Math.max(0f, Math.min(top_orig + height_orig, originalH));
-            float final_w = right_clipped - left_clipped;
-            float final_h = bottom_clipped - top_clipped;
-
-            float norm_cx = (left_clipped + final_w / 2f) / (float) originalW;
-            float norm_cy = (top_clipped + final_h / 2f) / (float) originalH;
-            float norm_w = final_w / (float) originalW;
-            float norm_h = final_h / (float) originalH;
-
-            if (final_w > 1 && final_h > 1) {
-                finalDetections.add(
-                        // Pass the actual classId to the tracker
-                        new Detection(norm_cx, norm_cy, norm_w, norm_h, classIds.get(index), confidences.get(index), -1)
-                );
-            }
-        }
-
-        return finalDetections;
-    }
-
-    private static List<Integer> nonMaxSuppression(ArrayList<RectF> boxes, ArrayList<Float> confidences) {
-        List<Integer> selectedIndices = new ArrayList<>();
-        if (boxes.isEmpty()) {
-            return selectedIndices;
-        }
-
-        List<Integer> indices = new ArrayList<>();
-        for (int i = 0; i < confidences.size(); i++) {
-            indices.add(i);
-        }
-        indices.sort((a, b) -> Float.compare(confidences.get(b), confidences.get(a)));
-
-        while (!indices.isEmpty()) {
-            int current_index = indices.get(0);
-            selectedIndices.add(current_index);
-            indices.remove(0);
-
-            RectF current_box = boxes.get(current_index);
-            List<Integer> indices_to_remove = new ArrayList<>();
-
-            for (int i = 0; i < indices.size(); i++) {
-                int comparing_index = indices.get(i);
-                RectF comparing_box = boxes.get(comparing_index);
-
-                float interArea = Math.max(0, Math.min(current_box.right, comparing_box.right) -
-                        Math.max(current_box.left, comparing_box.left)) *
-                        Math.max(0, Math.min(current_box.bottom, comparing_box.bottom) -
-                                Math.max(current_box.top, comparing_box.top));
-                float unionArea = current_box.width() * current_box.height() +
-                        comparing_box.width() * comparing_box.height() - interArea;
-                float iou = (unionArea > 0f) ? (interArea / unionArea) : 0f;
-
-                if (iou > NMS_THRESHOLD) {
-                    indices_to_remove.add(i);
+            EdgeDetector edgeForUi = edge;
+            runOnUiThread(() -> {
+                if (isDestroyed()) {
+                    analyzer.close();
+                    if (edgeForUi != null) {
+                        edgeForUi.close();
+                    }
+                    return;
                 }
-            }
-
-            for (int i = indices_to_remove.size() - 1; i >= 0; i--) {
-                indices.remove((int) indices_to_remove.get(i));
-            }
-        }
-
-        return selectedIndices;
-    }
-
-    private List<Detection> parseTrackerOutput(float[] trackerOutput) {
-        List<Detection> result = new ArrayList<>();
-        if (trackerOutput == null || trackerOutput.length == 0) {
-            return result;
-        }
-
-        int numTracks = trackerOutput.length / 7;
-        for (int i = 0; i < numTracks; i++) {
-            float cx = trackerOutput[i * 7];
-            float cy = trackerOutput[i * 7 + 1];
-            float w = trackerOutput[i * 7 + 2];
-            float h = trackerOutput[i * 7 + 3];
-
-            // --- FIX ---
-            // The JNI returns [..., classId, conf, trackId]
-            // We had them swapped. This matches the reference file.
-            int classId = (int) trackerOutput[i * 7 + 4];
-            float conf = trackerOutput[i * 7 + 5];
-            int trackId = (int) trackerOutput[i * 7 + 6];
-            // --- END FIX ---
-
-            result.add(new Detection(cx, cy, w, h, classId, conf, trackId));
-        }
-
-        return result;
-    }
-
-    private byte[] bitmapToGrayscale(Bitmap bitmap) {
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
-        byte[] grayscale = new byte[width * height];
-
-        int[] pixels = new int[width * height];
-        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
-
-        for (int i = 0; i < pixels.length; i++) {
-            int pixel = pixels[i];
-            int r = (pixel >> 16) & 0xFF;
-            int g = (pixel >> 8) & 0xFF;
-            int b = pixel & 0xFF;
-            grayscale[i] = (byte) ((r + g + b) / 3);
-        }
-
-        return grayscale;
+                liveAnalyzer = analyzer;
+                edgeDetector = edgeForUi;
+                cameraManager = new CameraManager(this, previewView, LIVE_WIDTH, LIVE_HEIGHT, analyzer);
+                cameraManager.startBackCamera();
+                Log.i(TAG, "✓ Live tracking started");
+            });
+        }, "live-setup").start();
     }
 
     private boolean loadTFLiteModel(String assetFilename) {
-        try {
-            AssetFileDescriptor afd = getAssets().openFd(assetFilename);
-            FileInputStream fis = new FileInputStream(afd.getFileDescriptor());
+        try (AssetFileDescriptor afd = getAssets().openFd(assetFilename);
+             FileInputStream fis = new FileInputStream(afd.getFileDescriptor())) {
             FileChannel fc = fis.getChannel();
             MappedByteBuffer mb = fc.map(FileChannel.MapMode.READ_ONLY, afd.getStartOffset(), afd.getLength());
 
@@ -830,25 +525,32 @@ public class MainActivity extends AppCompatActivity {
             opts.setNumThreads(4);
             opts.setUseXNNPACK(true);
 
-            tflite = new Interpreter(mb, opts);
+            modelRunner = new TfliteModelRunner(mb, opts);
 
-            Tensor inTensor = tflite.getInputTensor(0);
-            inputShape = inTensor.shape();
-            inputDataType = inTensor.dataType();
+            // The delegate belongs to the first interpreter; tile interpreters run on CPU
+            if (USE_TILED_INFERENCE) {
+                for (int i = 1; i < TILE_INTERPRETERS; i++) {
+                    Interpreter.Options tileOpts = new Interpreter.Options();
+                    tileOpts.setNumThreads(2);
+                    tileOpts.setUseXNNPACK(true);
+                    tileRunners.add(new TfliteModelRunner(mb.duplicate(), tileOpts));
+                }
+                Log.i(TAG, "✓ " + (tileRunners.size() + 1) + " interpreters for tiled inference");
+            }
 
-            outputCount = tflite.getOutputTensorCount();
-            outputShapes = new int[outputCount][];
-            outputDataTypes = new DataType[outputCount];
-            for (int i = 0; i < outputCount; i++) {
-                Tensor t = tflite.getOutputTensor(i);
-                outputShapes[i] = t.shape();
-                outputDataTypes[i] = t.dataType();
+            // Keyframes run one at a time, so the scaled interpreters share the options (and delegate)
+            for (int size : SCALED_INPUT_SIZES) {
+                scaledRunners.add(new TfliteModelRunner(mb.duplicate(), opts, size));
+            }
+            if (!scaledRunners.isEmpty()) {
+                Log.i(TAG, "✓ Scaled input sizes " + Arrays.toString(SCALED_INPUT_SIZES)
+                        + ", keyframe latency target " + KEYFRAME_LATENCY_TARGET_MS + " ms");
             }
 
-            Log.i(TAG, "Input shape: " + Arrays.toString(inputShape));
-            Log.i(TAG, "Input dtype: " + inputDataType.name());
-            Log.i(TAG, "Output shape: " + Arrays.toString(outputShapes[0]));
-            Log.i(TAG, "Output dtype: " + outputDataTypes[0].name());
+            Log.i(TAG, "Input shape: " + Arrays.toString(modelRunner.inputShape()));
+            Log.i(TAG, "Input dtype: " + modelRunner.inputType().name());
+            Log.i(TAG, "Output shape: " + Arrays.toString(modelRunner.outputShape()));
+            Log.i(TAG, "Output dtype: " + modelRunner.outputType().name());
 
             return true;
 
@@ -862,15 +564,32 @@ public class MainActivity extends AppCompatActivity {
         Log.i(TAG, "");
         Log.i(TAG, "Cleaning up...");
 
-        if (hybridTrackerHandle != 0) {
-            nativeReleaseHybridTracker(hybridTrackerHandle);
-            hybridTrackerHandle = 0;
+        // Stop live analysis before the interpreter it uses is closed
+        if (cameraManager != null) {
+            cameraManager.release();
+            cameraManager = null;
+        }
+        if (liveAnalyzer != null) {
+            liveAnalyzer.close();
+            liveAnalyzer = null;
+        }
+        if (edgeDetector != null) {
+            edgeDetector.close();
+            edgeDetector = null;
         }
 
-        if (tflite != null) {
-            tflite.close();
-            tflite = null;
+        if (modelRunner != null) {
+            modelRunner.close();
+            modelRunner = null;
+        }
+        for (TfliteModelRunner runner : tileRunners) {
+            runner.close();
+        }
+        tileRunners.clear();
+        for (TfliteModelRunner runner : scaledRunners) {
+            runner.close();
         }
+        scaledRunners.clear();
 
         if (nnApiDelegate != null) {
             nnApiDelegate.close();
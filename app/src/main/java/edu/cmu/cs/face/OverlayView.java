@@ -1,18 +1,22 @@
 package edu.cmu.cs.face;
 
-import android.annotation.SuppressLint;
 import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.util.AttributeSet;
 import android.view.View;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 public class OverlayView extends View {
-    private List<Detection> detections = Collections.emptyList();
+    // Max tracks drawn per frame; the snapshot buffer is preallocated for this many
+    private static final int MAX_TRACKS = 128;
+
+    // Tracker thread -> UI thread handoff (single writer, single reader)
+    private final TrackSnapshotBuffer snapshots = new TrackSnapshotBuffer(MAX_TRACKS);
+    // Reused for labels so onDraw does not allocate
+    private final StringBuilder labelBuilder = new StringBuilder(64);
+
     private final Paint boxPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
     private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
     private final Paint bgPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
@@ -30,8 +34,20 @@ public class OverlayView extends View {
             0xFFFFFF00  // YELLOW
     };
 
+    /** Told when a newly published snapshot has been drawn (UI thread). */
+    public interface OnSnapshotDrawnListener {
+        void onSnapshotDrawn(TrackSnapshotBuffer.Snapshot snapshot, long drawNanos);
+    }
+
+    private volatile OnSnapshotDrawnListener drawnListener;
+    private long lastDrawnFrame = -1;
+
+    public void setOnSnapshotDrawnListener(OnSnapshotDrawnListener listener) {
+        this.drawnListener = listener;
+    }
+
     // OverlayView.java （在类内新增）
-    private String perfText = "";
+    private volatile String perfText = "";
     private final android.graphics.Paint perfPaint = new android.graphics.Paint();
 
     {
@@ -71,14 +87,28 @@ public class OverlayView extends View {
         bgPaint.setColor(0x80000000);
     }
 
+    /**
+     * Snapshot buffer the tracker thread writes into. Fill {@code beginWrite()} (or use
+     * {@code writeTracks}) and then call {@link #publishSnapshot()}.
+     * Only one thread may write to it.
+     */
+    public TrackSnapshotBuffer getSnapshotBuffer() {
+        return snapshots;
+    }
+
+    /** Publish the frame written into the snapshot buffer and schedule a redraw. */
+    public void publishSnapshot() {
+        snapshots.publish();
+        postInvalidateOnAnimation();
+    }
+
+    /**
+     * Convenience wrapper over the snapshot buffer. Must always be called from the same
+     * producer thread (e.g. the analyzer or result callback thread).
+     */
     public void setDetections(List<Detection> list) {
-        if (list == null) {
-            this.detections = Collections.emptyList();
-        } else {
-            // copy to avoid concurrent modification
-            this.detections = new ArrayList<>(list);
-        }
-        postInvalidate();
+        snapshots.writeDetections(list);
+        publishSnapshot();
     }
 
     @Override
@@ -90,17 +120,25 @@ public class OverlayView extends View {
         final int imgW = 1280;
         final int imgH = 720;
 
-        for (Detection d : detections) {
-            // (坐标计算保持不变)
-            float scale = Math.max((float)width / imgW, (float)height / imgH);
-            float dispW = imgW * scale;
-            float dispH = imgH * scale;
-            float offsetX = (width - dispW) / 2f;
-            float offsetY = (height - dispH) / 2f;
-            float boxCx = d.cx * imgW;
-            float boxCy = d.cy * imgH;
-            float boxW  = d.w  * imgW;
-            float boxH  = d.h  * imgH;
+        final TrackSnapshotBuffer.Snapshot snap = snapshots.acquireLatest();
+        final float[] t = snap.tracks;
+
+        // (坐标计算保持不变)
+        float scale = Math.max((float)width / imgW, (float)height / imgH);
+        float dispW = imgW * scale;
+        float dispH = imgH * scale;
+        float offsetX = (width - dispW) / 2f;
+        float offsetY = (height - dispH) / 2f;
+
+        for (int i = 0; i < snap.trackCount; i++) {
+            int o = i * TrackSnapshotBuffer.FIELDS_PER_TRACK;
+            float boxCx = t[o] * imgW;
+            float boxCy = t[o + 1] * imgH;
+            float boxW  = t[o + 2] * imgW;
+            float boxH  = t[o + 3] * imgH;
+            int classId = (int) t[o + 4];
+            float conf = t[o + 5];
+            int trackId = (int) t[o + 6];
 
             int left   = (int)(offsetX + (boxCx - boxW/2f) * scale);
             int top    = (int)(offsetY + (boxCy - boxH/2f) * scale);
@@ -109,7 +147,7 @@ public class OverlayView extends View {
 
             // <-- 修复: 让框的颜色基于 trackId，而不是 classId
             // 这样同一个被跟踪的对象会保持相同的颜色
-            int color = COLORS[Math.abs(d.trackId) % COLORS.length];
+            int color = COLORS[Math.abs(trackId) % COLORS.length];
             boxPaint.setColor(color);
 
             int bgColor = (color & 0x00FFFFFF) | 0x80000000;
@@ -118,10 +156,14 @@ public class OverlayView extends View {
             canvas.drawRect(left, top, right, bottom, boxPaint);
 
             // <-- 修复: 在标签中同时显示 ClassName, TrackID 和 Conf
-            @SuppressLint("DefaultLocale")
-            String label = getClassName(d.classId) + String.format(" [%d] (%.2f)", d.trackId, d.conf);
-
-            float textWidth = textPaint.measureText(label);
+            // "<class> [<trackId>] (<conf>)", built without String.format
+            StringBuilder label = labelBuilder;
+            label.setLength(0);
+            label.append(getClassName(classId)).append(" [").append(trackId).append("] (");
+            appendFixed2(label, conf);
+            label.append(')');
+
+            float textWidth = textPaint.measureText(label, 0, label.length());
             int padding = 8;
             int bgTop = Math.max(0, top - Math.round(textPaint.getTextSize()) - padding * 2);
             // 确保背景框不会超出屏幕右侧
@@ -131,11 +173,28 @@ public class OverlayView extends View {
             canvas.drawRect(left, bgTop, bgRight, bgBottom, bgPaint);
             float textX = left + padding;
             float textY = bgTop + padding - textPaint.ascent(); // ascent is negative
-            canvas.drawText(label, textX, textY, textPaint);
+            canvas.drawText(label, 0, label.length(), textX, textY, textPaint);
+        }
+        float perfY = 40f; // 首行 baseline
+        if (snap.frameIndex >= 0 && snap.frameMs > 0f) {
+            StringBuilder line = labelBuilder;
+            line.setLength(0);
+            line.append("frame ").append(snap.frameIndex).append(snap.keyframe ? " K  " : "    ");
+            appendFixed2(line, snap.frameMs);
+            line.append(" ms  ");
+            appendFixed2(line, snap.fps);
+            line.append(" fps  tracks ").append(snap.trackCount);
+            canvas.drawText(line, 0, line.length(), 10f, perfY, perfPaint);
+            perfY += perfPaint.getTextSize() + 6f;
+        }
+        OnSnapshotDrawnListener listener = drawnListener;
+        if (listener != null && snap.frameIndex != lastDrawnFrame) {
+            lastDrawnFrame = snap.frameIndex;
+            listener.onSnapshotDrawn(snap, System.nanoTime());
         }
         if (perfText != null && !perfText.isEmpty()) {
             float x = 10f;
-            float y = 40f; // 首行 baseline
+            float y = perfY;
             for (String line : perfText.split("\n")) {
                 canvas.drawText(line, x, y, perfPaint);
                 y += perfPaint.getTextSize() + 6f; // 行间距
@@ -143,6 +202,15 @@ public class OverlayView extends View {
         }
     }
 
+    /** Append v with two decimals (non-negative values only), e.g. 0.87 -> "0.87". */
+    private static void appendFixed2(StringBuilder sb, float v) {
+        int hundredths = Math.round(Math.max(0f, v) * 100f);
+        sb.append(hundredths / 100).append('.');
+        int frac = hundredths % 100;
+        if (frac < 10) sb.append('0');
+        sb.append(frac);
+    }
+
     private int clamp(int v, int a, int b) {
         return Math.max(a, Math.min(b, v));
     }
@@ -4,10 +4,13 @@ import android.util.Log;
 import java.util.ArrayList;
 import java.util.List;
 
+import edu.cmu.cs.face.mot.RegionUpload;
 import edu.cmu.cs.gabriel.protocol.Protos.ResultWrapper;
 
 public class ResultParser {
     private static final String TAG = "ResultParser";
+    // Boxes of the same class overlapping this much in frame space are one object
+    private static final float DUPLICATE_IOU = 0.5f;
 
     /**
      * Parse a ResultWrapper into a list of Detection objects.
@@ -28,6 +31,56 @@ public class ResultParser {
         return out;
     }
 
+    /**
+     * Parse the result of an upload laid out as {@code layout}
+     * (the one the {@link ServerClientWrapper} result consumer gets). Result i answers payload i; its boxes
+     * are mapped from that image to the frame. An object found in two payloads (the
+     * thumbnail and a crop, or two overlapping crops) is kept once, from a crop first.
+     */
+    public List<Detection> parse(ResultWrapper wrapper, RegionUpload layout) {
+        if (layout == null || layout.isFullFrame()) return parse(wrapper);
+        List<Detection> out = new ArrayList<>();
+        if (wrapper == null) return out;
+        List<Detection> fromThumbnail = new ArrayList<>();
+        float[] box = new float[4];
+        try {
+            List<ResultWrapper.Result> results = wrapper.getResultsList();
+            for (int payload = 0; payload < results.size() && payload < layout.payloads(); payload++) {
+                ResultWrapper.Result r = results.get(payload);
+                if (r.getPayloadType() != edu.cmu.cs.gabriel.protocol.Protos.PayloadType.TEXT) continue;
+                boolean thumbnail = layout.regionIndex(payload) < 0;
+                for (Detection d : parsePayloadText(r.getPayload().toStringUtf8())) {
+                    box[0] = d.cx; box[1] = d.cy; box[2] = d.w; box[3] = d.h;
+                    layout.toFrame(payload, box, 0);
+                    Detection mapped = new Detection(box[0], box[1], box[2], box[3], d.classId, d.conf, d.trackId);
+                    if (thumbnail) {
+                        fromThumbnail.add(mapped);
+                    } else if (!isDuplicate(mapped, out)) {
+                        out.add(mapped);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to parse ResultWrapper", e);
+        }
+        for (Detection d : fromThumbnail) {
+            if (!isDuplicate(d, out)) out.add(d);
+        }
+        return out;
+    }
+
+    private static boolean isDuplicate(Detection d, List<Detection> kept) {
+        for (Detection k : kept) {
+            if (k.classId != d.classId) continue;
+            float ix = Math.min(d.cx + d.w / 2, k.cx + k.w / 2) - Math.max(d.cx - d.w / 2, k.cx - k.w / 2);
+            float iy = Math.min(d.cy + d.h / 2, k.cy + k.h / 2) - Math.max(d.cy - d.h / 2, k.cy - k.h / 2);
+            if (ix <= 0 || iy <= 0) continue;
+            float inter = ix * iy;
+            if (inter / (d.w * d.h + k.w * k.h - inter) > DUPLICATE_IOU) return true;
+        }
+        return false;
+    }
+
     /**
      * payload string example: "x,y,w,h,classID,conf,trackID;..." (7 fields)
      */
@@ -1,36 +1,59 @@
 package edu.cmu.cs.face;
 
 import android.app.Application;
+import android.graphics.Bitmap;
 import android.util.Log;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
+import edu.cmu.cs.face.mot.RegionUpload;
+import edu.cmu.cs.face.mot.RegionUploadPlanner;
 import edu.cmu.cs.gabriel.client.comm.ServerComm;
 import edu.cmu.cs.gabriel.client.results.ErrorType;
 import edu.cmu.cs.gabriel.protocol.Protos.InputFrame;
+import com.google.protobuf.Any;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.StringValue;
 
 
 public class ServerClientWrapper {
     private static final String TAG = "ServerClientWrapper";
+    private static final String STRING_VALUE_TYPE = "type.googleapis.com/google.protobuf.StringValue";
     private final ExecutorService senderExecutor = Executors.newSingleThreadExecutor();
     private ServerComm serverComm;
-    private final Consumer<edu.cmu.cs.gabriel.protocol.Protos.ResultWrapper> resultConsumer;
+    private final BiConsumer<edu.cmu.cs.gabriel.protocol.Protos.ResultWrapper, RegionUpload> resultConsumer;
     private final Application app;
     private final int port;
     private final String host;
     private final Consumer<ErrorType> onDisconnectInternal;
     private volatile boolean started = false;
+    // Layouts of the frames sent and not answered yet; the server answers in order
+    private final ConcurrentLinkedQueue<RegionUpload> inFlight = new ConcurrentLinkedQueue<>();
+    // Uplink bytes of full-frame and of partial (regions / thumbnail) uploads
+    private final Object statsLock = new Object();
+    private long fullUploads, fullBytes, partialUploads, partialBytes;
 
+    /**
+     * @param resultConsumer gets each result with the layout of the upload it answers,
+     *                       tagged with that upload's frame ID and capture time;
+     *                       {@link RegionUpload#FULL_FRAME} (untagged) for
+     *                       {@link #sendImageAsync} and empty frames
+     */
     public ServerClientWrapper(Application app,
                                String host,
                                int port,
-                               Consumer<edu.cmu.cs.gabriel.protocol.Protos.ResultWrapper> resultConsumer,
+                               BiConsumer<edu.cmu.cs.gabriel.protocol.Protos.ResultWrapper, RegionUpload> resultConsumer,
                                Consumer<ErrorType> onDisconnect) {
         this.app = app;
         this.host = host;
@@ -42,8 +65,12 @@ public class ServerClientWrapper {
     public synchronized void start() {
         if (serverComm != null) return;
         try {
+            inFlight.clear();
             serverComm = ServerComm.createServerComm(
-                    resultConsumer,
+                    wrapper -> {
+                        RegionUpload layout = inFlight.poll();
+                        resultConsumer.accept(wrapper, layout != null ? layout : RegionUpload.FULL_FRAME);
+                    },
                     host,
                     port,
                     app,
@@ -64,6 +91,8 @@ public class ServerClientWrapper {
      */
     public synchronized void stop() {
         if (serverComm == null) return;
+        String stats = uploadStats();
+        if (stats != null) Log.i(TAG, stats);
         try {
             // First try common explicit methods (if available)
             tryInvokeNoArg(serverComm, "close");
@@ -85,41 +114,89 @@ public class ServerClientWrapper {
         if (serverComm == null) return;
         senderExecutor.execute(() -> {
             try {
-                // Prefer sendSupplier if available; fallback to send(InputFrame,...)
-                boolean usedSupplier = false;
-                try {
-                    // try call sendSupplier directly (most likely available)
-                    Method m = serverComm.getClass().getMethod("sendSupplier", java.util.function.Supplier.class, String.class, boolean.class);
-                    // invoke with a Supplier<InputFrame>
-                    java.util.function.Supplier<InputFrame> supplier = () -> InputFrame.newBuilder()
-                            .setPayloadType(edu.cmu.cs.gabriel.protocol.Protos.PayloadType.IMAGE)
-                            .addPayloads(jpegByteString)
-                            .build();
-                    m.invoke(serverComm, supplier, source, Boolean.FALSE);
-                    usedSupplier = true;
-                } catch (NoSuchMethodException nsme) {
-                    // fallback to send(InputFrame, String, boolean)
-                }
-                if (!usedSupplier) {
-                    // fallback: try send(...)
-                    try {
-                        Method m2 = serverComm.getClass().getMethod("send", InputFrame.class, String.class, boolean.class);
-                        InputFrame f = InputFrame.newBuilder()
-                                .setPayloadType(edu.cmu.cs.gabriel.protocol.Protos.PayloadType.IMAGE)
-                                .addPayloads(jpegByteString)
-                                .build();
-                        m2.invoke(serverComm, f, source, Boolean.FALSE);
-                    } catch (NoSuchMethodException nsme2) {
-                        // As a last resort, try to call a method named 'sendSupplier' via reflection with raw Runnable style.
-                        Log.w(TAG, "ServerComm does not expose expected send/sendSupplier methods; image not sent.");
-                    }
-                }
+                sendFrame(source, InputFrame.newBuilder()
+                        .setPayloadType(edu.cmu.cs.gabriel.protocol.Protos.PayloadType.IMAGE)
+                        .addPayloads(jpegByteString), RegionUpload.FULL_FRAME, jpegByteString.size());
             } catch (Exception e) {
                 Log.w(TAG, "Failed to send image", e);
             }
         });
     }
 
+    /**
+     * Send only what {@code planner} picks from {@code frame} for the server: crops
+     * around {@code tracks} and, at its slower cadence, a low-resolution thumbnail of
+     * the whole frame, as JPEG payloads of one frame with their {@link RegionUpload}
+     * layout as text extras (a StringValue). Falls back to the full frame when
+     * cropping would not help, or without a planner. Results come back per payload; parse them with
+     * {@link ResultParser#parse(edu.cmu.cs.gabriel.protocol.Protos.ResultWrapper, RegionUpload)}
+     * and the layout the result consumer gets.
+     *
+     * The crops are copied before returning, so {@code frame} can be reused; encoding
+     * and sending happen on the sender thread. No-op if server not started.
+     *
+     * @param tracks       tracker output for {@code frame} ([cx, cy, w, h, classId, conf, trackId] normalized)
+     * @param frameId      the caller's ID of {@code frame}, sent in the extras and back with the result's layout
+     * @param captureNanos capture time of {@code frame}, likewise
+     */
+    public void sendRegionsAsync(final String source, Bitmap frame, float[] tracks,
+                                 RegionUploadPlanner planner, final int jpegQuality,
+                                 long frameId, long captureNanos) {
+        if (serverComm == null) return;
+        final RegionUpload layout = (planner != null
+                ? planner.plan(tracks, frame.getWidth(), frame.getHeight()) : RegionUpload.FULL_FRAME)
+                .withFrame(frameId, captureNanos);
+        final List<Bitmap> images = new ArrayList<>(layout.payloads());
+        if (layout.isFullFrame()) {
+            images.add(frame.copy(Bitmap.Config.ARGB_8888, false));
+        } else {
+            if (layout.hasThumbnail()) {
+                images.add(detached(Bitmap.createScaledBitmap(frame, layout.thumbWidth, layout.thumbHeight, true), frame));
+            }
+            int[] r = new int[4];
+            for (int i = 0; i < layout.regionCount(); i++) {
+                layout.region(i, r);
+                images.add(detached(Bitmap.createBitmap(frame, r[0], r[1], r[2], r[3]), frame));
+            }
+        }
+        senderExecutor.execute(() -> {
+            try {
+                InputFrame.Builder builder = InputFrame.newBuilder()
+                        .setPayloadType(edu.cmu.cs.gabriel.protocol.Protos.PayloadType.IMAGE);
+                long bytes = 0;
+                for (Bitmap image : images) {
+                    ByteString.Output jpeg = ByteString.newOutput();
+                    image.compress(Bitmap.CompressFormat.JPEG, jpegQuality, jpeg);
+                    image.recycle();
+                    ByteString payload = jpeg.toByteString();
+                    bytes += payload.size();
+                    builder.addPayloads(payload);
+                }
+                builder.setExtras(Any.newBuilder()
+                        .setTypeUrl(STRING_VALUE_TYPE)
+                        .setValue(StringValue.newBuilder().setValue(layout.toMetadata()).build().toByteString()));
+                sendFrame(source, builder, layout, bytes);
+            } catch (Exception e) {
+                Log.w(TAG, "Failed to send regions", e);
+            }
+        });
+    }
+
+    /** Uplink bytes of partial uploads so far against full frames, or null before any upload. */
+    public String uploadStats() {
+        synchronized (statsLock) {
+            if (fullUploads + partialUploads == 0) return null;
+            String stats = String.format(Locale.US, "Uploads: %d full frame (%.1f KB avg), %d partial (%.1f KB avg)",
+                    fullUploads, fullUploads > 0 ? fullBytes / 1024.0 / fullUploads : 0,
+                    partialUploads, partialUploads > 0 ? partialBytes / 1024.0 / partialUploads : 0);
+            if (fullUploads > 0 && partialUploads > 0) {
+                double saved = (double) fullBytes / fullUploads * partialUploads - partialBytes;
+                stats += String.format(Locale.US, ", ~%.1f KB saved", saved / 1024.0);
+            }
+            return stats;
+        }
+    }
+
     /**
      * Send an empty frame asynchronously (non-blocking).
      */
@@ -130,11 +207,13 @@ public class ServerClientWrapper {
                 // try direct send(InputFrame, String, boolean)
                 try {
                     Method m = serverComm.getClass().getMethod("send", InputFrame.class, String.class, boolean.class);
+                    inFlight.add(RegionUpload.FULL_FRAME);
                     m.invoke(serverComm, InputFrame.newBuilder().build(), source, Boolean.FALSE);
                 } catch (NoSuchMethodException nsme) {
                     // last fallback: try invoking a generic 'send' with 2 args if exist
                     try {
                         Method m2 = serverComm.getClass().getMethod("send", InputFrame.class, String.class);
+                        inFlight.add(RegionUpload.FULL_FRAME);
                         m2.invoke(serverComm, InputFrame.newBuilder().build(), source);
                     } catch (NoSuchMethodException nsme2) {
                         Log.w(TAG, "ServerComm does not expose expected send methods; empty frame not sent.");
@@ -165,6 +244,51 @@ public class ServerClientWrapper {
 
     // ---------------- helpers ----------------
 
+    /**
+     * Send {@code frame} of {@code bytes} image bytes, preferring sendSupplier; fallback
+     * to send(InputFrame,...).
+     */
+    private void sendFrame(String source, InputFrame.Builder frame, RegionUpload layout, long bytes) throws Exception {
+        try {
+            Method m = serverComm.getClass().getMethod("sendSupplier", Supplier.class, String.class, boolean.class);
+            // The supplier only runs when a token lets the frame out, which keeps layouts and results in step
+            Supplier<InputFrame> supplier = () -> {
+                sent(layout, bytes);
+                return frame.build();
+            };
+            m.invoke(serverComm, supplier, source, Boolean.FALSE);
+            return;
+        } catch (NoSuchMethodException nsme) {
+            // fallback to send(InputFrame, String, boolean)
+        }
+        try {
+            Method m2 = serverComm.getClass().getMethod("send", InputFrame.class, String.class, boolean.class);
+            sent(layout, bytes);
+            m2.invoke(serverComm, frame.build(), source, Boolean.FALSE);
+        } catch (NoSuchMethodException nsme2) {
+            Log.w(TAG, "ServerComm does not expose expected send/sendSupplier methods; frame not sent.");
+        }
+    }
+
+    /** Queue {@code layout} for the result that answers it and count the upload. */
+    private void sent(RegionUpload layout, long bytes) {
+        inFlight.add(layout);
+        synchronized (statsLock) {
+            if (layout.isFullFrame()) {
+                fullUploads++;
+                fullBytes += bytes;
+            } else {
+                partialUploads++;
+                partialBytes += bytes;
+            }
+        }
+    }
+
+    /** {@code image}, or a copy if Bitmap returned {@code frame} itself (a crop of the whole frame). */
+    private static Bitmap detached(Bitmap image, Bitmap frame) {
+        return image == frame ? frame.copy(Bitmap.Config.ARGB_8888, false) : image;
+    }
+
     private void tryInvokeNoArg(Object target, String methodName) {
         if (target == null) return;
         try {
@@ -0,0 +1,137 @@
+package edu.cmu.cs.face;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * The analyzer bound to the camera's ImageAnalysis use case, delegating every frame
+ * to a replaceable analyzer so the use case (and the camera session) never has to
+ * be rebuilt to change what processes the frames.
+ *
+ * {@link #swap} only publishes the new analyzer and returns at once. The analysis
+ * thread picks it up before its next frame: the frame in flight finishes on the old
+ * analyzer, then the old one is handed to its retire callback (so it can be closed
+ * safely) and the new one gets the frame. Switch latency is the time from the request
+ * to the first frame finished after it, reported through the {@link SwitchListener}.
+ */
+public class SwappableAnalyzer implements ImageAnalysis.Analyzer {
+    private static final String TAG = "SwappableAnalyzer";
+
+    public interface SwitchListener {
+        /** The first frame after a switch of kind {@code what} was finished. */
+        void onSwitched(String what, long latencyNanos);
+    }
+
+    private static final class Pending {
+        final ImageAnalysis.Analyzer next;
+        final Consumer<ImageAnalysis.Analyzer> onRetired;
+
+        Pending(ImageAnalysis.Analyzer next, Consumer<ImageAnalysis.Analyzer> onRetired) {
+            this.next = next;
+            this.onRetired = onRetired;
+        }
+    }
+
+    private static final class Mark {
+        final String what;
+        final long requestNanos;
+        final long armedNanos;
+        final ImageAnalysis.Analyzer target;    // Ends on its first frame; null: any frame after armedNanos
+
+        Mark(String what, long requestNanos, long armedNanos, ImageAnalysis.Analyzer target) {
+            this.what = what;
+            this.requestNanos = requestNanos;
+            this.armedNanos = armedNanos;
+            this.target = target;
+        }
+    }
+
+    private final AtomicReference<Pending> pending = new AtomicReference<>();
+    private final AtomicReference<Mark> mark = new AtomicReference<>();
+    private volatile SwitchListener listener;
+
+    // Analysis thread only (under this)
+    private ImageAnalysis.Analyzer active;
+
+    public SwappableAnalyzer(ImageAnalysis.Analyzer initial) {
+        this.active = initial;
+    }
+
+    public void setSwitchListener(SwitchListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Route frames to {@code next} from the next frame on. {@code onRetired} gets the
+     * previous analyzer once it has finished its last frame (on the analysis thread,
+     * or right here if it never ran); it may be null.
+     */
+    public void swap(ImageAnalysis.Analyzer next, Consumer<ImageAnalysis.Analyzer> onRetired) {
+        long now = System.nanoTime();
+        mark.set(new Mark("analyzer", now, now, next));
+        Pending replaced = pending.getAndSet(new Pending(next, onRetired));
+        if (replaced != null && replaced.onRetired != null) {
+            // Superseded before it saw a frame
+            replaced.onRetired.accept(replaced.next);
+        }
+    }
+
+    /**
+     * Measure a switch made outside this class (e.g. a camera rebind): the first frame
+     * started from now on ends it, with latency counted from {@code requestNanos}.
+     */
+    public void expectFrame(String what, long requestNanos) {
+        mark.set(new Mark(what, requestNanos, System.nanoTime(), null));
+    }
+
+    @Override
+    public void analyze(@NonNull ImageProxy image) {
+        long startNanos = System.nanoTime();
+        ImageAnalysis.Analyzer ran;
+        synchronized (this) {
+            applyPending();
+            ran = active;
+            if (ran == null) {
+                image.close();
+                return;
+            }
+            ran.analyze(image);
+        }
+
+        Mark m = mark.get();
+        boolean ends = m != null && (m.target != null ? m.target == ran : m.armedNanos <= startNanos);
+        if (ends && mark.compareAndSet(m, null)) {
+            long latency = System.nanoTime() - m.requestNanos;
+            Log.i(TAG, String.format(Locale.US, "%s switch: %.1f ms to first frame",
+                    m.what, latency / 1_000_000.0));
+            SwitchListener l = listener;
+            if (l != null) {
+                l.onSwitched(m.what, latency);
+            }
+        }
+    }
+
+    /** Apply a pending swap now, waiting for the frame in flight (used on shutdown). */
+    public synchronized void flush() {
+        applyPending();
+    }
+
+    private void applyPending() {
+        Pending p = pending.getAndSet(null);
+        if (p == null) {
+            return;
+        }
+        ImageAnalysis.Analyzer old = active;
+        active = p.next;
+        if (old != null && p.onRetired != null) {
+            p.onRetired.accept(old);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package edu.cmu.cs.face;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free triple buffer that hands the newest tracker frame from the processing
+ * thread to the UI thread.
+ *
+ * Exactly one thread may write (beginWrite / publish) and exactly one thread may read
+ * (acquireLatest). All three snapshots are preallocated, so a steady stream of frames
+ * does not allocate. The reader always sees a fully written frame and never waits:
+ * if nothing new was published it simply gets the frame it already had.
+ */
+public final class TrackSnapshotBuffer {
+    /** Same layout as the tracker JNI output: [cx, cy, w, h, classId, conf, trackId]. */
+    public static final int FIELDS_PER_TRACK = 7;
+
+    private static final int INDEX_MASK = 0x3;
+    private static final int FRESH_BIT = 0x4;
+
+    /** One frame of tracks plus the perf counters that belong to it. */
+    public static final class Snapshot {
+        public final float[] tracks;
+        public int trackCount;
+
+        public long frameIndex = -1;
+        public boolean keyframe;
+        public long captureNanos;
+        public long publishNanos;
+
+        // Perf counters (ms / fps), filled by the writer together with the tracks
+        public float frameMs;
+        public float inferenceMs;
+        public float trackingMs;
+        public float fps;
+
+        Snapshot(int maxTracks) {
+            this.tracks = new float[maxTracks * FIELDS_PER_TRACK];
+        }
+
+        public int capacity() {
+            return tracks.length / FIELDS_PER_TRACK;
+        }
+
+        /** Drop everything a previous frame left in this slot. */
+        void clear() {
+            trackCount = 0;
+            frameIndex = -1;
+            keyframe = false;
+            captureNanos = 0;
+            publishNanos = 0;
+            frameMs = 0;
+            inferenceMs = 0;
+            trackingMs = 0;
+            fps = 0;
+        }
+    }
+
+    private final Snapshot[] slots;
+
+    // Index of the shared (middle) slot, plus FRESH_BIT when the writer has published into it
+    private final AtomicInteger shared = new AtomicInteger(1);
+    private int writeIndex = 0; // owned by the writer thread
+    private int readIndex = 2;  // owned by the reader thread
+
+    public TrackSnapshotBuffer(int maxTracks) {
+        slots = new Snapshot[] {
+                new Snapshot(maxTracks), new Snapshot(maxTracks), new Snapshot(maxTracks)
+        };
+    }
+
+    /**
+     * Writer: the private slot to fill for the next frame, cleared of the frame it held
+     * before it was recycled, so fields the writer does not set read as unset.
+     */
+    public Snapshot beginWrite() {
+        Snapshot s = slots[writeIndex];
+        s.clear();
+        return s;
+    }
+
+    /** Writer: make the slot returned by {@link #beginWrite()} the newest complete frame. */
+    public void publish() {
+        slots[writeIndex].publishNanos = System.nanoTime();
+        int previous = shared.getAndSet(writeIndex | FRESH_BIT);
+        writeIndex = previous & INDEX_MASK;
+    }
+
+    /** Reader: the newest published frame. Never blocks. */
+    public Snapshot acquireLatest() {
+        if ((shared.get() & FRESH_BIT) != 0) {
+            int previous = shared.getAndSet(readIndex);
+            readIndex = previous & INDEX_MASK;
+        }
+        return slots[readIndex];
+    }
+
+    /**
+     * Writer helper: copy a tracker output array (see {@link #FIELDS_PER_TRACK}) into
+     * the write slot. Tracks beyond the slot capacity are dropped.
+     */
+    public Snapshot writeTracks(float[] trackerOutput) {
+        Snapshot s = beginWrite();
+        int count = trackerOutput == null ? 0 : trackerOutput.length / FIELDS_PER_TRACK;
+        count = Math.min(count, s.capacity());
+        if (count > 0) {
+            System.arraycopy(trackerOutput, 0, s.tracks, 0, count * FIELDS_PER_TRACK);
+        }
+        s.trackCount = count;
+        return s;
+    }
+
+    /** Writer helper: same as {@link #writeTracks(float[])} for already parsed detections. */
+    public Snapshot writeDetections(List<Detection> detections) {
+        Snapshot s = beginWrite();
+        int count = detections == null ? 0 : Math.min(detections.size(), s.capacity());
+        float[] t = s.tracks;
+        for (int i = 0; i < count; i++) {
+            Detection d = detections.get(i);
+            int o = i * FIELDS_PER_TRACK;
+            t[o] = d.cx;
+            t[o + 1] = d.cy;
+            t[o + 2] = d.w;
+            t[o + 3] = d.h;
+            t[o + 4] = d.classId;
+            t[o + 5] = d.conf;
+            t[o + 6] = d.trackId;
+        }
+        s.trackCount = count;
+        return s;
+    }
+}
@@ -16,6 +16,8 @@ import androidx.activity.result.contract.ActivityResultContracts.RequestPermissi
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.camera.core.Camera;
 import androidx.camera.core.CameraControl;
+import androidx.camera.core.CameraInfo;
+import androidx.camera.core.CameraInfoUnavailableException;
 import androidx.camera.core.CameraSelector;
 import androidx.camera.core.FocusMeteringAction;
 import androidx.camera.core.ImageAnalysis;
@@ -29,6 +31,7 @@ import androidx.activity.result.ActivityResultLauncher;
 
 import com.google.common.util.concurrent.ListenableFuture;
 
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -42,6 +45,17 @@ public class MyCameraCapture {
     private final AppCompatActivity activity;
     private final ExecutorService cameraExecutor;
 
+    // Set once the camera provider is ready (main thread)
+    private ProcessCameraProvider cameraProvider;
+    private ImageAnalysis imageAnalysis;
+    private Preview preview;
+    private PreviewView viewFinder;
+    private boolean enableTorch;
+    private CameraSelector pendingSelector;
+    // onSwitched of the pending switch, run once the deferred bind is done
+    private Runnable pendingSwitched;
+    private CameraSelector prewarmSelector;
+
     public MyCameraCapture(
             AppCompatActivity activity, ImageAnalysis.Analyzer analyzer, int width, int height) {
         this(activity, analyzer, width, height, null);
@@ -97,68 +111,32 @@ public class MyCameraCapture {
                 ProcessCameraProvider.getInstance(this.activity);
         cameraProviderFuture.addListener(() -> {
             try {
-                ProcessCameraProvider cameraProvider = cameraProviderFuture.get();
+                this.cameraProvider = cameraProviderFuture.get();
+                this.viewFinder = viewFinder;
+                this.enableTorch = enableTorch;
 
-                ImageAnalysis imageAnalysis = new ImageAnalysis.Builder()
+                this.imageAnalysis = new ImageAnalysis.Builder()
                         .setTargetResolution(new Size(width, height))
                         .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
                         .build();
-                imageAnalysis.setAnalyzer(this.cameraExecutor, analyzer);
+                this.imageAnalysis.setAnalyzer(this.cameraExecutor, analyzer);
 
-                // Unbind use cases before rebinding
-                cameraProvider.unbindAll();
+                if (viewFinder != null) {
+                    this.preview = new Preview.Builder().build();
+                    this.preview.setSurfaceProvider(viewFinder.getSurfaceProvider());
+                }
 
-                if (viewFinder == null) {
-                    // Bind use cases to camera
-                    cameraProvider.bindToLifecycle(this.activity, cameraSelector, imageAnalysis);
-                } else {
-                    Preview preview = new Preview.Builder().build();
-                    preview.setSurfaceProvider(viewFinder.getSurfaceProvider());
-                    Camera camera = cameraProvider.bindToLifecycle(
-                            this.activity, cameraSelector, imageAnalysis, preview);
-
-                    camera.getCameraControl().enableTorch(enableTorch);
-
-                    // Begin pinch to zoom and tap to focus
-                    CameraControl cameraControl = camera.getCameraControl();
-                    ScaleGestureDetector.SimpleOnScaleGestureListener simpleOnScaleGestureListener =
-                            new ScaleGestureDetector.SimpleOnScaleGestureListener() {
-                                @Override
-                                public boolean onScale(ScaleGestureDetector detector) {
-                                    float currentZoomRatio = camera.getCameraInfo()
-                                            .getZoomState().getValue().getZoomRatio();
-
-                                    float delta = detector.getScaleFactor();
-
-                                    cameraControl.setZoomRatio(currentZoomRatio * delta);
-
-                                    return true;
-                                }
-                            };
-                    ScaleGestureDetector scaleGestureDetector = new ScaleGestureDetector(
-                            this.activity, simpleOnScaleGestureListener);
-
-                    // Based on https://stackoverflow.com/a/59087108/859277
-                    viewFinder.setOnTouchListener(new View.OnTouchListener() {
-                        @Override
-                        public boolean onTouch(View view, MotionEvent motionEvent) {
-                            scaleGestureDetector.onTouchEvent(motionEvent);
-                            if (motionEvent.getAction() != MotionEvent.ACTION_UP) {
-                                return true;
-                            }
-
-                            MeteringPointFactory meteringPointFactory =
-                                    viewFinder.getMeteringPointFactory();
-                            MeteringPoint meteringPoint = meteringPointFactory.createPoint(
-                                    motionEvent.getX(), motionEvent.getY());
-                            FocusMeteringAction action =
-                                    new FocusMeteringAction.Builder(meteringPoint).build();
-                            cameraControl.startFocusAndMetering(action);
-
-                            return true;
-                        }
-                    });
-                    // End pinch to zoom and tap to focus
+                // A switch requested while the provider was loading wins
+                bindUseCases(this.pendingSelector != null ? this.pendingSelector : cameraSelector);
+                Runnable switched = this.pendingSwitched;
+                this.pendingSelector = null;
+                this.pendingSwitched = null;
+                if (switched != null) {
+                    switched.run();
+                }
+                if (this.prewarmSelector != null) {
+                    prewarmNow(this.prewarmSelector);
+                    this.prewarmSelector = null;
                 }
             } catch (ExecutionException | InterruptedException e) {
                 Log.e(TAG, "Could not setup camera", e);
@@ -166,6 +144,118 @@ public class MyCameraCapture {
         }, ContextCompat.getMainExecutor(this.activity));
     }
 
+    /**
+     * Move the existing use cases to another camera. The ImageAnalysis (with its
+     * analyzer and executor) and the Preview are kept, so this is only an unbind and
+     * a bind. {@code onSwitched} runs on the main thread once bound; it may be null.
+     * Before the camera provider is ready the switch waits for the first bind; a
+     * later switch replaces a waiting one, whose {@code onSwitched} then never runs.
+     */
+    public void switchCamera(CameraSelector cameraSelector, Runnable onSwitched) {
+        ContextCompat.getMainExecutor(this.activity).execute(() -> {
+            if (this.cameraProvider == null) {
+                this.pendingSelector = cameraSelector;
+                this.pendingSwitched = onSwitched;
+                return;
+            }
+            bindUseCases(cameraSelector);
+            if (onSwitched != null) {
+                onSwitched.run();
+            }
+        });
+    }
+
+    /**
+     * Look up another camera ahead of a switch: resolves its CameraInfo (characteristics
+     * are read and cached by CameraX), so switching to it only has to open the device.
+     * Logs a warning if the device has no such camera.
+     */
+    public void prewarm(CameraSelector cameraSelector) {
+        ContextCompat.getMainExecutor(this.activity).execute(() -> {
+            if (this.cameraProvider == null) {
+                // Done once the current camera is bound
+                this.prewarmSelector = cameraSelector;
+                return;
+            }
+            prewarmNow(cameraSelector);
+        });
+    }
+
+    private void prewarmNow(CameraSelector cameraSelector) {
+        try {
+            if (!this.cameraProvider.hasCamera(cameraSelector)) {
+                Log.w(TAG, "No camera to pre-warm for " + cameraSelector);
+                return;
+            }
+            List<CameraInfo> infos = cameraSelector.filter(this.cameraProvider.getAvailableCameraInfos());
+            for (CameraInfo info : infos) {
+                info.getSensorRotationDegrees();
+                info.hasFlashUnit();
+            }
+            Log.i(TAG, "Pre-warmed " + infos.size() + " camera(s)");
+        } catch (CameraInfoUnavailableException e) {
+            Log.w(TAG, "Could not pre-warm camera", e);
+        }
+    }
+
+    private void bindUseCases(CameraSelector cameraSelector) {
+        // Unbind use cases before rebinding
+        this.cameraProvider.unbindAll();
+
+        if (this.preview == null) {
+            // Bind use cases to camera
+            this.cameraProvider.bindToLifecycle(this.activity, cameraSelector, this.imageAnalysis);
+            return;
+        }
+
+        PreviewView viewFinder = this.viewFinder;
+        Camera camera = this.cameraProvider.bindToLifecycle(
+                this.activity, cameraSelector, this.imageAnalysis, this.preview);
+
+        camera.getCameraControl().enableTorch(this.enableTorch);
+
+        // Begin pinch to zoom and tap to focus
+        CameraControl cameraControl = camera.getCameraControl();
+        ScaleGestureDetector.SimpleOnScaleGestureListener simpleOnScaleGestureListener =
+                new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+                    @Override
+                    public boolean onScale(ScaleGestureDetector detector) {
+                        float currentZoomRatio = camera.getCameraInfo()
+                                .getZoomState().getValue().getZoomRatio();
+
+                        float delta = detector.getScaleFactor();
+
+                        cameraControl.setZoomRatio(currentZoomRatio * delta);
+
+                        return true;
+                    }
+                };
+        ScaleGestureDetector scaleGestureDetector = new ScaleGestureDetector(
+                this.activity, simpleOnScaleGestureListener);
+
+        // Based on https://stackoverflow.com/a/59087108/859277
+        viewFinder.setOnTouchListener(new View.OnTouchListener() {
+            @Override
+            public boolean onTouch(View view, MotionEvent motionEvent) {
+                scaleGestureDetector.onTouchEvent(motionEvent);
+                if (motionEvent.getAction() != MotionEvent.ACTION_UP) {
+                    return true;
+                }
+
+                MeteringPointFactory meteringPointFactory =
+                        viewFinder.getMeteringPointFactory();
+                MeteringPoint meteringPoint = meteringPointFactory.createPoint(
+                        motionEvent.getX(), motionEvent.getY());
+                FocusMeteringAction action =
+                        new FocusMeteringAction.Builder(meteringPoint).build();
+                cameraControl.startFocusAndMetering(action);
+
+                return true;
+            }
+        });
+        // End pinch to zoom and tap to focus
+    }
+
     public void shutdown() {
         this.cameraExecutor.shutdown();
     }
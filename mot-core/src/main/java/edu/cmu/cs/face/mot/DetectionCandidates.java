@@ -0,0 +1,184 @@
+package edu.cmu.cs.face.mot;
+
+import java.util.Arrays;
+
+/**
+ * Detector candidates as RectF-style boxes (SoA arrays, grown on demand and kept
+ * between frames), with the greedy NMS and the mapping to normalized detections.
+ *
+ * Boxes are in model (letterbox) pixels straight out of the decoder, or in frame
+ * pixels once a region's candidates have been mapped back ({@link #toFramePixels}),
+ * which is how crops and tiles share one NMS.
+ */
+final class DetectionCandidates {
+    int count;
+    float[] left = new float[256];
+    float[] top = new float[256];
+    float[] right = new float[256];
+    float[] bottom = new float[256];
+    float[] conf = new float[256];
+    int[] classId = new int[256];
+    private long[] order = new long[256];
+    private boolean[] suppressed = new boolean[256];
+    private float[] selected = new float[256 * YoloDetector.FIELDS_PER_DETECTION];
+
+    void clear() {
+        count = 0;
+    }
+
+    void add(float l, float t, float r, float b, float c, int cls) {
+        if (count == left.length) {
+            int n = count * 2;
+            left = Arrays.copyOf(left, n);
+            top = Arrays.copyOf(top, n);
+            right = Arrays.copyOf(right, n);
+            bottom = Arrays.copyOf(bottom, n);
+            conf = Arrays.copyOf(conf, n);
+            classId = Arrays.copyOf(classId, n);
+            order = new long[n];
+            suppressed = new boolean[n];
+        }
+        int k = count++;
+        left[k] = l;
+        top[k] = t;
+        right[k] = r;
+        bottom[k] = b;
+        conf[k] = c;
+        classId[k] = cls;
+    }
+
+    void addAll(DetectionCandidates other) {
+        for (int k = 0; k < other.count; k++) {
+            add(other.left[k], other.top[k], other.right[k], other.bottom[k], other.conf[k], other.classId[k]);
+        }
+    }
+
+    /** Map candidates [from, count) from a region's letterbox to frame pixels. */
+    void toFramePixels(int from, int padX, int padY, float scale, int regionX, int regionY) {
+        for (int k = from; k < count; k++) {
+            left[k] = (left[k] - padX) / scale + regionX;
+            top[k] = (top[k] - padY) / scale + regionY;
+            right[k] = (right[k] - padX) / scale + regionX;
+            bottom[k] = (bottom[k] - padY) / scale + regionY;
+        }
+    }
+
+    /**
+     * Drop candidates [from, count) that reach within {@code margin} pixels of an edge
+     * of region (x0, y0, x1, y1) that is not also a frame edge: objects cut off by a
+     * tile border, which an overlapping tile or the full-frame pass sees whole.
+     */
+    void dropCutByRegion(int from, int x0, int y0, int x1, int y1, int frameW, int frameH, float margin) {
+        int kept = from;
+        for (int k = from; k < count; k++) {
+            boolean cut = (x0 > 0 && left[k] < x0 + margin)
+                    || (y0 > 0 && top[k] < y0 + margin)
+                    || (x1 < frameW && right[k] > x1 - margin)
+                    || (y1 < frameH && bottom[k] > y1 - margin);
+            if (cut) {
+                continue;
+            }
+            left[kept] = left[k];
+            top[kept] = top[k];
+            right[kept] = right[k];
+            bottom[kept] = bottom[k];
+            conf[kept] = conf[k];
+            classId[kept] = classId[k];
+            kept++;
+        }
+        count = kept;
+    }
+
+    /**
+     * Greedy NMS in descending confidence (ties keep candidate order, as a stable sort
+     * would). Leaves the kept candidate indices in order[0..count).
+     */
+    int nonMaxSuppression(float nmsThreshold) {
+        int n = count;
+        for (int i = 0; i < n; i++) {
+            // Float bits made order-preserving as a signed int, index inverted so that
+            // ascending keys read backwards give (conf desc, index asc)
+            int bits = Float.floatToIntBits(conf[i]);
+            bits ^= (bits >> 31) & 0x7FFFFFFF;
+            order[i] = ((long) bits << 32) | (~i & 0xFFFFFFFFL);
+            suppressed[i] = false;
+        }
+        Arrays.sort(order, 0, n);
+        for (int i = 0; i < n / 2; i++) {
+            long t = order[i];
+            order[i] = order[n - 1 - i];
+            order[n - 1 - i] = t;
+        }
+        for (int i = 0; i < n; i++) {
+            order[i] = ~(int) order[i] & 0xFFFFFFFFL;
+        }
+
+        int kept = 0;
+        for (int i = 0; i < n; i++) {
+            int current = (int) order[i];
+            if (suppressed[current]) {
+                continue;
+            }
+            order[kept++] = current;
+
+            float curW = right[current] - left[current];
+            float curH = bottom[current] - top[current];
+            for (int j = i + 1; j < n; j++) {
+                int other = (int) order[j];
+                if (suppressed[other]) {
+                    continue;
+                }
+                float interArea = Math.max(0, Math.min(right[current], right[other]) -
+                        Math.max(left[current], left[other])) *
+                        Math.max(0, Math.min(bottom[current], bottom[other]) -
+                                Math.max(top[current], top[other]));
+                float unionArea = curW * curH +
+                        (right[other] - left[other]) * (bottom[other] - top[other]) - interArea;
+                float iou = (unionArea > 0f) ? (interArea / unionArea) : 0f;
+
+                if (iou > nmsThreshold) {
+                    suppressed[other] = true;
+                }
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Map kept boxes from the letterbox back to the frame, clip, normalize. Candidates
+     * already in frame pixels (crops, tiles) pass pad 0 and scale 1.
+     */
+    float[] toDetections(int keptCount, int originalW, int originalH, int padX, int padY, float scale) {
+        if (selected.length < keptCount * YoloDetector.FIELDS_PER_DETECTION) {
+            selected = new float[keptCount * YoloDetector.FIELDS_PER_DETECTION];
+        }
+        float padXf = (float) padX;
+        float padYf = (float) padY;
+        int out = 0;
+
+        for (int k = 0; k < keptCount; k++) {
+            int index = (int) order[k];
+            float left_orig = (left[index] - padXf) / scale;
+            float top_orig = (top[index] - padYf) / scale;
+            float width_orig = (right[index] - left[index]) / scale;
+            float height_orig = (bottom[index] - top[index]) / scale;
+
+            float left_clipped = Math.max(0f, Math.min(left_orig, originalW));
+            float top_clipped = Math.max(0f, Math.min(top_orig, originalH));
+            float right_clipped = Math.max(0f, Math.min(left_orig + width_orig, originalW));
+            float bottom_clipped = Math.max(0f, Math.min(top_orig + height_orig, originalH));
+            float final_w = right_clipped - left_clipped;
+            float final_h = bottom_clipped - top_clipped;
+
+            if (final_w > 1 && final_h > 1) {
+                selected[out++] = (left_clipped + final_w / 2f) / (float) originalW;
+                selected[out++] = (top_clipped + final_h / 2f) / (float) originalH;
+                selected[out++] = final_w / (float) originalW;
+                selected[out++] = final_h / (float) originalH;
+                selected[out++] = (float) classId[index];
+                selected[out++] = conf[index];
+            }
+        }
+        return Arrays.copyOf(selected, out);
+    }
+}
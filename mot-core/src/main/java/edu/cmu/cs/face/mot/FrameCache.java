@@ -0,0 +1,319 @@
+package edu.cmu.cs.face.mot;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Decoded frames of one sequence in a memory-mapped file, so repeated runs over the
+ * same sequence skip JPEG decoding.
+ *
+ * The first run decodes as usual and writes each frame through ({@link #write});
+ * the file only becomes visible (renamed from .tmp) once every frame is in. Later
+ * runs map it read-only and {@link #read} points the {@link RgbFrame} at the
+ * mapping, no copy. Each frame is keyed by its source file's name, size and mtime;
+ * any mismatch (or a different frame list) rebuilds the whole file.
+ *
+ * Layout: header [magic, version, frameCount, complete], one entry per frame
+ * [size, mtime, nameHash, width, height, dataOffset], then per frame, page-aligned,
+ * the gray plane ((r+g+b)/3, what the tracker gets) followed by packed RGB.
+ * Sequences above 1 GB are mapped in several segments.
+ */
+public final class FrameCache {
+    public static final String SUFFIX = ".frames";
+    private static final long MAGIC = 0x4D4F544652414D45L; // "MOTFRAME"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8 + 4 + 4 + 4;
+    private static final int ENTRY_BYTES = 8 + 8 + 4 + 4 + 4 + 8;
+    private static final int PAGE = 4096;
+    static final long SEGMENT_BYTES = 1L << 30;
+
+    private final File file;
+    private final PipelineLog log;
+    private final long segmentBytes;
+    private final int frameCount;
+    private final long[] sourceSize;
+    private final long[] sourceMtime;
+    private final int[] nameHash;
+    private final int[] width;
+    private final int[] height;
+    private final long[] offset;
+
+    // Read side: mapping segments and where each frame sits in them
+    private MappedByteBuffer[] segments;
+    private int[] frameSegment;
+    private int[] frameSegmentOffset;
+
+    // Write side
+    private File tmpFile;
+    private RandomAccessFile out;
+    private long writePosition;
+    private byte[] writeBuffer = new byte[0];
+
+    private FrameCache(File file, List<File> images, PipelineLog log, long segmentBytes) {
+        this.file = file;
+        this.log = log;
+        this.segmentBytes = segmentBytes;
+        frameCount = images.size();
+        sourceSize = new long[frameCount];
+        sourceMtime = new long[frameCount];
+        nameHash = new int[frameCount];
+        width = new int[frameCount];
+        height = new int[frameCount];
+        offset = new long[frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            File image = images.get(i);
+            sourceSize[i] = image.length();
+            sourceMtime[i] = image.lastModified();
+            nameHash[i] = image.getName().hashCode();
+        }
+    }
+
+    /**
+     * The cache for {@code sequenceDir} under {@code cacheDir}: mapped if a valid one
+     * exists, otherwise ready to be built by this run. Null if the directory is unusable.
+     */
+    public static FrameCache open(File cacheDir, File sequenceDir, List<File> images, PipelineLog log) {
+        return open(cacheDir, sequenceDir, images, log, SEGMENT_BYTES);
+    }
+
+    /** {@link #open} with mapping segments of at most {@code segmentBytes} (tests). */
+    static FrameCache open(File cacheDir, File sequenceDir, List<File> images, PipelineLog log,
+                           long segmentBytes) {
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+            log.w("Frame cache disabled: cannot create " + cacheDir.getAbsolutePath());
+            return null;
+        }
+        // Sequence names repeat across MOT splits, so the path goes into the file name
+        String name = sequenceDir.getName() + "-"
+                + Integer.toHexString(sequenceDir.getAbsolutePath().hashCode()) + SUFFIX;
+        FrameCache cache = new FrameCache(new File(cacheDir, name), images, log, segmentBytes);
+
+        if (cache.file.isFile()) {
+            try {
+                if (cache.map()) {
+                    log.i(String.format(Locale.US, "Frame cache: %d frames mapped from %s",
+                            cache.frameCount, cache.file.getAbsolutePath()));
+                    return cache;
+                }
+                log.i("Frame cache: " + cache.file.getName() + " is stale, rebuilding");
+            } catch (IOException e) {
+                log.w("Frame cache: cannot read " + cache.file.getName() + " (" + e + "), rebuilding");
+            }
+            cache.segments = null;
+        }
+
+        try {
+            cache.startWriting();
+            log.i("Frame cache: building " + cache.file.getAbsolutePath());
+        } catch (IOException e) {
+            log.w("Frame cache disabled: " + e);
+            return null;
+        }
+        return cache;
+    }
+
+    /** True when frames come from the mapping; false while this run builds the file. */
+    public boolean isMapped() {
+        return segments != null;
+    }
+
+    /** Mappings the frames are spread over (0 while building). */
+    int segmentCount() {
+        return segments != null ? segments.length : 0;
+    }
+
+    /** Point {@code frame} at cached frame {@code index}; false if it failed to decode when built. */
+    public boolean read(int index, RgbFrame frame) {
+        if (offset[index] == 0) {
+            return false;
+        }
+        int n = width[index] * height[index];
+        ByteBuffer segment = segments[frameSegment[index]];
+        int start = frameSegmentOffset[index];
+        frame.setMapped(width[index], height[index], slice(segment, start + n, 3 * n), slice(segment, start, n));
+        return true;
+    }
+
+    /** Append decoded frame {@code index} while building. Stops building (with a warning) on I/O errors. */
+    public void write(int index, RgbFrame frame) {
+        if (out == null) {
+            return;
+        }
+        int w = frame.width;
+        int h = frame.height;
+        int n = w * h;
+        try {
+            if (writePosition == dataStart()) {
+                long needed = (long) frameCount * align(4L * n);
+                long usable = file.getParentFile().getUsableSpace();
+                if (usable < needed) {
+                    throw new IOException(String.format(Locale.US, "needs %d MB, %d MB free",
+                            needed >> 20, usable >> 20));
+                }
+            }
+            if (writeBuffer.length < 4 * n) {
+                writeBuffer = new byte[4 * n];
+            }
+            byte[] buf = writeBuffer;
+            int[] pixels = frame.pixels;
+            for (int i = 0, j = n; i < n; i++, j += 3) {
+                int pixel = pixels[i];
+                int r = (pixel >> 16) & 0xFF;
+                int g = (pixel >> 8) & 0xFF;
+                int b = pixel & 0xFF;
+                buf[i] = (byte) ((r + g + b) / 3);
+                buf[j] = (byte) r;
+                buf[j + 1] = (byte) g;
+                buf[j + 2] = (byte) b;
+            }
+            out.seek(writePosition);
+            out.write(buf, 0, 4 * n);
+            width[index] = w;
+            height[index] = h;
+            offset[index] = writePosition;
+            writePosition += align(4L * n);
+        } catch (IOException e) {
+            log.w("Frame cache: giving up on " + file.getName() + ": " + e);
+            abandon();
+        }
+    }
+
+    /** Publish the file built by this run. Call once every frame has been written (or failed). */
+    public void finish() {
+        if (out == null) {
+            return;
+        }
+        try {
+            ByteBuffer header = ByteBuffer.allocate((int) dataStart());
+            putHeader(header);
+            out.seek(0);
+            out.write(header.array());
+            out.close();
+            out = null;
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("cannot rename " + tmpFile.getName());
+            }
+            log.i(String.format(Locale.US, "Frame cache: wrote %d frames (%d MB) to %s",
+                    frameCount, writePosition >> 20, file.getAbsolutePath()));
+        } catch (IOException e) {
+            log.w("Frame cache: giving up on " + file.getName() + ": " + e);
+            abandon();
+        }
+    }
+
+    /** Drop an unfinished build; a no-op for a mapped cache or after {@link #finish}. */
+    public void close() {
+        abandon();
+    }
+
+    private void abandon() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException ignored) {
+            // Deleted below either way
+        }
+        out = null;
+        tmpFile.delete();
+    }
+
+    private void startWriting() throws IOException {
+        tmpFile = new File(file.getPath() + ".tmp");
+        out = new RandomAccessFile(tmpFile, "rw");
+        out.setLength(0);
+        writePosition = dataStart();
+    }
+
+    private long dataStart() {
+        return align(HEADER_BYTES + (long) frameCount * ENTRY_BYTES);
+    }
+
+    private static long align(long bytes) {
+        return (bytes + PAGE - 1) / PAGE * PAGE;
+    }
+
+    private void putHeader(ByteBuffer header) {
+        header.putLong(MAGIC).putInt(VERSION).putInt(frameCount).putInt(1);
+        for (int i = 0; i < frameCount; i++) {
+            header.putLong(sourceSize[i]).putLong(sourceMtime[i]).putInt(nameHash[i])
+                    .putInt(width[i]).putInt(height[i]).putLong(offset[i]);
+        }
+    }
+
+    /** Validate the existing file against the sources and map it; false if stale. */
+    private boolean map() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            long fileSize = channel.size();
+            if (fileSize < dataStart()) {
+                return false;
+            }
+            ByteBuffer header = ByteBuffer.allocate((int) dataStart());
+            while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+                // Fill the whole header
+            }
+            header.flip();
+            if (header.getLong() != MAGIC || header.getInt() != VERSION
+                    || header.getInt() != frameCount || header.getInt() != 1) {
+                return false;
+            }
+            for (int i = 0; i < frameCount; i++) {
+                if (header.getLong() != sourceSize[i] || header.getLong() != sourceMtime[i]
+                        || header.getInt() != nameHash[i]) {
+                    return false;
+                }
+                width[i] = header.getInt();
+                height[i] = header.getInt();
+                offset[i] = header.getLong();
+                if (offset[i] != 0 && offset[i] + 4L * width[i] * height[i] > fileSize) {
+                    return false;
+                }
+            }
+
+            // Consecutive frames share a mapping until it would pass segmentBytes
+            List<MappedByteBuffer> mapped = new ArrayList<>();
+            frameSegment = new int[frameCount];
+            frameSegmentOffset = new int[frameCount];
+            long segmentStart = -1;
+            long segmentEnd = -1;
+            for (int i = 0; i <= frameCount; i++) {
+                long end = i < frameCount ? offset[i] + 4L * width[i] * height[i] : 0;
+                boolean skip = i < frameCount && offset[i] == 0;
+                if (skip) {
+                    continue;
+                }
+                if (segmentStart >= 0 && (i == frameCount || end - segmentStart > segmentBytes)) {
+                    mapped.add(channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, segmentEnd - segmentStart));
+                    segmentStart = -1;
+                }
+                if (i == frameCount) {
+                    break;
+                }
+                if (segmentStart < 0) {
+                    segmentStart = offset[i];
+                }
+                segmentEnd = end;
+                frameSegment[i] = mapped.size();
+                frameSegmentOffset[i] = (int) (offset[i] - segmentStart);
+            }
+            segments = mapped.toArray(new MappedByteBuffer[0]);
+        }
+        return true;
+    }
+
+    private static ByteBuffer slice(ByteBuffer segment, int start, int length) {
+        ByteBuffer view = segment.duplicate();
+        view.position(start);
+        view.limit(start + length);
+        return view.slice();
+    }
+}
@@ -0,0 +1,178 @@
+package edu.cmu.cs.face.mot;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Cheap change detector that lets unchanged frames skip tracking (frame gating).
+ *
+ * A frame is reduced to a {@link #THUMB_WIDTH}-cell wide luma thumbnail, each cell
+ * the mean of a {@link #SAMPLES} x {@link #SAMPLES} grid of pixels spread over it:
+ * about a tenth of the reads of a grayscale pass, and an edge moving a few pixels
+ * still shifts the mean of the cells it crosses. The thumbnail is compared block by block
+ * ({@link #BLOCK} x {@link #BLOCK} cells) with that of the last frame that was
+ * processed; the frame is static when no block's mean absolute difference reaches
+ * {@link PipelineConfig#frameGateThreshold}, so a small object moving in one block
+ * is not averaged away by a still background. Comparing with the last processed
+ * frame rather than the previous one lets slow changes add up until they count.
+ * At most {@link PipelineConfig#frameGateMaxSkips} frames in a row are skipped.
+ *
+ * Thumbnails are taken in frame-relative positions, so frames decoded at reduced
+ * size compare with full-size ones. Not thread-safe.
+ */
+public final class FrameGate {
+    static final int THUMB_WIDTH = 96;
+    static final int BLOCK = 8;
+    static final int SAMPLES = 4;
+
+    private final float threshold;
+    private final int maxSkips;
+
+    private int thumbW;
+    private int thumbH;
+    // Sample columns and rows (SAMPLES per cell) for frames of frameW x frameH
+    private int frameW = -1;
+    private int frameH = -1;
+    private int[] sampleX = new int[0];
+    private int[] sampleY = new int[0];
+    // Thumbnail of the last processed frame (null before the first), and of the frame checked now
+    private byte[] reference;
+    private byte[] current = new byte[0];
+    private int skips;
+
+    public FrameGate(PipelineConfig config) {
+        this.threshold = config.frameGateThreshold;
+        this.maxSkips = Math.max(0, config.frameGateMaxSkips);
+    }
+
+    /** Forget the reference frame (a new sequence or stream). */
+    public void reset() {
+        reference = null;
+        skips = 0;
+    }
+
+    /**
+     * Whether {@code frame} can skip tracking. A frame that cannot becomes the new
+     * reference, so call this once per frame and process every frame it returns false for.
+     */
+    public boolean skip(RgbFrame frame) {
+        return skip(frame.pixels, frame.gray, null, frame.width, frame.height);
+    }
+
+    /** {@link #skip(RgbFrame)} for a luma plane (e.g. a camera Y plane), width x height. */
+    public boolean skip(byte[] luma, int width, int height) {
+        return skip(null, null, luma, width, height);
+    }
+
+    private boolean skip(int[] pixels, ByteBuffer gray, byte[] luma, int width, int height) {
+        int h = Math.max(1, Math.round(THUMB_WIDTH * height / (float) width));
+        if (h != thumbH) {
+            // Another aspect ratio: nothing to compare with
+            thumbW = THUMB_WIDTH;
+            thumbH = h;
+            reference = null;
+        }
+        if (current.length != thumbW * thumbH) {
+            current = new byte[thumbW * thumbH];
+        }
+        if (width != frameW || height != frameH) {
+            frameW = width;
+            frameH = height;
+            sampleX = samplePositions(width, thumbW);
+            sampleY = samplePositions(height, thumbH);
+        }
+        for (int cy = 0; cy < thumbH; cy++) {
+            for (int cx = 0; cx < thumbW; cx++) {
+                int sum = 0;
+                for (int sy = cy * SAMPLES; sy < (cy + 1) * SAMPLES; sy++) {
+                    int row = sampleY[sy] * width;
+                    for (int sx = cx * SAMPLES; sx < (cx + 1) * SAMPLES; sx++) {
+                        sum += luma(pixels, gray, luma, row + sampleX[sx]);
+                    }
+                }
+                current[cy * thumbW + cx] = (byte) (sum / (SAMPLES * SAMPLES));
+            }
+        }
+
+        if (reference != null && skips < maxSkips && isStatic()) {
+            skips++;
+            return true;
+        }
+        byte[] previous = reference;
+        reference = current;
+        current = previous != null ? previous : new byte[thumbW * thumbH];
+        skips = 0;
+        return false;
+    }
+
+    /** SAMPLES evenly spaced positions in each of {@code cells} cells over {@code size} pixels. */
+    private static int[] samplePositions(int size, int cells) {
+        int[] positions = new int[cells * SAMPLES];
+        for (int k = 0; k < positions.length; k++) {
+            positions[k] = Math.min(size - 1, (2 * k + 1) * size / (2 * positions.length));
+        }
+        return positions;
+    }
+
+    /** Whether every block of {@link #current} is within the threshold of {@link #reference}. */
+    private boolean isStatic() {
+        for (int by = 0; by < thumbH; by += BLOCK) {
+            int yEnd = Math.min(thumbH, by + BLOCK);
+            for (int bx = 0; bx < thumbW; bx += BLOCK) {
+                int xEnd = Math.min(thumbW, bx + BLOCK);
+                int sad = 0;
+                for (int y = by; y < yEnd; y++) {
+                    int row = y * thumbW;
+                    for (int x = bx; x < xEnd; x++) {
+                        sad += Math.abs((current[row + x] & 0xFF) - (reference[row + x] & 0xFF));
+                    }
+                }
+                if (sad >= threshold * (yEnd - by) * (xEnd - bx)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** (r+g+b)/3 like {@link SequenceRunner#toGrayscale}, or the luma byte. */
+    private static int luma(int[] pixels, ByteBuffer gray, byte[] luma, int i) {
+        if (luma != null) {
+            return luma[i] & 0xFF;
+        }
+        if (gray != null) {
+            return gray.get(i) & 0xFF;
+        }
+        int pixel = pixels[i];
+        return (((pixel >> 16) & 0xFF) + ((pixel >> 8) & 0xFF) + (pixel & 0xFF)) / 3;
+    }
+
+    /** Reference thumbnail and skip count, for a {@link TrackerCheckpoint}; null before the first frame. */
+    public byte[] saveState() {
+        if (reference == null) {
+            return null;
+        }
+        ByteBuffer state = ByteBuffer.allocate(12 + reference.length);
+        state.putInt(thumbW).putInt(thumbH).putInt(skips).put(reference);
+        return state.array();
+    }
+
+    /** Restore {@link #saveState()}; null or a malformed state resets. */
+    public void loadState(byte[] state) {
+        reset();
+        if (state == null || state.length < 12) {
+            return;
+        }
+        ByteBuffer in = ByteBuffer.wrap(state);
+        int w = in.getInt();
+        int h = in.getInt();
+        int n = in.getInt();
+        if (w != THUMB_WIDTH || h <= 0 || in.remaining() != w * h) {
+            return;
+        }
+        thumbW = w;
+        thumbH = h;
+        skips = n;
+        reference = new byte[w * h];
+        in.get(reference);
+    }
+}
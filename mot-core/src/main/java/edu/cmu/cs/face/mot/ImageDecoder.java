@@ -0,0 +1,22 @@
+package edu.cmu.cs.face.mot;
+
+import java.io.File;
+
+/** Platform image decoder (BitmapFactory on Android, ImageIO on the host). */
+public interface ImageDecoder {
+    /**
+     * Decode {@code file} into {@code frame}, reusing its pixel array where possible.
+     *
+     * @return false if the file could not be decoded
+     */
+    boolean decode(File file, RgbFrame frame);
+
+    /**
+     * Decode at 1/{@code sampleSize} of the full size (like BitmapFactory inSampleSize),
+     * for frames that only feed the tracker. Decoders that cannot subsample decode
+     * at full size; the caller goes by the resulting frame size.
+     */
+    default boolean decode(File file, RgbFrame frame, int sampleSize) {
+        return decode(file, frame);
+    }
+}
@@ -0,0 +1,282 @@
+package edu.cmu.cs.face.mot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A shared set of interpreters serving the keyframes of several streams.
+ *
+ * Each interpreter has a worker thread. A stream calls {@link #detect} and blocks
+ * until its keyframe is done, so it has at most one request waiting; whenever a
+ * worker is free it picks the next one by {@link Policy}:
+ * <ul>
+ *   <li>ROUND_ROBIN: the next waiting stream after the last one served, so every
+ *       stream gets a turn no matter how fast the others submit;</li>
+ *   <li>EARLIEST_DEADLINE: the waiting request with the earliest deadline (ties in
+ *       round-robin order), for streams with different frame rates or budgets.</li>
+ * </ul>
+ * Per-stream queue wait and inference time are kept for the report.
+ */
+public final class InferenceScheduler implements AutoCloseable {
+    public enum Policy { ROUND_ROBIN, EARLIEST_DEADLINE }
+
+    private final Policy policy;
+    private final List<YoloDetector> detectors = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final Object lock = new Object();
+
+    // One slot per stream (a stream has at most one request in flight)
+    private final Request[] requests;
+    private final Request[] waiting;
+    private int cursor = -1;
+    private boolean closed;
+    // Workers still serving; one interrupted outside close() retires
+    private int live;
+
+    /** Queue wait and service of one stream's keyframes. */
+    public static final class StreamStats {
+        public long keyframes;
+        public long totalWaitNanos;
+        public long maxWaitNanos;
+        public long totalInferNanos;
+    }
+
+    private static final class Request {
+        final StreamStats stats = new StreamStats();
+        RgbFrame frame;
+        PipelineTimings timings;
+        long deadlineNanos;
+        long enqueueNanos;
+        float[] result;
+        RuntimeException error;
+        boolean done;
+    }
+
+    /**
+     * @param models  interpreters of the same model, one worker each
+     * @param config  detector thresholds (shared by all streams)
+     * @param streams number of streams that will call {@link #detect}
+     */
+    public InferenceScheduler(List<? extends ModelRunner> models, PipelineConfig config, Policy policy,
+                              int streams, PipelineLog log) {
+        this.policy = policy;
+        requests = new Request[streams];
+        waiting = new Request[streams];
+        for (int i = 0; i < streams; i++) {
+            requests[i] = new Request();
+        }
+        for (ModelRunner model : models) {
+            YoloDetector detector = new YoloDetector(model, config, log);
+            detectors.add(detector);
+            Thread t = new Thread(() -> serve(detector), "inference-" + workers.size());
+            t.setDaemon(true);
+            workers.add(t);
+        }
+        live = workers.size();
+        for (Thread t : workers) {
+            t.start();
+        }
+    }
+
+    public int interpreters() {
+        return detectors.size();
+    }
+
+    /**
+     * Detect on {@code frame} for {@code stream}, waiting for a free interpreter and
+     * for the stream's turn. Stage times go into {@code timings} as with
+     * {@link YoloDetector#detect(RgbFrame, PipelineTimings)}.
+     *
+     * @param deadlineNanos when the result is needed ({@link System#nanoTime()}),
+     *                      used by {@link Policy#EARLIEST_DEADLINE}
+     * @throws InterruptedException if interrupted while waiting. A request not yet
+     *         picked up is withdrawn; one already on an interpreter is waited out
+     *         first, since it still reads {@code frame} and the stream's slot.
+     */
+    public float[] detect(int stream, RgbFrame frame, long deadlineNanos, PipelineTimings timings)
+            throws InterruptedException {
+        Request r = requests[stream];
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("Scheduler is closed");
+            }
+            if (live == 0) {
+                throw new IllegalStateException("No inference workers left");
+            }
+            r.frame = frame;
+            r.timings = timings;
+            r.deadlineNanos = deadlineNanos;
+            r.enqueueNanos = System.nanoTime();
+            r.result = null;
+            r.error = null;
+            r.done = false;
+            waiting[stream] = r;
+            lock.notifyAll();
+            try {
+                while (!r.done) {
+                    lock.wait();
+                }
+            } finally {
+                if (!r.done) {
+                    if (waiting[stream] == r) {
+                        waiting[stream] = null;
+                    } else {
+                        awaitInService(r);
+                    }
+                }
+                r.frame = null;
+                r.timings = null;
+            }
+        }
+        if (r.error != null) {
+            throw r.error;
+        }
+        return r.result;
+    }
+
+    /**
+     * Wait, ignoring interrupts, for a request a worker is running; the caller is
+     * already unwinding with an InterruptedException. Under lock.
+     */
+    private void awaitInService(Request r) {
+        boolean interrupted = false;
+        while (!r.done) {
+            try {
+                lock.wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Stats of {@code stream}; read once its requests are done. */
+    public StreamStats stats(int stream) {
+        synchronized (lock) {
+            return requests[stream].stats;
+        }
+    }
+
+    private void serve(YoloDetector detector) {
+        try {
+            serveRequests(detector);
+        } finally {
+            synchronized (lock) {
+                live--;
+                if (live == 0) {
+                    // Nobody is left to serve the streams still waiting
+                    for (int i = 0; i < waiting.length; i++) {
+                        if (waiting[i] != null) {
+                            waiting[i].error = new IllegalStateException("No inference workers left");
+                            waiting[i].done = true;
+                            waiting[i] = null;
+                        }
+                    }
+                    lock.notifyAll();
+                }
+            }
+        }
+    }
+
+    private void serveRequests(YoloDetector detector) {
+        while (true) {
+            Request r;
+            synchronized (lock) {
+                int next;
+                while ((next = pick()) < 0) {
+                    if (closed) {
+                        return;
+                    }
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                r = waiting[next];
+                waiting[next] = null;
+                cursor = next;
+            }
+
+            long start = System.nanoTime();
+            float[] result = null;
+            RuntimeException error = null;
+            try {
+                result = detector.detect(r.frame, r.timings);
+            } catch (RuntimeException e) {
+                error = e;
+            }
+            long end = System.nanoTime();
+
+            synchronized (lock) {
+                StreamStats s = r.stats;
+                long wait = start - r.enqueueNanos;
+                s.keyframes++;
+                s.totalWaitNanos += wait;
+                s.maxWaitNanos = Math.max(s.maxWaitNanos, wait);
+                s.totalInferNanos += end - start;
+                r.result = result;
+                r.error = error;
+                r.done = true;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /** Index of the stream to serve next, or -1 if none is waiting. Under lock. */
+    private int pick() {
+        int n = waiting.length;
+        int best = -1;
+        for (int k = 1; k <= n; k++) {
+            int i = (cursor + k + n) % n;
+            Request r = waiting[i];
+            if (r == null) {
+                continue;
+            }
+            if (policy == Policy.ROUND_ROBIN) {
+                return i;
+            }
+            if (best < 0 || r.deadlineNanos < waiting[best].deadlineNanos) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /** One line per stream: keyframes served, mean/max queue wait, mean service time. */
+    public void report(PipelineLog log, List<String> names) {
+        log.i(String.format(Locale.US, "--- Shared Inference (%d interpreters, %s) ---",
+                detectors.size(), policy.name().toLowerCase(Locale.ROOT).replace('_', '-')));
+        synchronized (lock) {
+            for (int i = 0; i < requests.length; i++) {
+                StreamStats s = requests[i].stats;
+                double n = Math.max(1, s.keyframes);
+                log.i(String.format(Locale.US, "%-16s %5d keyframes, wait mean %.2f max %.2f ms, infer %.2f ms",
+                        names.get(i), s.keyframes, s.totalWaitNanos / n / 1e6, s.maxWaitNanos / 1e6,
+                        s.totalInferNanos / n / 1e6));
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            // Streams still waiting get an error instead of blocking forever
+            for (int i = 0; i < waiting.length; i++) {
+                if (waiting[i] != null) {
+                    waiting[i].error = new IllegalStateException("Scheduler closed");
+                    waiting[i].done = true;
+                    waiting[i] = null;
+                }
+            }
+            lock.notifyAll();
+        }
+        for (Thread t : workers) {
+            t.interrupt();
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package edu.cmu.cs.face.mot;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Moves detections that arrive late (an edge round trip, or any detector slower
+ * than the camera) from the frame they were captured on to the frame they are
+ * applied to.
+ *
+ * The caller records the tracker output of every frame it processes with the
+ * frame's ID and capture time. A late detection is matched (same class, IoU at
+ * least {@link #MATCH_IOU}) against the tracks of its capture frame (or of the
+ * newest recorded frame before it, if that one was not recorded), and moves and
+ * scales the way that track has since. Motion up to the newest frame the track was
+ * seen on is what the tracker recorded (KLT between keyframes); the rest, up to the
+ * target frame's capture time, is predicted with the track's Kalman velocity
+ * (nativeGetTrackStates), the same constant-velocity model ByteTrack predicts with.
+ * So a track lost since the capture frame moves the way the filter expects it to,
+ * for at most {@link #MAX_EXTRAPOLATION_NANOS}. Detections of objects the tracker
+ * did not have at capture time stay where they are.
+ *
+ * Keeps the last {@link #HISTORY} frames; older detections are applied unchanged.
+ * Not thread-safe; one per tracker.
+ */
+public final class LatencyCompensator {
+    static final int HISTORY = 64;
+    static final float MATCH_IOU = 0.3f;
+    static final long MAX_EXTRAPOLATION_NANOS = 500_000_000L;
+    private static final int FIELDS_PER_TRACK = 7;
+    private static final int FIELDS_PER_DETECTION = 6;
+    private static final int FIELDS_PER_STATE = 9;
+
+    private final long[] frameIds = new long[HISTORY];
+    private final long[] captureNanos = new long[HISTORY];
+    private final float[][] tracks = new float[HISTORY][];
+    private long recorded;
+    private final float[] motion = new float[4];
+    private Stats stats = new Stats();
+
+    /** Late detection sets and how far they were moved. */
+    public static final class Stats {
+        public long sets;
+        public long framesLate;
+        public long nanosLate;
+        /** Detections moved with a track seen up to the target frame. */
+        public long followed;
+        /** Detections of tracks lost since their capture frame, moved along their Kalman velocity. */
+        public long predicted;
+        public long unmatched;
+        /** Sets whose capture frame had left the history. */
+        public long tooLate;
+        /** Sum of the shifts of the moved detections, pixels. */
+        public double shiftPixels;
+
+        public void report(PipelineLog log) {
+            if (sets == 0) {
+                return;
+            }
+            long moved = followed + predicted;
+            log.i("--- Latency Compensation ---");
+            log.i(String.format(Locale.US, "Late detection sets: %d, %.1f frames / %.1f ms late on average (%d beyond history)",
+                    sets, (double) framesLate / sets, nanosLate / 1e6 / sets, tooLate));
+            log.i(String.format(Locale.US, "Detections: %d followed their track, %d predicted (track lost), %d unmatched; %.1f px mean shift",
+                    followed, predicted, unmatched, moved > 0 ? shiftPixels / moved : 0));
+        }
+    }
+
+    public Stats stats() {
+        return stats;
+    }
+
+    /** Forget the recorded frames and start new {@link Stats}. */
+    public void reset() {
+        recorded = 0;
+        Arrays.fill(tracks, null);
+        stats = new Stats();
+    }
+
+    /**
+     * Tracker output of a processed frame ([cx, cy, w, h, classId, conf, trackId]
+     * normalized), kept by reference: do not modify it afterwards. Frame IDs increase.
+     */
+    public void record(long frameId, long frameCaptureNanos, float[] frameTracks) {
+        int slot = (int) (recorded++ % HISTORY);
+        frameIds[slot] = frameId;
+        captureNanos[slot] = frameCaptureNanos;
+        tracks[slot] = frameTracks;
+    }
+
+    /**
+     * {@code detections} ([cx, cy, w, h, classId, conf] normalized) of frame
+     * {@code captureFrameId}, moved to a frame captured at {@code targetNanos} after
+     * every recorded one. Returns a new array; {@code detections} is not modified.
+     *
+     * @param trackStates the tracker's Kalman states now (nativeGetTrackStates:
+     *                    [trackId, cx, cy, w, h, vx, vy, vw, vh] normalized, velocities
+     *                    per second), or null to follow recorded motion only
+     */
+    public float[] project(float[] detections, long captureFrameId, long targetNanos, float[] trackStates,
+                           int frameWidth, int frameHeight) {
+        float[] out = detections.clone();
+        int capture = find(captureFrameId);
+        stats.sets++;
+        if (capture < 0) {
+            stats.tooLate++;
+            return out;
+        }
+        stats.framesLate += frameIds[newest()] + 1 - captureFrameId;
+        stats.nanosLate += targetNanos - captureNanos[capture];
+
+        float[] captured = tracks[capture];
+        for (int d = 0; d + FIELDS_PER_DETECTION <= out.length; d += FIELDS_PER_DETECTION) {
+            int t = bestMatch(out, d, captured);
+            if (t < 0) {
+                stats.unmatched++;
+                continue;
+            }
+            boolean seenNow = motion((int) captured[t + 6], capture, targetNanos, trackStates);
+            float dx = motion[0] - captured[t];
+            float dy = motion[1] - captured[t + 1];
+            out[d] += dx;
+            out[d + 1] += dy;
+            out[d + 2] *= motion[2] / captured[t + 2];
+            out[d + 3] *= motion[3] / captured[t + 3];
+            if (seenNow) {
+                stats.followed++;
+            } else {
+                stats.predicted++;
+            }
+            stats.shiftPixels += Math.hypot(dx * frameWidth, dy * frameHeight);
+        }
+        return out;
+    }
+
+    /**
+     * Box [cx, cy, w, h] of {@code trackId} at {@code targetNanos} into {@link #motion}:
+     * its newest recorded box after slot {@code from}, plus its Kalman velocity times
+     * the time left. Returns whether the track is in the newest frame.
+     */
+    private boolean motion(int trackId, int from, long targetNanos, float[] trackStates) {
+        int newest = newest();
+        int last = -1;
+        int lastIndex = -1;
+        for (int s = newest; ; s = previous(s)) {
+            int i = indexOf(tracks[s], trackId);
+            if (i >= 0) {
+                last = s;
+                lastIndex = i;
+                break;
+            }
+            if (s == from) {
+                break;
+            }
+        }
+        System.arraycopy(tracks[last], lastIndex, motion, 0, 4);
+
+        int state = stateOf(trackStates, trackId);
+        float seconds = Math.min(targetNanos - captureNanos[last], MAX_EXTRAPOLATION_NANOS) / 1e9f;
+        if (state >= 0 && seconds > 0) {
+            motion[0] += trackStates[state + 5] * seconds;
+            motion[1] += trackStates[state + 6] * seconds;
+            // A shrinking box is not extrapolated through zero
+            float w = motion[2] + trackStates[state + 7] * seconds;
+            float h = motion[3] + trackStates[state + 8] * seconds;
+            if (w > 0 && h > 0) {
+                motion[2] = w;
+                motion[3] = h;
+            }
+        }
+        return last == newest;
+    }
+
+    /** The track of {@code tracks} that best matches detection {@code d} of {@code detections}, or -1. */
+    private static int bestMatch(float[] detections, int d, float[] tracks) {
+        int best = -1;
+        float bestIou = MATCH_IOU;
+        for (int t = 0; tracks != null && t + FIELDS_PER_TRACK <= tracks.length; t += FIELDS_PER_TRACK) {
+            if ((int) tracks[t + 4] != (int) detections[d + 4]) {
+                continue;
+            }
+            float iou = iou(detections, d, tracks, t);
+            if (iou >= bestIou) {
+                bestIou = iou;
+                best = t;
+            }
+        }
+        return best;
+    }
+
+    private static float iou(float[] a, int i, float[] b, int j) {
+        float w = Math.min(a[i] + a[i + 2] / 2, b[j] + b[j + 2] / 2) - Math.max(a[i] - a[i + 2] / 2, b[j] - b[j + 2] / 2);
+        float h = Math.min(a[i + 1] + a[i + 3] / 2, b[j + 1] + b[j + 3] / 2) - Math.max(a[i + 1] - a[i + 3] / 2, b[j + 1] - b[j + 3] / 2);
+        if (w <= 0 || h <= 0) {
+            return 0;
+        }
+        float inter = w * h;
+        return inter / (a[i + 2] * a[i + 3] + b[j + 2] * b[j + 3] - inter);
+    }
+
+    private static int indexOf(float[] tracks, int trackId) {
+        for (int t = 0; tracks != null && t + FIELDS_PER_TRACK <= tracks.length; t += FIELDS_PER_TRACK) {
+            if ((int) tracks[t + 6] == trackId) {
+                return t;
+            }
+        }
+        return -1;
+    }
+
+    private static int stateOf(float[] trackStates, int trackId) {
+        for (int s = 0; trackStates != null && s + FIELDS_PER_STATE <= trackStates.length; s += FIELDS_PER_STATE) {
+            if ((int) trackStates[s] == trackId) {
+                return s;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Slot of {@code frameId}, or of the newest recorded frame before it if it was
+     * not recorded; -1 if it is older than the history.
+     */
+    private int find(long frameId) {
+        if (recorded == 0) {
+            return -1;
+        }
+        for (int s = newest(); ; s = previous(s)) {
+            if (frameIds[s] <= frameId) {
+                return s;
+            }
+            if (s == oldest()) {
+                return -1;
+            }
+        }
+    }
+
+    private int newest() {
+        return (int) ((recorded - 1) % HISTORY);
+    }
+
+    private int oldest() {
+        return recorded <= HISTORY ? 0 : (int) (recorded % HISTORY);
+    }
+
+    private static int previous(int slot) {
+        return (slot + HISTORY - 1) % HISTORY;
+    }
+}
@@ -0,0 +1,123 @@
+package edu.cmu.cs.face.mot;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Counters of a live (camera) run: frames analyzed and dropped, and per-frame
+ * latency from capture to the tracks being published and to the overlay drawing
+ * them. Latencies keep the last {@link #WINDOW} frames for percentiles; all
+ * arrays are preallocated.
+ *
+ * The analyzer thread records frames and the UI thread records draws, so the
+ * methods are synchronized (one short call per frame on each side).
+ */
+public final class LiveStats {
+    public static final int WINDOW = 256;
+
+    private long analyzed;
+    private long keyframes;
+    private long dropped;
+    private long drawn;
+    private long firstCaptureNanos;
+    private long lastCaptureNanos;
+
+    private final Window publishLatency = new Window();
+    private final Window overlayLatency = new Window();
+    private final Window processing = new Window();
+
+    /** Last {@link #WINDOW} samples (nanoseconds) plus running totals. */
+    private static final class Window {
+        final long[] samples = new long[WINDOW];
+        final long[] sorted = new long[WINDOW];
+        long count;
+        long sum;
+        long max;
+
+        void add(long v) {
+            samples[(int) (count % WINDOW)] = v;
+            count++;
+            sum += v;
+            max = Math.max(max, v);
+        }
+
+        /** Percentile p (0..1) of the window, in ms. */
+        double percentileMs(double p) {
+            int n = (int) Math.min(count, WINDOW);
+            if (n == 0) {
+                return 0;
+            }
+            System.arraycopy(samples, 0, sorted, 0, n);
+            Arrays.sort(sorted, 0, n);
+            return sorted[Math.min(n - 1, (int) (p * n))] / 1_000_000.0;
+        }
+
+        double meanMs() {
+            return count > 0 ? sum / (double) count / 1_000_000.0 : 0;
+        }
+    }
+
+    /**
+     * One analyzed frame.
+     *
+     * @param droppedBefore camera frames dropped since the previous analyzed frame
+     * @param captureNanos  capture time on the {@link System#nanoTime()} clock
+     * @param startNanos    when processing started
+     * @param publishNanos  when the tracks were handed to the overlay
+     */
+    public synchronized void onFrame(int droppedBefore, boolean keyframe, long captureNanos,
+                                     long startNanos, long publishNanos) {
+        if (analyzed == 0) {
+            firstCaptureNanos = captureNanos;
+        }
+        analyzed++;
+        if (keyframe) {
+            keyframes++;
+        }
+        dropped += droppedBefore;
+        lastCaptureNanos = captureNanos;
+        processing.add(publishNanos - startNanos);
+        publishLatency.add(publishNanos - captureNanos);
+    }
+
+    /** The overlay drew the tracks of a frame captured at {@code captureNanos}. */
+    public synchronized void onDrawn(long captureNanos, long drawNanos) {
+        drawn++;
+        overlayLatency.add(drawNanos - captureNanos);
+    }
+
+    public synchronized long dropped() {
+        return dropped;
+    }
+
+    /** Analyzed frames per second of camera time. */
+    public synchronized double fps() {
+        long span = lastCaptureNanos - firstCaptureNanos;
+        return analyzed > 1 && span > 0 ? (analyzed - 1) * 1e9 / span : 0;
+    }
+
+    /** Two short lines for the overlay. */
+    public synchronized String summary() {
+        long total = analyzed + dropped;
+        return String.format(Locale.US,
+                "live %.1f fps  dropped %d/%d (%.0f%%)\ncapture->overlay p50 %.1f  p95 %.1f ms",
+                fps(), dropped, total, total > 0 ? 100.0 * dropped / total : 0,
+                overlayLatency.percentileMs(0.5), overlayLatency.percentileMs(0.95));
+    }
+
+    public synchronized void report(PipelineLog log) {
+        long total = analyzed + dropped;
+        log.i("--- Live Tracking ---");
+        log.i(String.format(Locale.US, "Frames: %d analyzed (%d keyframes), %d dropped of %d captured (%.1f%%)",
+                analyzed, keyframes, dropped, total, total > 0 ? 100.0 * dropped / total : 0));
+        log.i(String.format(Locale.US, "Analyzed FPS: %.2f", fps()));
+        log.i(line("Processing:       ", processing));
+        log.i(line("Capture->publish: ", publishLatency));
+        log.i(line("Capture->overlay: ", overlayLatency) + " (" + drawn + " draws)");
+    }
+
+    private static String line(String name, Window w) {
+        return String.format(Locale.US, "%smean %.2f, p50 %.2f, p95 %.2f, max %.2f ms",
+                name, w.meanMs(), w.percentileMs(0.5), w.percentileMs(0.95), w.max / 1_000_000.0);
+    }
+}
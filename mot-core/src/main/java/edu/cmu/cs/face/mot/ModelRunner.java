@@ -0,0 +1,29 @@
+package edu.cmu.cs.face.mot;
+
+import java.nio.ByteBuffer;
+
+/**
+ * One detector model instance (a TFLite Interpreter in practice). Not thread-safe:
+ * parallel sequences each get their own runner.
+ *
+ * Input is [1, H, W, 3]; output 0 is [1, numDetails, numPredictions] with
+ * numDetails = 4 box values (cx, cy, w, h, normalized) followed by class scores.
+ */
+public interface ModelRunner extends AutoCloseable {
+    enum TensorType { FLOAT32, UINT8, INT8 }
+
+    int[] inputShape();
+    TensorType inputType();
+    int inputZeroPoint();
+
+    int[] outputShape();
+    TensorType outputType();
+    float outputScale();
+    int outputZeroPoint();
+
+    /** Run the model; both buffers are direct, native order, positioned at 0. */
+    void run(ByteBuffer input, ByteBuffer output);
+
+    @Override
+    void close();
+}
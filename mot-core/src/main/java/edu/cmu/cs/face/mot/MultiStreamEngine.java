@@ -0,0 +1,283 @@
+package edu.cmu.cs.face.mot;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Several independent streams (camera feeds or sequences) tracked in one process.
+ *
+ * Every stream has its own HybridTracker handle, thread, result sink and metrics;
+ * separate handles are updated concurrently (the JNI layer refuses concurrent use
+ * of one handle, not of different ones). Keyframe detection goes through one
+ * {@link InferenceScheduler}, so a few interpreters serve all streams in a fair
+ * order instead of one interpreter per stream.
+ *
+ * Streams use the Java decode path ({@link YoloDetector#detect(RgbFrame, PipelineTimings)}):
+ * the fused native decode reads the interpreter's output buffer during the tracker
+ * call, which would keep a shared interpreter busy for the length of it.
+ *
+ * With {@link PipelineConfig#frameGateThreshold} set for a stream, its unchanged
+ * frames ({@link FrameGate}) reuse the previous tracks without tracking or
+ * inference, so mostly static cameras cost little of the shared interpreters.
+ */
+public final class MultiStreamEngine {
+    private static final String RULE = "=".repeat(60);
+
+    /** Frames of one stream, in order. */
+    public interface FrameSource {
+        /**
+         * Fill {@code frame} with the next frame.
+         *
+         * @return the frame's number in the stream (1-based, gaps where frames were
+         *         lost), or 0 at the end of the stream
+         */
+        int next(RgbFrame frame) throws IOException;
+    }
+
+    /** Receives each frame's tracks ([cx, cy, w, h, classId, conf, trackId] normalized). */
+    public interface ResultSink extends AutoCloseable {
+        void onFrame(int frameNumber, boolean keyframe, float[] tracks, int frameWidth, int frameHeight)
+                throws IOException;
+
+        @Override
+        default void close() throws IOException {
+        }
+    }
+
+    /** Outcome and metrics of one stream. */
+    public static final class StreamResult {
+        public String name;
+        public int frames;
+        public int keyframes;
+        /** Frames the frame gate found unchanged (not tracked). */
+        public int gatedFrames;
+        public final PipelineTimings timings = new PipelineTimings();
+        /** Longest frame from decoded to tracked (decode and sink excluded). */
+        public long maxFrameNanos;
+        public long wallNanos;
+        public Throwable error;
+
+        public float fps() {
+            return timings.totalProcessingNanos > 0 ? frames * 1e9f / timings.totalProcessingNanos : 0f;
+        }
+    }
+
+    private static final class Stream {
+        final int index;
+        final String name;
+        final FrameSource source;
+        final ResultSink sink;
+        final PipelineConfig config;
+        final StreamResult result = new StreamResult();
+
+        Stream(int index, String name, FrameSource source, ResultSink sink, PipelineConfig config) {
+            this.index = index;
+            this.name = name;
+            this.source = source;
+            this.sink = sink;
+            this.config = config;
+            result.name = name;
+        }
+    }
+
+    private final TrackerNatives natives;
+    private final List<? extends ModelRunner> models;
+    private final PipelineConfig detectorConfig;
+    private final InferenceScheduler.Policy policy;
+    private final PipelineLog log;
+    private final List<Stream> streams = new ArrayList<>();
+    private InferenceScheduler scheduler;
+
+    /**
+     * @param models         interpreters shared by all streams (one keyframe at a time each)
+     * @param detectorConfig detection thresholds, the same for every stream
+     */
+    public MultiStreamEngine(TrackerNatives natives, List<? extends ModelRunner> models,
+                             PipelineConfig detectorConfig, InferenceScheduler.Policy policy, PipelineLog log) {
+        this.natives = natives;
+        this.models = models;
+        this.detectorConfig = detectorConfig;
+        this.policy = policy;
+        this.log = log;
+    }
+
+    /** Add a stream with its own tracker settings ({@code config}); returns its index. */
+    public int addStream(String name, FrameSource source, ResultSink sink, PipelineConfig config) {
+        if (scheduler != null) {
+            throw new IllegalStateException("Streams must be added before run()");
+        }
+        streams.add(new Stream(streams.size(), name, source, sink, config));
+        return streams.size() - 1;
+    }
+
+    /**
+     * Run every stream to its end, concurrently. A stream that fails stops alone;
+     * its error is in its result.
+     */
+    public List<StreamResult> run() throws InterruptedException {
+        scheduler = new InferenceScheduler(models, detectorConfig, policy, streams.size(), log);
+        List<Thread> threads = new ArrayList<>();
+        try {
+            for (Stream s : streams) {
+                Thread t = new Thread(() -> runStream(s), "stream-" + s.name);
+                threads.add(t);
+                t.start();
+            }
+            for (Thread t : threads) {
+                t.join();
+            }
+        } finally {
+            scheduler.close();
+        }
+        List<StreamResult> results = new ArrayList<>();
+        for (Stream s : streams) {
+            results.add(s.result);
+        }
+        return results;
+    }
+
+    private void runStream(Stream s) {
+        StreamResult result = s.result;
+        RgbFrame frame = new RgbFrame();
+        byte[] grayscale = new byte[0];
+        long framePeriod = 1_000_000_000L / Math.max(1, s.config.videoFps);
+        long handle = 0;
+        long streamStart = System.nanoTime();
+        FrameGate gate = s.config.frameGateThreshold > 0 ? new FrameGate(s.config) : null;
+        float[] lastTracks = null;
+        try (ResultSink sink = s.sink) {
+            handle = SequenceRunner.initTracker(natives, s.config);
+            while (true) {
+                long decodeStart = System.nanoTime();
+                int frameNumber = s.source.next(frame);
+                if (frameNumber <= 0) {
+                    break;
+                }
+                long frameStart = System.nanoTime();
+                result.timings.totalDecodeNanos += frameStart - decodeStart;
+
+                boolean isKeyframe = natives.nativeIsKeyframe(handle);
+                if (gate != null && gate.skip(frame)) {
+                    natives.nativeSkipFrame(handle);
+                    long frameEnd = System.nanoTime();
+                    result.timings.totalGateNanos += frameEnd - frameStart;
+                    result.timings.totalProcessingNanos += frameEnd - frameStart;
+                    result.frames++;
+                    result.gatedFrames++;
+                    sink.onFrame(frameNumber, false, lastTracks, frame.width, frame.height);
+                    continue;
+                }
+                float[] detections = null;
+                if (isKeyframe) {
+                    // Due before the next frame of this stream
+                    detections = scheduler.detect(s.index, frame, frameStart + framePeriod, result.timings);
+                    result.keyframes++;
+                }
+
+                long startGray = System.nanoTime();
+                if (frame.gray == null) {
+                    grayscale = SequenceRunner.toGrayscale(frame, grayscale);
+                }
+                long startJNI = System.nanoTime();
+                result.timings.totalGrayscaleNanos += startJNI - startGray;
+
+                float[] tracks;
+                if (frame.gray != null) {
+                    tracks = isKeyframe
+                            ? natives.nativeUpdateWithDetectionsBuffer(handle, detections, frame.gray, frame.width, frame.height)
+                            : natives.nativeUpdateWithoutDetectionsBuffer(handle, frame.gray, frame.width, frame.height);
+                } else {
+                    tracks = isKeyframe
+                            ? natives.nativeUpdateWithDetections(handle, detections, grayscale, frame.width, frame.height)
+                            : natives.nativeUpdateWithoutDetections(handle, grayscale, frame.width, frame.height);
+                }
+                long frameEnd = System.nanoTime();
+                result.timings.totalJniTrackingNanos += frameEnd - startJNI;
+                result.timings.totalProcessingNanos += frameEnd - frameStart;
+                result.maxFrameNanos = Math.max(result.maxFrameNanos, frameEnd - frameStart);
+
+                result.frames++;
+                lastTracks = tracks;
+                sink.onFrame(frameNumber, isKeyframe, tracks, frame.width, frame.height);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.error = e;
+        } catch (Exception | Error e) {
+            result.error = e;
+            log.e("[" + s.name + "] stream failed", e);
+        } finally {
+            if (handle != 0) {
+                natives.nativeReleaseHybridTracker(handle);
+            }
+            result.wallNanos = System.nanoTime() - streamStart;
+        }
+    }
+
+    /** Per-stream throughput and latency, the scheduler's fairness view, and the totals. */
+    public void report(List<StreamResult> results, long wallNanos) {
+        log.i("");
+        log.i(RULE);
+        log.i(String.format(Locale.US, "MULTI-STREAM: %d streams, %d shared interpreters",
+                results.size(), scheduler.interpreters()));
+        log.i(RULE);
+        List<String> names = new ArrayList<>();
+        int frames = 0;
+        for (StreamResult r : results) {
+            names.add(r.name);
+            frames += r.frames;
+            double n = Math.max(1, r.frames);
+            log.i(String.format(Locale.US,
+                    "%-16s %5d frames (%d keyframes, %d gated), %.2f FPS, frame mean %.2f max %.2f ms%s",
+                    r.name, r.frames, r.keyframes, r.gatedFrames, r.fps(), r.timings.totalProcessingNanos / n / 1e6,
+                    r.maxFrameNanos / 1e6, r.error != null ? "  FAILED: " + r.error : ""));
+        }
+        scheduler.report(log, names);
+        double wallSeconds = wallNanos / 1e9;
+        log.i(String.format(Locale.US, "Aggregate: %d frames in %.1f s (%.2f FPS)",
+                frames, wallSeconds, wallSeconds > 0 ? frames / wallSeconds : 0));
+        log.i(RULE);
+    }
+
+    /** A source over image files (e.g. {@link SequenceRunner#listImages}), decoded in order. */
+    public static FrameSource imageSource(List<File> images, ImageDecoder decoder, PipelineLog log) {
+        return new FrameSource() {
+            private int next;
+
+            @Override
+            public int next(RgbFrame frame) {
+                while (next < images.size()) {
+                    File image = images.get(next++);
+                    if (decoder.decode(image, frame)) {
+                        return next;
+                    }
+                    log.w("WARNING: Failed to load " + image.getName());
+                }
+                return 0;
+            }
+        };
+    }
+
+    /** A sink writing MOT17 rows (person tracks with an id) to {@code file}. */
+    public static ResultSink motFileSink(File file) throws IOException {
+        Writer writer = new BufferedWriter(new FileWriter(file));
+        return new ResultSink() {
+            @Override
+            public void onFrame(int frameNumber, boolean keyframe, float[] tracks, int frameWidth, int frameHeight)
+                    throws IOException {
+                SequenceRunner.writeMotRows(writer, frameNumber, tracks, frameWidth, frameHeight);
+            }
+
+            @Override
+            public void close() throws IOException {
+                writer.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,115 @@
+package edu.cmu.cs.face.mot;
+
+import java.io.File;
+
+/** Tracker and detector settings for one sequence run. Defaults match the app. */
+public final class PipelineConfig {
+    /** Kalman time step and track timeout are derived from this. */
+    public int videoFps = 30;
+    /** Frames to keep lost tracks. */
+    public int trackBuffer = 30;
+    /** Run the detector every N frames, KLT in between. */
+    public int keyframeInterval = 7;
+    /** ByteTrack needs the low-confidence detections, so this stays low. */
+    public float confidenceThreshold = 0.01f;
+    public float nmsThreshold = 0.4f;
+    /** Gated (sparse) LAP assignment in ByteTrack. */
+    public boolean sparseAssignment = true;
+    /**
+     * Estimate the camera's frame-to-frame motion from background points and apply it
+     * to the KLT boxes and, on keyframes, to the Kalman states. For moving cameras.
+     */
+    public boolean globalMotion = false;
+    /**
+     * Run keyframe detection on crops around the current tracks ({@link RoiPlanner})
+     * instead of the whole frame, at a higher effective resolution.
+     */
+    public boolean roiInference = false;
+    /** At most this many crops (one inference each) per ROI keyframe. */
+    public int roiMaxCrops = 1;
+    /** Every N-th keyframe runs on the full frame so new objects are picked up. */
+    public int roiFullFrameInterval = 4;
+    /** Padding around each track box, as a fraction of its size per side. */
+    public float roiMargin = 0.5f;
+    /** Crops are never smaller than the model input divided by this. */
+    public float roiMaxUpscale = 2f;
+    /**
+     * Detect on overlapping tiles ({@link TiledDetector}) instead of one letterbox of
+     * the frame, spread over the interpreters given to the runner.
+     */
+    public boolean tiledInference = false;
+    public int tileCols = 2;
+    public int tileRows = 2;
+    /** Overlap between neighbouring tiles, as a fraction of the tile size. */
+    public float tileOverlap = 0.2f;
+    /** Also run the full frame, for objects larger than a tile. */
+    public boolean tileIncludeFullFrame = true;
+    /**
+     * Latency goal for a full-frame keyframe (letterbox through decode), held by
+     * switching between input sizes ({@link ResolutionController}) when the runner
+     * has interpreters at smaller sizes. Has no effect with a single size.
+     */
+    public float keyframeLatencyTargetMs = 50f;
+    /**
+     * Decode full-frame keyframe outputs in native code and hand the detections to
+     * the tracker in the same JNI call (nativeUpdateWithModelOutput), instead of
+     * decoding and NMS in Java. ROI and tiled keyframes still merge in Java.
+     */
+    public boolean nativePostprocessing = false;
+    /**
+     * Decode non-keyframes at 1/N size (they only feed KLT, which works at half size).
+     * 1 decodes every frame at full size. Not applied while a frame cache is being built.
+     */
+    public int nonKeyframeSampleSize = 1;
+    /**
+     * Skip frames that barely changed since the last processed one ({@link FrameGate}):
+     * they reuse its tracks and only count towards the keyframe interval, with no
+     * grayscale, KLT or detection. The threshold is the mean absolute luma difference
+     * (0-255) any block of the frame must reach to count as changed; 0 disables gating.
+     */
+    public float frameGateThreshold = 0f;
+    /** Process at least one of every N+1 frames however static the scene looks. */
+    public int frameGateMaxSkips = 30;
+    /**
+     * Move detections that arrive after their frame (edge keyframes) to the frame they
+     * are applied to, along the motion their tracks made since ({@link LatencyCompensator}).
+     */
+    public boolean latencyCompensation = true;
+    /** Keep decoded frames in a memory-mapped file per sequence here; null decodes every run. */
+    public File frameCacheDir;
+    /**
+     * Save the tracker state every N frames ({@link TrackerCheckpoint}) and resume an
+     * interrupted sequence from its last checkpoint. 0 disables it.
+     */
+    public int checkpointInterval = 0;
+
+    public PipelineConfig copy() {
+        PipelineConfig c = new PipelineConfig();
+        c.videoFps = videoFps;
+        c.trackBuffer = trackBuffer;
+        c.keyframeInterval = keyframeInterval;
+        c.confidenceThreshold = confidenceThreshold;
+        c.nmsThreshold = nmsThreshold;
+        c.sparseAssignment = sparseAssignment;
+        c.globalMotion = globalMotion;
+        c.roiInference = roiInference;
+        c.roiMaxCrops = roiMaxCrops;
+        c.roiFullFrameInterval = roiFullFrameInterval;
+        c.roiMargin = roiMargin;
+        c.roiMaxUpscale = roiMaxUpscale;
+        c.tiledInference = tiledInference;
+        c.tileCols = tileCols;
+        c.tileRows = tileRows;
+        c.tileOverlap = tileOverlap;
+        c.tileIncludeFullFrame = tileIncludeFullFrame;
+        c.keyframeLatencyTargetMs = keyframeLatencyTargetMs;
+        c.nativePostprocessing = nativePostprocessing;
+        c.nonKeyframeSampleSize = nonKeyframeSampleSize;
+        c.frameGateThreshold = frameGateThreshold;
+        c.frameGateMaxSkips = frameGateMaxSkips;
+        c.latencyCompensation = latencyCompensation;
+        c.frameCacheDir = frameCacheDir;
+        c.checkpointInterval = checkpointInterval;
+        return c;
+    }
+}
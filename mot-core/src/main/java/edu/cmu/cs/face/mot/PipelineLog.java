@@ -0,0 +1,12 @@
+package edu.cmu.cs.face.mot;
+
+/** Log sink for the pipeline: android.util.Log on the phone, stdout/stderr on the host. */
+public interface PipelineLog {
+    void i(String msg);
+    void w(String msg);
+    void e(String msg, Throwable tr);
+
+    default void e(String msg) {
+        e(msg, null);
+    }
+}
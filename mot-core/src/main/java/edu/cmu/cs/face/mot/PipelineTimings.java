@@ -0,0 +1,70 @@
+package edu.cmu.cs.face.mot;
+
+import java.util.Locale;
+
+/** Per-stage time accumulated over a sequence, reported amortized over all frames. */
+public final class PipelineTimings {
+    public long totalProcessingNanos;
+    public long totalPreprocessingNanos;
+    public long totalFormatConversionNanos;
+    public long totalInferenceNanos;
+    public long totalPostprocessingNanos;
+    public long totalGrayscaleNanos;
+    public long totalJniTrackingNanos;
+    /** Change detection of the frame gate ({@link FrameGate}), on every frame when it is on. */
+    public long totalGateNanos;
+    /** Image decode; outside totalProcessingNanos, like the original measurement. */
+    public long totalDecodeNanos;
+    /** If set, every stage is also recorded as a span (not merged by {@link #add}). */
+    public TraceRecorder trace;
+
+    /** Record a stage span in {@link #trace}, if there is one. */
+    public void trace(TraceRecorder.Stage stage, long beginNanos, long endNanos) {
+        if (trace != null) {
+            trace.record(stage, beginNanos, endNanos);
+        }
+    }
+
+    public void add(PipelineTimings other) {
+        totalProcessingNanos += other.totalProcessingNanos;
+        totalPreprocessingNanos += other.totalPreprocessingNanos;
+        totalFormatConversionNanos += other.totalFormatConversionNanos;
+        totalInferenceNanos += other.totalInferenceNanos;
+        totalPostprocessingNanos += other.totalPostprocessingNanos;
+        totalGrayscaleNanos += other.totalGrayscaleNanos;
+        totalJniTrackingNanos += other.totalJniTrackingNanos;
+        totalGateNanos += other.totalGateNanos;
+        totalDecodeNanos += other.totalDecodeNanos;
+    }
+
+    public void report(PipelineLog log, int frames) {
+        log.i("--- Average Amortized Timings (ms) ---");
+        if (frames <= 0) {
+            return;
+        }
+        double N = (double) frames;
+        double NANO_TO_MS = 1_000_000.0;
+
+        log.i(String.format(Locale.US, "1. Preprocessing:   %.3f ms", (totalPreprocessingNanos / N / NANO_TO_MS)));
+        log.i(String.format(Locale.US, "2. Format Convert:  %.3f ms", (totalFormatConversionNanos / N / NANO_TO_MS)));
+        log.i(String.format(Locale.US, "3. Inference:       %.3f ms", (totalInferenceNanos / N / NANO_TO_MS)));
+        log.i(String.format(Locale.US, "4. Postprocessing:  %.3f ms", (totalPostprocessingNanos / N / NANO_TO_MS)));
+        log.i(String.format(Locale.US, "5. Grayscale (OF):  %.3f ms", (totalGrayscaleNanos / N / NANO_TO_MS)));
+        log.i(String.format(Locale.US, "6. JNI (Track/OF):  %.3f ms", (totalJniTrackingNanos / N / NANO_TO_MS)));
+        if (totalGateNanos > 0) {
+            log.i(String.format(Locale.US, "7. Frame Gate:      %.3f ms", (totalGateNanos / N / NANO_TO_MS)));
+        }
+
+        double sumOfPartsMs = (totalPreprocessingNanos + totalFormatConversionNanos + totalInferenceNanos +
+                totalPostprocessingNanos + totalGrayscaleNanos + totalJniTrackingNanos + totalGateNanos)
+                / N / NANO_TO_MS;
+        double totalMs = (totalProcessingNanos / N / NANO_TO_MS);
+        double fps = totalProcessingNanos > 0 ? frames * 1e9 / totalProcessingNanos : 0;
+
+        log.i("-------------------------------------");
+        log.i(String.format(Locale.US, "Sum of Parts:     %.3f ms", sumOfPartsMs));
+        log.i(String.format(Locale.US, "Total Per-Frame:  %.3f ms (1000/%.2f)", totalMs, fps));
+        log.i(String.format(Locale.US, "Other (Load/etc): %.3f ms", (totalMs - sumOfPartsMs)));
+        log.i(String.format(Locale.US, "Decode (excl.):   %.3f ms", (totalDecodeNanos / N / NANO_TO_MS)));
+    }
+}
@@ -0,0 +1,196 @@
+package edu.cmu.cs.face.mot;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Layout of an edge keyframe upload that carries parts of the frame instead of the
+ * whole frame: an optional low-resolution thumbnail of the full frame, then crops
+ * around the current tracks ({@link RegionUploadPlanner}).
+ *
+ * The images are the upload's payloads in that order (thumbnail first), and the
+ * layout travels with them as {@link #toMetadata()} text so the server knows what
+ * it is looking at. The server answers with one result per payload, in payload
+ * order, with boxes normalized to that payload's image as for a full frame;
+ * {@link #toFrame} maps them back to normalized frame coordinates.
+ * {@link #FULL_FRAME} is the classic upload, one full-frame image.
+ *
+ * An upload tagged {@link #withFrame} also names the frame it was taken from (the
+ * caller's frame ID and capture time), so late answers can be placed in time.
+ *
+ * Metadata: {@code regions/1 [id=N capture=NANOS] [frame=WxH [thumb=WxH] [roi=x,y,w,h ...]]}
+ * with crops in frame pixels; without {@code frame=} the upload is one full frame.
+ */
+public final class RegionUpload {
+    public static final String VERSION = "regions/1";
+    /** One full-frame payload; boxes are already in frame coordinates. */
+    public static final RegionUpload FULL_FRAME = new RegionUpload(0, 0, 0, 0, new int[0], 0);
+
+    public final int frameWidth;
+    public final int frameHeight;
+    /** Size of the thumbnail (payload 0), or 0 without one. */
+    public final int thumbWidth;
+    public final int thumbHeight;
+    /** Frame the upload was taken from, or -1 if untagged. */
+    public final long frameId;
+    public final long captureNanos;
+    // [x, y, w, h] per crop, frame pixels
+    private final int[] regions;
+    private final int regionCount;
+
+    public RegionUpload(int frameWidth, int frameHeight, int thumbWidth, int thumbHeight,
+                        int[] regions, int regionCount) {
+        this(frameWidth, frameHeight, thumbWidth, thumbHeight, regions, regionCount, -1, 0);
+    }
+
+    private RegionUpload(int frameWidth, int frameHeight, int thumbWidth, int thumbHeight,
+                         int[] regions, int regionCount, long frameId, long captureNanos) {
+        this.frameId = frameId;
+        this.captureNanos = captureNanos;
+        this.frameWidth = frameWidth;
+        this.frameHeight = frameHeight;
+        this.thumbWidth = thumbWidth;
+        this.thumbHeight = thumbHeight;
+        this.regions = Arrays.copyOf(regions, regionCount * 4);
+        this.regionCount = regionCount;
+    }
+
+    /** This layout tagged with the frame it is taken from. */
+    public RegionUpload withFrame(long frameId, long captureNanos) {
+        return new RegionUpload(frameWidth, frameHeight, thumbWidth, thumbHeight,
+                regions, regionCount, frameId, captureNanos);
+    }
+
+    public boolean isTagged() {
+        return frameId >= 0;
+    }
+
+    public boolean isFullFrame() {
+        return frameWidth == 0;
+    }
+
+    public boolean hasThumbnail() {
+        return thumbWidth > 0;
+    }
+
+    public int regionCount() {
+        return regionCount;
+    }
+
+    /** Images in the upload. */
+    public int payloads() {
+        return isFullFrame() ? 1 : regionCount + (hasThumbnail() ? 1 : 0);
+    }
+
+    /** The crop behind {@code payload}, or -1 for the thumbnail or a full frame. */
+    public int regionIndex(int payload) {
+        if (isFullFrame()) {
+            return -1;
+        }
+        int region = hasThumbnail() ? payload - 1 : payload;
+        return region < regionCount ? region : -1;
+    }
+
+    /** [x, y, w, h] of crop {@code region} in frame pixels, into {@code out}. */
+    public void region(int region, int[] out) {
+        System.arraycopy(regions, region * 4, out, 0, 4);
+    }
+
+    /**
+     * Map a box [cx, cy, w, h] at {@code offset}, normalized to payload {@code payload}'s
+     * image, to normalized frame coordinates in place. The thumbnail has the frame's
+     * aspect ratio, so its boxes are already in frame coordinates.
+     */
+    public void toFrame(int payload, float[] box, int offset) {
+        int r = regionIndex(payload);
+        if (r < 0) {
+            return;
+        }
+        float x = regions[r * 4];
+        float y = regions[r * 4 + 1];
+        float w = regions[r * 4 + 2];
+        float h = regions[r * 4 + 3];
+        box[offset] = (x + box[offset] * w) / frameWidth;
+        box[offset + 1] = (y + box[offset + 1] * h) / frameHeight;
+        box[offset + 2] = box[offset + 2] * w / frameWidth;
+        box[offset + 3] = box[offset + 3] * h / frameHeight;
+    }
+
+    /** The layout as text for the server; an untagged full frame has no metadata. */
+    public String toMetadata() {
+        if (isFullFrame() && !isTagged()) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(VERSION);
+        if (isTagged()) {
+            sb.append(String.format(Locale.US, " id=%d capture=%d", frameId, captureNanos));
+        }
+        if (isFullFrame()) {
+            return sb.toString();
+        }
+        sb.append(String.format(Locale.US, " frame=%dx%d", frameWidth, frameHeight));
+        if (hasThumbnail()) {
+            sb.append(String.format(Locale.US, " thumb=%dx%d", thumbWidth, thumbHeight));
+        }
+        for (int i = 0; i < regionCount; i++) {
+            sb.append(String.format(Locale.US, " roi=%d,%d,%d,%d",
+                    regions[i * 4], regions[i * 4 + 1], regions[i * 4 + 2], regions[i * 4 + 3]));
+        }
+        return sb.toString();
+    }
+
+    /** Parse {@link #toMetadata()}; empty text is {@link #FULL_FRAME}, malformed text null. */
+    public static RegionUpload fromMetadata(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            return FULL_FRAME;
+        }
+        String[] fields = text.trim().split("\\s+");
+        if (!fields[0].equals(VERSION)) {
+            return null;
+        }
+        try {
+            int[] frame = null;
+            long id = -1;
+            long capture = 0;
+            int[] thumb = {0, 0};
+            int[] regions = new int[4 * fields.length];
+            int count = 0;
+            for (int i = 1; i < fields.length; i++) {
+                String f = fields[i];
+                if (f.startsWith("id=")) {
+                    id = Long.parseLong(f.substring(3));
+                } else if (f.startsWith("capture=")) {
+                    capture = Long.parseLong(f.substring(8));
+                } else if (f.startsWith("frame=")) {
+                    frame = parseInts(f.substring(6), "x", 2);
+                } else if (f.startsWith("thumb=")) {
+                    thumb = parseInts(f.substring(6), "x", 2);
+                } else if (f.startsWith("roi=")) {
+                    System.arraycopy(parseInts(f.substring(4), ",", 4), 0, regions, count * 4, 4);
+                    count++;
+                }
+            }
+            if (frame == null) {
+                return count == 0 && thumb[0] == 0 ? FULL_FRAME.withFrame(id, capture) : null;
+            }
+            if (frame[0] <= 0 || frame[1] <= 0) {
+                return null;
+            }
+            return new RegionUpload(frame[0], frame[1], thumb[0], thumb[1], regions, count, id, capture);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static int[] parseInts(String text, String separator, int count) {
+        String[] parts = text.split(separator);
+        if (parts.length != count) {
+            throw new IllegalArgumentException("Expected " + count + " values: " + text);
+        }
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = Integer.parseInt(parts[i]);
+        }
+        return values;
+    }
+}
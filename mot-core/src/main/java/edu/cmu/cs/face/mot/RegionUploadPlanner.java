@@ -0,0 +1,64 @@
+package edu.cmu.cs.face.mot;
+
+/**
+ * Decides what an edge keyframe uploads ({@link RegionUpload}): crops around the
+ * current tracks, planned like ROI keyframes ({@link RoiPlanner}) for the server
+ * model's input size, instead of the full frame.
+ *
+ * Every {@code thumbnailInterval}-th upload also covers the whole frame so new
+ * objects are found: as a low-resolution thumbnail next to the crops, or as the
+ * full frame when there is nothing to crop. Uploads without tracks in between send
+ * the thumbnail alone. When the crops would not be sharper than the full frame
+ * (tracks spread over most of it) the full frame is sent.
+ * Not thread-safe; one per stream.
+ */
+public final class RegionUploadPlanner {
+    private static final int FIELDS_PER_TRACK = 7;
+
+    private final RoiPlanner roiPlanner;
+    private final int thumbnailInterval;
+    private final int thumbnailWidth;
+    private final int[] crops;
+    private int uploads;
+
+    /**
+     * @param serverInputSize   the server model's (square) input size; crops are shaped for it
+     * @param maxRegions        at most this many crops per upload
+     * @param thumbnailInterval every N-th upload covers the whole frame
+     * @param thumbnailWidth    thumbnail width in pixels (height keeps the frame's aspect ratio)
+     */
+    public RegionUploadPlanner(int serverInputSize, int maxRegions, int thumbnailInterval, int thumbnailWidth) {
+        PipelineConfig config = new PipelineConfig();
+        config.roiMaxCrops = Math.max(1, maxRegions);
+        // The full-frame cadence is kept here, not by the ROI planner
+        config.roiFullFrameInterval = Integer.MAX_VALUE;
+        this.roiPlanner = new RoiPlanner(serverInputSize, serverInputSize, config);
+        roiPlanner.setKeyframes(1);
+        this.thumbnailInterval = Math.max(1, thumbnailInterval);
+        this.thumbnailWidth = thumbnailWidth;
+        this.crops = new int[4 * config.roiMaxCrops];
+    }
+
+    /**
+     * The layout of the next upload.
+     *
+     * @param tracks the tracker output of the previous frame ([cx, cy, w, h, ...] normalized, 7 per track)
+     */
+    public RegionUpload plan(float[] tracks, int frameWidth, int frameHeight) {
+        boolean wholeFrameDue = uploads % thumbnailInterval == 0;
+        uploads++;
+        int thumbW = Math.min(thumbnailWidth, frameWidth);
+        int thumbH = Math.max(1, Math.round(thumbW * frameHeight / (float) frameWidth));
+
+        int n = roiPlanner.plan(tracks, frameWidth, frameHeight, crops);
+        if (n > 0) {
+            return new RegionUpload(frameWidth, frameHeight,
+                    wholeFrameDue ? thumbW : 0, wholeFrameDue ? thumbH : 0, crops, n);
+        }
+        boolean tracked = tracks != null && tracks.length >= FIELDS_PER_TRACK;
+        if (tracked || wholeFrameDue) {
+            return RegionUpload.FULL_FRAME;
+        }
+        return new RegionUpload(frameWidth, frameHeight, thumbW, thumbH, crops, 0);
+    }
+}
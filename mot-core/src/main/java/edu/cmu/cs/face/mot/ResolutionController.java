@@ -0,0 +1,203 @@
+package edu.cmu.cs.face.mot;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Picks the model input size of each full-frame keyframe to hold
+ * {@link PipelineConfig#keyframeLatencyTargetMs}.
+ *
+ * The levels are interpreters of the same model at different input sizes, each
+ * with its own {@link YoloDetector}, so letterbox, decode and un-letterbox are those
+ * of the size that ran. Every level keeps a moving average of its keyframe latency
+ * (letterbox through decode). When the current level's average is over the target
+ * for {@link #DOWN_AFTER} keyframes in a row, the next smaller size takes over. The
+ * next larger size comes back once its expected latency fits the target with
+ * {@link #UP_HEADROOM} for {@link #UP_AFTER} keyframes; a level that has not run
+ * for {@link #STALE_KEYFRAMES} keyframes (or never) is expected to cost the current
+ * one's average scaled by input area, so a device that cooled down gets it back,
+ * and its first keyframe there starts a new average instead of blending into the old.
+ *
+ * Scene density from the tracker moves the bar up: while the smallest tracked
+ * person is under {@link #SMALL_OBJECT_PIXELS} tall at the current size, a larger
+ * size is taken as soon as it is expected to fit the target at all.
+ *
+ * The averages carry over between runs (they describe the device, not the
+ * sequence); {@link #beginRun()} starts new {@link Stats}. For the same reason they
+ * are not checkpointed ({@link TrackerCheckpoint}). Not thread-safe.
+ */
+public final class ResolutionController {
+    static final int DOWN_AFTER = 2;
+    static final int UP_AFTER = 3;
+    static final float UP_HEADROOM = 0.8f;
+    static final float SMALL_OBJECT_PIXELS = 24f;
+    static final int STALE_KEYFRAMES = 30;
+    private static final double AVERAGE_WEIGHT = 0.3;
+    private static final int FIELDS_PER_TRACK = 7;
+
+    // Largest input first
+    private final List<YoloDetector> levels;
+    private final long targetNanos;
+    private final double[] averageNanos;
+    private final long[] lastRun;
+    private long keyframes;
+    private int current;
+    private int selected = -1;
+    private int overTarget;
+    private int underTarget;
+    private Stats stats = new Stats(0);
+
+    /** Keyframes and latency per level, largest input first. */
+    public static final class Stats {
+        public final int[] widths;
+        public final int[] heights;
+        public final int[] keyframes;
+        public final long[] nanos;
+        public int stepsDown;
+        public int stepsUp;
+        /** Keyframes below the largest size that had small tracked objects. */
+        public int smallObjectKeyframes;
+        public float targetMs;
+
+        Stats(int levels) {
+            widths = new int[levels];
+            heights = new int[levels];
+            keyframes = new int[levels];
+            nanos = new long[levels];
+        }
+
+        public void report(PipelineLog log) {
+            int total = 0;
+            for (int k : keyframes) {
+                total += k;
+            }
+            if (total == 0) {
+                return;
+            }
+            log.i(String.format(Locale.US, "--- Input Resolution (target %.1f ms per keyframe) ---", targetMs));
+            for (int i = 0; i < widths.length; i++) {
+                log.i(String.format(Locale.US, "%dx%d: %d keyframes (%.1f%%), %.2f ms each",
+                        widths[i], heights[i], keyframes[i], 100.0 * keyframes[i] / total,
+                        keyframes[i] > 0 ? nanos[i] / 1e6 / keyframes[i] : 0));
+            }
+            log.i(String.format(Locale.US, "Switches: %d down, %d up (%d keyframes with small objects)",
+                    stepsDown, stepsUp, smallObjectKeyframes));
+        }
+    }
+
+    /**
+     * @param detectors the same model at different input sizes (any order), one
+     *                  interpreter each; the controller starts at the largest
+     */
+    public ResolutionController(List<YoloDetector> detectors, PipelineConfig config) {
+        levels = new ArrayList<>(detectors);
+        levels.sort(Comparator.comparingLong(ResolutionController::area).reversed());
+        targetNanos = (long) (config.keyframeLatencyTargetMs * 1e6);
+        averageNanos = new double[levels.size()];
+        lastRun = new long[levels.size()];
+        beginRun();
+    }
+
+    /** Start new stats; the level and latency averages stay. */
+    public void beginRun() {
+        stats = new Stats(levels.size());
+        stats.targetMs = targetNanos / 1e6f;
+        for (int i = 0; i < levels.size(); i++) {
+            stats.widths[i] = levels.get(i).modelWidth();
+            stats.heights[i] = levels.get(i).modelHeight();
+        }
+    }
+
+    public Stats stats() {
+        return stats;
+    }
+
+    /**
+     * The detector for the next keyframe.
+     *
+     * @param lastTracks tracker output of the previous frame ([cx, cy, w, h, classId,
+     *                   conf, trackId] normalized), or null
+     */
+    public YoloDetector select(float[] lastTracks, int frameWidth, int frameHeight) {
+        if (current > 0) {
+            boolean small = hasSmallObjects(lastTracks, frameWidth, frameHeight);
+            long bar = small ? targetNanos : (long) (targetNanos * UP_HEADROOM);
+            if (averageNanos[current] > 0 && expectedNanos(current - 1) <= bar) {
+                underTarget++;
+            } else {
+                underTarget = 0;
+            }
+            if (small) {
+                stats.smallObjectKeyframes++;
+            }
+            if (underTarget >= (small ? 1 : UP_AFTER)) {
+                current--;
+                underTarget = 0;
+                overTarget = 0;
+                stats.stepsUp++;
+            }
+        }
+        selected = current;
+        return levels.get(current);
+    }
+
+    /** Latency of the keyframe run on the last {@link #select}ed detector. */
+    public void record(long nanos) {
+        if (selected < 0) {
+            return;
+        }
+        int level = selected;
+        selected = -1;
+        // A stale average describes the device as it was; start over from this keyframe
+        averageNanos[level] = averageNanos[level] > 0 && !isStale(level)
+                ? averageNanos[level] + AVERAGE_WEIGHT * (nanos - averageNanos[level])
+                : nanos;
+        lastRun[level] = ++keyframes;
+        stats.keyframes[level]++;
+        stats.nanos[level] += nanos;
+
+        if (level != current) {
+            return;
+        }
+        overTarget = averageNanos[level] > targetNanos ? overTarget + 1 : 0;
+        if (overTarget >= DOWN_AFTER && current < levels.size() - 1) {
+            current++;
+            overTarget = 0;
+            underTarget = 0;
+            stats.stepsDown++;
+        }
+    }
+
+    private double expectedNanos(int level) {
+        if (averageNanos[level] > 0 && !isStale(level)) {
+            return averageNanos[level];
+        }
+        return averageNanos[current] * area(levels.get(level)) / area(levels.get(current));
+    }
+
+    private boolean isStale(int level) {
+        return keyframes - lastRun[level] >= STALE_KEYFRAMES;
+    }
+
+    /** Whether the smallest person track is under SMALL_OBJECT_PIXELS tall in the current model input. */
+    private boolean hasSmallObjects(float[] tracks, int frameWidth, int frameHeight) {
+        if (tracks == null || frameWidth <= 0 || frameHeight <= 0) {
+            return false;
+        }
+        YoloDetector d = levels.get(current);
+        float scale = Math.min(d.modelWidth() / (float) frameWidth, d.modelHeight() / (float) frameHeight);
+        for (int i = 0; i + FIELDS_PER_TRACK <= tracks.length; i += FIELDS_PER_TRACK) {
+            if ((int) tracks[i + 4] == 0 && tracks[i + 6] > 0
+                    && tracks[i + 3] * frameHeight * scale < SMALL_OBJECT_PIXELS) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long area(YoloDetector d) {
+        return (long) d.modelWidth() * d.modelHeight();
+    }
+}
@@ -0,0 +1,40 @@
+package edu.cmu.cs.face.mot;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A decoded frame as packed ARGB_8888 ints (same layout as Bitmap.getPixels and
+ * BufferedImage.getRGB). The pixel array is reused across frames of the same size.
+ *
+ * A frame read from a {@link FrameCache} instead points into the cache mapping:
+ * {@link #rgb} holds packed R,G,B bytes and {@link #gray} the tracker's luma plane,
+ * and {@link #pixels} is not used.
+ */
+public final class RgbFrame {
+    public int width;
+    public int height;
+    public int[] pixels = new int[0];
+    /** Packed RGB (3 bytes per pixel) when mapped from a frame cache, else null. */
+    public ByteBuffer rgb;
+    /** Precomputed grayscale (1 byte per pixel, direct) when mapped, else null. */
+    public ByteBuffer gray;
+
+    /** Resize for a width x height frame; keeps the array when it is large enough. */
+    public void setSize(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.rgb = null;
+        this.gray = null;
+        if (pixels.length < width * height) {
+            pixels = new int[width * height];
+        }
+    }
+
+    /** Point at cached planes instead of {@link #pixels}. */
+    public void setMapped(int width, int height, ByteBuffer rgb, ByteBuffer gray) {
+        this.width = width;
+        this.height = height;
+        this.rgb = rgb;
+        this.gray = gray;
+    }
+}
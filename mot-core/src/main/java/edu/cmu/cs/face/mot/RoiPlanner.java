@@ -0,0 +1,148 @@
+package edu.cmu.cs.face.mot;
+
+/**
+ * Chooses keyframe crops from the current tracks, so the detector spends its input
+ * resolution where the tracked objects are instead of on the whole frame.
+ *
+ * Track boxes are padded by a margin, merged greedily (smallest added area first)
+ * down to {@code maxCrops} regions, then grown to the model's aspect ratio and
+ * clamped to the frame. Every {@code fullFrameInterval}-th keyframe, and whenever
+ * there are no tracks or the crops would not be meaningfully sharper than the
+ * full frame, the plan is the full frame so new objects are still found.
+ * Not thread-safe; one per sequence run.
+ */
+public final class RoiPlanner {
+    // Crops less than this much sharper than the full-frame letterbox are not worth it
+    private static final float MIN_GAIN = 1.25f;
+    private static final int FIELDS_PER_TRACK = 7;
+
+    private final int modelW;
+    private final int modelH;
+    private final int maxCrops;
+    private final int fullFrameInterval;
+    private final float margin;
+    private final float maxUpscale;
+
+    private int keyframes;
+    // Working boxes (left, top, right, bottom) in frame pixels
+    private float[] boxes = new float[64 * 4];
+    private final float[] merged = new float[4];
+
+    public RoiPlanner(int modelW, int modelH, PipelineConfig config) {
+        this.modelW = modelW;
+        this.modelH = modelH;
+        this.maxCrops = Math.max(1, config.roiMaxCrops);
+        this.fullFrameInterval = Math.max(1, config.roiFullFrameInterval);
+        this.margin = config.roiMargin;
+        this.maxUpscale = Math.max(1f, config.roiMaxUpscale);
+    }
+
+    /** Keyframes planned so far; decides which ones run on the full frame. */
+    public int keyframes() {
+        return keyframes;
+    }
+
+    /** Continue the full-frame cadence of a run resumed after {@code keyframes} keyframes. */
+    public void setKeyframes(int keyframes) {
+        this.keyframes = keyframes;
+    }
+
+    /**
+     * Plan the crops for this keyframe.
+     *
+     * @param tracks the tracker output of the previous frame ([cx, cy, w, h, ...] normalized, 7 per track)
+     * @param crops  receives [x, y, w, h] in frame pixels per crop; needs 4 * maxCrops entries
+     * @return the number of crops, or 0 for full-frame inference
+     */
+    public int plan(float[] tracks, int frameW, int frameH, int[] crops) {
+        boolean fullFrame = keyframes % fullFrameInterval == 0;
+        keyframes++;
+        int n = tracks == null ? 0 : tracks.length / FIELDS_PER_TRACK;
+        if (fullFrame || n == 0) {
+            return 0;
+        }
+
+        if (boxes.length < n * 4) {
+            boxes = new float[n * 4];
+        }
+        for (int i = 0; i < n; i++) {
+            int t = i * FIELDS_PER_TRACK;
+            float w = tracks[t + 2] * frameW;
+            float h = tracks[t + 3] * frameH;
+            float cx = tracks[t] * frameW;
+            float cy = tracks[t + 1] * frameH;
+            float halfW = w * (0.5f + margin);
+            float halfH = h * (0.5f + margin);
+            boxes[i * 4] = cx - halfW;
+            boxes[i * 4 + 1] = cy - halfH;
+            boxes[i * 4 + 2] = cx + halfW;
+            boxes[i * 4 + 3] = cy + halfH;
+        }
+
+        // Merge the pair that adds the least area until few enough regions remain
+        while (n > maxCrops) {
+            int bestA = 0;
+            int bestB = 1;
+            float bestCost = Float.MAX_VALUE;
+            for (int a = 0; a < n; a++) {
+                for (int b = a + 1; b < n; b++) {
+                    float cost = area(union(a, b)) - area(a) - area(b);
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        bestA = a;
+                        bestB = b;
+                    }
+                }
+            }
+            boxes[bestA * 4] = Math.min(boxes[bestA * 4], boxes[bestB * 4]);
+            boxes[bestA * 4 + 1] = Math.min(boxes[bestA * 4 + 1], boxes[bestB * 4 + 1]);
+            boxes[bestA * 4 + 2] = Math.max(boxes[bestA * 4 + 2], boxes[bestB * 4 + 2]);
+            boxes[bestA * 4 + 3] = Math.max(boxes[bestA * 4 + 3], boxes[bestB * 4 + 3]);
+            n--;
+            System.arraycopy(boxes, n * 4, boxes, bestB * 4, 4);
+        }
+
+        float fullScale = Math.min((float) modelW / frameW, (float) modelH / frameH);
+        float aspect = (float) modelW / modelH;
+        for (int i = 0; i < n; i++) {
+            float cx = (boxes[i * 4] + boxes[i * 4 + 2]) / 2f;
+            float cy = (boxes[i * 4 + 1] + boxes[i * 4 + 3]) / 2f;
+            // Grow to the model aspect ratio and to at most maxUpscale magnification
+            float w = Math.max(boxes[i * 4 + 2] - boxes[i * 4], modelW / maxUpscale);
+            float h = Math.max(boxes[i * 4 + 3] - boxes[i * 4 + 1], modelH / maxUpscale);
+            if (w / h < aspect) {
+                w = h * aspect;
+            } else {
+                h = w / aspect;
+            }
+            int cw = Math.min(frameW, Math.round(w));
+            int ch = Math.min(frameH, Math.round(h));
+            if (Math.min((float) modelW / cw, (float) modelH / ch) < fullScale * MIN_GAIN) {
+                return 0;
+            }
+            int x = Math.max(0, Math.min(frameW - cw, Math.round(cx - cw / 2f)));
+            int y = Math.max(0, Math.min(frameH - ch, Math.round(cy - ch / 2f)));
+            crops[i * 4] = x;
+            crops[i * 4 + 1] = y;
+            crops[i * 4 + 2] = cw;
+            crops[i * 4 + 3] = ch;
+        }
+        return n;
+    }
+
+    private float area(int i) {
+        return (boxes[i * 4 + 2] - boxes[i * 4]) * (boxes[i * 4 + 3] - boxes[i * 4 + 1]);
+    }
+
+    private float area(float[] box) {
+        return (box[2] - box[0]) * (box[3] - box[1]);
+    }
+
+    private float[] union(int a, int b) {
+        merged[0] = Math.min(boxes[a * 4], boxes[b * 4]);
+        merged[1] = Math.min(boxes[a * 4 + 1], boxes[b * 4 + 1]);
+        merged[2] = Math.max(boxes[a * 4 + 2], boxes[b * 4 + 2]);
+        merged[3] = Math.max(boxes[a * 4 + 3], boxes[b * 4 + 3]);
+        return merged;
+    }
+}
@@ -0,0 +1,605 @@
+package edu.cmu.cs.face.mot;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs one MOT sequence (a folder with an img1/ subdirectory) through detection on
+ * keyframes and HybridTracker on every frame, writing MOT17 result rows.
+ *
+ * With {@link PipelineConfig#frameCacheDir} set, decoded frames are kept in a
+ * {@link FrameCache}: the first run fills it, later runs read frames from it
+ * instead of decoding. Without one, {@link PipelineConfig#nonKeyframeSampleSize}
+ * lets the decoder produce non-keyframes at reduced size. With
+ * {@link PipelineConfig#roiInference}, keyframes between periodic full-frame ones
+ * are detected on crops around the previous frame's tracks; with
+ * {@link PipelineConfig#tiledInference}, full-frame keyframes are detected on
+ * overlapping tiles spread over the runner's interpreters. With
+ * {@link PipelineConfig#nativePostprocessing}, the other (full-frame) keyframes
+ * hand the raw model output to the tracker, which decodes it natively. Given
+ * smaller input sizes ({@link #setResolutionLevels}), full-frame keyframes run at
+ * the size a {@link ResolutionController} picks for the keyframe latency target.
+ * With {@link PipelineConfig#frameGateThreshold}, frames a {@link FrameGate} finds
+ * unchanged reuse the previous tracks and skip grayscale, KLT and detection.
+ *
+ * With a {@link TraceRecorder} set, every stage of every frame is also recorded
+ * as a span for a timeline. With {@link PipelineConfig#checkpointInterval} set, the
+ * tracker state is checkpointed ({@link TrackerCheckpoint}) and an interrupted
+ * sequence resumes from its last checkpoint.
+ *
+ * Each run uses a fresh tracker handle. A runner owns its detector buffers, so it
+ * is used by one thread at a time; run sequences in parallel with one runner (and
+ * its own {@link ModelRunner}s) per thread.
+ */
+public final class SequenceRunner {
+    public static final String IMAGE_DIR = "img1";
+    private static final int FIELDS_PER_TRACK = 7;
+    private static final String RULE = "=".repeat(60);
+
+    private final TrackerNatives natives;
+    private final YoloDetector detector;
+    // One per interpreter; the first is `detector`. Tiles are spread over all of them.
+    private final List<YoloDetector> detectors = new ArrayList<>();
+    // The first model at smaller input sizes, for the resolution controller
+    private final List<YoloDetector> scaledDetectors = new ArrayList<>();
+    private ResolutionController resolution;
+    private final FrameGate gate;
+    private final ImageDecoder decoder;
+    private final PipelineConfig config;
+    private final PipelineLog log;
+
+    private final RgbFrame frame = new RgbFrame();
+    private final int[] roiCrops;
+    private RoiPlanner roiPlanner;
+    private float[] lastTracks;
+    private byte[] grayscale = new byte[0];
+    // [decode_nanos, candidates, detections] of the last fused keyframe update
+    private final long[] decodeStats = new long[3];
+    // Full frame size (from the last full-size decode); track boxes are in these coordinates
+    private int frameWidth;
+    private int frameHeight;
+    private TraceRecorder trace;
+
+    /** Outcome of one sequence. */
+    public static final class Result {
+        public String sequenceName;
+        public File outputFile;
+        public int frames;
+        public int keyframes;
+        public int detections;
+        /** Keyframes that ran on crops, and the crops (inferences) they used. */
+        public int roiKeyframes;
+        public int roiCrops;
+        /** Keyframes decoded natively (nativeUpdateWithModelOutput), and their NMS input. */
+        public int nativeDecodeKeyframes;
+        public long nativeDecodeCandidates;
+        /** Per-tile timings when tiled inference ran, else null. */
+        public TiledDetector.Stats tiles;
+        /** Keyframes per input size when the resolution controller ran, else null. */
+        public ResolutionController.Stats resolution;
+        public final PipelineTimings timings = new PipelineTimings();
+        public long[] poolStats;
+        /** {@link System#nanoTime()} when the first frame was done (for time-to-first-frame). */
+        public long firstFrameNanos;
+        /** Frame number this run resumed at (0: from the start); frames before it came from a checkpoint. */
+        public int resumedAtFrame;
+        /** Frames the frame gate found unchanged, and those of them a keyframe was due on (it waits). */
+        public int gatedFrames;
+        public int gatedKeyframes;
+        /** Checkpoints written, and the time spent on them (not part of the pipeline time). */
+        public int checkpoints;
+        public long checkpointNanos;
+
+        public float fps() {
+            return timings.totalProcessingNanos > 0 ? frames * 1e9f / timings.totalProcessingNanos : 0f;
+        }
+
+        /** The end-of-run block the app has always logged. */
+        public void report(PipelineLog log) {
+            float totalSeconds = timings.totalProcessingNanos / 1000000000f;
+            log.i("");
+            log.i(RULE);
+            log.i("MEASUREMENT COMPLETE");
+            log.i(RULE);
+            log.i("Sequence: " + sequenceName);
+            if (resumedAtFrame > 0) {
+                log.i("Resumed at frame " + resumedAtFrame + " (counts below are for this run)");
+            }
+            log.i("Frames: " + frames + " (" + keyframes + " keyframes)");
+            log.i("Detections: " + detections);
+            if (roiKeyframes > 0) {
+                log.i("ROI keyframes: " + roiKeyframes + " of " + keyframes + " (" + roiCrops + " crops)");
+            }
+            if (nativeDecodeKeyframes > 0) {
+                log.i("Native post-processing: " + nativeDecodeKeyframes + " of " + keyframes + " keyframes ("
+                        + String.format(Locale.US, "%.1f", nativeDecodeCandidates / (double) nativeDecodeKeyframes)
+                        + " candidates each)");
+            }
+            if (gatedFrames > 0) {
+                log.i("Gated (unchanged) frames: " + gatedFrames + " of " + frames + " ("
+                        + gatedKeyframes + " with a keyframe due)");
+            }
+            log.i("Time: " + String.format(Locale.US, "%.1f", totalSeconds) + "s");
+            log.i("FPS (Total): " + String.format(Locale.US, "%.2f", fps()));
+            log.i("Output: " + outputFile.getAbsolutePath());
+            if (checkpoints > 0) {
+                log.i(String.format(Locale.US, "Checkpoints: %d (%.2f ms each)",
+                        checkpoints, checkpointNanos / 1e6 / checkpoints));
+            }
+
+            timings.report(log, frames);
+            if (tiles != null) {
+                tiles.report(log);
+            }
+            if (resolution != null) {
+                resolution.report(log);
+            }
+
+            if (poolStats != null && poolStats.length == 11) {
+                log.i("--- STrack Pools (acquired / reused / capacity) ---");
+                log.i(String.format(Locale.US, "Tracks:     %d / %d / %d (live %d)",
+                        poolStats[1], poolStats[2], poolStats[4], poolStats[3]));
+                log.i(String.format(Locale.US, "Detections: %d / %d / %d",
+                        poolStats[5], poolStats[6], poolStats[7]));
+                log.i(String.format(Locale.US, "KLT:        %d / %d / %d",
+                        poolStats[8], poolStats[9], poolStats[10]));
+            }
+            log.i(RULE);
+        }
+    }
+
+    public SequenceRunner(TrackerNatives natives, ModelRunner model, ImageDecoder decoder,
+                          PipelineConfig config, PipelineLog log) {
+        this(natives, Collections.singletonList(model), decoder, config, log);
+    }
+
+    /**
+     * @param models interpreters of the same model; the first runs regular keyframes,
+     *               all of them share the tiles when {@link PipelineConfig#tiledInference} is set
+     */
+    public SequenceRunner(TrackerNatives natives, List<? extends ModelRunner> models, ImageDecoder decoder,
+                          PipelineConfig config, PipelineLog log) {
+        this.natives = natives;
+        for (ModelRunner model : models) {
+            detectors.add(new YoloDetector(model, config, log));
+        }
+        this.detector = detectors.get(0);
+        this.decoder = decoder;
+        this.config = config;
+        this.log = log;
+        this.roiCrops = new int[4 * Math.max(1, config.roiMaxCrops)];
+        this.gate = config.frameGateThreshold > 0 ? new FrameGate(config) : null;
+    }
+
+    /**
+     * The .jpg/.png files of {@code sequenceDir}/img1, sorted by name, or null (with
+     * the reason logged) if there are none.
+     */
+    public static List<File> listImages(File sequenceDir, PipelineLog log) {
+        File imgDir = new File(sequenceDir, IMAGE_DIR);
+        if (!imgDir.exists()) {
+            log.e("ERROR: Directory not found: " + imgDir.getAbsolutePath());
+            return null;
+        }
+
+        File[] allFiles = imgDir.listFiles();
+        // Null here is almost always a permissions problem
+        if (allFiles == null) {
+            log.e("FATAL ERROR: allFiles array is NULL. Directory is inaccessible.");
+            log.e(">>> LIKELY FIX: Grant read permission for " + imgDir.getAbsolutePath());
+            return null;
+        }
+
+        List<File> images = new ArrayList<>();
+        for (File f : allFiles) {
+            String name = f.getName().toLowerCase(Locale.ROOT);
+            if (name.endsWith(".jpg") || name.endsWith(".png")) {
+                images.add(f);
+            }
+        }
+        if (images.isEmpty()) {
+            log.e("ERROR: No images found *after filtering*.");
+            log.e("Found " + allFiles.length + " total items, but 0 matched the .jpg/.png filter.");
+            return null;
+        }
+
+        Collections.sort(images, Comparator.comparing(File::getName));
+        return images;
+    }
+
+    /** A configured tracker handle for {@link #run(File, File, List, long)}. */
+    public static long initTracker(TrackerNatives natives, PipelineConfig config) {
+        long handle = natives.nativeInitHybridTracker(config.videoFps, config.trackBuffer, config.keyframeInterval);
+        if (handle == 0) {
+            throw new IllegalStateException("Failed to initialize tracker");
+        }
+        natives.nativeSetSparseAssignment(handle, config.sparseAssignment);
+        natives.nativeSetGlobalMotion(handle, config.globalMotion);
+        return handle;
+    }
+
+    /**
+     * Run every interpreter once on the (padding-filled) input, so delegate setup
+     * and first-inference allocation happen before the first frame rather than in it.
+     */
+    public void warmUp() {
+        for (YoloDetector d : detectors) {
+            d.warmUp();
+        }
+        for (YoloDetector d : scaledDetectors) {
+            d.warmUp();
+        }
+    }
+
+    /**
+     * Run full-frame keyframes at the input size a {@link ResolutionController} picks
+     * for {@link PipelineConfig#keyframeLatencyTargetMs}: the first model's, or that of
+     * one of {@code smaller}, the same model at smaller input sizes (one interpreter
+     * each). ROI and tiled keyframes keep the first model. Null or empty turns it off.
+     */
+    public void setResolutionLevels(List<? extends ModelRunner> smaller) {
+        scaledDetectors.clear();
+        resolution = null;
+        if (smaller == null || smaller.isEmpty()) {
+            return;
+        }
+        for (ModelRunner model : smaller) {
+            scaledDetectors.add(new YoloDetector(model, config, log));
+        }
+        List<YoloDetector> levels = new ArrayList<>(scaledDetectors);
+        levels.add(detector);
+        resolution = new ResolutionController(levels, config);
+    }
+
+    /** Record per-frame stage spans of the following runs into {@code trace}; null stops. */
+    public void setTrace(TraceRecorder trace) {
+        this.trace = trace;
+    }
+
+    /** Run {@code sequenceDir} and write its results to {@code outputFile}; null if it has no images. */
+    public Result run(File sequenceDir, File outputFile) throws IOException {
+        List<File> images = listImages(sequenceDir, log);
+        if (images == null) {
+            return null;
+        }
+        return run(sequenceDir, outputFile, images, initTracker(natives, config));
+    }
+
+    /**
+     * {@link #run(File, File)} with the images ({@link #listImages}) and tracker handle
+     * ({@link #initTracker}) prepared up front, e.g. concurrently with model loading.
+     * The handle is released when the run ends.
+     */
+    public Result run(File sequenceDir, File outputFile, List<File> images, long handle) throws IOException {
+        Result result = new Result();
+        result.sequenceName = sequenceDir.getName();
+        result.outputFile = outputFile;
+        result.timings.trace = trace;
+
+        FrameCache cache = config.frameCacheDir != null
+                ? FrameCache.open(config.frameCacheDir, sequenceDir, images, log) : null;
+        boolean fromCache = cache != null && cache.isMapped();
+        frameWidth = 0;
+        frameHeight = 0;
+        lastTracks = null;
+        roiPlanner = config.roiInference
+                ? new RoiPlanner(detector.modelWidth(), detector.modelHeight(), config) : null;
+
+        TiledDetector tiled = config.tiledInference ? new TiledDetector(detectors, config) : null;
+        if (resolution != null) {
+            resolution.beginRun();
+        }
+        if (gate != null) {
+            gate.reset();
+        }
+
+        int startIdx = config.checkpointInterval > 0 ? resume(handle, outputFile, images.size(), result) : 0;
+        if (startIdx > 0 && cache != null && !fromCache) {
+            // A build that starts mid-sequence would record the skipped frames as undecodable
+            log.i("Frame cache: not built by a resumed run");
+            cache.close();
+            cache = null;
+        }
+
+        try (Writer writer = new BufferedWriter(new FileWriter(outputFile, startIdx > 0))) {
+            for (int frameIdx = startIdx; frameIdx < images.size(); frameIdx++) {
+                File imageFile = images.get(frameIdx);
+                int frameNumber = frameIdx + 1;
+
+                // Also before the first frame, so results without a checkpoint are always complete
+                if (config.checkpointInterval > 0 && frameIdx % config.checkpointInterval == 0
+                        && (frameIdx == 0 || frameIdx != startIdx)) {
+                    checkpoint(handle, writer, outputFile, images.size(), frameIdx, result);
+                }
+
+                // Asked before decoding: non-keyframes only feed KLT, so they can be decoded small
+                boolean isKeyframe = natives.nativeIsKeyframe(handle);
+                int sampleSize = !isKeyframe && cache == null && frameWidth > 0 ? config.nonKeyframeSampleSize : 1;
+                if (trace != null) {
+                    trace.beginFrame(frameIdx, isKeyframe);
+                }
+
+                // Decode (or the cache lookup) and the cache write-through are not part of the pipeline time
+                long decodeStart = System.nanoTime();
+                boolean decoded;
+                if (fromCache) {
+                    decoded = cache.read(frameIdx, frame);
+                } else if (sampleSize > 1) {
+                    decoded = decoder.decode(imageFile, frame, sampleSize);
+                } else {
+                    decoded = decoder.decode(imageFile, frame);
+                    if (decoded && cache != null) {
+                        cache.write(frameIdx, frame);
+                    }
+                }
+                long frameStartTime = System.nanoTime();
+                result.timings.totalDecodeNanos += frameStartTime - decodeStart;
+                result.timings.trace(TraceRecorder.Stage.DECODE, decodeStart, frameStartTime);
+                if (!decoded) {
+                    log.w("WARNING: Failed to load " + imageFile.getName());
+                    continue;
+                }
+                if (sampleSize == 1) {
+                    frameWidth = frame.width;
+                    frameHeight = frame.height;
+                }
+
+                float[] tracks = gate != null && skipFrame(handle, isKeyframe, result)
+                        ? lastTracks : processFrame(handle, isKeyframe, tiled, result);
+                result.detections += writeMotRows(writer, frameNumber, tracks, frameWidth, frameHeight);
+                lastTracks = tracks;
+
+                result.frames++;
+                long frameEndTime = System.nanoTime();
+                result.timings.totalProcessingNanos += frameEndTime - frameStartTime;
+                result.timings.trace(TraceRecorder.Stage.FRAME, frameStartTime, frameEndTime);
+                if (result.firstFrameNanos == 0) {
+                    result.firstFrameNanos = frameEndTime;
+                }
+            }
+            result.poolStats = natives.nativeGetTrackerStats(handle);
+            if (tiled != null) {
+                result.tiles = tiled.stats();
+            }
+            if (resolution != null) {
+                result.resolution = resolution.stats();
+            }
+            if (cache != null) {
+                cache.finish();
+            }
+            writer.flush();
+            if (config.checkpointInterval > 0) {
+                TrackerCheckpoint.delete(outputFile);
+            }
+        } finally {
+            natives.nativeReleaseHybridTracker(handle);
+            if (tiled != null) {
+                tiled.close();
+            }
+            if (cache != null) {
+                cache.close();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Restore the tracker and runner state from {@code outputFile}'s checkpoint, if it
+     * has a usable one, and cut the results back to what it covers.
+     *
+     * @return the index of the frame to continue with (0 to start over)
+     */
+    private int resume(long handle, File outputFile, int imageCount, Result result) throws IOException {
+        TrackerCheckpoint c = TrackerCheckpoint.read(outputFile, result.sequenceName, imageCount, log);
+        if (c == null || c.nextFrame <= 0) {
+            return 0;
+        }
+        if (!natives.nativeLoadTrackerState(handle, c.trackerState)) {
+            // The failed load left the tracker reset
+            log.w("Checkpoint of " + result.sequenceName + " does not fit this tracker, starting over");
+            return 0;
+        }
+        try (RandomAccessFile results = new RandomAccessFile(outputFile, "rw")) {
+            results.setLength(c.resultsLength);
+        }
+        frameWidth = c.frameWidth;
+        frameHeight = c.frameHeight;
+        lastTracks = c.lastTracks;
+        if (roiPlanner != null) {
+            roiPlanner.setKeyframes(c.plannedKeyframes);
+        }
+        if (gate != null) {
+            gate.loadState(c.gateState);
+        }
+        result.resumedAtFrame = c.nextFrame + 1;
+        log.i("Resuming " + result.sequenceName + " at frame " + result.resumedAtFrame + " of " + imageCount);
+        return c.nextFrame;
+    }
+
+    /** Checkpoint the run before frame {@code nextFrame}. A failed write only costs the resume point. */
+    private void checkpoint(long handle, Writer writer, File outputFile, int imageCount, int nextFrame,
+                            Result result) {
+        long start = System.nanoTime();
+        try {
+            writer.flush();
+            TrackerCheckpoint c = new TrackerCheckpoint();
+            c.trackerState = natives.nativeSaveTrackerState(handle);
+            if (c.trackerState == null) {
+                return;
+            }
+            c.nextFrame = nextFrame;
+            c.resultsLength = outputFile.length();
+            c.frameWidth = frameWidth;
+            c.frameHeight = frameHeight;
+            c.plannedKeyframes = roiPlanner != null ? roiPlanner.keyframes() : 0;
+            c.lastTracks = lastTracks;
+            c.gateState = gate != null ? gate.saveState() : null;
+            c.write(outputFile, result.sequenceName, imageCount);
+            result.checkpoints++;
+        } catch (IOException e) {
+            log.w("Checkpoint of " + result.sequenceName + " failed: " + e);
+        } finally {
+            result.checkpointNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Ask the frame gate about the decoded frame; if it is unchanged, count it as
+     * skipped in the tracker (a due keyframe stays due) and return true.
+     */
+    private boolean skipFrame(long handle, boolean isKeyframe, Result result) {
+        long startGate = System.nanoTime();
+        boolean skip = gate.skip(frame);
+        if (skip) {
+            natives.nativeSkipFrame(handle);
+            result.gatedFrames++;
+            if (isKeyframe) {
+                result.gatedKeyframes++;
+            }
+        }
+        long endGate = System.nanoTime();
+        result.timings.totalGateNanos += endGate - startGate;
+        result.timings.trace(TraceRecorder.Stage.FRAME_GATE, startGate, endGate);
+        return skip;
+    }
+
+    private float[] processFrame(long handle, boolean isKeyframe, TiledDetector tiled, Result result) {
+        PipelineTimings timings = result.timings;
+        float[] detections = null;
+        boolean fused = false;
+        // Full-frame keyframe on a size the resolution controller picked: its latency goes back to it
+        YoloDetector full = detector;
+        long scaledNanos = -1;
+        if (isKeyframe) {
+            // Pre, Convert, Infer and Post are timed inside the detector
+            int crops = roiPlanner != null ? roiPlanner.plan(lastTracks, frame.width, frame.height, roiCrops) : 0;
+            if (crops > 0) {
+                detections = detector.detect(frame, roiCrops, crops, timings);
+                result.roiKeyframes++;
+                result.roiCrops += crops;
+            } else if (tiled != null) {
+                detections = tiled.detect(frame, timings);
+            } else {
+                long startDetect = System.nanoTime();
+                if (resolution != null) {
+                    full = resolution.select(lastTracks, frameWidth, frameHeight);
+                }
+                if (config.nativePostprocessing) {
+                    // Decode, NMS and un-letterbox happen in the tracker update below
+                    full.infer(frame, timings);
+                    fused = true;
+                } else {
+                    detections = full.detect(frame, timings);
+                }
+                if (resolution != null) {
+                    scaledNanos = System.nanoTime() - startDetect;
+                }
+            }
+            result.keyframes++;
+        }
+
+        // --- [5. Grayscale (Optical Flow Prep)] ---
+        // A cached frame already carries its gray plane, which the JNI reads in place
+        long startGray = System.nanoTime();
+        if (frame.gray == null) {
+            grayscale = toGrayscale(frame, grayscale);
+        }
+        long endGray = System.nanoTime();
+        timings.totalGrayscaleNanos += (endGray - startGray);
+        timings.trace(TraceRecorder.Stage.GRAYSCALE, startGray, endGray);
+
+        // --- [6. JNI (Tracking / Optical Flow)] ---
+        long startJNI = System.nanoTime();
+        float[] tracks;
+        if (fused) {
+            tracks = frame.gray != null
+                    ? natives.nativeUpdateWithModelOutputBuffer(handle, full.outputBuffer(),
+                            full.nativeDecodeParams(), frame.gray, frame.width, frame.height, decodeStats)
+                    : natives.nativeUpdateWithModelOutput(handle, full.outputBuffer(),
+                            full.nativeDecodeParams(), grayscale, frame.width, frame.height, decodeStats);
+        } else if (frame.gray != null) {
+            tracks = isKeyframe
+                    ? natives.nativeUpdateWithDetectionsBuffer(handle, detections, frame.gray, frame.width, frame.height)
+                    : natives.nativeUpdateWithoutDetectionsBuffer(handle, frame.gray, frame.width, frame.height);
+        } else if (isKeyframe) {
+            tracks = natives.nativeUpdateWithDetections(handle, detections, grayscale, frame.width, frame.height);
+        } else if (frame.width != frameWidth || frame.height != frameHeight) {
+            tracks = natives.nativeUpdateWithoutDetectionsScaled(handle, grayscale, frame.width, frame.height,
+                    frameWidth, frameHeight);
+        } else {
+            tracks = natives.nativeUpdateWithoutDetections(handle, grayscale, frame.width, frame.height);
+        }
+        long endJNI = System.nanoTime();
+        if (fused) {
+            // The native decode is post-processing, the rest of the call is tracking
+            long decodeNanos = Math.min(decodeStats[0], endJNI - startJNI);
+            timings.totalPostprocessingNanos += decodeNanos;
+            timings.totalJniTrackingNanos += (endJNI - startJNI) - decodeNanos;
+            // The decode runs first in the call
+            timings.trace(TraceRecorder.Stage.POSTPROCESSING, startJNI, startJNI + decodeNanos);
+            timings.trace(TraceRecorder.Stage.JNI_TRACKING, startJNI + decodeNanos, endJNI);
+            result.nativeDecodeKeyframes++;
+            result.nativeDecodeCandidates += decodeStats[1];
+            if (scaledNanos >= 0) {
+                scaledNanos += decodeNanos;
+            }
+        } else {
+            timings.totalJniTrackingNanos += (endJNI - startJNI);
+            timings.trace(TraceRecorder.Stage.JNI_TRACKING, startJNI, endJNI);
+        }
+        if (scaledNanos >= 0) {
+            resolution.record(scaledNanos);
+        }
+        return tracks;
+    }
+
+    /** (r+g+b)/3 luma of {@code rgb} into {@code grayscale}, reallocated if the size changed. */
+    static byte[] toGrayscale(RgbFrame rgb, byte[] grayscale) {
+        int n = rgb.width * rgb.height;
+        if (grayscale.length != n) {
+            grayscale = new byte[n];
+        }
+        int[] pixels = rgb.pixels;
+        for (int i = 0; i < n; i++) {
+            int pixel = pixels[i];
+            int r = (pixel >> 16) & 0xFF;
+            int g = (pixel >> 8) & 0xFF;
+            int b = pixel & 0xFF;
+            grayscale[i] = (byte) ((r + g + b) / 3);
+        }
+        return grayscale;
+    }
+
+    /** Person tracks (class 0) with an assigned id, in MOT17 format. Returns the row count. */
+    static int writeMotRows(Writer writer, int frameNumber, float[] tracks, int imgW, int imgH)
+            throws IOException {
+        if (tracks == null) {
+            return 0;
+        }
+        int rows = 0;
+        for (int i = 0; i + FIELDS_PER_TRACK <= tracks.length; i += FIELDS_PER_TRACK) {
+            int classId = (int) tracks[i + 4];
+            int trackId = (int) tracks[i + 6];
+            if (trackId <= 0 || classId != 0) {
+                continue;
+            }
+            float width = tracks[i + 2] * imgW;
+            float height = tracks[i + 3] * imgH;
+            float left = tracks[i] * imgW - width / 2f;
+            float top = tracks[i + 1] * imgH - height / 2f;
+            writer.write(String.format(Locale.US, "%d,%d,%.2f,%.2f,%.2f,%.2f,%.2f,-1,-1,-1\n",
+                    frameNumber, trackId, left, top, width, height, tracks[i + 5]));
+            rows++;
+        }
+        return rows;
+    }
+}
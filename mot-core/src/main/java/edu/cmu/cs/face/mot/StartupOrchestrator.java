@@ -0,0 +1,124 @@
+package edu.cmu.cs.face.mot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the cold-start steps of a measurement (model load, interpreter warm-up,
+ * tracker init, image indexing) concurrently instead of one after another, and
+ * times each of them, so the startup breakdown and time-to-first-frame can be
+ * reported.
+ *
+ * A step may depend on another one ({@link #submitAfter}); its clock starts once
+ * the dependency is done, so the breakdown shows each step's own cost. Steps run
+ * on daemon threads, one per step.
+ */
+public final class StartupOrchestrator implements AutoCloseable {
+    private final long startNanos = System.nanoTime();
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "startup");
+        t.setDaemon(true);
+        return t;
+    });
+    private final List<Step> steps = new ArrayList<>();
+
+    private static final class Step {
+        final String name;
+        volatile long beginNanos;
+        volatile long endNanos;
+        volatile boolean failed;
+
+        Step(String name) {
+            this.name = name;
+        }
+    }
+
+    /** Start {@code task} now. */
+    public <T> Future<T> submit(String name, Callable<T> task) {
+        return submitAfter(name, null, task);
+    }
+
+    /** Start {@code task} once {@code dependency} has completed (successfully or not). */
+    public <T> Future<T> submitAfter(String name, Future<?> dependency, Callable<T> task) {
+        Step step = new Step(name);
+        synchronized (steps) {
+            steps.add(step);
+        }
+        return executor.submit(() -> {
+            if (dependency != null) {
+                try {
+                    dependency.get();
+                } catch (ExecutionException ignored) {
+                    // The dependency's own await reports it; the task decides what to do without it
+                }
+            }
+            step.beginNanos = System.nanoTime();
+            try {
+                return task.call();
+            } catch (Exception | Error e) {
+                step.failed = true;
+                throw e;
+            } finally {
+                step.endNanos = System.nanoTime();
+            }
+        });
+    }
+
+    /** The result of a step, waiting for it if needed; failures are rethrown unchecked. */
+    public <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted during startup", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Startup step failed", e.getCause());
+        }
+    }
+
+    /** When the orchestrator was created, on the {@link System#nanoTime()} clock. */
+    public long startNanos() {
+        return startNanos;
+    }
+
+    /**
+     * Log each step (offset from startup and duration), the startup wall time against
+     * what the steps would take in series, and time-to-first-frame if known.
+     *
+     * @param firstFrameNanos {@link System#nanoTime()} when the first frame was done, or 0
+     */
+    public void report(PipelineLog log, long firstFrameNanos) {
+        double ms = 1_000_000.0;
+        long serial = 0;
+        long ready = 0;
+        log.i("--- Startup (ms) ---");
+        synchronized (steps) {
+            for (Step step : steps) {
+                if (step.endNanos == 0) {
+                    log.i(String.format(Locale.US, "%-14s not finished", step.name + ":"));
+                    continue;
+                }
+                long duration = step.endNanos - step.beginNanos;
+                serial += duration;
+                ready = Math.max(ready, step.endNanos - startNanos);
+                log.i(String.format(Locale.US, "%-14s %8.1f ms (at +%.1f)%s", step.name + ":",
+                        duration / ms, (step.beginNanos - startNanos) / ms, step.failed ? " FAILED" : ""));
+            }
+        }
+        log.i(String.format(Locale.US, "Startup wall:  %8.1f ms (%.1f ms if run in series)", ready / ms, serial / ms));
+        if (firstFrameNanos > 0) {
+            log.i(String.format(Locale.US, "First frame:   %8.1f ms after start", (firstFrameNanos - startNanos) / ms));
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,260 @@
+package edu.cmu.cs.face.mot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Keyframe detection on overlapping tiles of the frame, so small (distant) objects
+ * get more model input pixels than one letterbox of the whole frame gives them.
+ *
+ * The frame is split into {@code tileCols x tileRows} tiles overlapping by
+ * {@code tileOverlap}, plus optionally the full frame for objects larger than a
+ * tile. Tiles run concurrently, one per {@link YoloDetector} (each with its own
+ * interpreter); candidates are mapped to frame pixels and merged with one
+ * cross-tile NMS. Tile candidates cut off by an inner tile border are dropped when
+ * the full frame is part of the layout, since the full-frame pass or an
+ * overlapping tile sees the object whole. Merging happens in tile order, so the
+ * result does not depend on thread timing.
+ */
+public final class TiledDetector implements AutoCloseable {
+    // Candidates within this many pixels of an inner tile border count as cut off
+    private static final float CUT_MARGIN = 2f;
+
+    private final List<YoloDetector> detectors;
+    private final BlockingQueue<YoloDetector> idle;
+    private final ExecutorService executor;
+    private final int cols;
+    private final int rows;
+    private final float overlap;
+    private final boolean includeFullFrame;
+    private final float nmsThreshold;
+
+    // Layout for the last frame size: [x, y, w, h] per tile, the full frame first if included
+    private int layoutW = -1;
+    private int layoutH = -1;
+    private int[] tiles = new int[0];
+    private int tileCount;
+    private DetectionCandidates[] tileCandidates = new DetectionCandidates[0];
+    private final DetectionCandidates merged = new DetectionCandidates();
+    private final List<Future<Boolean>> pending = new ArrayList<>();
+
+    private Stats stats;
+
+    /** Per-tile stage timings, summed over tiled keyframes. */
+    public static final class Stats {
+        public int keyframes;
+        public int interpreters;
+        /** [x, y, w, h] per tile, as in the layout. */
+        public int[] tiles;
+        public boolean includesFullFrame;
+        public PipelineTimings[] tileTimings;
+        public long[] tileCandidates;
+        /** Wall time of the concurrent tile phase, and of the cross-tile merge. */
+        public long parallelNanos;
+        public long mergeNanos;
+
+        public void report(PipelineLog log) {
+            if (keyframes == 0) {
+                return;
+            }
+            double n = keyframes * 1_000_000.0;
+            log.i("--- Tiled Inference (per tiled keyframe, ms) ---");
+            long work = 0;
+            for (int t = 0; t < tileTimings.length; t++) {
+                PipelineTimings tt = tileTimings[t];
+                String name = includesFullFrame && t == 0
+                        ? "full frame"
+                        : String.format(Locale.US, "%d,%d %dx%d", tiles[t * 4], tiles[t * 4 + 1],
+                                tiles[t * 4 + 2], tiles[t * 4 + 3]);
+                log.i(String.format(Locale.US,
+                        "Tile %d [%s]: pre %.3f, convert %.3f, infer %.3f, post %.3f (%.1f candidates)",
+                        t, name, tt.totalPreprocessingNanos / n, tt.totalFormatConversionNanos / n,
+                        tt.totalInferenceNanos / n, tt.totalPostprocessingNanos / n,
+                        tileCandidates[t] / (double) keyframes));
+                work += tt.totalPreprocessingNanos + tt.totalFormatConversionNanos
+                        + tt.totalInferenceNanos + tt.totalPostprocessingNanos;
+            }
+            log.i(String.format(Locale.US, "Tiles wall: %.3f ms for %.3f ms of tile work (%d interpreters)",
+                    parallelNanos / n, work / n, interpreters));
+            log.i(String.format(Locale.US, "Cross-tile merge/NMS: %.3f ms", mergeNanos / n));
+        }
+    }
+
+    /**
+     * @param detectors one per interpreter; tiles are spread over them. With a single
+     *                  detector the tiles run one after another on the calling thread.
+     */
+    public TiledDetector(List<YoloDetector> detectors, PipelineConfig config) {
+        this.detectors = detectors;
+        this.idle = new ArrayBlockingQueue<>(detectors.size(), false, detectors);
+        this.cols = Math.max(1, config.tileCols);
+        this.rows = Math.max(1, config.tileRows);
+        this.overlap = Math.max(0f, Math.min(0.9f, config.tileOverlap));
+        this.includeFullFrame = config.tileIncludeFullFrame;
+        this.nmsThreshold = detectors.get(0).nmsThreshold();
+        this.executor = detectors.size() > 1 ? Executors.newFixedThreadPool(detectors.size(), r -> {
+            Thread t = new Thread(r, "tile-inference");
+            t.setDaemon(true);
+            return t;
+        }) : null;
+    }
+
+    public Stats stats() {
+        return stats;
+    }
+
+    /** Same output as {@link YoloDetector#detect(RgbFrame, PipelineTimings)}, over the tile layout. */
+    public float[] detect(RgbFrame frame, PipelineTimings timings) {
+        updateLayout(frame.width, frame.height);
+        // Tile stages show up as spans on the threads that ran them
+        for (PipelineTimings tt : stats.tileTimings) {
+            tt.trace = timings.trace;
+        }
+
+        // Tiles: counted under Inference in the pipeline timings (wall time), per stage in the stats
+        long startTiles = System.nanoTime();
+        boolean ok = true;
+        if (executor == null) {
+            for (int t = 0; t < tileCount; t++) {
+                ok &= runTile(detectors.get(0), frame, t, tileCandidates[t]);
+            }
+        } else {
+            pending.clear();
+            for (int t = 0; t < tileCount; t++) {
+                final int tile = t;
+                final DetectionCandidates into = tileCandidates[t];
+                pending.add(executor.submit(() -> {
+                    YoloDetector detector = idle.take();
+                    try {
+                        return runTile(detector, frame, tile, into);
+                    } finally {
+                        // Not put(): a cancelled tile is interrupted and must still hand the detector back
+                        idle.add(detector);
+                    }
+                }));
+            }
+            for (Future<Boolean> f : pending) {
+                try {
+                    ok &= f.get();
+                } catch (InterruptedException e) {
+                    abortTiles();
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted during tile inference", e);
+                } catch (ExecutionException e) {
+                    abortTiles();
+                    throw new IllegalStateException("Tile inference failed", e.getCause());
+                }
+            }
+        }
+        long endTiles = System.nanoTime();
+        timings.totalInferenceNanos += endTiles - startTiles;
+        stats.parallelNanos += endTiles - startTiles;
+        stats.keyframes++;
+        if (!ok) {
+            return new float[0];
+        }
+
+        // --- Cross-tile merge ---
+        long startMerge = System.nanoTime();
+        merged.clear();
+        for (int t = 0; t < tileCount; t++) {
+            merged.addAll(tileCandidates[t]);
+            stats.tileCandidates[t] += tileCandidates[t].count;
+        }
+        int kept = merged.nonMaxSuppression(nmsThreshold);
+        float[] results = merged.toDetections(kept, frame.width, frame.height, 0, 0, 1f);
+        long endMerge = System.nanoTime();
+        timings.totalPostprocessingNanos += endMerge - startMerge;
+        timings.trace(TraceRecorder.Stage.POSTPROCESSING, startMerge, endMerge);
+        stats.mergeNanos += endMerge - startMerge;
+        return results;
+    }
+
+    /**
+     * Cancel the tiles of an abandoned frame. A tile already inside the model cannot be
+     * stopped; it finishes into the candidate set it was given, which no later frame uses.
+     */
+    private void abortTiles() {
+        for (Future<Boolean> f : pending) {
+            f.cancel(true);
+        }
+        pending.clear();
+        for (int t = 0; t < tileCount; t++) {
+            tileCandidates[t] = new DetectionCandidates();
+        }
+    }
+
+    private boolean runTile(YoloDetector detector, RgbFrame frame, int t, DetectionCandidates into) {
+        into.clear();
+        int x = tiles[t * 4];
+        int y = tiles[t * 4 + 1];
+        int w = tiles[t * 4 + 2];
+        int h = tiles[t * 4 + 3];
+        if (!detector.detectRegion(frame, x, y, w, h, into, stats.tileTimings[t])) {
+            return false;
+        }
+        boolean isFullFrame = includeFullFrame && t == 0;
+        if (includeFullFrame && !isFullFrame) {
+            into.dropCutByRegion(0, x, y, x + w, y + h, frame.width, frame.height, CUT_MARGIN);
+        }
+        return true;
+    }
+
+    private void updateLayout(int frameW, int frameH) {
+        if (frameW == layoutW && frameH == layoutH) {
+            return;
+        }
+        layoutW = frameW;
+        layoutH = frameH;
+        tileCount = cols * rows + (includeFullFrame ? 1 : 0);
+        tiles = new int[tileCount * 4];
+        int t = 0;
+        if (includeFullFrame) {
+            tiles[2] = frameW;
+            tiles[3] = frameH;
+            t = 1;
+        }
+        // Tiles of equal size whose overlap is `overlap` of a tile, spanning the frame exactly
+        int tileW = Math.min(frameW, (int) Math.ceil(frameW / (cols - (cols - 1) * overlap)));
+        int tileH = Math.min(frameH, (int) Math.ceil(frameH / (rows - (rows - 1) * overlap)));
+        for (int r = 0; r < rows; r++) {
+            int y = rows > 1 ? Math.round(r * (frameH - tileH) / (float) (rows - 1)) : (frameH - tileH) / 2;
+            for (int c = 0; c < cols; c++, t++) {
+                int x = cols > 1 ? Math.round(c * (frameW - tileW) / (float) (cols - 1)) : (frameW - tileW) / 2;
+                tiles[t * 4] = x;
+                tiles[t * 4 + 1] = y;
+                tiles[t * 4 + 2] = tileW;
+                tiles[t * 4 + 3] = tileH;
+            }
+        }
+
+        tileCandidates = new DetectionCandidates[tileCount];
+        for (int i = 0; i < tileCount; i++) {
+            tileCandidates[i] = new DetectionCandidates();
+        }
+        // A new layout starts new per-tile statistics
+        stats = new Stats();
+        stats.interpreters = detectors.size();
+        stats.tiles = tiles.clone();
+        stats.includesFullFrame = includeFullFrame;
+        stats.tileTimings = new PipelineTimings[tileCount];
+        for (int i = 0; i < tileCount; i++) {
+            stats.tileTimings[i] = new PipelineTimings();
+        }
+        stats.tileCandidates = new long[tileCount];
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
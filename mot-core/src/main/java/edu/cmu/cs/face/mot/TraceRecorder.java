@@ -0,0 +1,159 @@
+package edu.cmu.cs.face.mot;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-frame stage spans (begin/end, frame index, keyframe flag, thread) for a
+ * timeline view of a run, next to the averages of {@link PipelineTimings}.
+ *
+ * Spans go into preallocated arrays used as a ring: once {@code capacity} spans are
+ * recorded the oldest are overwritten, so recording never allocates and a long run
+ * keeps its last stretch. Recording is lock-free and may happen on several threads
+ * (tile workers); the frame tags are the ones of the last {@link #beginFrame}. Dump
+ * with {@link #writeChromeJson} after the run: the Chrome trace event format, which
+ * chrome://tracing and the Perfetto UI both open.
+ */
+public final class TraceRecorder {
+    private static final int MAX_THREADS = 64;
+
+    public enum Stage {
+        DECODE("Decode"),
+        PREPROCESSING("Preprocessing"),
+        FORMAT_CONVERSION("Format Convert"),
+        INFERENCE("Inference"),
+        POSTPROCESSING("Postprocessing"),
+        FRAME_GATE("Frame Gate"),
+        GRAYSCALE("Grayscale"),
+        JNI_TRACKING("JNI Tracking"),
+        FRAME("Frame");
+
+        final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    private final int capacity;
+    private final long[] begin;
+    private final long[] end;
+    private final byte[] stage;
+    private final int[] frame;
+    private final boolean[] keyframe;
+    private final byte[] thread;
+    private final AtomicLong next = new AtomicLong();
+
+    // Small thread ids (trace tids) with their names, assigned on a thread's first span
+    private final String[] threadNames = new String[MAX_THREADS];
+    private final AtomicInteger threadCount = new AtomicInteger();
+    private final ThreadLocal<Integer> threadIndex = ThreadLocal.withInitial(this::registerThread);
+
+    private volatile int currentFrame = -1;
+    private volatile boolean currentKeyframe;
+
+    public TraceRecorder(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        begin = new long[capacity];
+        end = new long[capacity];
+        stage = new byte[capacity];
+        frame = new int[capacity];
+        keyframe = new boolean[capacity];
+        thread = new byte[capacity];
+    }
+
+    /** Tag the spans recorded from now on (on any thread) with this frame. */
+    public void beginFrame(int frameIndex, boolean isKeyframe) {
+        currentKeyframe = isKeyframe;
+        currentFrame = frameIndex;
+    }
+
+    /** One span on the calling thread, both ends on the {@link System#nanoTime()} clock. */
+    public void record(Stage s, long beginNanos, long endNanos) {
+        int slot = (int) (next.getAndIncrement() % capacity);
+        begin[slot] = beginNanos;
+        end[slot] = endNanos;
+        stage[slot] = (byte) s.ordinal();
+        frame[slot] = currentFrame;
+        keyframe[slot] = currentKeyframe;
+        thread[slot] = (byte) (int) threadIndex.get();
+    }
+
+    /** Spans currently held (at most the capacity). */
+    public int size() {
+        return (int) Math.min(next.get(), capacity);
+    }
+
+    /** Spans lost to the ring wrapping around. */
+    public long overwritten() {
+        return Math.max(0, next.get() - capacity);
+    }
+
+    /**
+     * Write the held spans as Chrome trace JSON: one complete ("X") event per span,
+     * microseconds from the first span, with the frame and keyframe flag as args, plus
+     * thread-name metadata. Call once recording has stopped.
+     */
+    public void writeChromeJson(File file) throws IOException {
+        long total = next.get();
+        int count = size();
+        long first = total - count;
+        long origin = Long.MAX_VALUE;
+        for (long i = first; i < total; i++) {
+            origin = Math.min(origin, begin[(int) (i % capacity)]);
+        }
+
+        try (Writer w = new BufferedWriter(new FileWriter(file))) {
+            w.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n");
+            int threads = Math.min(threadCount.get(), MAX_THREADS);
+            for (int t = 0; t < threads; t++) {
+                w.write(String.format(Locale.US,
+                        "{\"ph\":\"M\",\"name\":\"thread_name\",\"pid\":1,\"tid\":%d,\"args\":{\"name\":\"%s\"}},\n",
+                        t, escape(threadNames[t])));
+            }
+            w.write("{\"ph\":\"M\",\"name\":\"process_name\",\"pid\":1,\"args\":{\"name\":\"mot pipeline\"}}");
+            for (long i = first; i < total; i++) {
+                int slot = (int) (i % capacity);
+                Stage s = STAGES[stage[slot]];
+                w.write(String.format(Locale.US,
+                        ",\n{\"ph\":\"X\",\"name\":\"%s\",\"cat\":\"%s\",\"pid\":1,\"tid\":%d,"
+                                + "\"ts\":%.3f,\"dur\":%.3f,\"args\":{\"frame\":%d,\"keyframe\":%b}}",
+                        s.label, keyframe[slot] ? "keyframe" : "frame", thread[slot],
+                        (begin[slot] - origin) / 1000.0, (end[slot] - begin[slot]) / 1000.0,
+                        frame[slot], keyframe[slot]));
+            }
+            w.write("\n]}\n");
+        }
+    }
+
+    /** Log where the trace went and whether the ring dropped anything. */
+    public void report(PipelineLog log, File file) {
+        log.i(String.format(Locale.US, "Trace: %d spans -> %s%s", size(), file.getAbsolutePath(),
+                overwritten() > 0 ? " (oldest " + overwritten() + " overwritten, raise the capacity)" : ""));
+    }
+
+    private Integer registerThread() {
+        int index = threadCount.getAndIncrement();
+        if (index >= MAX_THREADS) {
+            // Shares the last id; only its name is off
+            return MAX_THREADS - 1;
+        }
+        threadNames[index] = Thread.currentThread().getName();
+        return index;
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
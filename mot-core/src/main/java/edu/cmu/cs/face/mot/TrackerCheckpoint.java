@@ -0,0 +1,143 @@
+package edu.cmu.cs.face.mot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Resume point of a sequence run, kept next to its results as {@code <results>.ckpt}.
+ *
+ * {@link SequenceRunner} writes one every {@link PipelineConfig#checkpointInterval}
+ * frames: the native tracker state (nativeSaveTrackerState), the frame to continue
+ * with, and how many bytes of the results file belong to the frames before it. A
+ * later run of the same sequence loads the state, cuts the results back to that
+ * length and carries on, so an interrupted run only repeats the frames since its
+ * last checkpoint. The file is replaced atomically (written as .tmp, then renamed)
+ * and deleted when the sequence completes, so results without a checkpoint are complete.
+ *
+ * The {@link ResolutionController} is not part of it: its latency averages measure
+ * the device at the time, not the sequence. A resumed run keeps what the controller
+ * holds in this process; after a restart it starts at the largest input size and
+ * measures again, like any new run.
+ *
+ * Layout: [magic, version, sequence name, image count, next frame, results length,
+ * frame width, frame height, ROI keyframes, last tracks, frame gate state, tracker state].
+ */
+public final class TrackerCheckpoint {
+    public static final String SUFFIX = ".ckpt";
+    private static final long MAGIC = 0x4D4F54434B505400L; // "MOTCKPT"
+    private static final int VERSION = 2;
+
+    /** Index of the first frame not yet processed. */
+    public int nextFrame;
+    /** Length of the results file when the checkpoint was taken. */
+    public long resultsLength;
+    /** Full frame size the track boxes are in. */
+    public int frameWidth;
+    public int frameHeight;
+    /** Keyframes planned so far (keeps the ROI full-frame cadence). */
+    public int plannedKeyframes;
+    /** Tracker output of the frame before {@link #nextFrame}, or null. */
+    public float[] lastTracks;
+    /** {@link FrameGate#saveState()}, or null. */
+    public byte[] gateState;
+    /** nativeSaveTrackerState blob. */
+    public byte[] trackerState;
+
+    /** The checkpoint file that belongs to {@code outputFile}. */
+    public static File fileFor(File outputFile) {
+        return new File(outputFile.getPath() + SUFFIX);
+    }
+
+    /**
+     * The checkpoint of {@code outputFile} if there is one for this sequence and
+     * image list and the results file still holds what it covers; else null.
+     */
+    public static TrackerCheckpoint read(File outputFile, String sequenceName, int imageCount, PipelineLog log) {
+        File file = fileFor(outputFile);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readLong() != MAGIC || in.readInt() != VERSION) {
+                log.w("Checkpoint: " + file.getName() + " is from another version, ignoring it");
+                return null;
+            }
+            if (!in.readUTF().equals(sequenceName) || in.readInt() != imageCount) {
+                log.w("Checkpoint: " + file.getName() + " is for a different image list, ignoring it");
+                return null;
+            }
+            TrackerCheckpoint c = new TrackerCheckpoint();
+            c.nextFrame = in.readInt();
+            c.resultsLength = in.readLong();
+            c.frameWidth = in.readInt();
+            c.frameHeight = in.readInt();
+            c.plannedKeyframes = in.readInt();
+            int tracks = in.readInt();
+            if (tracks >= 0) {
+                c.lastTracks = new float[tracks];
+                for (int i = 0; i < tracks; i++) {
+                    c.lastTracks[i] = in.readFloat();
+                }
+            }
+            int gate = in.readInt();
+            if (gate >= 0) {
+                c.gateState = new byte[gate];
+                in.readFully(c.gateState);
+            }
+            c.trackerState = new byte[in.readInt()];
+            in.readFully(c.trackerState);
+            if (outputFile.length() < c.resultsLength) {
+                log.w("Checkpoint: " + outputFile.getName() + " is shorter than its checkpoint, ignoring it");
+                return null;
+            }
+            return c;
+        } catch (IOException | RuntimeException e) {
+            log.w("Checkpoint: cannot read " + file.getName() + " (" + e + "), ignoring it");
+            return null;
+        }
+    }
+
+    /** Replace the checkpoint of {@code outputFile} with this one. */
+    public void write(File outputFile, String sequenceName, int imageCount) throws IOException {
+        File file = fileFor(outputFile);
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            out.writeLong(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(sequenceName);
+            out.writeInt(imageCount);
+            out.writeInt(nextFrame);
+            out.writeLong(resultsLength);
+            out.writeInt(frameWidth);
+            out.writeInt(frameHeight);
+            out.writeInt(plannedKeyframes);
+            out.writeInt(lastTracks != null ? lastTracks.length : -1);
+            if (lastTracks != null) {
+                for (float v : lastTracks) {
+                    out.writeFloat(v);
+                }
+            }
+            out.writeInt(gateState != null ? gateState.length : -1);
+            if (gateState != null) {
+                out.write(gateState);
+            }
+            out.writeInt(trackerState.length);
+            out.write(trackerState);
+        }
+        if (!tmpFile.renameTo(file)) {
+            tmpFile.delete();
+            throw new IOException("Cannot rename " + tmpFile.getName() + " to " + file.getName());
+        }
+    }
+
+    /** Remove the checkpoint of {@code outputFile} (the run is complete). */
+    public static void delete(File outputFile) {
+        fileFor(outputFile).delete();
+    }
+}
@@ -0,0 +1,51 @@
+package edu.cmu.cs.face.mot;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The HybridTracker JNI surface used by the pipeline.
+ *
+ * The JNI exports are named after {@code edu.cmu.cs.face.MainActivity}, so the
+ * methods are declared {@code native} there (the Android activity, or the host
+ * binding in tracker-host) and that class implements this interface.
+ */
+public interface TrackerNatives {
+    long nativeInitHybridTracker(int frameRate, int trackBuffer, int keyframeInterval);
+    void nativeReleaseHybridTracker(long trackerPtr);
+    boolean nativeIsKeyframe(long trackerPtr);
+    // Live input: capture time of the next frame, before nativeIsKeyframe. Camera frames
+    // dropped since the last timestamp count towards the keyframe interval; returns how many
+    int nativeSetFrameTimestamp(long trackerPtr, long timestampNanos);
+    // A frame left untracked (unchanged, see FrameGate): counts towards the keyframe
+    // interval like a dropped frame; a due keyframe stays due
+    void nativeSkipFrame(long trackerPtr);
+    // detections: [cx, cy, w, h, classId, conf] per row, normalized to the frame
+    // returns:    [cx, cy, w, h, classId, conf, trackId] per track
+    float[] nativeUpdateWithDetections(long trackerPtr, float[] detections, byte[] imageData, int w, int h);
+    float[] nativeUpdateWithoutDetections(long trackerPtr, byte[] imageData, int w, int h);
+    // Same as above with the gray frame in a direct ByteBuffer, read in place (no copy)
+    float[] nativeUpdateWithDetectionsBuffer(long trackerPtr, float[] detections, ByteBuffer imageData, int w, int h);
+    float[] nativeUpdateWithoutDetectionsBuffer(long trackerPtr, ByteBuffer imageData, int w, int h);
+    // Gray frame of imageW x imageH (decoded subsampled) for a w x h frame; boxes stay in w x h
+    float[] nativeUpdateWithoutDetectionsScaled(long trackerPtr, byte[] imageData, int imageW, int imageH, int w, int h);
+    // Fused keyframe: decode the raw model output tensor (direct ByteBuffer) natively with
+    // decodeParams = YoloDetector.nativeDecodeParams(), NMS, un-letterbox, then the tracker update.
+    // decodeStats (may be null) receives [decode_nanos, candidates, detections]
+    float[] nativeUpdateWithModelOutput(long trackerPtr, ByteBuffer output, float[] decodeParams,
+                                        byte[] imageData, int w, int h, long[] decodeStats);
+    float[] nativeUpdateWithModelOutputBuffer(long trackerPtr, ByteBuffer output, float[] decodeParams,
+                                              ByteBuffer imageData, int w, int h, long[] decodeStats);
+    void nativeSetSparseAssignment(long trackerPtr, boolean enabled);
+    // Global camera-motion estimation in the KLT stage, applied to the Kalman states on keyframes
+    void nativeSetGlobalMotion(long trackerPtr, boolean enabled);
+    // Full tracker state for a checkpoint (null if the tracker is busy); loading it into a
+    // tracker with the same settings continues the run exactly. False (tracker reset) if it does not fit
+    byte[] nativeSaveTrackerState(long trackerPtr);
+    boolean nativeLoadTrackerState(long trackerPtr, byte[] state);
+    // Returns [frames, tracks_acquired, tracks_reused, tracks_live, tracks_capacity,
+    //          dets_acquired, dets_reused, dets_capacity, klt_acquired, klt_reused, klt_capacity]
+    long[] nativeGetTrackerStats(long trackerPtr);
+    // Kalman state of the tracked and lost tracks: [trackId, cx, cy, w, h, vx, vy, vw, vh] per track,
+    // normalized, velocities per second (one filter step is the time between the last two keyframes)
+    float[] nativeGetTrackStates(long trackerPtr, int w, int h);
+}
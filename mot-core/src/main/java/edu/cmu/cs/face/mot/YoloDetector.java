@@ -0,0 +1,407 @@
+package edu.cmu.cs.face.mot;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * YOLO keyframe detection on a {@link RgbFrame}: letterbox, model input conversion,
+ * inference, decode and NMS, mapped back to normalized frame coordinates.
+ *
+ * All buffers (letterbox pixels, input/output tensors, candidate arrays) are kept
+ * between calls, so steady-state detection allocates only the returned array.
+ * One instance per {@link ModelRunner}; not thread-safe.
+ */
+public final class YoloDetector {
+    public static final int FIELDS_PER_DETECTION = 6;
+    private static final float[] NO_DETECTIONS = new float[0];
+    // Color.rgb(114, 114, 114), the YOLO letterbox padding
+    private static final int PAD_COLOR = 0xFF727272;
+
+    private final ModelRunner model;
+    private final PipelineLog log;
+    private final float confidenceThreshold;
+    private final float nmsThreshold;
+    private final int modelW;
+    private final int modelH;
+
+    private final int[] letterbox;
+    private final ByteBuffer inputBuffer;
+    private final ByteBuffer outputBuffer;
+
+    // Letterbox geometry of the last frame size; the padding is only repainted when it changes
+    private int geometryW = -1;
+    private int geometryH = -1;
+    private float scale;
+    private int newW;
+    private int newH;
+    private int padX;
+    private int padY;
+    private int[] xIndex = new int[0];
+    private float[] xWeight = new float[0];
+
+    // Candidates above the confidence threshold
+    private final DetectionCandidates candidates = new DetectionCandidates();
+    private final float[] decodeParams = new float[12];
+
+    public YoloDetector(ModelRunner model, PipelineConfig config, PipelineLog log) {
+        this.model = model;
+        this.log = log;
+        this.confidenceThreshold = config.confidenceThreshold;
+        this.nmsThreshold = config.nmsThreshold;
+
+        int[] inputShape = model.inputShape();
+        modelW = inputShape[2]; // Assumes [1, H, W, C]
+        modelH = inputShape[1];
+        letterbox = new int[modelW * modelH];
+
+        inputBuffer = ByteBuffer.allocateDirect(modelW * modelH * 3 * bytesPerElement(model.inputType()));
+        inputBuffer.order(ByteOrder.nativeOrder());
+
+        int outputElements = 1;
+        for (int d : model.outputShape()) {
+            outputElements *= d;
+        }
+        outputBuffer = ByteBuffer.allocateDirect(outputElements * bytesPerElement(model.outputType()));
+        outputBuffer.order(ByteOrder.nativeOrder());
+    }
+
+    public int modelWidth() {
+        return modelW;
+    }
+
+    public int modelHeight() {
+        return modelH;
+    }
+
+    /**
+     * Detect objects in {@code frame}.
+     *
+     * @return [cx, cy, w, h, classId, conf] per detection, normalized to the frame,
+     *         in NMS selection order (the layout nativeUpdateWithDetections expects)
+     */
+    public float[] detect(RgbFrame frame, PipelineTimings timings) {
+        candidates.clear();
+        if (!runRegion(frame, 0, 0, frame.width, frame.height, candidates, timings)) {
+            return NO_DETECTIONS;
+        }
+
+        long startPost = System.nanoTime();
+        int selectedCount = candidates.nonMaxSuppression(nmsThreshold);
+        float[] results = candidates.toDetections(selectedCount, frame.width, frame.height, padX, padY, scale);
+        long endPost = System.nanoTime();
+        timings.totalPostprocessingNanos += endPost - startPost;
+        timings.trace(TraceRecorder.Stage.POSTPROCESSING, startPost, endPost);
+        return results;
+    }
+
+    /**
+     * Detect objects inside {@code cropCount} crops of {@code frame} ([x, y, w, h] in
+     * frame pixels each), one inference per crop at the crop's own letterbox scale.
+     * Candidates from all crops go through one NMS, so objects seen in two
+     * overlapping crops come out once. Same output layout as {@link #detect(RgbFrame, PipelineTimings)}.
+     */
+    public float[] detect(RgbFrame frame, int[] crops, int cropCount, PipelineTimings timings) {
+        candidates.clear();
+        for (int c = 0; c < cropCount; c++) {
+            if (!detectRegion(frame, crops[c * 4], crops[c * 4 + 1], crops[c * 4 + 2], crops[c * 4 + 3],
+                    candidates, timings)) {
+                return NO_DETECTIONS;
+            }
+        }
+
+        long startPost = System.nanoTime();
+        int selectedCount = candidates.nonMaxSuppression(nmsThreshold);
+        float[] results = candidates.toDetections(selectedCount, frame.width, frame.height, 0, 0, 1f);
+        long endPost = System.nanoTime();
+        timings.totalPostprocessingNanos += endPost - startPost;
+        timings.trace(TraceRecorder.Stage.POSTPROCESSING, startPost, endPost);
+        return results;
+    }
+
+    /**
+     * Run one region of {@code frame} and append its candidates to {@code into} in
+     * frame pixels (before NMS), so several regions can share one NMS.
+     */
+    boolean detectRegion(RgbFrame frame, int regionX, int regionY, int regionW, int regionH,
+                         DetectionCandidates into, PipelineTimings timings) {
+        int first = into.count;
+        if (!runRegion(frame, regionX, regionY, regionW, regionH, into, timings)) {
+            return false;
+        }
+        // Region letterbox -> frame pixels, so regions share one coordinate space
+        long startMap = System.nanoTime();
+        into.toFramePixels(first, padX, padY, scale, regionX, regionY);
+        long endMap = System.nanoTime();
+        timings.totalPostprocessingNanos += endMap - startMap;
+        timings.trace(TraceRecorder.Stage.POSTPROCESSING, startMap, endMap);
+        return true;
+    }
+
+    float nmsThreshold() {
+        return nmsThreshold;
+    }
+
+    /**
+     * Letterbox the whole frame and run the model, without decoding: the raw output
+     * stays in {@link #outputBuffer()} for nativeUpdateWithModelOutput, with
+     * {@link #nativeDecodeParams()} describing it.
+     */
+    public void infer(RgbFrame frame, PipelineTimings timings) {
+        runModel(frame, 0, 0, frame.width, frame.height, timings);
+    }
+
+    /** One throwaway inference on whatever the input buffer holds (delegate/allocation warm-up). */
+    public void warmUp() {
+        inputBuffer.rewind();
+        outputBuffer.rewind();
+        model.run(inputBuffer, outputBuffer);
+    }
+
+    /** The raw output tensor of the last inference (direct, native byte order). */
+    public ByteBuffer outputBuffer() {
+        return outputBuffer;
+    }
+
+    /**
+     * Output layout, quantization, letterbox and thresholds of the last inference, as
+     * nativeUpdateWithModelOutput reads them: [numDetails, numPredictions, outputType
+     * (TensorType ordinal), outputScale, outputZeroPoint, modelW, modelH, scale, padX,
+     * padY, confThreshold, nmsThreshold]. The array is reused.
+     */
+    public float[] nativeDecodeParams() {
+        int[] outShape = model.outputShape();
+        decodeParams[0] = outShape[1];
+        decodeParams[1] = outShape[2];
+        decodeParams[2] = model.outputType().ordinal();
+        decodeParams[3] = model.outputScale();
+        decodeParams[4] = model.outputZeroPoint();
+        decodeParams[5] = modelW;
+        decodeParams[6] = modelH;
+        decodeParams[7] = scale;
+        decodeParams[8] = padX;
+        decodeParams[9] = padY;
+        decodeParams[10] = confidenceThreshold;
+        decodeParams[11] = nmsThreshold;
+        return decodeParams;
+    }
+
+    /** Letterbox one region, run the model and append its candidates (model pixels). */
+    private boolean runRegion(RgbFrame frame, int cropX, int cropY, int cropW, int cropH,
+                              DetectionCandidates into, PipelineTimings timings) {
+        runModel(frame, cropX, cropY, cropW, cropH, timings);
+
+        // --- [4. Postprocessing] ---
+        long startPost = System.nanoTime();
+        boolean ok = decodeCandidates(into);
+        long endPost = System.nanoTime();
+        timings.totalPostprocessingNanos += (endPost - startPost);
+        timings.trace(TraceRecorder.Stage.POSTPROCESSING, startPost, endPost);
+        return ok;
+    }
+
+    private void runModel(RgbFrame frame, int cropX, int cropY, int cropW, int cropH, PipelineTimings timings) {
+        // --- [1. Preprocessing] ---
+        long startPre = System.nanoTime();
+        letterbox(frame, cropX, cropY, cropW, cropH);
+        long endPre = System.nanoTime();
+        timings.totalPreprocessingNanos += (endPre - startPre);
+        timings.trace(TraceRecorder.Stage.PREPROCESSING, startPre, endPre);
+
+        // --- [2. Format Conversion] ---
+        long startConvert = System.nanoTime();
+        convertInput();
+        long endConvert = System.nanoTime();
+        timings.totalFormatConversionNanos += (endConvert - startConvert);
+        timings.trace(TraceRecorder.Stage.FORMAT_CONVERSION, startConvert, endConvert);
+
+        // --- [3. Inference] ---
+        long startInfer = System.nanoTime();
+        outputBuffer.rewind();
+        model.run(inputBuffer, outputBuffer);
+        long endInfer = System.nanoTime();
+        timings.totalInferenceNanos += (endInfer - startInfer);
+        timings.trace(TraceRecorder.Stage.INFERENCE, startInfer, endInfer);
+    }
+
+    private static int bytesPerElement(ModelRunner.TensorType type) {
+        return type == ModelRunner.TensorType.FLOAT32 ? 4 : 1;
+    }
+
+    private void updateGeometry(int originalW, int originalH) {
+        if (originalW == geometryW && originalH == geometryH) {
+            return;
+        }
+        geometryW = originalW;
+        geometryH = originalH;
+        scale = Math.min((float) modelW / originalW, (float) modelH / originalH);
+        newW = Math.round(originalW * scale);
+        newH = Math.round(originalH * scale);
+        padX = (modelW - newW) / 2;
+        padY = (modelH - newH) / 2;
+
+        // Bilinear source columns (pixel-center aligned, like a filtered Bitmap scale)
+        if (xIndex.length < newW) {
+            xIndex = new int[newW];
+            xWeight = new float[newW];
+        }
+        float sx = (float) originalW / newW;
+        for (int x = 0; x < newW; x++) {
+            float fx = Math.max(0f, (x + 0.5f) * sx - 0.5f);
+            int x0 = Math.min((int) fx, originalW - 1);
+            xIndex[x] = x0;
+            xWeight[x] = x0 < originalW - 1 ? fx - x0 : 0f;
+        }
+        Arrays.fill(letterbox, PAD_COLOR);
+    }
+
+    /** Bilinear resize of a region (the whole frame, or a crop) into the padded model-sized canvas. */
+    private void letterbox(RgbFrame frame, int cropX, int cropY, int srcW, int srcH) {
+        int stride = frame.width;
+        updateGeometry(srcW, srcH);
+
+        if (frame.rgb != null) {
+            letterboxPacked(frame.rgb, stride, cropX, cropY, srcW, srcH);
+            return;
+        }
+
+        int[] src = frame.pixels;
+        float sy = (float) srcH / newH;
+        for (int y = 0; y < newH; y++) {
+            float fy = Math.max(0f, (y + 0.5f) * sy - 0.5f);
+            int y0 = Math.min((int) fy, srcH - 1);
+            int y1 = Math.min(y0 + 1, srcH - 1);
+            float wy = fy - y0;
+            int row0 = (cropY + y0) * stride + cropX;
+            int row1 = (cropY + y1) * stride + cropX;
+            int dst = (y + padY) * modelW + padX;
+            for (int x = 0; x < newW; x++) {
+                int x0 = xIndex[x];
+                int x1 = xWeight[x] > 0f ? x0 + 1 : x0;
+                float wx = xWeight[x];
+                int p00 = src[row0 + x0];
+                int p01 = src[row0 + x1];
+                int p10 = src[row1 + x0];
+                int p11 = src[row1 + x1];
+                int r = lerp2(p00 >> 16, p01 >> 16, p10 >> 16, p11 >> 16, wx, wy);
+                int g = lerp2(p00 >> 8, p01 >> 8, p10 >> 8, p11 >> 8, wx, wy);
+                int b = lerp2(p00, p01, p10, p11, wx, wy);
+                letterbox[dst + x] = 0xFF000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+
+    /** Same resize from packed RGB bytes (a frame mapped from the frame cache). */
+    private void letterboxPacked(ByteBuffer src, int stride, int cropX, int cropY, int srcW, int srcH) {
+        float sy = (float) srcH / newH;
+        for (int y = 0; y < newH; y++) {
+            float fy = Math.max(0f, (y + 0.5f) * sy - 0.5f);
+            int y0 = Math.min((int) fy, srcH - 1);
+            int y1 = Math.min(y0 + 1, srcH - 1);
+            float wy = fy - y0;
+            int row0 = (cropY + y0) * stride + cropX;
+            int row1 = (cropY + y1) * stride + cropX;
+            int dst = (y + padY) * modelW + padX;
+            for (int x = 0; x < newW; x++) {
+                int x0 = xIndex[x];
+                int x1 = xWeight[x] > 0f ? x0 + 1 : x0;
+                float wx = xWeight[x];
+                int i00 = (row0 + x0) * 3;
+                int i01 = (row0 + x1) * 3;
+                int i10 = (row1 + x0) * 3;
+                int i11 = (row1 + x1) * 3;
+                int r = lerp2(src.get(i00), src.get(i01), src.get(i10), src.get(i11), wx, wy);
+                int g = lerp2(src.get(i00 + 1), src.get(i01 + 1), src.get(i10 + 1), src.get(i11 + 1), wx, wy);
+                int b = lerp2(src.get(i00 + 2), src.get(i01 + 2), src.get(i10 + 2), src.get(i11 + 2), wx, wy);
+                letterbox[dst + x] = 0xFF000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+
+    private static int lerp2(int c00, int c01, int c10, int c11, float wx, float wy) {
+        float top = (c00 & 0xFF) + ((c01 & 0xFF) - (c00 & 0xFF)) * wx;
+        float bottom = (c10 & 0xFF) + ((c11 & 0xFF) - (c10 & 0xFF)) * wx;
+        return (int) (top + (bottom - top) * wy + 0.5f);
+    }
+
+    private void convertInput() {
+        ModelRunner.TensorType type = model.inputType();
+        final int zeroPoint = model.inputZeroPoint();
+        inputBuffer.rewind();
+
+        if (type == ModelRunner.TensorType.FLOAT32) {
+            // Model is FLOAT32: Convert 0-255 int to 0.0f-1.0f float
+            for (int pixel : letterbox) {
+                inputBuffer.putFloat(((pixel >> 16) & 0xFF) / 255.0f);
+                inputBuffer.putFloat(((pixel >> 8) & 0xFF) / 255.0f);
+                inputBuffer.putFloat((pixel & 0xFF) / 255.0f);
+            }
+        } else {
+            // UINT8 (zeroPoint usually 0) or INT8 (zeroPoint often 128): shift into the model's range
+            for (int pixel : letterbox) {
+                inputBuffer.put((byte) (((pixel >> 16) & 0xFF) - zeroPoint));
+                inputBuffer.put((byte) (((pixel >> 8) & 0xFF) - zeroPoint));
+                inputBuffer.put((byte) ((pixel & 0xFF) - zeroPoint));
+            }
+        }
+        inputBuffer.rewind();
+    }
+
+    private float outputValue(int index, boolean isFloat, boolean isUint8, float scaleQ, int zp) {
+        if (isFloat) {
+            return outputBuffer.getFloat(index * 4);
+        }
+        byte raw = outputBuffer.get(index);
+        int val = isUint8 ? (raw & 0xFF) : raw;
+        return (val - zp) * scaleQ;
+    }
+
+    /** Append this inference's candidates above the confidence threshold; false if the output is unusable. */
+    private boolean decodeCandidates(DetectionCandidates into) {
+        int[] outShape = model.outputShape();
+        int numDetails = outShape[1];
+        int numPredictions = outShape[2];
+
+        if (numDetails < 5) {
+            log.e("Model output is too small. Expected numDetails >= 5, but got " + numDetails);
+            return false;
+        }
+
+        ModelRunner.TensorType outType = model.outputType();
+        boolean isFloat = outType == ModelRunner.TensorType.FLOAT32;
+        boolean isUint8 = outType == ModelRunner.TensorType.UINT8;
+        float scaleQ = model.outputScale();
+        int zp = model.outputZeroPoint();
+
+        // Output is [1, numDetails, numPredictions]: value (j, i) is at j * numPredictions + i.
+        // Class scores start at row 4; the best one gives classId = j - 4.
+        for (int i = 0; i < numPredictions; i++) {
+            float maxScore = -1.0f;
+            int classId = -1;
+            for (int j = 4; j < numDetails; j++) {
+                float score = outputValue(j * numPredictions + i, isFloat, isUint8, scaleQ, zp);
+                if (score > maxScore) {
+                    maxScore = score;
+                    classId = j - 4;
+                }
+            }
+
+            // All classes go to the tracker; the person filter is applied when writing results
+            if (maxScore >= confidenceThreshold) {
+                float cx = outputValue(i, isFloat, isUint8, scaleQ, zp);
+                float cy = outputValue(numPredictions + i, isFloat, isUint8, scaleQ, zp);
+                float w_norm = outputValue(2 * numPredictions + i, isFloat, isUint8, scaleQ, zp);
+                float h_norm = outputValue(3 * numPredictions + i, isFloat, isUint8, scaleQ, zp);
+
+                // Convert from normalized [0,1] to pixel coordinates [0, modelW]
+                float pixel_w = w_norm * modelW;
+                float pixel_h = h_norm * modelH;
+                float left = (cx * modelW) - (pixel_w / 2f);
+                float top = (cy * modelH) - (pixel_h / 2f);
+                into.add(left, top, left + pixel_w, top + pixel_h, maxScore, classId);
+            }
+        }
+
+        return true;
+    }
+}
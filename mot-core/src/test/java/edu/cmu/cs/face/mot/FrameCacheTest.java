@@ -0,0 +1,224 @@
+package edu.cmu.cs.face.mot;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FrameCacheTest {
+    private static final int W = 32;
+    private static final int H = 24;
+    // One frame is 4 * W * H = 3072 bytes, a page once aligned
+    private static final long PAGE = 4096;
+
+    private static final PipelineLog LOG = new PipelineLog() {
+        @Override
+        public void i(String msg) {
+        }
+
+        @Override
+        public void w(String msg) {
+        }
+
+        @Override
+        public void e(String msg, Throwable tr) {
+        }
+    };
+
+    @Rule
+    public final TemporaryFolder temp = new TemporaryFolder();
+
+    private File cacheDir;
+    private File sequenceDir;
+
+    @Before
+    public void setUp() throws IOException {
+        cacheDir = new File(temp.getRoot(), "cache");
+        sequenceDir = temp.newFolder("MOT17-02");
+    }
+
+    /** Source images: only their name, size and mtime matter to the cache. */
+    private List<File> images(int count) throws IOException {
+        List<File> images = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            File image = new File(sequenceDir, String.format("%06d.jpg", i + 1));
+            if (!image.isFile()) {
+                write(image, 100 + i);
+            }
+            images.add(image);
+        }
+        return images;
+    }
+
+    private static void write(File file, int bytes) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[bytes]);
+        }
+    }
+
+    private static RgbFrame frame(int index) {
+        RgbFrame frame = new RgbFrame();
+        frame.setSize(W, H);
+        for (int p = 0; p < W * H; p++) {
+            int r = (p * 7 + index * 31) & 0xFF;
+            int g = (p * 3 + index * 17) & 0xFF;
+            int b = (p + index * 101) & 0xFF;
+            frame.pixels[p] = 0xFF000000 | r << 16 | g << 8 | b;
+        }
+        return frame;
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] out = new byte[buffer.remaining()];
+        buffer.duplicate().get(out);
+        return out;
+    }
+
+    /** The cached planes of {@code cached} are those of frame {@code index}. */
+    private static void assertFrame(int index, RgbFrame cached) {
+        RgbFrame source = frame(index);
+        assertEquals(W, cached.width);
+        assertEquals(H, cached.height);
+        byte[] gray = new byte[W * H];
+        byte[] rgb = new byte[3 * W * H];
+        for (int p = 0; p < W * H; p++) {
+            int r = (source.pixels[p] >> 16) & 0xFF;
+            int g = (source.pixels[p] >> 8) & 0xFF;
+            int b = source.pixels[p] & 0xFF;
+            gray[p] = (byte) ((r + g + b) / 3);
+            rgb[3 * p] = (byte) r;
+            rgb[3 * p + 1] = (byte) g;
+            rgb[3 * p + 2] = (byte) b;
+        }
+        assertArrayEquals(gray, bytes(cached.gray));
+        assertArrayEquals(rgb, bytes(cached.rgb));
+    }
+
+    private FrameCache build(List<File> images, long segmentBytes, int... failed) {
+        FrameCache cache = FrameCache.open(cacheDir, sequenceDir, images, LOG, segmentBytes);
+        assertNotNull(cache);
+        assertFalse(cache.isMapped());
+        for (int i = 0; i < images.size(); i++) {
+            if (!contains(failed, i)) {
+                cache.write(i, frame(i));
+            }
+        }
+        cache.finish();
+        return cache;
+    }
+
+    private static boolean contains(int[] values, int value) {
+        for (int v : values) {
+            if (v == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void builtFramesMapBackByteForByte() throws IOException {
+        List<File> images = images(4);
+        // Frame 2 failed to decode while building
+        build(images, FrameCache.SEGMENT_BYTES, 2);
+
+        FrameCache cache = FrameCache.open(cacheDir, sequenceDir, images, LOG);
+        assertNotNull(cache);
+        assertTrue(cache.isMapped());
+        assertEquals(1, cache.segmentCount());
+        RgbFrame frame = new RgbFrame();
+        for (int i = 0; i < images.size(); i++) {
+            if (i == 2) {
+                assertFalse(cache.read(i, frame));
+                continue;
+            }
+            assertTrue(cache.read(i, frame));
+            assertFrame(i, frame);
+        }
+        // Only the finished file is left
+        File[] files = cacheDir.listFiles();
+        assertEquals(1, files.length);
+        assertTrue(files[0].getName().endsWith(FrameCache.SUFFIX));
+    }
+
+    @Test
+    public void framesAreSplitAcrossSegments() throws IOException {
+        List<File> images = images(5);
+        // Two aligned frames per segment: [0, 1], [2, 3], [4]
+        long segmentBytes = 2 * PAGE;
+        build(images, segmentBytes);
+
+        FrameCache cache = FrameCache.open(cacheDir, sequenceDir, images, LOG, segmentBytes);
+        assertTrue(cache.isMapped());
+        assertEquals(3, cache.segmentCount());
+        RgbFrame frame = new RgbFrame();
+        for (int i = images.size() - 1; i >= 0; i--) {
+            assertTrue(cache.read(i, frame));
+            assertFrame(i, frame);
+        }
+
+        // A failed frame does not take up room in a segment: [0, 1], [3, 4]
+        sequenceDir = temp.newFolder("MOT17-04");
+        images = images(5);
+        build(images, segmentBytes, 2);
+        cache = FrameCache.open(cacheDir, sequenceDir, images, LOG, segmentBytes);
+        assertEquals(2, cache.segmentCount());
+        for (int i : new int[] {0, 1, 3, 4}) {
+            assertTrue(cache.read(i, frame));
+            assertFrame(i, frame);
+        }
+    }
+
+    @Test
+    public void staleKeyOrImageListRebuilds() throws IOException {
+        List<File> images = images(3);
+        build(images, FrameCache.SEGMENT_BYTES);
+        assertTrue(FrameCache.open(cacheDir, sequenceDir, images, LOG).isMapped());
+
+        // A source file changed since the build
+        write(images.get(1), 500);
+        FrameCache rebuilt = FrameCache.open(cacheDir, sequenceDir, images, LOG);
+        assertFalse(rebuilt.isMapped());
+        rebuilt.close();
+
+        build(images, FrameCache.SEGMENT_BYTES);
+        assertTrue(FrameCache.open(cacheDir, sequenceDir, images, LOG).isMapped());
+
+        // The image list grew
+        List<File> more = images(4);
+        FrameCache grown = build(more, FrameCache.SEGMENT_BYTES);
+        assertFalse(grown.isMapped());
+        FrameCache cache = FrameCache.open(cacheDir, sequenceDir, more, LOG);
+        assertTrue(cache.isMapped());
+        RgbFrame frame = new RgbFrame();
+        for (int i = 0; i < more.size(); i++) {
+            assertTrue(cache.read(i, frame));
+            assertFrame(i, frame);
+        }
+        // and the shorter list no longer matches
+        assertFalse(FrameCache.open(cacheDir, sequenceDir, images, LOG).isMapped());
+    }
+
+    @Test
+    public void abandonedBuildLeavesNoCache() throws IOException {
+        List<File> images = images(3);
+        FrameCache cache = FrameCache.open(cacheDir, sequenceDir, images, LOG);
+        cache.write(0, frame(0));
+        cache.close();
+        assertEquals(0, cacheDir.listFiles().length);
+        assertFalse(FrameCache.open(cacheDir, sequenceDir, images, LOG).isMapped());
+    }
+}
@@ -0,0 +1,170 @@
+package edu.cmu.cs.face.mot;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class FrameGateTest {
+    private static final int W = 320;
+    private static final int H = 240;
+    private static final float THRESHOLD = 4f;
+
+    private static FrameGate gate(int maxSkips) {
+        PipelineConfig config = new PipelineConfig();
+        config.frameGateThreshold = THRESHOLD;
+        config.frameGateMaxSkips = maxSkips;
+        return new FrameGate(config);
+    }
+
+    /** Smooth gradient with some texture, mid-range so brightness can move both ways. */
+    private static byte[] scene(int w, int h) {
+        byte[] luma = new byte[w * h];
+        Random random = new Random(3);
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                luma[y * w + x] = (byte) (60 + 100 * x / w + 40 * y / h + random.nextInt(8));
+            }
+        }
+        return luma;
+    }
+
+    private static byte[] brighter(byte[] luma, int delta) {
+        byte[] out = new byte[luma.length];
+        for (int i = 0; i < luma.length; i++) {
+            out[i] = (byte) ((luma[i] & 0xFF) + delta);
+        }
+        return out;
+    }
+
+    /** {@code luma} with a white size x size square at (x, y). */
+    private static byte[] withSquare(byte[] luma, int x, int y, int size) {
+        byte[] out = luma.clone();
+        for (int r = y; r < y + size; r++) {
+            Arrays.fill(out, r * W + x, r * W + x + size, (byte) 255);
+        }
+        return out;
+    }
+
+    @Test
+    public void unchangedFramesSkipAndChangedFramesDoNot() {
+        FrameGate gate = gate(100);
+        byte[] frame = scene(W, H);
+
+        // Nothing to compare the first frame with
+        assertFalse(gate.skip(frame, W, H));
+        assertTrue(gate.skip(frame.clone(), W, H));
+        assertTrue(gate.skip(frame.clone(), W, H));
+        assertFalse(gate.skip(brighter(frame, 20), W, H));
+        // The changed frame is the new reference
+        assertTrue(gate.skip(brighter(frame, 20), W, H));
+    }
+
+    @Test
+    public void smallObjectInOneBlockIsAChange() {
+        FrameGate gate = gate(100);
+        byte[] frame = scene(W, H);
+        assertFalse(gate.skip(frame, W, H));
+
+        // 12 px is well under 1% of the frame, but most of one 8x8-cell block (~27 px)
+        byte[] square = withSquare(frame, 100, 100, 12);
+        assertFalse(gate.skip(square, W, H));
+        // Moving by a few pixels still shifts the cells it crosses
+        assertFalse(gate.skip(withSquare(frame, 106, 100, 12), W, H));
+        assertTrue(gate.skip(withSquare(frame, 106, 100, 12), W, H));
+    }
+
+    @Test
+    public void thresholdIsPerBlockMeanDifference() {
+        FrameGate gate = gate(100);
+        byte[] frame = scene(W, H);
+        assertFalse(gate.skip(frame, W, H));
+
+        // A uniform step changes every cell by the step
+        assertTrue(gate.skip(brighter(frame, (int) THRESHOLD - 1), W, H));
+        assertFalse(gate.skip(brighter(frame, (int) THRESHOLD), W, H));
+    }
+
+    @Test
+    public void slowChangesAddUpAgainstTheLastProcessedFrame() {
+        FrameGate gate = gate(100);
+        byte[] frame = scene(W, H);
+        assertFalse(gate.skip(frame, W, H));
+
+        // +1 per frame never crosses the threshold frame to frame, but does against
+        // the reference, so every fourth frame is processed and becomes the new reference
+        boolean[] skipped = new boolean[12];
+        for (int i = 0; i < skipped.length; i++) {
+            skipped[i] = gate.skip(brighter(frame, i + 1), W, H);
+        }
+        boolean[] expected = new boolean[12];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = (i + 1) % (int) THRESHOLD != 0;
+        }
+        assertArrayEquals(expected, skipped);
+    }
+
+    @Test
+    public void maxSkipsForcesAProcessedFrame() {
+        FrameGate gate = gate(3);
+        byte[] frame = scene(W, H);
+
+        boolean[] skipped = new boolean[9];
+        for (int i = 0; i < skipped.length; i++) {
+            skipped[i] = gate.skip(frame, W, H);
+        }
+        assertArrayEquals(new boolean[] {false, true, true, true, false, true, true, true, false}, skipped);
+
+        FrameGate never = gate(0);
+        assertFalse(never.skip(frame, W, H));
+        assertFalse(never.skip(frame, W, H));
+    }
+
+    @Test
+    public void reducedSizeFramesCompareWithFullSize() {
+        FrameGate gate = gate(100);
+        assertFalse(gate.skip(scene(W, H), W, H));
+        // The same scene decoded at half size samples the same frame-relative spots
+        byte[] half = new byte[(W / 2) * (H / 2)];
+        byte[] full = scene(W, H);
+        for (int y = 0; y < H / 2; y++) {
+            for (int x = 0; x < W / 2; x++) {
+                half[y * (W / 2) + x] = full[(2 * y) * W + 2 * x];
+            }
+        }
+        assertTrue(gate.skip(half, W / 2, H / 2));
+
+        // Another aspect ratio has nothing to compare with
+        assertFalse(gate.skip(scene(W, W), W, W));
+    }
+
+    @Test
+    public void stateRoundTripKeepsReferenceAndSkips() {
+        FrameGate gate = gate(3);
+        byte[] frame = scene(W, H);
+        assertNull(gate.saveState());
+        assertFalse(gate.skip(frame, W, H));
+        assertTrue(gate.skip(frame, W, H));
+        byte[] state = gate.saveState();
+
+        FrameGate resumed = gate(3);
+        resumed.loadState(state);
+        // Same reference, and one of the three skips already used
+        assertTrue(resumed.skip(frame, W, H));
+        assertTrue(resumed.skip(frame, W, H));
+        assertFalse(resumed.skip(frame, W, H));
+        assertFalse(resumed.skip(brighter(frame, 3 * (int) THRESHOLD), W, H));
+
+        // A malformed state resets
+        FrameGate broken = gate(3);
+        broken.loadState(Arrays.copyOf(state, state.length - 1));
+        assertFalse(broken.skip(frame, W, H));
+        assertEquals(12 + FrameGate.THUMB_WIDTH * 72, state.length);
+    }
+}
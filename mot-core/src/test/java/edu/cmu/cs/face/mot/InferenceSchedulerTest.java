@@ -0,0 +1,165 @@
+package edu.cmu.cs.face.mot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class InferenceSchedulerTest {
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private static final PipelineLog LOG = new PipelineLog() {
+        @Override
+        public void i(String msg) {
+        }
+
+        @Override
+        public void w(String msg) {
+        }
+
+        @Override
+        public void e(String msg, Throwable tr) {
+        }
+    };
+
+    /** Model with no detections whose inference blocks until released. */
+    private static final class GateModel implements ModelRunner {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public int[] inputShape() {
+            return new int[] {1, 32, 32, 3};
+        }
+
+        @Override
+        public TensorType inputType() {
+            return TensorType.FLOAT32;
+        }
+
+        @Override
+        public int inputZeroPoint() {
+            return 0;
+        }
+
+        @Override
+        public int[] outputShape() {
+            return new int[] {1, 5, 1};
+        }
+
+        @Override
+        public TensorType outputType() {
+            return TensorType.FLOAT32;
+        }
+
+        @Override
+        public float outputScale() {
+            return 1f;
+        }
+
+        @Override
+        public int outputZeroPoint() {
+            return 0;
+        }
+
+        @Override
+        public void run(ByteBuffer input, ByteBuffer output) {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static RgbFrame frame() {
+        RgbFrame frame = new RgbFrame();
+        frame.setSize(64, 48);
+        return frame;
+    }
+
+    /** Runs detect for {@code stream} on its own thread; the outcome lands in {@code outcome}. */
+    private static Thread submit(InferenceScheduler scheduler, int stream, AtomicReference<Object> outcome) {
+        Thread t = new Thread(() -> {
+            try {
+                outcome.set(scheduler.detect(stream, frame(), 0, new PipelineTimings()));
+            } catch (InterruptedException | RuntimeException e) {
+                outcome.set(e);
+            }
+        });
+        t.start();
+        return t;
+    }
+
+    private static void awaitWaiting(Thread t) throws InterruptedException {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (t.getState() != Thread.State.WAITING && System.nanoTime() < end) {
+            Thread.sleep(1);
+        }
+        assertEquals(Thread.State.WAITING, t.getState());
+    }
+
+    @Test
+    public void interruptedWaitingRequestIsWithdrawn() throws InterruptedException {
+        GateModel model = new GateModel();
+        try (InferenceScheduler scheduler = new InferenceScheduler(Collections.singletonList(model),
+                new PipelineConfig(), InferenceScheduler.Policy.ROUND_ROBIN, 2, LOG)) {
+            AtomicReference<Object> first = new AtomicReference<>();
+            AtomicReference<Object> second = new AtomicReference<>();
+            Thread busy = submit(scheduler, 0, first);
+            assertTrue(model.entered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+            // Stream 1 queues behind the only interpreter and gives up
+            Thread queued = submit(scheduler, 1, second);
+            awaitWaiting(queued);
+            queued.interrupt();
+            queued.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+            assertTrue(second.get() instanceof InterruptedException);
+
+            model.release.countDown();
+            busy.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+            assertTrue(first.get() instanceof float[]);
+            // The withdrawn request was never run
+            assertEquals(1, scheduler.stats(0).keyframes);
+            assertEquals(0, scheduler.stats(1).keyframes);
+
+            // The stream can submit again
+            assertEquals(0, scheduler.detect(1, frame(), 0, new PipelineTimings()).length);
+            assertEquals(1, scheduler.stats(1).keyframes);
+        }
+    }
+
+    @Test
+    public void interruptedRequestInServiceIsWaitedOut() throws InterruptedException {
+        GateModel model = new GateModel();
+        try (InferenceScheduler scheduler = new InferenceScheduler(Collections.singletonList(model),
+                new PipelineConfig(), InferenceScheduler.Policy.ROUND_ROBIN, 1, LOG)) {
+            AtomicReference<Object> outcome = new AtomicReference<>();
+            Thread caller = submit(scheduler, 0, outcome);
+            assertTrue(model.entered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            awaitWaiting(caller);
+
+            // The interpreter still reads the caller's frame, so detect does not return yet
+            caller.interrupt();
+            caller.join(100);
+            assertTrue(caller.isAlive());
+            assertEquals(null, outcome.get());
+
+            model.release.countDown();
+            caller.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+            assertTrue(outcome.get() instanceof InterruptedException);
+            assertEquals(1, scheduler.stats(0).keyframes);
+        }
+    }
+}
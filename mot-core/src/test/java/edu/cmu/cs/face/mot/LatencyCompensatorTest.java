@@ -0,0 +1,152 @@
+package edu.cmu.cs.face.mot;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class LatencyCompensatorTest {
+    private static final int W = 640;
+    private static final int H = 480;
+    private static final long FRAME_NANOS = 33_000_000L;
+    private static final float EPS = 1e-5f;
+
+    private static float[] track(float cx, float cy, float w, float h, int trackId) {
+        return new float[] {cx, cy, w, h, 0, 0.9f, trackId};
+    }
+
+    private static float[] detection(float cx, float cy, float w, float h, int classId) {
+        return new float[] {cx, cy, w, h, classId, 0.8f};
+    }
+
+    /** Kalman state row of nativeGetTrackStates with the given velocities. */
+    private static float[] state(int trackId, float vx, float vy, float vw, float vh) {
+        return new float[] {trackId, 0, 0, 0, 0, vx, vy, vw, vh};
+    }
+
+    /** Frames 0..frames-1 with track 1 moving right by {@code step} per frame. */
+    private static LatencyCompensator moving(int frames, float step) {
+        LatencyCompensator compensator = new LatencyCompensator();
+        for (int f = 0; f < frames; f++) {
+            compensator.record(f, f * FRAME_NANOS, track(0.2f + f * step, 0.5f, 0.1f, 0.2f, 1));
+        }
+        return compensator;
+    }
+
+    @Test
+    public void detectionFollowsTheRecordedTrack() {
+        LatencyCompensator compensator = moving(4, 0.01f);
+        float[] late = detection(0.21f, 0.5f, 0.1f, 0.2f, 0);
+
+        float[] out = compensator.project(late, 1, 3 * FRAME_NANOS, null, W, H);
+        assertArrayEquals(detection(0.23f, 0.5f, 0.1f, 0.2f, 0), out, EPS);
+        // The input is not modified
+        assertEquals(0.21f, late[0], 0);
+
+        LatencyCompensator.Stats stats = compensator.stats();
+        assertEquals(1, stats.sets);
+        assertEquals(3, stats.framesLate);
+        assertEquals(2 * FRAME_NANOS, stats.nanosLate);
+        assertEquals(1, stats.followed);
+        assertEquals(0.02 * W, stats.shiftPixels, 1e-3);
+    }
+
+    @Test
+    public void kalmanVelocityCoversTheTimeAfterTheNewestFrame() {
+        LatencyCompensator compensator = moving(4, 0.01f);
+        // Another track's state comes first
+        float[] states = concat(state(9, 5, 5, 5, 5), state(1, 0.3f, -0.1f, 0.05f, 0.1f));
+
+        // 100 ms after the newest frame
+        long target = 3 * FRAME_NANOS + 100_000_000L;
+        float[] out = compensator.project(detection(0.21f, 0.5f, 0.1f, 0.2f, 0), 1, target, states, W, H);
+        assertArrayEquals(detection(0.23f + 0.03f, 0.5f - 0.01f, 0.1f * 0.105f / 0.1f, 0.2f * 0.21f / 0.2f, 0),
+                out, EPS);
+    }
+
+    @Test
+    public void lostTrackIsPredictedForAtMostTheLimit() {
+        LatencyCompensator compensator = moving(3, 0.01f);
+        // The track is lost on the newest frame
+        compensator.record(3, 3 * FRAME_NANOS, new float[0]);
+        float[] states = state(1, 0.2f, 0, 0, 0);
+
+        long target = 3 * FRAME_NANOS;
+        float[] out = compensator.project(detection(0.2f, 0.5f, 0.1f, 0.2f, 0), 0, target, states, W, H);
+        // Seen up to frame 2, then one frame period at the Kalman velocity
+        assertEquals(0.22f + 0.2f * (target - 2 * FRAME_NANOS) / 1e9f, out[0], EPS);
+        assertEquals(1, compensator.stats().predicted);
+
+        long far = 2 * FRAME_NANOS + 10 * LatencyCompensator.MAX_EXTRAPOLATION_NANOS;
+        out = compensator.project(detection(0.2f, 0.5f, 0.1f, 0.2f, 0), 0, far, states, W, H);
+        assertEquals(0.22f + 0.2f * LatencyCompensator.MAX_EXTRAPOLATION_NANOS / 1e9f, out[0], EPS);
+    }
+
+    @Test
+    public void shrinkingBoxKeepsItsLastSize() {
+        LatencyCompensator compensator = moving(2, 0);
+        float[] out = compensator.project(detection(0.2f, 0.5f, 0.1f, 0.2f, 0), 0,
+                FRAME_NANOS + 500_000_000L, state(1, 0, 0, -1f, -1f), W, H);
+        assertArrayEquals(detection(0.2f, 0.5f, 0.1f, 0.2f, 0), out, EPS);
+    }
+
+    @Test
+    public void unmatchedDetectionsStay() {
+        LatencyCompensator compensator = moving(4, 0.01f);
+        float[] detections = concat(
+                // Another class at the track
+                detection(0.21f, 0.5f, 0.1f, 0.2f, 2),
+                // No overlap with the track
+                detection(0.8f, 0.2f, 0.1f, 0.2f, 0));
+        float[] out = compensator.project(detections, 1, 3 * FRAME_NANOS, state(1, 1, 1, 0, 0), W, H);
+        assertArrayEquals(detections, out, 0);
+        assertEquals(2, compensator.stats().unmatched);
+    }
+
+    @Test
+    public void findUsesTheNewestRecordedFrameUpToTheCaptureFrame() {
+        LatencyCompensator compensator = new LatencyCompensator();
+        // Frames 1 and 3 were not recorded
+        compensator.record(0, 0, track(0.2f, 0.5f, 0.1f, 0.2f, 1));
+        compensator.record(2, 2 * FRAME_NANOS, track(0.3f, 0.5f, 0.1f, 0.2f, 1));
+        compensator.record(4, 4 * FRAME_NANOS, track(0.4f, 0.5f, 0.1f, 0.2f, 1));
+
+        // Exact frame
+        float[] out = compensator.project(detection(0.3f, 0.5f, 0.1f, 0.2f, 0), 2, 4 * FRAME_NANOS, null, W, H);
+        assertEquals(0.4f, out[0], EPS);
+        // Frame 3 is matched against frame 2; the detection at 0.35 moves by the same 0.1
+        out = compensator.project(detection(0.35f, 0.5f, 0.1f, 0.2f, 0), 3, 4 * FRAME_NANOS, null, W, H);
+        assertEquals(0.45f, out[0], EPS);
+        assertEquals(0, compensator.stats().tooLate);
+    }
+
+    @Test
+    public void historyWrapsAroundAtTheOldestFrame() {
+        int frames = LatencyCompensator.HISTORY + 10;
+        LatencyCompensator compensator = moving(frames, 0.001f);
+        int oldest = frames - LatencyCompensator.HISTORY;
+        long target = (frames - 1) * FRAME_NANOS;
+
+        // The oldest frame kept is found, with its own tracks
+        float cx = 0.2f + oldest * 0.001f;
+        float[] out = compensator.project(detection(cx, 0.5f, 0.1f, 0.2f, 0), oldest, target, null, W, H);
+        assertEquals(0.2f + (frames - 1) * 0.001f, out[0], EPS);
+        assertEquals(0, compensator.stats().tooLate);
+
+        // One before it has left the history and is applied unchanged
+        float[] early = detection(cx - 0.001f, 0.5f, 0.1f, 0.2f, 0);
+        assertArrayEquals(early, compensator.project(early, oldest - 1, target, null, W, H), 0);
+        assertEquals(1, compensator.stats().tooLate);
+
+        compensator.reset();
+        assertArrayEquals(early, compensator.project(early, oldest, target, null, W, H), 0);
+        assertEquals(1, compensator.stats().tooLate);
+    }
+
+    private static float[] concat(float[] a, float[] b) {
+        float[] out = new float[a.length + b.length];
+        System.arraycopy(a, 0, out, 0, a.length);
+        System.arraycopy(b, 0, out, a.length, b.length);
+        return out;
+    }
+}
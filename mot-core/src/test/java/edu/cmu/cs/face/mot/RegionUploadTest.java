@@ -0,0 +1,120 @@
+package edu.cmu.cs.face.mot;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class RegionUploadTest {
+    private static final float EPS = 1e-6f;
+
+    private static RegionUpload twoCrops(int thumbWidth, int thumbHeight) {
+        return new RegionUpload(1920, 1080, thumbWidth, thumbHeight,
+                new int[] {100, 200, 320, 240, 1500, 0, 420, 1080}, 2);
+    }
+
+    private static int[] region(RegionUpload upload, int region) {
+        int[] out = new int[4];
+        upload.region(region, out);
+        return out;
+    }
+
+    private static void assertSameLayout(RegionUpload expected, RegionUpload actual) {
+        assertEquals(expected.frameWidth, actual.frameWidth);
+        assertEquals(expected.frameHeight, actual.frameHeight);
+        assertEquals(expected.thumbWidth, actual.thumbWidth);
+        assertEquals(expected.thumbHeight, actual.thumbHeight);
+        assertEquals(expected.frameId, actual.frameId);
+        assertEquals(expected.captureNanos, actual.captureNanos);
+        assertEquals(expected.regionCount(), actual.regionCount());
+        for (int i = 0; i < expected.regionCount(); i++) {
+            assertArrayEquals(region(expected, i), region(actual, i));
+        }
+    }
+
+    @Test
+    public void metadataRoundTripsWithFrameTag() {
+        RegionUpload upload = twoCrops(320, 180).withFrame(42, 1234567890123L);
+        String text = upload.toMetadata();
+        assertEquals("regions/1 id=42 capture=1234567890123 frame=1920x1080 thumb=320x180"
+                + " roi=100,200,320,240 roi=1500,0,420,1080", text);
+        assertSameLayout(upload, RegionUpload.fromMetadata(text));
+
+        // Tagging does not change the layout itself
+        RegionUpload untagged = twoCrops(0, 0);
+        assertEquals("regions/1 frame=1920x1080 roi=100,200,320,240 roi=1500,0,420,1080",
+                untagged.toMetadata());
+        RegionUpload parsed = RegionUpload.fromMetadata(untagged.toMetadata());
+        assertSameLayout(untagged, parsed);
+        assertFalse(parsed.isTagged());
+    }
+
+    @Test
+    public void taggedFullFrameKeepsOnlyTheTag() {
+        assertEquals("", RegionUpload.FULL_FRAME.toMetadata());
+        assertSame(RegionUpload.FULL_FRAME, RegionUpload.fromMetadata(""));
+
+        RegionUpload tagged = RegionUpload.FULL_FRAME.withFrame(7, 99);
+        assertEquals("regions/1 id=7 capture=99", tagged.toMetadata());
+        RegionUpload parsed = RegionUpload.fromMetadata(tagged.toMetadata());
+        assertTrue(parsed.isFullFrame());
+        assertTrue(parsed.isTagged());
+        assertEquals(7, parsed.frameId);
+        assertEquals(99, parsed.captureNanos);
+        assertEquals(1, parsed.payloads());
+    }
+
+    @Test
+    public void malformedMetadataIsRejected() {
+        assertNull(RegionUpload.fromMetadata("regions/2 frame=1920x1080"));
+        assertNull(RegionUpload.fromMetadata("regions/1 id=x"));
+        assertNull(RegionUpload.fromMetadata("regions/1 frame=1920"));
+        assertNull(RegionUpload.fromMetadata("regions/1 frame=0x1080"));
+        assertNull(RegionUpload.fromMetadata("regions/1 frame=1920x1080 roi=1,2,3"));
+        // Crops without a frame size cannot be mapped back
+        assertNull(RegionUpload.fromMetadata("regions/1 id=1 capture=2 roi=1,2,3,4"));
+    }
+
+    @Test
+    public void payloadsAreThumbnailThenCrops() {
+        RegionUpload withThumb = twoCrops(320, 180);
+        assertEquals(3, withThumb.payloads());
+        assertEquals(-1, withThumb.regionIndex(0));
+        assertEquals(0, withThumb.regionIndex(1));
+        assertEquals(1, withThumb.regionIndex(2));
+
+        RegionUpload cropsOnly = twoCrops(0, 0);
+        assertEquals(2, cropsOnly.payloads());
+        assertEquals(0, cropsOnly.regionIndex(0));
+        assertEquals(1, cropsOnly.regionIndex(1));
+        assertEquals(-1, RegionUpload.FULL_FRAME.regionIndex(0));
+    }
+
+    @Test
+    public void toFrameMapsCropBoxesToTheFrame() {
+        RegionUpload upload = twoCrops(320, 180);
+        // Padding around the box checks the offset
+        float[] box = {9, 0.5f, 0.25f, 0.5f, 1f, 9};
+        upload.toFrame(1, box, 1);
+        // Crop 0 is 320x240 at (100, 200): center (260, 260), size 160x240 px
+        assertArrayEquals(new float[] {9, 260f / 1920, 260f / 1080, 160f / 1920, 240f / 1080, 9}, box, EPS);
+
+        // A box filling crop 1 (420x1080 at (1500, 0)) ends at the frame's right edge
+        float[] whole = {0.5f, 0.5f, 1, 1};
+        upload.toFrame(2, whole, 0);
+        assertArrayEquals(new float[] {1710f / 1920, 0.5f, 420f / 1920, 1f}, whole, EPS);
+        assertEquals(1f, whole[0] + whole[2] / 2, EPS);
+
+        // Thumbnail and full-frame boxes are already in frame coordinates
+        float[] thumb = {0.3f, 0.4f, 0.1f, 0.2f};
+        upload.toFrame(0, thumb, 0);
+        assertArrayEquals(new float[] {0.3f, 0.4f, 0.1f, 0.2f}, thumb, EPS);
+        float[] full = {0.3f, 0.4f, 0.1f, 0.2f};
+        RegionUpload.FULL_FRAME.toFrame(0, full, 0);
+        assertArrayEquals(new float[] {0.3f, 0.4f, 0.1f, 0.2f}, full, EPS);
+    }
+}
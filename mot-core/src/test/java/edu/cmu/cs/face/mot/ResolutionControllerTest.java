@@ -0,0 +1,211 @@
+package edu.cmu.cs.face.mot;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntToDoubleFunction;
+
+import org.junit.Test;
+
+public class ResolutionControllerTest {
+    private static final int FRAME_W = 1920;
+    private static final int FRAME_H = 1080;
+    private static final float TARGET_MS = 50f;
+
+    private static final PipelineLog LOG = new PipelineLog() {
+        @Override
+        public void i(String msg) {
+        }
+
+        @Override
+        public void w(String msg) {
+        }
+
+        @Override
+        public void e(String msg, Throwable tr) {
+        }
+    };
+
+    /** A square model of the given input size; the controller never runs it. */
+    private static final class SizeModel implements ModelRunner {
+        private final int size;
+
+        SizeModel(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public int[] inputShape() {
+            return new int[] {1, size, size, 3};
+        }
+
+        @Override
+        public TensorType inputType() {
+            return TensorType.FLOAT32;
+        }
+
+        @Override
+        public int inputZeroPoint() {
+            return 0;
+        }
+
+        @Override
+        public int[] outputShape() {
+            return new int[] {1, 5, 1};
+        }
+
+        @Override
+        public TensorType outputType() {
+            return TensorType.FLOAT32;
+        }
+
+        @Override
+        public float outputScale() {
+            return 1f;
+        }
+
+        @Override
+        public int outputZeroPoint() {
+            return 0;
+        }
+
+        @Override
+        public void run(ByteBuffer input, ByteBuffer output) {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /** Levels 640, 480 and 320, given smallest first to check the ordering. */
+    private static ResolutionController controller() {
+        PipelineConfig config = new PipelineConfig();
+        config.keyframeLatencyTargetMs = TARGET_MS;
+        List<YoloDetector> detectors = new ArrayList<>();
+        for (int size : new int[] {320, 640, 480}) {
+            detectors.add(new YoloDetector(new SizeModel(size), config, LOG));
+        }
+        return new ResolutionController(detectors, config);
+    }
+
+    /**
+     * Run {@code keyframes} keyframes, each costing {@code latencyMs} of the input size
+     * it was given; returns the input size of each.
+     */
+    private static int[] run(ResolutionController c, int keyframes, IntToDoubleFunction latencyMs, float[] tracks) {
+        int[] sizes = new int[keyframes];
+        for (int k = 0; k < keyframes; k++) {
+            YoloDetector d = c.select(tracks, FRAME_W, FRAME_H);
+            sizes[k] = d.modelWidth();
+            c.record((long) (latencyMs.applyAsDouble(sizes[k]) * 1e6));
+        }
+        return sizes;
+    }
+
+    private static int[] repeat(int size, int times) {
+        int[] out = new int[times];
+        Arrays.fill(out, size);
+        return out;
+    }
+
+    private static int[] concat(int[]... parts) {
+        int length = 0;
+        for (int[] p : parts) {
+            length += p.length;
+        }
+        int[] out = new int[length];
+        int at = 0;
+        for (int[] p : parts) {
+            System.arraycopy(p, 0, out, at, p.length);
+            at += p.length;
+        }
+        return out;
+    }
+
+    private static void assertSizes(int[] expected, int[] actual) {
+        assertEquals(Arrays.toString(expected), Arrays.toString(actual));
+    }
+
+    /** Time proportional to input area: {@code ms640} at 640x640. */
+    private static IntToDoubleFunction byArea(double ms640) {
+        return size -> ms640 * size * size / (640.0 * 640.0);
+    }
+
+    @Test
+    public void singleSlowKeyframeDoesNotStepDown() {
+        ResolutionController c = controller();
+        // 40 ms, a spike to 80 (average 52, over the target once), then 40 again (48.4)
+        double[] ms = {40, 80, 40, 40, 40};
+        int[] sizes = new int[ms.length];
+        for (int k = 0; k < ms.length; k++) {
+            sizes[k] = c.select(null, FRAME_W, FRAME_H).modelWidth();
+            c.record((long) (ms[k] * 1e6));
+        }
+        assertSizes(repeat(640, ms.length), sizes);
+        assertEquals(0, c.stats().stepsDown);
+    }
+
+    @Test
+    public void slowThenFastStepsDownAndBackUp() {
+        ResolutionController c = controller();
+        // Slow device: 640 at 90 ms (480 at 51 ms, 320 at 23 ms). Two keyframes over
+        // the target each step down, 320 is under it
+        int[] slow = run(c, 8, byArea(90), null);
+        assertSizes(concat(repeat(640, 2), repeat(480, 2), repeat(320, 4)), slow);
+        assertEquals(2, c.stats().stepsDown);
+
+        // The device speeds up: 640 at 30 ms. The 480 and 640 averages are from the slow
+        // phase until they are STALE_KEYFRAMES old; then the expected cost is the current
+        // level's average scaled by area, and UP_AFTER keyframes under the headroom step up
+        int[] fast = run(c, 80, byArea(30), null);
+        // 480 was last run at keyframe 4 of 8, so it is stale 26 keyframes into this phase
+        int stale480 = ResolutionController.STALE_KEYFRAMES - (8 - 4);
+        int firstAt480 = stale480 - 1 + ResolutionController.UP_AFTER;
+        assertSizes(repeat(320, firstAt480), Arrays.copyOf(fast, firstAt480));
+        assertEquals(480, fast[firstAt480]);
+        // 480's average starts over from its first fast keyframe (the slow one is stale),
+        // so 640, stale as well, is expected at 30 ms: UP_AFTER keyframes at 480, then
+        // 640 for good (its own stale average does not push it back down)
+        int firstAt640 = firstAt480 + ResolutionController.UP_AFTER;
+        assertSizes(repeat(480, ResolutionController.UP_AFTER), Arrays.copyOfRange(fast, firstAt480, firstAt640));
+        assertSizes(repeat(640, fast.length - firstAt640), Arrays.copyOfRange(fast, firstAt640, fast.length));
+        assertEquals(2, c.stats().stepsUp);
+        assertEquals(2, c.stats().stepsDown);
+    }
+
+    @Test
+    public void largerSizeComesBackOnlyWithHeadroom() {
+        ResolutionController c = controller();
+        run(c, 2, byArea(90), null);
+        // 480 at 24 ms: 640 is expected at 24 * 16 / 9 = 42.7 ms, under the target
+        // but not under the 40 ms headroom, so 480 stays
+        IntToDoubleFunction latency = size -> size == 480 ? 24 : 90;
+        int[] sizes = run(c, 60, latency, null);
+        assertSizes(repeat(480, 60), sizes);
+        assertEquals(0, c.stats().stepsUp);
+    }
+
+    @Test
+    public void smallObjectsStepUpWithoutHeadroom() {
+        ResolutionController c = controller();
+        run(c, 2, byArea(90), null);
+        IntToDoubleFunction latency = size -> size == 480 ? 24 : 42;
+        // A person 54 px tall in the frame is 13.5 px at 480 (scale 0.25), under
+        // SMALL_OBJECT_PIXELS; a small object of another class does not count
+        float[] person = {0.5f, 0.5f, 0.02f, 0.05f, 0, 0.9f, 1};
+        float[] cup = {0.5f, 0.5f, 0.02f, 0.05f, 41, 0.9f, 2};
+
+        int[] others = run(c, ResolutionController.STALE_KEYFRAMES + 5, latency, cup);
+        assertSizes(repeat(480, others.length), others);
+
+        // 640 is stale, expected at 42.7 ms: within the target, and one keyframe suffices
+        int[] sizes = run(c, 3, latency, person);
+        assertSizes(new int[] {640, 640, 640}, sizes);
+        assertEquals(1, c.stats().stepsUp);
+        assertEquals(1, c.stats().smallObjectKeyframes);
+    }
+}
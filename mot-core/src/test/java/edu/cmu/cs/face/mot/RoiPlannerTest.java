@@ -0,0 +1,131 @@
+package edu.cmu.cs.face.mot;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class RoiPlannerTest {
+    private static final int FRAME_W = 1920;
+    private static final int FRAME_H = 1080;
+
+    private static PipelineConfig config(int maxCrops, int fullFrameInterval) {
+        PipelineConfig config = new PipelineConfig();
+        config.roiMaxCrops = maxCrops;
+        config.roiFullFrameInterval = fullFrameInterval;
+        config.roiMargin = 0.5f;
+        config.roiMaxUpscale = 2f;
+        return config;
+    }
+
+    /** Tracker output rows [cx, cy, w, h, classId, conf, trackId], normalized. */
+    private static float[] tracks(float... boxes) {
+        float[] out = new float[boxes.length / 4 * 7];
+        for (int i = 0; i < boxes.length / 4; i++) {
+            System.arraycopy(boxes, i * 4, out, i * 7, 4);
+            out[i * 7 + 5] = 0.9f;
+            out[i * 7 + 6] = i + 1;
+        }
+        return out;
+    }
+
+    /** Plans one keyframe after the full-frame one that starts the cadence. */
+    private static int planSecond(RoiPlanner planner, float[] tracks, int[] crops) {
+        assertEquals(0, planner.plan(tracks, FRAME_W, FRAME_H, crops));
+        return planner.plan(tracks, FRAME_W, FRAME_H, crops);
+    }
+
+    /** Crop {@code crop} covers the box, up to rounding to whole pixels. */
+    private static void assertContains(int[] crops, int crop, float left, float top, float right, float bottom) {
+        int x = crops[crop * 4];
+        int y = crops[crop * 4 + 1];
+        assertTrue(x <= left + 1 && y <= top + 1);
+        assertTrue(x + crops[crop * 4 + 2] >= right - 1 && y + crops[crop * 4 + 3] >= bottom - 1);
+    }
+
+    @Test
+    public void fullFrameEveryIntervalKeyframes() {
+        RoiPlanner planner = new RoiPlanner(320, 320, config(1, 3));
+        float[] t = tracks(0.5f, 0.5f, 0.02f, 0.05f);
+        int[] crops = new int[4];
+
+        int[] planned = new int[7];
+        for (int k = 0; k < planned.length; k++) {
+            planned[k] = planner.plan(t, FRAME_W, FRAME_H, crops);
+        }
+        assertArrayEquals(new int[] {0, 1, 1, 0, 1, 1, 0}, planned);
+        assertEquals(7, planner.keyframes());
+
+        // A resumed run continues the cadence
+        RoiPlanner resumed = new RoiPlanner(320, 320, config(1, 3));
+        resumed.setKeyframes(5);
+        assertEquals(1, resumed.plan(t, FRAME_W, FRAME_H, crops));
+        assertEquals(0, resumed.plan(t, FRAME_W, FRAME_H, crops));
+    }
+
+    @Test
+    public void noTracksIsFullFrame() {
+        RoiPlanner planner = new RoiPlanner(320, 320, config(1, 4));
+        int[] crops = new int[4];
+        assertEquals(0, planSecond(planner, null, crops));
+        assertEquals(0, planner.plan(new float[0], FRAME_W, FRAME_H, crops));
+    }
+
+    @Test
+    public void closestTracksAreMergedFirst() {
+        RoiPlanner planner = new RoiPlanner(320, 320, config(2, 4));
+        // A and B side by side, C across the frame
+        float[] t = tracks(
+                0.20f, 0.5f, 0.02f, 0.05f,
+                0.25f, 0.5f, 0.02f, 0.05f,
+                0.80f, 0.5f, 0.02f, 0.05f);
+        int[] crops = new int[8];
+
+        assertEquals(2, planSecond(planner, t, crops));
+        // Margin 0.5 doubles each box: A spans x 345.6..422.4, B 441.6..518.4, y 486..594
+        assertContains(crops, 0, 345.6f, 486f, 518.4f, 594f);
+        assertEquals(crops[2], crops[3]);
+        // C alone, grown to the minimum size (model / maxUpscale) around its center
+        assertArrayEquals(new int[] {1456, 460, 160, 160}, Arrays.copyOfRange(crops, 4, 8));
+    }
+
+    @Test
+    public void cropsGrowToModelAspectRatio() {
+        RoiPlanner planner = new RoiPlanner(640, 320, config(1, 4));
+        // Tall track: padded 192 x 432 px, grown to 2:1 around its center
+        float[] t = tracks(0.5f, 0.5f, 0.05f, 0.2f);
+        int[] crops = new int[4];
+
+        assertEquals(1, planSecond(planner, t, crops));
+        assertArrayEquals(new int[] {528, 324, 864, 432}, crops);
+    }
+
+    @Test
+    public void cropsAreClampedToTheFrame() {
+        RoiPlanner planner = new RoiPlanner(320, 320, config(1, 4));
+        float[] t = tracks(0.01f, 0.99f, 0.02f, 0.02f);
+        int[] crops = new int[4];
+
+        assertEquals(1, planSecond(planner, t, crops));
+        assertArrayEquals(new int[] {0, FRAME_H - 160, 160, 160}, crops);
+    }
+
+    @Test
+    public void spreadTracksFallBackToFullFrame() {
+        RoiPlanner planner = new RoiPlanner(320, 320, config(1, 4));
+        // One crop over both would be ~1613 px wide: under MIN_GAIN over the letterbox
+        float[] t = tracks(
+                0.1f, 0.5f, 0.02f, 0.05f,
+                0.9f, 0.5f, 0.02f, 0.05f);
+        int[] crops = new int[4];
+
+        assertEquals(0, planSecond(planner, t, crops));
+
+        // With a crop each they are small enough again
+        RoiPlanner two = new RoiPlanner(320, 320, config(2, 4));
+        assertEquals(2, planSecond(two, t, new int[8]));
+    }
+}
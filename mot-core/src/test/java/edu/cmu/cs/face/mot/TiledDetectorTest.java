@@ -0,0 +1,291 @@
+package edu.cmu.cs.face.mot;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TiledDetectorTest {
+    private static final int MODEL_SIZE = 128;
+    private static final int FRAME_W = 400;
+    private static final int FRAME_H = 200;
+
+    private static final PipelineLog LOG = new PipelineLog() {
+        @Override
+        public void i(String msg) {
+        }
+
+        @Override
+        public void w(String msg) {
+        }
+
+        @Override
+        public void e(String msg, Throwable tr) {
+        }
+    };
+
+    /**
+     * Stand-in detector: every white blob of the (FLOAT32) input is one class-0
+     * detection with its bounding box, so what a tile "sees" is what is drawn in it.
+     */
+    static final class BlobModel implements ModelRunner {
+        private static final int MAX_BLOBS = 16;
+        private final boolean[] visited = new boolean[MODEL_SIZE * MODEL_SIZE];
+        private final int[] stack = new int[MODEL_SIZE * MODEL_SIZE];
+
+        @Override
+        public int[] inputShape() {
+            return new int[] {1, MODEL_SIZE, MODEL_SIZE, 3};
+        }
+
+        @Override
+        public TensorType inputType() {
+            return TensorType.FLOAT32;
+        }
+
+        @Override
+        public int inputZeroPoint() {
+            return 0;
+        }
+
+        @Override
+        public int[] outputShape() {
+            return new int[] {1, 5, MAX_BLOBS};
+        }
+
+        @Override
+        public TensorType outputType() {
+            return TensorType.FLOAT32;
+        }
+
+        @Override
+        public float outputScale() {
+            return 1f;
+        }
+
+        @Override
+        public int outputZeroPoint() {
+            return 0;
+        }
+
+        private boolean white(ByteBuffer input, int p) {
+            // Frame objects are white on black; the letterbox padding is mid gray
+            return input.getFloat(p * 12) > 0.6f;
+        }
+
+        @Override
+        public void run(ByteBuffer input, ByteBuffer output) {
+            for (int i = 0; i < 5 * MAX_BLOBS; i++) {
+                output.putFloat(i * 4, 0f);
+            }
+            Arrays.fill(visited, false);
+            int blobs = 0;
+            for (int start = 0; start < visited.length && blobs < MAX_BLOBS; start++) {
+                if (visited[start] || !white(input, start)) {
+                    continue;
+                }
+                int x0 = MODEL_SIZE, y0 = MODEL_SIZE, x1 = -1, y1 = -1;
+                int top = 0;
+                stack[top++] = start;
+                visited[start] = true;
+                while (top > 0) {
+                    int p = stack[--top];
+                    int x = p % MODEL_SIZE;
+                    int y = p / MODEL_SIZE;
+                    x0 = Math.min(x0, x);
+                    y0 = Math.min(y0, y);
+                    x1 = Math.max(x1, x);
+                    y1 = Math.max(y1, y);
+                    int[] next = {x > 0 ? p - 1 : -1, x < MODEL_SIZE - 1 ? p + 1 : -1,
+                            y > 0 ? p - MODEL_SIZE : -1, y < MODEL_SIZE - 1 ? p + MODEL_SIZE : -1};
+                    for (int q : next) {
+                        if (q >= 0 && !visited[q] && white(input, q)) {
+                            visited[q] = true;
+                            stack[top++] = q;
+                        }
+                    }
+                }
+                float s = MODEL_SIZE;
+                output.putFloat(blobs * 4, (x0 + x1 + 1) / 2f / s);
+                output.putFloat((MAX_BLOBS + blobs) * 4, (y0 + y1 + 1) / 2f / s);
+                output.putFloat((2 * MAX_BLOBS + blobs) * 4, (x1 + 1 - x0) / s);
+                output.putFloat((3 * MAX_BLOBS + blobs) * 4, (y1 + 1 - y0) / s);
+                output.putFloat((4 * MAX_BLOBS + blobs) * 4, 0.9f);
+                blobs++;
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static PipelineConfig config(int cols, int rows, boolean includeFullFrame) {
+        PipelineConfig config = new PipelineConfig();
+        config.confidenceThreshold = 0.5f;
+        config.nmsThreshold = 0.4f;
+        config.tileCols = cols;
+        config.tileRows = rows;
+        config.tileOverlap = 0.2f;
+        config.tileIncludeFullFrame = includeFullFrame;
+        return config;
+    }
+
+    private static TiledDetector tiled(int interpreters, PipelineConfig config) {
+        List<YoloDetector> detectors = new ArrayList<>();
+        for (int i = 0; i < interpreters; i++) {
+            detectors.add(new YoloDetector(new BlobModel(), config, LOG));
+        }
+        return new TiledDetector(detectors, config);
+    }
+
+    /** Black frame with white boxes [left, top, right, bottom) in pixels. */
+    private static RgbFrame frame(int w, int h, int... boxes) {
+        RgbFrame frame = new RgbFrame();
+        frame.setSize(w, h);
+        Arrays.fill(frame.pixels, 0xFF000000);
+        for (int b = 0; b < boxes.length; b += 4) {
+            for (int y = boxes[b + 1]; y < boxes[b + 3]; y++) {
+                Arrays.fill(frame.pixels, y * w + boxes[b], y * w + boxes[b + 2], 0xFFFFFFFF);
+            }
+        }
+        return frame;
+    }
+
+    /** The detection closest to the box's center, checked against the box within {@code tolerance} pixels. */
+    private static void assertDetected(float[] detections, int w, int h, float tolerance,
+                                       int left, int top, int right, int bottom) {
+        float cx = (left + right) / 2f;
+        float cy = (top + bottom) / 2f;
+        int best = -1;
+        double bestDistance = Double.MAX_VALUE;
+        for (int d = 0; d < detections.length; d += YoloDetector.FIELDS_PER_DETECTION) {
+            double distance = Math.hypot(detections[d] * w - cx, detections[d + 1] * h - cy);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = d;
+            }
+        }
+        assertTrue("no detection near " + cx + "," + cy, best >= 0 && bestDistance <= tolerance);
+        assertEquals(right - left, detections[best + 2] * w, tolerance);
+        assertEquals(bottom - top, detections[best + 3] * h, tolerance);
+    }
+
+    @Test
+    public void tilesOverlapAndSpanTheFrame() {
+        try (TiledDetector detector = tiled(1, config(3, 2, true))) {
+            detector.detect(frame(1920, 1080), new PipelineTimings());
+            int[] tiles = detector.stats().tiles;
+
+            // Full frame first, then rows of equal tiles flush with the frame edges
+            assertArrayEquals(new int[] {0, 0, 1920, 1080}, Arrays.copyOf(tiles, 4));
+            assertEquals(7 * 4, tiles.length);
+            int tileW = tiles[6];
+            int tileH = tiles[7];
+            assertEquals(739, tileW); // ceil(1920 / (3 - 2 * 0.2))
+            assertEquals(600, tileH); // ceil(1080 / (2 - 0.2))
+            int[] xs = {0, 591, 1181};
+            int[] ys = {0, 480};
+            for (int r = 0; r < 2; r++) {
+                for (int c = 0; c < 3; c++) {
+                    int t = 1 + r * 3 + c;
+                    assertArrayEquals(new int[] {xs[c], ys[r], tileW, tileH}, Arrays.copyOfRange(tiles, t * 4, t * 4 + 4));
+                }
+            }
+            assertEquals(1920, xs[2] + tileW);
+            assertEquals(1080, ys[1] + tileH);
+            // Neighbours overlap by the configured fraction of a tile, up to rounding
+            assertTrue(xs[0] + tileW - xs[1] >= 0.2f * tileW - 1);
+            assertTrue(ys[0] + tileH - ys[1] >= 0.2f * tileH - 1);
+        }
+    }
+
+    @Test
+    public void singleTileAxisIsCentered() {
+        try (TiledDetector detector = tiled(1, config(2, 1, false))) {
+            detector.detect(frame(FRAME_W, FRAME_H), new PipelineTimings());
+            // Two columns of ceil(400 / 1.8) = 223 px; one row spans the full height
+            assertArrayEquals(new int[] {0, 0, 223, 200, 177, 0, 223, 200}, detector.stats().tiles);
+        }
+    }
+
+    @Test
+    public void crossTileNmsKeepsEachObjectOnce() {
+        // Tiles are x 0..223 and 177..400 plus the full frame
+        int[] a = {30, 80, 60, 110};     // left tile only
+        int[] b = {185, 80, 215, 110};   // whole in both tiles and the full frame
+        int[] c = {210, 120, 250, 150};  // cut by the left tile's right border
+        int[] d = {365, 20, 400, 50};    // on the frame edge, not a tile border
+        RgbFrame frame = frame(FRAME_W, FRAME_H,
+                a[0], a[1], a[2], a[3], b[0], b[1], b[2], b[3], c[0], c[1], c[2], c[3], d[0], d[1], d[2], d[3]);
+
+        for (int interpreters : new int[] {1, 3}) {
+            try (TiledDetector detector = tiled(interpreters, config(2, 1, true))) {
+                float[] detections = detector.detect(frame, new PipelineTimings());
+
+                assertEquals(4 * YoloDetector.FIELDS_PER_DETECTION, detections.length);
+                for (int[] box : new int[][] {a, b, c, d}) {
+                    assertDetected(detections, FRAME_W, FRAME_H, 4f, box[0], box[1], box[2], box[3]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void cutCandidatesNeedTheFullFrameToBeDropped() {
+        int[] c = {210, 120, 250, 150};
+        RgbFrame frame = frame(FRAME_W, FRAME_H, c[0], c[1], c[2], c[3]);
+
+        // Without the full-frame pass the left tile's cut-off piece (x 210..223) stays
+        try (TiledDetector detector = tiled(1, config(2, 1, false))) {
+            float[] detections = detector.detect(frame, new PipelineTimings());
+            assertEquals(2 * YoloDetector.FIELDS_PER_DETECTION, detections.length);
+            assertDetected(detections, FRAME_W, FRAME_H, 4f, c[0], c[1], c[2], c[3]);
+        }
+    }
+
+    @Test
+    public void dropCutByRegionKeepsFrameEdges() {
+        DetectionCandidates candidates = new DetectionCandidates();
+        candidates.add(5, 5, 20, 20, 0.9f, 0);        // before `from`: untouched
+        candidates.add(150, 50, 200, 100, 0.8f, 1);   // inside
+        candidates.add(101, 50, 150, 100, 0.7f, 2);   // within the margin of the inner left border
+        candidates.add(250, 50, 299, 100, 0.6f, 3);   // within the margin of the inner right border
+        candidates.add(150, 0, 200, 40, 0.5f, 4);     // on the region top, which is the frame top
+        candidates.add(150, 160, 200, 200, 0.4f, 5);  // on the region bottom, the frame bottom
+
+        candidates.dropCutByRegion(1, 100, 0, 300, 200, FRAME_W, FRAME_H, 2f);
+
+        assertEquals(4, candidates.count);
+        assertArrayEquals(new int[] {0, 1, 4, 5}, Arrays.copyOf(candidates.classId, 4));
+        assertEquals(150f, candidates.left[2], 0f);
+        assertEquals(0f, candidates.top[2], 0f);
+    }
+
+    @Test
+    public void interruptedDetectCancelsTilesAndRecovers() {
+        int[] b = {185, 80, 215, 110};
+        RgbFrame frame = frame(FRAME_W, FRAME_H, b[0], b[1], b[2], b[3]);
+        try (TiledDetector detector = tiled(2, config(2, 1, true))) {
+            Thread.currentThread().interrupt();
+            try {
+                detector.detect(frame, new PipelineTimings());
+                fail("detect ignored the interrupt");
+            } catch (IllegalStateException expected) {
+                // The interrupt is kept for the caller
+                assertTrue(Thread.interrupted());
+            }
+
+            float[] detections = detector.detect(frame, new PipelineTimings());
+            assertEquals(YoloDetector.FIELDS_PER_DETECTION, detections.length);
+            assertDetected(detections, FRAME_W, FRAME_H, 4f, b[0], b[1], b[2], b[3]);
+        }
+    }
+}
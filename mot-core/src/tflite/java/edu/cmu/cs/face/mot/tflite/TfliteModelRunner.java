@@ -0,0 +1,127 @@
+package edu.cmu.cs.face.mot.tflite;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+
+import edu.cmu.cs.face.mot.ModelRunner;
+
+/**
+ * {@link ModelRunner} over the TFLite Java {@link Interpreter}.
+ *
+ * Only the portable Interpreter API is used, so this compiles against the Android
+ * AAR and a desktop tensorflow-lite jar alike; delegates (NNAPI etc.) are set up by
+ * the caller on the {@link Interpreter.Options}.
+ */
+public final class TfliteModelRunner implements ModelRunner {
+    private final Interpreter interpreter;
+    private final int[] inputShape;
+    private final TensorType inputType;
+    private final int inputZeroPoint;
+    private final int[] outputShape;
+    private final TensorType outputType;
+    private final float outputScale;
+    private final int outputZeroPoint;
+
+    public TfliteModelRunner(ByteBuffer model, Interpreter.Options options) {
+        this(model, options, 0);
+    }
+
+    /**
+     * @param inputSize square input size to resize the model to (resizeInput); the
+     *                  output shape follows. 0 keeps the model's own input shape.
+     */
+    public TfliteModelRunner(ByteBuffer model, Interpreter.Options options, int inputSize) {
+        interpreter = new Interpreter(model, options);
+        if (inputSize > 0) {
+            int[] shape = interpreter.getInputTensor(0).shape();
+            if (shape[1] != inputSize || shape[2] != inputSize) {
+                interpreter.resizeInput(0, new int[] {shape[0], inputSize, inputSize, shape[3]});
+                interpreter.allocateTensors();
+            }
+        }
+
+        Tensor in = interpreter.getInputTensor(0);
+        inputShape = in.shape();
+        inputType = toTensorType(in.dataType());
+        inputZeroPoint = in.quantizationParams().getZeroPoint();
+
+        Tensor out = interpreter.getOutputTensor(0);
+        outputShape = out.shape();
+        outputType = toTensorType(out.dataType());
+        outputScale = out.quantizationParams().getScale();
+        outputZeroPoint = out.quantizationParams().getZeroPoint();
+    }
+
+    /** Memory-map a .tflite file. */
+    public static ByteBuffer mapModel(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel fc = raf.getChannel()) {
+            return fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+        }
+    }
+
+    private static TensorType toTensorType(DataType type) {
+        switch (type) {
+            case FLOAT32:
+                return TensorType.FLOAT32;
+            case UINT8:
+                return TensorType.UINT8;
+            case INT8:
+                return TensorType.INT8;
+            default:
+                throw new IllegalArgumentException("Unsupported tensor data type: " + type);
+        }
+    }
+
+    @Override
+    public int[] inputShape() {
+        return inputShape;
+    }
+
+    @Override
+    public TensorType inputType() {
+        return inputType;
+    }
+
+    @Override
+    public int inputZeroPoint() {
+        return inputZeroPoint;
+    }
+
+    @Override
+    public int[] outputShape() {
+        return outputShape;
+    }
+
+    @Override
+    public TensorType outputType() {
+        return outputType;
+    }
+
+    @Override
+    public float outputScale() {
+        return outputScale;
+    }
+
+    @Override
+    public int outputZeroPoint() {
+        return outputZeroPoint;
+    }
+
+    @Override
+    public void run(ByteBuffer input, ByteBuffer output) {
+        interpreter.run(input, output);
+    }
+
+    @Override
+    public void close() {
+        interpreter.close();
+    }
+}
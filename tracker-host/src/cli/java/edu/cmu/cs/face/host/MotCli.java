@@ -0,0 +1,407 @@
+package edu.cmu.cs.face.host;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.tensorflow.lite.Interpreter;
+
+import edu.cmu.cs.face.MainActivity;
+import edu.cmu.cs.face.mot.InferenceScheduler;
+import edu.cmu.cs.face.mot.MultiStreamEngine;
+import edu.cmu.cs.face.mot.PipelineConfig;
+import edu.cmu.cs.face.mot.PipelineLog;
+import edu.cmu.cs.face.mot.PipelineTimings;
+import edu.cmu.cs.face.mot.SequenceRunner;
+import edu.cmu.cs.face.mot.TraceRecorder;
+import edu.cmu.cs.face.mot.TrackerCheckpoint;
+import edu.cmu.cs.face.mot.tflite.TfliteModelRunner;
+
+/**
+ * Headless MOT runs on a Linux JVM: the app's measurement pipeline (mot-core
+ * SequenceRunner) over many sequences at once.
+ *
+ * Sequences are spread over a pool of workers, each with its own TFLite
+ * interpreter and tracker handle; the cores are split between workers and
+ * interpreter threads. A path is either a sequence (has img1/) or a folder of
+ * sequences such as MOT17/train. The frame rate comes from seqinfo.ini when
+ * present, unless --fps is given. With --frame-cache, decoded frames are kept in
+ * one memory-mapped file per sequence there and reused by later runs.
+ * --non-keyframe-sample N decodes frames that only feed KLT at 1/N size.
+ * --roi detects on crops around the tracks (--roi-crops per keyframe), with a
+ * full-frame keyframe every --roi-full-every keyframes. --tiles CxR detects on
+ * overlapping tiles (plus the full frame), spread over --tile-interpreters
+ * interpreters per worker. --native-post decodes full-frame keyframe outputs in
+ * the tracker's JNI call instead of in Java. --global-motion compensates camera
+ * motion in KLT and the Kalman states (moving-camera sequences). --trace writes each sequence's
+ * per-frame stage spans to <out>/<sequence>.trace.json (Chrome trace format,
+ * opens in ui.perfetto.dev). --checkpoint N saves each sequence's tracker state every
+ * N frames; a rerun resumes interrupted sequences from their last checkpoint and
+ * skips those whose results are complete. --input-sizes S,S.. adds interpreters of
+ * the model resized to those (smaller) square input sizes, and full-frame keyframes
+ * switch between them and the model's own size to hold --latency-target ms.
+ * --frame-gate T skips tracking on frames whose luma blocks changed by less than T
+ * gray levels since the last processed frame (at most --frame-gate-max-skips in a row).
+ *
+ * --streams runs all sequences at once as streams of one MultiStreamEngine: one
+ * tracker and thread per sequence, with the keyframes of all of them served by
+ * --interpreters shared interpreters in --schedule rr (round-robin) or edf
+ * (earliest deadline) order, as a multi-camera process would.
+ *
+ * Usage: MotCli --model yolo.tflite [--out dir] [--workers N] [--keyframe-interval K]
+ *               [--fps F] [--track-buffer B] [--dense] [--frame-cache dir]
+ *               [--non-keyframe-sample N] [--roi] [--roi-crops N] [--roi-full-every N]
+ *               [--tiles CxR] [--tile-overlap F] [--tile-interpreters N] [--native-post]
+ *               [--global-motion] [--trace] [--checkpoint N]
+ *               [--input-sizes S,S.. [--latency-target MS]]
+ *               [--frame-gate T [--frame-gate-max-skips N]]
+ *               [--streams [--interpreters N] [--schedule rr|edf]]
+ *               sequence_or_root...
+ */
+public final class MotCli {
+    private static final String USAGE =
+            "usage: MotCli --model yolo.tflite [--out dir] [--workers N] [--keyframe-interval K]\n"
+            + "              [--fps F] [--track-buffer B] [--dense] [--frame-cache dir]\n"
+            + "              [--non-keyframe-sample N] [--roi] [--roi-crops N] [--roi-full-every N]\n"
+            + "              [--tiles CxR] [--tile-overlap F] [--tile-interpreters N] [--native-post]\n"
+            + "              [--global-motion] [--trace] [--checkpoint N]\n"
+            + "              [--input-sizes S,S.. [--latency-target MS]]\n"
+            + "              [--frame-gate T [--frame-gate-max-skips N]]\n"
+            + "              [--streams [--interpreters N] [--schedule rr|edf]]\n"
+            + "              sequence_or_root...";
+    // Ring size per sequence; about 8 spans per keyframe, more with tiles
+    private static final int TRACE_SPANS = 1 << 18;
+
+    private MotCli() {
+    }
+
+    /** stdout/stderr log with the sequence name in front, so parallel runs stay readable. */
+    private static PipelineLog prefixedLog(String prefix) {
+        return new PipelineLog() {
+            @Override
+            public void i(String msg) {
+                System.out.println(prefix + msg);
+            }
+
+            @Override
+            public void w(String msg) {
+                System.err.println(prefix + msg);
+            }
+
+            @Override
+            public void e(String msg, Throwable tr) {
+                System.err.println(prefix + msg + (tr != null ? ": " + tr : ""));
+            }
+        };
+    }
+
+    /** Sequences under each path: the path itself if it has img1/, else its children that do. */
+    static List<File> findSequences(List<String> paths) {
+        List<File> sequences = new ArrayList<>();
+        for (String path : paths) {
+            File dir = new File(path);
+            if (new File(dir, SequenceRunner.IMAGE_DIR).isDirectory()) {
+                sequences.add(dir);
+                continue;
+            }
+            File[] children = dir.listFiles(f -> new File(f, SequenceRunner.IMAGE_DIR).isDirectory());
+            if (children == null || children.length == 0) {
+                System.err.println("No sequences under " + dir.getAbsolutePath());
+                continue;
+            }
+            Arrays.sort(children);
+            sequences.addAll(Arrays.asList(children));
+        }
+        return sequences;
+    }
+
+    /** frameRate from MOTChallenge seqinfo.ini, or 0 if absent. */
+    static int readFrameRate(File sequenceDir) {
+        File ini = new File(sequenceDir, "seqinfo.ini");
+        if (!ini.isFile()) {
+            return 0;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(ini))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] kv = line.split("=", 2);
+                if (kv.length == 2 && kv[0].trim().equalsIgnoreCase("frameRate")) {
+                    return Integer.parseInt(kv[1].trim());
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Ignoring unreadable " + ini + ": " + e);
+        }
+        return 0;
+    }
+
+    /** --streams: every sequence as a concurrent stream over shared interpreters. Returns the exit code. */
+    private static int runStreams(File model, File outDir, List<File> sequences, PipelineConfig base, int fps,
+                                  int interpreters, InferenceScheduler.Policy policy) throws Exception {
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / interpreters);
+        ByteBuffer modelBuffer = TfliteModelRunner.mapModel(model);
+        List<TfliteModelRunner> runners = new ArrayList<>();
+        for (int i = 0; i < interpreters; i++) {
+            Interpreter.Options opts = new Interpreter.Options();
+            opts.setNumThreads(threads);
+            opts.setUseXNNPACK(true);
+            runners.add(new TfliteModelRunner(modelBuffer.duplicate(), opts));
+        }
+
+        PipelineLog log = prefixedLog("");
+        MultiStreamEngine engine = new MultiStreamEngine(new MainActivity(), runners, base, policy, log);
+        for (File sequence : sequences) {
+            List<File> images = SequenceRunner.listImages(sequence, log);
+            if (images == null) {
+                continue;
+            }
+            PipelineConfig config = base.copy();
+            int seqFps = fps > 0 ? fps : readFrameRate(sequence);
+            if (seqFps > 0) {
+                config.videoFps = seqFps;
+            }
+            PipelineLog seqLog = prefixedLog("[" + sequence.getName() + "] ");
+            engine.addStream(sequence.getName(), MultiStreamEngine.imageSource(images, new ImageIoDecoder(), seqLog),
+                    MultiStreamEngine.motFileSink(new File(outDir, sequence.getName() + "-results.txt")), config);
+        }
+
+        long wallStart = System.nanoTime();
+        List<MultiStreamEngine.StreamResult> results = engine.run();
+        engine.report(results, System.nanoTime() - wallStart);
+        for (TfliteModelRunner runner : runners) {
+            runner.close();
+        }
+        int failed = 0;
+        for (MultiStreamEngine.StreamResult r : results) {
+            if (r.error != null) {
+                failed++;
+            }
+        }
+        return failed == 0 && results.size() == sequences.size() ? 0 : 1;
+    }
+
+    public static void main(String[] args) throws Exception {
+        File model = null;
+        File outDir = new File("results");
+        int workers = 0;
+        int fps = 0;
+        int tileInterpreters = 2;
+        List<Integer> inputSizes = new ArrayList<>();
+        boolean recordTrace = false;
+        boolean streams = false;
+        int sharedInterpreters = 2;
+        InferenceScheduler.Policy policy = InferenceScheduler.Policy.ROUND_ROBIN;
+        PipelineConfig base = new PipelineConfig();
+        List<String> paths = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            boolean hasValue = i + 1 < args.length;
+            if (arg.equals("--model") && hasValue) {
+                model = new File(args[++i]);
+            } else if (arg.equals("--out") && hasValue) {
+                outDir = new File(args[++i]);
+            } else if (arg.equals("--workers") && hasValue) {
+                workers = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--keyframe-interval") && hasValue) {
+                base.keyframeInterval = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--fps") && hasValue) {
+                fps = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--track-buffer") && hasValue) {
+                base.trackBuffer = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--frame-cache") && hasValue) {
+                base.frameCacheDir = new File(args[++i]);
+            } else if (arg.equals("--non-keyframe-sample") && hasValue) {
+                base.nonKeyframeSampleSize = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--roi")) {
+                base.roiInference = true;
+            } else if (arg.equals("--roi-crops") && hasValue) {
+                base.roiMaxCrops = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--roi-full-every") && hasValue) {
+                base.roiFullFrameInterval = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--tiles") && hasValue) {
+                String[] grid = args[++i].toLowerCase(Locale.ROOT).split("x");
+                base.tiledInference = true;
+                base.tileCols = Integer.parseInt(grid[0]);
+                base.tileRows = grid.length > 1 ? Integer.parseInt(grid[1]) : base.tileCols;
+            } else if (arg.equals("--tile-overlap") && hasValue) {
+                base.tileOverlap = Float.parseFloat(args[++i]);
+            } else if (arg.equals("--tile-interpreters") && hasValue) {
+                tileInterpreters = Math.max(1, Integer.parseInt(args[++i]));
+            } else if (arg.equals("--native-post")) {
+                base.nativePostprocessing = true;
+            } else if (arg.equals("--streams")) {
+                streams = true;
+            } else if (arg.equals("--interpreters") && hasValue) {
+                sharedInterpreters = Math.max(1, Integer.parseInt(args[++i]));
+            } else if (arg.equals("--schedule") && hasValue) {
+                policy = args[++i].equals("edf")
+                        ? InferenceScheduler.Policy.EARLIEST_DEADLINE : InferenceScheduler.Policy.ROUND_ROBIN;
+            } else if (arg.equals("--checkpoint") && hasValue) {
+                base.checkpointInterval = Math.max(0, Integer.parseInt(args[++i]));
+            } else if (arg.equals("--input-sizes") && hasValue) {
+                for (String size : args[++i].split(",")) {
+                    inputSizes.add(Integer.parseInt(size.trim()));
+                }
+            } else if (arg.equals("--latency-target") && hasValue) {
+                base.keyframeLatencyTargetMs = Float.parseFloat(args[++i]);
+            } else if (arg.equals("--frame-gate") && hasValue) {
+                base.frameGateThreshold = Float.parseFloat(args[++i]);
+            } else if (arg.equals("--frame-gate-max-skips") && hasValue) {
+                base.frameGateMaxSkips = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--trace")) {
+                recordTrace = true;
+            } else if (arg.equals("--dense")) {
+                base.sparseAssignment = false;
+            } else if (arg.equals("--global-motion")) {
+                base.globalMotion = true;
+            } else if (arg.startsWith("--")) {
+                System.err.println(USAGE);
+                System.exit(2);
+            } else {
+                paths.add(arg);
+            }
+        }
+        if (model == null || paths.isEmpty()) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        List<File> sequences = findSequences(paths);
+        if (sequences.isEmpty()) {
+            System.exit(1);
+        }
+        if (!outDir.isDirectory() && !outDir.mkdirs()) {
+            throw new IOException("Cannot create " + outDir.getAbsolutePath());
+        }
+
+        if (streams) {
+            System.exit(runStreams(model, outDir, sequences, base, fps, sharedInterpreters, policy));
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        if (workers <= 0) {
+            workers = Math.min(sequences.size(), cores);
+        }
+        int perWorker = base.tiledInference ? tileInterpreters : 1;
+        int interpreterThreads = Math.max(1, cores / (workers * perWorker));
+        System.out.println(String.format(Locale.US,
+                "%d sequences, %d workers x %d interpreters x %d threads, keyframe interval %d",
+                sequences.size(), workers, perWorker, interpreterThreads, base.keyframeInterval));
+
+        // Interpreters per worker (several for tiles, then one per extra input size);
+        // a task borrows a set for the length of its sequence
+        ByteBuffer modelBuffer = TfliteModelRunner.mapModel(model);
+        BlockingQueue<List<TfliteModelRunner>> models = new ArrayBlockingQueue<>(workers);
+        for (int i = 0; i < workers; i++) {
+            List<TfliteModelRunner> set = new ArrayList<>();
+            for (int j = 0; j < perWorker + inputSizes.size(); j++) {
+                Interpreter.Options opts = new Interpreter.Options();
+                opts.setNumThreads(interpreterThreads);
+                opts.setUseXNNPACK(true);
+                int inputSize = j < perWorker ? 0 : inputSizes.get(j - perWorker);
+                set.add(new TfliteModelRunner(modelBuffer.duplicate(), opts, inputSize));
+            }
+            models.add(set);
+        }
+        if (!inputSizes.isEmpty()) {
+            System.out.println(String.format(Locale.US, "Input sizes %s and %s, keyframe latency target %.1f ms",
+                    Arrays.toString(models.peek().get(0).inputShape()), inputSizes, base.keyframeLatencyTargetMs));
+        }
+
+        MainActivity natives = new MainActivity();
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        List<Future<SequenceRunner.Result>> futures = new ArrayList<>();
+        List<String> submitted = new ArrayList<>();
+        int skipped = 0;
+        long wallStart = System.nanoTime();
+
+        for (File sequence : sequences) {
+            PipelineConfig config = base.copy();
+            int seqFps = fps > 0 ? fps : readFrameRate(sequence);
+            if (seqFps > 0) {
+                config.videoFps = seqFps;
+            }
+            File output = new File(outDir, sequence.getName() + "-results.txt");
+            PipelineLog log = prefixedLog("[" + sequence.getName() + "] ");
+            File traceFile = recordTrace ? new File(outDir, sequence.getName() + ".trace.json") : null;
+            if (config.checkpointInterval > 0 && output.isFile() && !TrackerCheckpoint.fileFor(output).exists()) {
+                // Checkpointed runs keep a checkpoint until the last frame is written
+                log.i("Results are complete, skipping (delete " + output.getName() + " to rerun)");
+                skipped++;
+                continue;
+            }
+
+            submitted.add(sequence.getName());
+            futures.add(pool.submit(() -> {
+                List<TfliteModelRunner> runners = models.take();
+                try {
+                    SequenceRunner runner = new SequenceRunner(natives, runners.subList(0, perWorker),
+                            new ImageIoDecoder(), config, log);
+                    runner.setResolutionLevels(runners.subList(perWorker, runners.size()));
+                    TraceRecorder trace = traceFile != null ? new TraceRecorder(TRACE_SPANS) : null;
+                    runner.setTrace(trace);
+                    SequenceRunner.Result result = runner.run(sequence, output);
+                    if (result != null) {
+                        result.report(log);
+                        if (trace != null) {
+                            trace.writeChromeJson(traceFile);
+                            trace.report(log, traceFile);
+                        }
+                    }
+                    return result;
+                } finally {
+                    models.put(runners);
+                }
+            }));
+        }
+
+        int failed = 0;
+        int frames = 0;
+        PipelineTimings total = new PipelineTimings();
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                SequenceRunner.Result result = futures.get(i).get();
+                if (result == null) {
+                    failed++;
+                    continue;
+                }
+                frames += result.frames;
+                total.add(result.timings);
+            } catch (Exception e) {
+                failed++;
+                System.err.println("[" + submitted.get(i) + "] FAILED: " + e.getCause());
+            }
+        }
+        pool.shutdown();
+        for (List<TfliteModelRunner> set : models) {
+            for (TfliteModelRunner runner : set) {
+                runner.close();
+            }
+        }
+
+        double wallSeconds = (System.nanoTime() - wallStart) / 1e9;
+        PipelineLog log = prefixedLog("");
+        log.i("");
+        log.i("=".repeat(60));
+        log.i(String.format(Locale.US, "ALL SEQUENCES: %d ok, %d failed%s", submitted.size() - failed, failed,
+                skipped > 0 ? ", " + skipped + " already complete" : ""));
+        log.i(String.format(Locale.US, "Frames: %d in %.1f s wall (%.2f FPS aggregate)",
+                frames, wallSeconds, wallSeconds > 0 ? frames / wallSeconds : 0));
+        total.report(log, frames);
+        log.i("Results: " + outDir.getAbsolutePath());
+        log.i("=".repeat(60));
+        System.exit(failed == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,55 @@
+package edu.cmu.cs.face;
+
+import java.nio.ByteBuffer;
+
+import edu.cmu.cs.face.mot.TrackerNatives;
+
+/**
+ * Host-side binding for the native tracker library.
+ *
+ * The JNI exports in HybridTrackerJNI.cpp are named after
+ * {@code edu.cmu.cs.face.MainActivity}, so this plain class takes that name on the
+ * host classpath and declares the same native methods as the Android activity.
+ * The library is loaded from {@code -Dtracker.lib=/path/libbytetrack_jni.so},
+ * or from java.library.path.
+ */
+public class MainActivity implements TrackerNatives {
+    static {
+        String lib = System.getProperty("tracker.lib");
+        if (lib != null && !lib.isEmpty()) {
+            System.load(lib);
+        } else {
+            System.loadLibrary("bytetrack_jni");
+        }
+    }
+
+    public native long nativeInitHybridTracker(int frameRate, int trackBuffer, int keyframeInterval);
+    public native void nativeReleaseHybridTracker(long trackerPtr);
+    public native boolean nativeIsKeyframe(long trackerPtr);
+    public native int nativeSetFrameTimestamp(long trackerPtr, long timestampNanos);
+    public native void nativeSkipFrame(long trackerPtr);
+    public native float[] nativeUpdateWithDetections(long trackerPtr, float[] detections, byte[] imageData, int w, int h);
+    public native float[] nativeUpdateWithoutDetections(long trackerPtr, byte[] imageData, int w, int h);
+    public native float[] nativeUpdateWithDetectionsBuffer(long trackerPtr, float[] detections, ByteBuffer imageData, int w, int h);
+    public native float[] nativeUpdateWithoutDetectionsBuffer(long trackerPtr, ByteBuffer imageData, int w, int h);
+    public native float[] nativeUpdateWithModelOutput(long trackerPtr, ByteBuffer output, float[] decodeParams,
+                                                      byte[] imageData, int w, int h, long[] decodeStats);
+    public native float[] nativeUpdateWithModelOutputBuffer(long trackerPtr, ByteBuffer output, float[] decodeParams,
+                                                            ByteBuffer imageData, int w, int h, long[] decodeStats);
+    public native float[] nativeUpdateWithoutDetectionsScaled(long trackerPtr, byte[] imageData, int imageW, int imageH, int w, int h);
+    public native void nativeResetHybridTracker(long trackerPtr);
+    public native void nativeSetSparseAssignment(long trackerPtr, boolean enabled);
+    public native void nativeSetReferenceKalman(long trackerPtr, boolean enabled);
+    public native void nativeSetGlobalMotion(long trackerPtr, boolean enabled);
+    public native byte[] nativeSaveTrackerState(long trackerPtr);
+    public native boolean nativeLoadTrackerState(long trackerPtr, byte[] state);
+    // Returns [mean_us, min_us, max_us, matches]
+    public native float[] nativeBenchmarkAssignment(int numTracks, int numDetections, int iterations, boolean sparse);
+    // Returns [frames, tracks_acquired, tracks_reused, tracks_live, tracks_capacity,
+    //          dets_acquired, dets_reused, dets_capacity, klt_acquired, klt_reused, klt_capacity]
+    public native long[] nativeGetTrackerStats(long trackerPtr);
+    // Returns [trackId, cx, cy, w, h, vx, vy, vw, vh] per Kalman track, normalized, velocities per second
+    public native float[] nativeGetTrackStates(long trackerPtr, int w, int h);
+    // Returns [batch_mean_us, reference_mean_us, max_abs_diff] over predict, gating distance and update
+    public native float[] nativeBenchmarkKalman(int numTracks, int iterations);
+}
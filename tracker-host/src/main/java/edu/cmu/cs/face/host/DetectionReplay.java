@@ -0,0 +1,214 @@
+package edu.cmu.cs.face.host;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TreeMap;
+
+import edu.cmu.cs.face.MainActivity;
+
+/**
+ * Replays recorded detections (MOT format: frame,id,x,y,w,h,conf,...) through the
+ * native HybridTracker, the same way MainActivity.runMeasurement drives it:
+ * keyframes get the frame's detections, other frames go through KLT only.
+ *
+ * Frames are a fixed synthetic texture of the given size (the recorded files carry
+ * no pixels), so KLT runs its full path but sees no motion between keyframes.
+ *
+ * Usage: DetectionReplay detections.txt [output.txt] [keyframeInterval] [width] [height]
+ */
+public final class DetectionReplay {
+    private static final int FIELDS_PER_DETECTION = 6;
+    private static final int FIELDS_PER_TRACK = 7;
+    private static final float[] NO_DETECTIONS = new float[0];
+
+    public static final int DEFAULT_WIDTH = 1920;
+    public static final int DEFAULT_HEIGHT = 1080;
+    public static final int VIDEO_FPS = 30;
+    public static final int TRACK_BUFFER = 30;
+
+    /** Tracker output and timings of one replay. */
+    public static final class Result {
+        public final List<String> lines = new ArrayList<>();
+        public int frames;
+        public int keyframes;
+        public long keyframeNanos;
+        public long intermediateNanos;
+        public long[] poolStats;
+
+        public double meanKeyframeMs() {
+            return keyframes == 0 ? 0 : keyframeNanos / 1e6 / keyframes;
+        }
+
+        public double meanIntermediateMs() {
+            int n = frames - keyframes;
+            return n == 0 ? 0 : intermediateNanos / 1e6 / n;
+        }
+    }
+
+    private DetectionReplay() {
+    }
+
+    /**
+     * Read a MOT file into per-frame detection arrays in the tracker's JNI layout
+     * [cx_norm, cy_norm, w_norm, h_norm, classId, conf]. Everything is class 0.
+     */
+    public static TreeMap<Integer, float[]> loadDetections(File motFile, int imgW, int imgH) throws IOException {
+        TreeMap<Integer, List<float[]>> rows = new TreeMap<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(motFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] parts = line.split(",");
+                int frame = Integer.parseInt(parts[0].trim());
+                float x = Float.parseFloat(parts[2].trim());
+                float y = Float.parseFloat(parts[3].trim());
+                float w = Float.parseFloat(parts[4].trim());
+                float h = Float.parseFloat(parts[5].trim());
+                float conf = Float.parseFloat(parts[6].trim());
+                rows.computeIfAbsent(frame, k -> new ArrayList<>()).add(new float[] {
+                        (x + w / 2f) / imgW, (y + h / 2f) / imgH, w / imgW, h / imgH, 0f, conf
+                });
+            }
+        }
+
+        TreeMap<Integer, float[]> detections = new TreeMap<>();
+        for (var entry : rows.entrySet()) {
+            List<float[]> dets = entry.getValue();
+            float[] packed = new float[dets.size() * FIELDS_PER_DETECTION];
+            for (int i = 0; i < dets.size(); i++) {
+                System.arraycopy(dets.get(i), 0, packed, i * FIELDS_PER_DETECTION, FIELDS_PER_DETECTION);
+            }
+            detections.put(entry.getKey(), packed);
+        }
+        return detections;
+    }
+
+    /** Deterministic textured grayscale frame, so KLT finds corners to track. */
+    public static byte[] syntheticFrame(int imgW, int imgH) {
+        byte[] frame = new byte[imgW * imgH];
+        new Random(15821).nextBytes(frame);
+        return frame;
+    }
+
+    /** Run frames 1..lastFrame through a fresh tracker. */
+    public static Result run(MainActivity natives, TreeMap<Integer, float[]> detections,
+                             int keyframeInterval, int imgW, int imgH) {
+        return run(natives, detections, keyframeInterval, imgW, imgH, false);
+    }
+
+    /**
+     * As {@link #run(MainActivity, TreeMap, int, int, int)}; with {@code referenceKalman}
+     * ByteTrack's Kalman steps go through the scalar reference filter instead of the batch.
+     */
+    public static Result run(MainActivity natives, TreeMap<Integer, float[]> detections,
+                             int keyframeInterval, int imgW, int imgH, boolean referenceKalman) {
+        int lastFrame = detections.isEmpty() ? 0 : detections.lastKey();
+        Result result = new Result();
+
+        long handle = natives.nativeInitHybridTracker(VIDEO_FPS, TRACK_BUFFER, keyframeInterval);
+        try {
+            natives.nativeSetReferenceKalman(handle, referenceKalman);
+            replay(natives, handle, detections, 1, lastFrame, imgW, imgH, result);
+            result.poolStats = natives.nativeGetTrackerStats(handle);
+        } finally {
+            natives.nativeReleaseHybridTracker(handle);
+        }
+        return result;
+    }
+
+    /**
+     * Run frames {@code first..last} through the tracker {@code handle}, which has
+     * seen the frames before {@code first} (or was restored to that point), adding to
+     * {@code result}.
+     */
+    public static void replay(MainActivity natives, long handle, TreeMap<Integer, float[]> detections,
+                              int first, int last, int imgW, int imgH, Result result) {
+        byte[] frame = syntheticFrame(imgW, imgH);
+        for (int frameNumber = first; frameNumber <= last; frameNumber++) {
+            boolean keyframe = natives.nativeIsKeyframe(handle);
+            long start = System.nanoTime();
+            float[] tracks;
+            if (keyframe) {
+                float[] dets = detections.getOrDefault(frameNumber, NO_DETECTIONS);
+                tracks = natives.nativeUpdateWithDetections(handle, dets, frame, imgW, imgH);
+            } else {
+                tracks = natives.nativeUpdateWithoutDetections(handle, frame, imgW, imgH);
+            }
+            long elapsed = System.nanoTime() - start;
+
+            result.frames++;
+            if (keyframe) {
+                result.keyframes++;
+                result.keyframeNanos += elapsed;
+            } else {
+                result.intermediateNanos += elapsed;
+            }
+            appendMotLines(result.lines, frameNumber, tracks, imgW, imgH);
+        }
+    }
+
+    /** Same row format and filter (trackId > 0, class 0) as MainActivity's result writer. */
+    private static void appendMotLines(List<String> out, int frameNumber, float[] tracks, int imgW, int imgH) {
+        for (int i = 0; i + FIELDS_PER_TRACK <= tracks.length; i += FIELDS_PER_TRACK) {
+            int classId = (int) tracks[i + 4];
+            int trackId = (int) tracks[i + 6];
+            if (trackId <= 0 || classId != 0) {
+                continue;
+            }
+            float width = tracks[i + 2] * imgW;
+            float height = tracks[i + 3] * imgH;
+            float left = tracks[i] * imgW - width / 2f;
+            float top = tracks[i + 1] * imgH - height / 2f;
+            out.add(String.format(Locale.US, "%d,%d,%.2f,%.2f,%.2f,%.2f,%.2f,-1,-1,-1",
+                    frameNumber, trackId, left, top, width, height, tracks[i + 5]));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: DetectionReplay detections.txt [output.txt] [keyframeInterval] [width] [height]");
+            System.exit(2);
+        }
+        File input = new File(args[0]);
+        File output = args.length > 1 ? new File(args[1]) : null;
+        int keyframeInterval = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        int imgW = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_WIDTH;
+        int imgH = args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_HEIGHT;
+
+        TreeMap<Integer, float[]> detections = loadDetections(input, imgW, imgH);
+        Result result = run(new MainActivity(), detections, keyframeInterval, imgW, imgH);
+
+        if (output != null) {
+            try (Writer writer = new FileWriter(output)) {
+                for (String line : result.lines) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+            }
+        }
+
+        System.out.println("Sequence:       " + input.getName());
+        System.out.println("Frames:         " + result.frames + " (" + result.keyframes + " keyframes)");
+        System.out.println("Track rows:     " + result.lines.size());
+        System.out.println(String.format(Locale.US, "Keyframe:       %.3f ms", result.meanKeyframeMs()));
+        System.out.println(String.format(Locale.US, "Intermediate:   %.3f ms", result.meanIntermediateMs()));
+        if (result.poolStats != null && result.poolStats.length == 11) {
+            System.out.println(String.format(Locale.US, "Track pool:     %d acquired / %d reused / %d capacity",
+                    result.poolStats[1], result.poolStats[2], result.poolStats[4]));
+        }
+        if (output != null) {
+            System.out.println("Output:         " + output.getAbsolutePath());
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package edu.cmu.cs.face.host;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import edu.cmu.cs.face.mot.ImageDecoder;
+import edu.cmu.cs.face.mot.RgbFrame;
+
+/** ImageIO decode into the pipeline's ARGB frame (the host stand-in for BitmapFactory). */
+public final class ImageIoDecoder implements ImageDecoder {
+    @Override
+    public boolean decode(File file, RgbFrame frame) {
+        return decode(file, frame, 1);
+    }
+
+    /**
+     * Subsampling goes through ImageReadParam, which keeps every Nth pixel (no
+     * filtering), unlike the scaled IDCT behind inSampleSize on Android.
+     */
+    @Override
+    public boolean decode(File file, RgbFrame frame, int sampleSize) {
+        BufferedImage image;
+        try {
+            image = sampleSize > 1 ? readSubsampled(file, sampleSize) : ImageIO.read(file);
+        } catch (IOException e) {
+            return false;
+        }
+        if (image == null) {
+            return false;
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        frame.setSize(width, height);
+
+        // JPEGs decode to 3-byte BGR; read the raster directly instead of the slow
+        // per-pixel color-model path of getRGB
+        if (image.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+            byte[] bgr = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+            int[] pixels = frame.pixels;
+            for (int i = 0, j = 0, n = width * height; i < n; i++, j += 3) {
+                pixels[i] = 0xFF000000 | ((bgr[j + 2] & 0xFF) << 16) | ((bgr[j + 1] & 0xFF) << 8) | (bgr[j] & 0xFF);
+            }
+        } else {
+            image.getRGB(0, 0, width, height, frame.pixels, 0, width);
+        }
+        return true;
+    }
+
+    private static BufferedImage readSubsampled(File file, int sampleSize) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            if (in == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(sampleSize, sampleSize, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package edu.cmu.cs.face.host;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.cmu.cs.face.MainActivity;
+
+/**
+ * Global motion compensation of the Kalman states, checked through tracker
+ * checkpoints: the camera motion accumulated since the last keyframe is part of the
+ * checkpoint, so a test can set it, run one keyframe and read the state back.
+ */
+public class CameraMotionTest {
+    private static final int W = 640;
+    private static final int H = 480;
+
+    // HybridTracker::saveState layout up to the first tracked track
+    private static final int MOTION_OFFSET = 36;
+    private static final int TRACKED_COUNT_OFFSET = 73;
+    // id, class, state, activated, frame, tracklet length, start frame, score, tlwh
+    private static final int TRACK_MEAN_OFFSET = 4 * 3 + 1 + 4 * 3 + 4 + 16;
+    private static final int TRACK_BYTES = TRACK_MEAN_OFFSET + 8 * 4 + 64 * 4;
+
+    private static final float STD_WEIGHT_POSITION = 1f / 20;
+    private static final float STD_WEIGHT_VELOCITY = 1f / 160;
+
+    private static MainActivity natives;
+
+    @BeforeClass
+    public static void setUp() {
+        natives = new MainActivity();
+    }
+
+    /** Mean (8) and row-major covariance (64) of a track, in double. */
+    private static final class KalmanState {
+        final double[] mean = new double[8];
+        final double[][] cov = new double[8][8];
+    }
+
+    private static ByteBuffer wrap(byte[] state) {
+        return ByteBuffer.wrap(state).order(ByteOrder.nativeOrder());
+    }
+
+    /** Kalman state of the only track, tracked or lost. */
+    private static KalmanState onlyTrack(byte[] state) {
+        ByteBuffer in = wrap(state);
+        int tracked = in.getInt(TRACKED_COUNT_OFFSET);
+        int lost = in.getInt(TRACKED_COUNT_OFFSET + 4 + tracked * TRACK_BYTES);
+        assertEquals(1, tracked + lost);
+        int track = TRACKED_COUNT_OFFSET + 4 + (tracked == 1 ? 0 : 4);
+        KalmanState s = new KalmanState();
+        int at = track + TRACK_MEAN_OFFSET;
+        for (int k = 0; k < 8; k++) {
+            s.mean[k] = in.getFloat(at + k * 4);
+        }
+        at += 8 * 4;
+        for (int r = 0; r < 8; r++) {
+            for (int c = 0; c < 8; c++) {
+                s.cov[r][c] = in.getFloat(at + (r * 8 + c) * 4);
+            }
+        }
+        return s;
+    }
+
+    /** Expected state: each 2x2 block scaled by s^2 (the aspect ratio's unchanged), then one predict. */
+    private static KalmanState compensateAndPredict(KalmanState before, float[] m) {
+        double scale = Math.sqrt(Math.abs(m[0] * m[4] - m[1] * m[3]));
+        KalmanState s = new KalmanState();
+        double[] x = before.mean;
+        s.mean[0] = m[0] * x[0] + m[1] * x[1] + m[2];
+        s.mean[1] = m[3] * x[0] + m[4] * x[1] + m[5];
+        s.mean[2] = x[2];
+        s.mean[3] = x[3] * scale;
+        s.mean[4] = m[0] * x[4] + m[1] * x[5];
+        s.mean[5] = m[3] * x[4] + m[4] * x[5];
+        s.mean[6] = x[6];
+        s.mean[7] = x[7] * scale;
+
+        double h = s.mean[3];
+        for (int d = 0; d < 4; d++) {
+            double f = d == 2 ? 1 : scale * scale;
+            double pp = before.cov[d][d] * f;
+            double pv = before.cov[d][d + 4] * f;
+            double vp = before.cov[d + 4][d] * f;
+            double vv = before.cov[d + 4][d + 4] * f;
+            double stdPos = d == 2 ? 1e-2 : STD_WEIGHT_POSITION * h;
+            double stdVel = d == 2 ? 1e-5 : STD_WEIGHT_VELOCITY * h;
+            s.cov[d][d] = pp + pv + vp + vv + stdPos * stdPos;
+            s.cov[d][d + 4] = pv + vv;
+            s.cov[d + 4][d] = vp + vv;
+            s.cov[d + 4][d + 4] = vv + stdVel * stdVel;
+        }
+        for (int k = 0; k < 8; k++) {
+            s.mean[k] += k < 4 ? s.mean[k + 4] : 0;
+        }
+        return s;
+    }
+
+    @Test
+    public void covarianceSurvivesCompensationAndPredict() {
+        double angle = Math.toRadians(20);
+        float scale = 1.25f;
+        float[] motion = {
+                (float) (scale * Math.cos(angle)), (float) (-scale * Math.sin(angle)), 15f,
+                (float) (scale * Math.sin(angle)), (float) (scale * Math.cos(angle)), -10f};
+
+        long handle = natives.nativeInitHybridTracker(30, 30, 1);
+        try {
+            natives.nativeSetGlobalMotion(handle, true);
+            byte[] gray = new byte[W * H];
+            float[] tracks = natives.nativeUpdateWithDetections(handle,
+                    new float[] {0.4f, 0.5f, 0.1f, 0.3f, 0, 0.9f}, gray, W, H);
+            assertEquals(7, tracks.length);
+
+            // Camera moved by `motion` since that keyframe (blank frames give KLT no estimate of their own)
+            byte[] state = natives.nativeSaveTrackerState(handle);
+            assertNotNull(state);
+            KalmanState before = onlyTrack(state);
+            ByteBuffer patch = wrap(state);
+            for (int i = 0; i < 6; i++) {
+                patch.putFloat(MOTION_OFFSET + i * 4, motion[i]);
+            }
+            assertTrue(natives.nativeLoadTrackerState(handle, state));
+
+            // Keyframe without detections: compensate, predict, and the track goes lost
+            natives.nativeUpdateWithDetections(handle, new float[0], gray, W, H);
+            KalmanState after = onlyTrack(natives.nativeSaveTrackerState(handle));
+
+            KalmanState expected = compensateAndPredict(before, motion);
+            for (int k = 0; k < 8; k++) {
+                assertEquals("mean " + k, expected.mean[k], after.mean[k], 1e-3 * Math.max(1, Math.abs(expected.mean[k])));
+            }
+            for (int r = 0; r < 8; r++) {
+                for (int c = 0; c < 8; c++) {
+                    double e = expected.cov[r][c];
+                    assertEquals("cov " + r + "," + c, e, after.cov[r][c], 1e-4 * Math.max(1, Math.abs(e)));
+                }
+            }
+            // x and y stay interchangeable, so the rotation dropped from P costs nothing
+            for (int r : new int[] {0, 4}) {
+                for (int c : new int[] {0, 4}) {
+                    assertEquals(after.cov[r][c], after.cov[r + 1][c + 1], 1e-4 * Math.abs(after.cov[r][c]));
+                }
+            }
+            // Blocks stay positive definite
+            for (int d = 0; d < 4; d++) {
+                double det = after.cov[d][d] * after.cov[d + 4][d + 4] - after.cov[d][d + 4] * after.cov[d + 4][d];
+                assertTrue(after.cov[d][d] > 0 && det > 0);
+            }
+        } finally {
+            natives.nativeReleaseHybridTracker(handle);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package edu.cmu.cs.face.host;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.UnaryOperator;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.cmu.cs.face.MainActivity;
+
+public class DetectionReplayTest {
+    private static final String SEQUENCE = "MOT17-04-DPM-results.txt";
+    // Offset of the process-wide track id counter in a nativeSaveTrackerState blob
+    private static final int LAST_ID_OFFSET = 60;
+
+    private static MainActivity natives;
+    private static TreeMap<Integer, float[]> detections;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        natives = new MainActivity();
+        File data = new File(System.getProperty("replay.data", "waste_data"), SEQUENCE);
+        detections = DetectionReplay.loadDetections(data,
+                DetectionReplay.DEFAULT_WIDTH, DetectionReplay.DEFAULT_HEIGHT);
+    }
+
+    /**
+     * Track ids come from a process-wide counter, so runs are compared after
+     * renumbering ids in order of first appearance.
+     */
+    private static List<String> normalizeIds(List<String> lines) {
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> out = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            String[] parts = line.split(",", 3);
+            int id = ids.computeIfAbsent(parts[1], k -> ids.size() + 1);
+            out.add(parts[0] + "," + id + "," + parts[2]);
+        }
+        return out;
+    }
+
+    @Test
+    public void keyframeOnlyReplayIsDeterministic() {
+        DetectionReplay.Result first = DetectionReplay.run(natives, detections, 1,
+                DetectionReplay.DEFAULT_WIDTH, DetectionReplay.DEFAULT_HEIGHT);
+        DetectionReplay.Result second = DetectionReplay.run(natives, detections, 1,
+                DetectionReplay.DEFAULT_WIDTH, DetectionReplay.DEFAULT_HEIGHT);
+
+        assertEquals((int) detections.lastKey(), first.frames);
+        assertEquals(first.frames, first.keyframes);
+        assertFalse(first.lines.isEmpty());
+        assertEquals(normalizeIds(first.lines), normalizeIds(second.lines));
+    }
+
+    @Test
+    public void intermediateFramesAreTrackedByKlt() {
+        DetectionReplay.Result result = DetectionReplay.run(natives, detections, 3,
+                DetectionReplay.DEFAULT_WIDTH, DetectionReplay.DEFAULT_HEIGHT);
+
+        int intermediateRows = 0;
+        for (String line : result.lines) {
+            int frame = Integer.parseInt(line.substring(0, line.indexOf(',')));
+            if ((frame - 1) % 3 != 0) {
+                intermediateRows++;
+            }
+        }
+        assertTrue(result.keyframes < result.frames);
+        assertTrue("KLT produced no tracks on intermediate frames", intermediateRows > 0);
+    }
+
+    /** Same rows, frames and (renumbered) ids; box and score values within {@code tolerance}. */
+    private static void assertSameTracks(List<String> expected, List<String> actual, double tolerance) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            String[] e = expected.get(i).split(",");
+            String[] a = actual.get(i).split(",");
+            assertEquals(e[0] + "," + e[1], a[0] + "," + a[1]);
+            for (int k = 2; k < 7; k++) {
+                assertEquals(expected.get(i), Double.parseDouble(e[k]), Double.parseDouble(a[k]), tolerance);
+            }
+        }
+    }
+
+    @Test
+    public void batchKalmanMatchesReferencePath() {
+        for (int interval : new int[] {1, 3}) {
+            DetectionReplay.Result batch = DetectionReplay.run(natives, detections, interval,
+                    DetectionReplay.DEFAULT_WIDTH, DetectionReplay.DEFAULT_HEIGHT, false);
+            DetectionReplay.Result reference = DetectionReplay.run(natives, detections, interval,
+                    DetectionReplay.DEFAULT_WIDTH, DetectionReplay.DEFAULT_HEIGHT, true);
+
+            assertFalse(batch.lines.isEmpty());
+            assertSameTracks(normalizeIds(reference.lines), normalizeIds(batch.lines), 0.02);
+        }
+    }
+
+    @Test
+    public void batchKalmanStepsAndGatingMatchReferencePath() {
+        // [batch_us, reference_us, max_abs_diff] over predict, gating distance and update
+        float[] result = natives.nativeBenchmarkKalman(50, 30);
+        assertEquals(3, result.length);
+        assertTrue(result[2] < 1e-3f);
+    }
+
+    @Test
+    public void detectionArenaIsReused() {
+        DetectionReplay.Result result = DetectionReplay.run(natives, detections, 1,
+                DetectionReplay.DEFAULT_WIDTH, DetectionReplay.DEFAULT_HEIGHT);
+
+        long acquired = result.poolStats[5];
+        long reused = result.poolStats[6];
+        long capacity = result.poolStats[7];
+        assertTrue(capacity > 0);
+        assertEquals(acquired - capacity, reused);
+    }
+
+    /**
+     * Replay to {@code checkpointFrame}, save the tracker, restore the blob (passed
+     * through {@code edit}) into a fresh tracker and replay the rest there.
+     */
+    private static DetectionReplay.Result resumed(int interval, int checkpointFrame,
+                                                  UnaryOperator<byte[]> edit) {
+        int w = DetectionReplay.DEFAULT_WIDTH;
+        int h = DetectionReplay.DEFAULT_HEIGHT;
+        DetectionReplay.Result result = new DetectionReplay.Result();
+        byte[] state;
+        long first = natives.nativeInitHybridTracker(DetectionReplay.VIDEO_FPS, DetectionReplay.TRACK_BUFFER, interval);
+        try {
+            DetectionReplay.replay(natives, first, detections, 1, checkpointFrame, w, h, result);
+            state = natives.nativeSaveTrackerState(first);
+        } finally {
+            natives.nativeReleaseHybridTracker(first);
+        }
+
+        // Constructed with other settings: the checkpoint brings its own keyframe interval
+        long second = natives.nativeInitHybridTracker(DetectionReplay.VIDEO_FPS, DetectionReplay.TRACK_BUFFER, 1);
+        try {
+            assertTrue(natives.nativeLoadTrackerState(second, edit.apply(state)));
+            DetectionReplay.replay(natives, second, detections, checkpointFrame + 1, detections.lastKey(),
+                    w, h, result);
+        } finally {
+            natives.nativeReleaseHybridTracker(second);
+        }
+        return result;
+    }
+
+    private static int frameOf(String line) {
+        return Integer.parseInt(line.substring(0, line.indexOf(',')));
+    }
+
+    private static int idOf(String line) {
+        return Integer.parseInt(line.split(",", 3)[1]);
+    }
+
+    @Test
+    public void resumedReplayMatchesUninterruptedRun() {
+        for (int interval : new int[] {1, 3}) {
+            DetectionReplay.Result uninterrupted = DetectionReplay.run(natives, detections, interval,
+                    DetectionReplay.DEFAULT_WIDTH, DetectionReplay.DEFAULT_HEIGHT);
+            // Mid-cadence for interval 3 (frame 200 is not a keyframe)
+            DetectionReplay.Result resumed = resumed(interval, 200, state -> state);
+
+            assertEquals(uninterrupted.frames, resumed.frames);
+            assertEquals(uninterrupted.keyframes, resumed.keyframes);
+            assertEquals(normalizeIds(uninterrupted.lines), normalizeIds(resumed.lines));
+        }
+    }
+
+    @Test
+    public void resumedTrackerDoesNotReuseCheckpointedIds() {
+        int checkpointFrame = 200;
+        int[] lastId = new int[1];
+        // A checkpoint from a process that had handed out many more ids than this one
+        DetectionReplay.Result resumed = resumed(1, checkpointFrame, state -> {
+            ByteBuffer blob = ByteBuffer.wrap(state.clone()).order(ByteOrder.nativeOrder());
+            lastId[0] = blob.getInt(LAST_ID_OFFSET) + 100000;
+            blob.putInt(LAST_ID_OFFSET, lastId[0]);
+            return blob.array();
+        });
+
+        Set<Integer> before = new HashSet<>();
+        Set<Integer> after = new HashSet<>();
+        for (String line : resumed.lines) {
+            (frameOf(line) <= checkpointFrame ? before : after).add(idOf(line));
+        }
+        int restored = 0;
+        int created = 0;
+        for (int id : after) {
+            if (before.contains(id)) {
+                restored++;
+            } else {
+                created++;
+                assertTrue("new track " + id + " reuses the id space up to " + lastId[0], id > lastId[0]);
+            }
+        }
+        assertTrue(restored > 0);
+        assertTrue(created > 0);
+
+        // Ids aside, the run is the uninterrupted one
+        DetectionReplay.Result uninterrupted = DetectionReplay.run(natives, detections, 1,
+                DetectionReplay.DEFAULT_WIDTH, DetectionReplay.DEFAULT_HEIGHT);
+        assertEquals(normalizeIds(uninterrupted.lines), normalizeIds(resumed.lines));
+    }
+}
@@ -0,0 +1,264 @@
+package edu.cmu.cs.face.host;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.cmu.cs.face.MainActivity;
+import edu.cmu.cs.face.mot.ModelRunner;
+import edu.cmu.cs.face.mot.PipelineConfig;
+import edu.cmu.cs.face.mot.PipelineLog;
+import edu.cmu.cs.face.mot.PipelineTimings;
+import edu.cmu.cs.face.mot.RgbFrame;
+import edu.cmu.cs.face.mot.YoloDetector;
+
+/**
+ * The same raw output tensor decoded by YoloDetector (Java) and by the native
+ * decoder behind nativeUpdateWithModelOutput must give the same detections.
+ *
+ * The native path returns tracks, not detections: on the first keyframe every
+ * detection at or above the tracker's new-track threshold starts a track with the
+ * detection's box, class and score, so the synthetic survivors all score above it.
+ */
+public class NativeDecodeTest {
+    private static final int FRAME_W = 640;
+    private static final int FRAME_H = 480;
+    private static final int MODEL_SIZE = 320;
+    private static final int CLASSES = 3;
+    private static final int DETAILS = 4 + CLASSES;
+    private static final int PREDICTIONS = 64;
+    // Scores of kept boxes stay above BYTETracker's high_thresh (0.8), so each becomes a track
+    private static final float HEAD_SCORE = 0.82f;
+
+    private static final PipelineLog LOG = new PipelineLog() {
+        @Override
+        public void i(String msg) {
+        }
+
+        @Override
+        public void w(String msg) {
+        }
+
+        @Override
+        public void e(String msg, Throwable tr) {
+        }
+    };
+
+    private static MainActivity natives;
+
+    @BeforeClass
+    public static void setUp() {
+        natives = new MainActivity();
+    }
+
+    /** Replays one fixed output tensor, in the given element type. */
+    private static final class FixedOutput implements ModelRunner {
+        private final float[] values;
+        private final TensorType type;
+        private final float scale;
+        private final int zeroPoint;
+
+        FixedOutput(float[] values, TensorType type, float scale, int zeroPoint) {
+            this.values = values;
+            this.type = type;
+            this.scale = scale;
+            this.zeroPoint = zeroPoint;
+        }
+
+        @Override
+        public int[] inputShape() {
+            return new int[] {1, MODEL_SIZE, MODEL_SIZE, 3};
+        }
+
+        @Override
+        public TensorType inputType() {
+            return TensorType.FLOAT32;
+        }
+
+        @Override
+        public int inputZeroPoint() {
+            return 0;
+        }
+
+        @Override
+        public int[] outputShape() {
+            return new int[] {1, DETAILS, PREDICTIONS};
+        }
+
+        @Override
+        public TensorType outputType() {
+            return type;
+        }
+
+        @Override
+        public float outputScale() {
+            return scale;
+        }
+
+        @Override
+        public int outputZeroPoint() {
+            return zeroPoint;
+        }
+
+        @Override
+        public void run(ByteBuffer input, ByteBuffer output) {
+            for (int i = 0; i < values.length; i++) {
+                if (type == TensorType.FLOAT32) {
+                    output.putFloat(i * 4, values[i]);
+                } else {
+                    int q = Math.round(values[i] / scale) + zeroPoint;
+                    output.put(i, (byte) Math.max(-128, Math.min(127, q)));
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /** Counts of what {@link #tensor} holds: 14 boxes survive NMS, the sub-pixel one is then dropped. */
+    private static final int CANDIDATES = 14 + 12 * 3;
+    private static final int DETECTIONS = 13;
+
+    /**
+     * [DETAILS, PREDICTIONS] in model-normalized units: twelve objects on a grid,
+     * one reaching into the letterbox padding (clipped), one under a pixel wide in
+     * the frame (dropped), each grid object with three weaker jittered duplicates for
+     * NMS to remove, and ten boxes under the confidence threshold.
+     */
+    private static float[] tensor(long seed) {
+        Random random = new Random(seed);
+        float[] t = new float[DETAILS * PREDICTIONS];
+        int p = 0;
+        float[] xs = {0.15f, 0.38f, 0.62f, 0.85f};
+        float[] ys = {0.3f, 0.5f, 0.7f};
+        for (float cy : ys) {
+            for (float cx : xs) {
+                float w = 0.08f + 0.06f * random.nextFloat();
+                float h = 0.08f + 0.06f * random.nextFloat();
+                int cls = random.nextInt(CLASSES);
+                // Two heads share a score, so the NMS order of ties is covered too
+                float score = p == 0 ? 0.9f : p == 4 ? 0.9f : HEAD_SCORE + 0.17f * random.nextFloat();
+                put(t, p++, cx, cy, w, h, cls, score, random);
+                for (int k = 0; k < 3; k++) {
+                    float dx = (random.nextFloat() - 0.5f) * 0.04f * w;
+                    float dy = (random.nextFloat() - 0.5f) * 0.04f * h;
+                    put(t, p++, cx + dx, cy + dy, w, h, cls, 0.52f + 0.23f * random.nextFloat(), random);
+                }
+            }
+        }
+        // Frame rows start at model y 0.125 (40 px of padding)
+        put(t, p++, 0.5f, 0.14f, 0.1f, 0.1f, 1, 0.95f, random);
+        put(t, p++, 0.2f, 0.15f, 0.001f, 0.05f, 2, 0.9f, random);
+        for (int k = 0; k < 10; k++) {
+            put(t, p++, random.nextFloat(), random.nextFloat(), 0.1f, 0.1f,
+                    random.nextInt(CLASSES), 0.45f * random.nextFloat(), random);
+        }
+        return t;
+    }
+
+    /** Prediction p with its best class score {@code score}; the other classes score lower. */
+    private static void put(float[] t, int p, float cx, float cy, float w, float h, int cls, float score,
+                            Random random) {
+        t[p] = cx;
+        t[PREDICTIONS + p] = cy;
+        t[2 * PREDICTIONS + p] = w;
+        t[3 * PREDICTIONS + p] = h;
+        for (int c = 0; c < CLASSES; c++) {
+            t[(4 + c) * PREDICTIONS + p] = c == cls ? score : score * 0.5f * random.nextFloat();
+        }
+    }
+
+    private static void assertSameDecode(FixedOutput model) {
+        PipelineConfig config = new PipelineConfig();
+        config.confidenceThreshold = 0.5f;
+        config.nmsThreshold = 0.45f;
+        YoloDetector detector = new YoloDetector(model, config, LOG);
+        RgbFrame frame = new RgbFrame();
+        frame.setSize(FRAME_W, FRAME_H);
+
+        float[] java = detector.detect(frame, new PipelineTimings());
+
+        detector.infer(frame, new PipelineTimings());
+        long[] stats = new long[3];
+        long handle = natives.nativeInitHybridTracker(30, 30, 1);
+        float[] tracks;
+        try {
+            tracks = natives.nativeUpdateWithModelOutput(handle, detector.outputBuffer(),
+                    detector.nativeDecodeParams(), new byte[FRAME_W * FRAME_H], FRAME_W, FRAME_H, stats);
+        } finally {
+            natives.nativeReleaseHybridTracker(handle);
+        }
+
+        int fields = YoloDetector.FIELDS_PER_DETECTION;
+        assertEquals(CANDIDATES, stats[1]);
+        assertEquals(DETECTIONS, java.length / fields);
+        assertEquals(DETECTIONS, stats[2]);
+        assertEquals(DETECTIONS, tracks.length / 7);
+
+        // Each Java detection is one track: same class and score, same box up to the
+        // Kalman xyah round trip
+        boolean[] matched = new boolean[tracks.length / 7];
+        for (int d = 0; d < java.length; d += fields) {
+            int best = -1;
+            float bestDistance = Float.MAX_VALUE;
+            for (int k = 0; k < matched.length; k++) {
+                float distance = Math.abs(tracks[k * 7] - java[d]) + Math.abs(tracks[k * 7 + 1] - java[d + 1]);
+                if (!matched[k] && distance < bestDistance) {
+                    bestDistance = distance;
+                    best = k;
+                }
+            }
+            assertTrue(best >= 0);
+            matched[best] = true;
+            float[] track = Arrays.copyOfRange(tracks, best * 7, best * 7 + 6);
+            float[] expected = Arrays.copyOfRange(java, d, d + fields);
+            for (int f = 0; f < 4; f++) {
+                assertEquals("box field " + f + " of " + Arrays.toString(expected), expected[f], track[f], 1e-4f);
+            }
+            assertEquals(expected[4], track[4], 0f);
+            assertEquals(expected[5], track[5], 0f);
+        }
+    }
+
+    @Test
+    public void float32OutputDecodesTheSameInJavaAndNative() {
+        assertSameDecode(new FixedOutput(tensor(7), ModelRunner.TensorType.FLOAT32, 1f, 0));
+    }
+
+    @Test
+    public void int8OutputDecodesTheSameInJavaAndNative() {
+        // [0, 1] onto [-128, 122]
+        assertSameDecode(new FixedOutput(tensor(11), ModelRunner.TensorType.INT8, 1f / 250, -128));
+    }
+
+    @Test
+    public void clippedBoxStaysInTheFrame() {
+        PipelineConfig config = new PipelineConfig();
+        config.confidenceThreshold = 0.5f;
+        config.nmsThreshold = 0.45f;
+        YoloDetector detector = new YoloDetector(
+                new FixedOutput(tensor(7), ModelRunner.TensorType.FLOAT32, 1f, 0), config, LOG);
+        RgbFrame frame = new RgbFrame();
+        frame.setSize(FRAME_W, FRAME_H);
+
+        float[] java = detector.detect(frame, new PipelineTimings());
+        // Model y 0.09..0.19 is frame y -22.4..41.6 px (pad 40, scale 0.5): clipped at the top
+        boolean found = false;
+        for (int d = 0; d < java.length; d += YoloDetector.FIELDS_PER_DETECTION) {
+            if (java[d + 5] == 0.95f) {
+                found = true;
+                assertEquals(20.8f / FRAME_H, java[d + 1], 1e-4f);
+                assertEquals(41.6f / FRAME_H, java[d + 3], 1e-4f);
+            }
+        }
+        assertTrue(found);
+    }
+}
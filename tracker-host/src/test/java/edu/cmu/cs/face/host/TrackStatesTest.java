@@ -0,0 +1,72 @@
+package edu.cmu.cs.face.host;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.cmu.cs.face.MainActivity;
+
+/** nativeGetTrackStates against the Kalman mean in the tracker checkpoint. */
+public class TrackStatesTest {
+    private static final int W = 640;
+    private static final int H = 480;
+    private static final int FRAME_RATE = 30;
+    private static final int KEYFRAME_INTERVAL = 3;
+
+    // HybridTracker::saveState layout up to the first tracked track (see CameraMotionTest)
+    private static final int TRACKED_COUNT_OFFSET = 73;
+    private static final int TRACK_MEAN_OFFSET = 4 * 3 + 1 + 4 * 3 + 4 + 16;
+    private static final int FIELDS_PER_STATE = 9;
+
+    private static MainActivity natives;
+
+    @BeforeClass
+    public static void setUp() {
+        natives = new MainActivity();
+    }
+
+    @Test
+    public void statesAreTheKalmanMeanPerSecond() {
+        long handle = natives.nativeInitHybridTracker(FRAME_RATE, 30, KEYFRAME_INTERVAL);
+        try {
+            byte[] gray = new byte[W * H];
+            // The person moves right and grows between two keyframes, KLT frames in between
+            natives.nativeUpdateWithDetections(handle, new float[] {0.4f, 0.5f, 0.1f, 0.3f, 0, 0.9f}, gray, W, H);
+            for (int i = 1; i < KEYFRAME_INTERVAL; i++) {
+                natives.nativeUpdateWithoutDetections(handle, gray, W, H);
+            }
+            natives.nativeUpdateWithDetections(handle, new float[] {0.45f, 0.5f, 0.11f, 0.33f, 0, 0.9f}, gray, W, H);
+
+            float[] states = natives.nativeGetTrackStates(handle, W, H);
+            assertEquals(FIELDS_PER_STATE, states.length);
+
+            ByteBuffer in = ByteBuffer.wrap(natives.nativeSaveTrackerState(handle)).order(ByteOrder.nativeOrder());
+            assertEquals(1, in.getInt(TRACKED_COUNT_OFFSET));
+            int track = TRACKED_COUNT_OFFSET + 4;
+            float[] mean = new float[8];
+            for (int k = 0; k < 8; k++) {
+                mean[k] = in.getFloat(track + TRACK_MEAN_OFFSET + k * 4);
+            }
+            // One filter step is the keyframe interval
+            float stepsPerSecond = FRAME_RATE / (float) KEYFRAME_INTERVAL;
+
+            assertEquals(in.getInt(track), (int) states[0]);
+            assertEquals(mean[0] / W, states[1], 1e-6);
+            assertEquals(mean[1] / H, states[2], 1e-6);
+            assertEquals(mean[2] * mean[3] / W, states[3], 1e-6);
+            assertEquals(mean[3] / H, states[4], 1e-6);
+            assertEquals(mean[4] / W * stepsPerSecond, states[5], 1e-5);
+            assertEquals(mean[5] / H * stepsPerSecond, states[6], 1e-5);
+            assertEquals((mean[6] * mean[3] + mean[2] * mean[7]) / W * stepsPerSecond, states[7], 1e-5);
+            assertEquals(mean[7] / H * stepsPerSecond, states[8], 1e-5);
+            // The filter has picked up the motion to the right
+            assertEquals(1f, Math.signum(states[5]), 0);
+        } finally {
+            natives.nativeReleaseHybridTracker(handle);
+        }
+    }
+}